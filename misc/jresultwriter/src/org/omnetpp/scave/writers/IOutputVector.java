@@ -39,4 +39,24 @@ public interface IOutputVector {
      * Values MUST be recorded increasing timestamp order.
      */
     boolean record(Number time, double value);
+
+    /**
+     * Record a value with the given time stamp into the output vector. This
+     * is the same as <code>record(Number, double)</code>, but avoids boxing the
+     * time stamp, and should be preferred when recording large amounts of data.
+     *
+     * Values MUST be recorded increasing timestamp order.
+     */
+    boolean record(double time, double value);
+
+    /**
+     * Record a value with the given raw simulation time as time stamp into the
+     * output vector. A raw simulation time is an integer that needs to be
+     * multiplied by 10^exponent to obtain seconds, where the exponent is
+     * a setting of the output vector manager. Raw simulation times are
+     * recorded without loss of precision.
+     *
+     * Values MUST be recorded increasing timestamp order.
+     */
+    boolean recordRaw(long rawSimtime, double value);
 }
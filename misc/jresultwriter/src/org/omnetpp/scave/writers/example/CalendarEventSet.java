@@ -0,0 +1,210 @@
+package org.omnetpp.scave.writers.example;
+
+/**
+ * Future event set implemented as a calendar queue (R. Brown, 1988). Events
+ * are hashed by time into an array of buckets ("days") of equal width, each
+ * bucket holding a sorted linked list; a "year" is one pass over all buckets.
+ * The first event is found by scanning the buckets from the current day.
+ * The number of buckets follows the number of events, and the bucket width
+ * is re-estimated from the spacing of the first events on each resize, so
+ * that insertion and removal take O(1) amortized time for the usual
+ * distributions of event times.
+ *
+ * Buckets are identified by "virtual bucket numbers", floor(time/width),
+ * instead of comparing times against floating-point bucket boundaries, so
+ * rounding errors cannot reorder events. Events with equal times are kept
+ * in insertion order.
+ *
+ * @author Andras
+ */
+public class CalendarEventSet implements FutureEventSet {
+    private static final int MIN_BUCKETS = 16;
+    private static final int SAMPLE_SIZE = 25;  // for estimating the bucket width
+    private static final int MAX_DIRECT_SEARCHES = 8;
+
+    private Event[] buckets = new Event[MIN_BUCKETS];
+    private Event[] tails = new Event[MIN_BUCKETS];  // last events of the buckets
+    private int mask = MIN_BUCKETS - 1;
+    private double width = 1.0;
+    private long currentBucket = 0;  // virtual bucket number of the current day
+    private int size = 0;
+    private long insertCount = 0;
+    private int directSearches = 0;  // consecutive ones; many of them mean a bad bucket width
+
+    public void insert(Event event) {
+        event.insertionOrder = insertCount++;
+        long vb = virtualBucket(event.time);
+        if (size == 0 || vb < currentBucket)
+            currentBucket = vb;
+        insertSorted(event, vb);
+        size++;
+        if (size > 2 * buckets.length)
+            resize(2 * buckets.length);
+    }
+
+    public Event peekFirst() {
+        return size == 0 ? null : buckets[findFirst()];
+    }
+
+    public Event removeFirst() {
+        if (size == 0)
+            return null;
+        Event event = unlinkFirst();
+        if (size < buckets.length / 2 && buckets.length > MIN_BUCKETS)
+            resize(buckets.length / 2);
+        else if (directSearches > MAX_DIRECT_SEARCHES)
+            resize(buckets.length);
+        return event;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getNumBuckets() {
+        return buckets.length;
+    }
+
+    public double getBucketWidth() {
+        return width;
+    }
+
+    private long virtualBucket(double time) {
+        return (long)Math.floor(time / width);
+    }
+
+    private void insertSorted(Event event, long vb) {
+        int i = (int)(vb & mask);
+        Event p = buckets[i];
+        if (p == null || event.compareTo(p) < 0) {
+            event.next = p;
+            buckets[i] = event;
+            if (p == null)
+                tails[i] = event;
+        }
+        else if (tails[i].compareTo(event) < 0) {
+            // the common case, also for equal times: append
+            event.next = null;
+            tails[i].next = event;
+            tails[i] = event;
+        }
+        else {
+            while (p.next != null && p.next.compareTo(event) < 0)
+                p = p.next;
+            event.next = p.next;
+            p.next = event;
+        }
+    }
+
+    /**
+     * Returns the index of the bucket whose head is the first event, and
+     * advances the current day to it. The FES must not be empty.
+     */
+    private int findFirst() {
+        // scan one year from the current day
+        long vb = currentBucket;
+        for (int k = 0; k < buckets.length; k++, vb++) {
+            int i = (int)(vb & mask);
+            Event e = buckets[i];
+            if (e != null && virtualBucket(e.time) <= vb) {
+                currentBucket = vb;
+                directSearches = 0;
+                return i;
+            }
+        }
+
+        // nothing in this year: find the minimum of the bucket heads
+        int minIndex = -1;
+        for (int i = 0; i < buckets.length; i++) {
+            Event e = buckets[i];
+            if (e != null && (minIndex == -1 || e.compareTo(buckets[minIndex]) < 0))
+                minIndex = i;
+        }
+        currentBucket = virtualBucket(buckets[minIndex].time);
+        directSearches++;
+        return minIndex;
+    }
+
+    private Event unlinkFirst() {
+        int i = findFirst();
+        Event event = buckets[i];
+        buckets[i] = event.next;
+        if (event.next == null)
+            tails[i] = null;
+        event.next = null;
+        size--;
+        return event;
+    }
+
+    /**
+     * Re-estimates the bucket width, and redistributes the events into
+     * the given number of buckets.
+     */
+    private void resize(int numBuckets) {
+        double newWidth = estimateWidth();
+        Event[] oldBuckets = buckets;
+        buckets = new Event[numBuckets];
+        tails = new Event[numBuckets];
+        mask = numBuckets - 1;
+        if (newWidth > 0)
+            width = newWidth;
+        directSearches = 0;
+
+        Event first = null;
+        for (Event head : oldBuckets) {
+            for (Event e = head; e != null; ) {
+                Event next = e.next;
+                insertSorted(e, virtualBucket(e.time));
+                if (first == null || e.compareTo(first) < 0)
+                    first = e;
+                e = next;
+            }
+        }
+        if (first != null)
+            currentBucket = virtualBucket(first.time);
+    }
+
+    /**
+     * Estimates the bucket width as three times the average separation of the
+     * first few events, ignoring separations more than twice the average.
+     * Returns 0 if there are too few distinct event times for an estimate.
+     */
+    private double estimateWidth() {
+        int n = Math.min(size, SAMPLE_SIZE);
+        if (n < 2)
+            return 0;
+
+        // take out the first events, then put them back
+        Event[] sample = new Event[n];
+        for (int k = 0; k < n; k++)
+            sample[k] = unlinkFirst();
+        for (int k = 0; k < n; k++) {
+            long vb = virtualBucket(sample[k].time);
+            if (k == 0)
+                currentBucket = vb;
+            insertSorted(sample[k], vb);
+            size++;
+        }
+
+        double first = sample[0].time, last = sample[n-1].time;
+        double average = (last - first) / (n - 1);
+        double sum = 0;
+        int count = 0;
+        for (int k = 1; k < n; k++) {
+            double separation = sample[k].time - sample[k-1].time;
+            if (separation <= 2 * average) {
+                sum += separation;
+                count++;
+            }
+        }
+        double width = count == 0 ? 0 : 3 * sum / count;
+        if (!(width > 0) || Double.isInfinite(width))
+            return 0;
+        // keep bucket numbers well within the range of longs
+        return Math.max(width, 1e-12 * Math.max(Math.abs(first), Math.abs(last)));
+    }
+}
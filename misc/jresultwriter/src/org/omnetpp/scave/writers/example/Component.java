@@ -24,7 +24,7 @@ public class Component {
 
     public void schedule(double time, Event e) {
         e.time = time;
-        sim.fes.add(e);
+        sim.fes.insert(e);
     }
 
     public double now() {
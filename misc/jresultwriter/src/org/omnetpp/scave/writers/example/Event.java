@@ -2,9 +2,13 @@ package org.omnetpp.scave.writers.example;
 
 public abstract class Event implements Comparable<Event> {
     public double time;
+    long insertionOrder;  // assigned by the FES, for FIFO ordering of events with equal times
+    Event next;  // for linked lists within the FES
 
     public int compareTo(Event e) {
-        return time==e.time ? 0 : time<e.time ? -1 : 1;
+        if (time != e.time)
+            return time < e.time ? -1 : 1;
+        return insertionOrder == e.insertionOrder ? 0 : insertionOrder < e.insertionOrder ? -1 : 1;
     }
 
     abstract void execute();
@@ -0,0 +1,31 @@
+package org.omnetpp.scave.writers.example;
+
+/**
+ * The future event set (FES) of the simulation kernel: a priority queue of
+ * scheduled events, ordered by time. Events with equal times are returned
+ * in the order they were inserted, so that runs are reproducible regardless
+ * of the implementation. An event may only be inserted once at a time, i.e.
+ * it may only be scheduled again after it has been removed.
+ *
+ * @author Andras
+ */
+public interface FutureEventSet {
+    /**
+     * Inserts the event; its time must have been set.
+     */
+    void insert(Event event);
+
+    /**
+     * Returns the first event without removing it, or null if the FES is empty.
+     */
+    Event peekFirst();
+
+    /**
+     * Removes and returns the first event, or returns null if the FES is empty.
+     */
+    Event removeFirst();
+
+    int size();
+
+    boolean isEmpty();
+}
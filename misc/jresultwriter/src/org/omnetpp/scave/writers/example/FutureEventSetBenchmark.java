@@ -0,0 +1,138 @@
+package org.omnetpp.scave.writers.example;
+
+import java.util.Random;
+
+/**
+ * Compares the future event set implementations with the classic "hold"
+ * model: the FES is filled with n events, then each step removes the first
+ * event and reinserts it with its time increased by a random increment.
+ * Several increment distributions are measured, with n = 10^3 .. 10^maxExp.
+ * Before measuring, it checks that the implementations return events in the
+ * same order, with ties broken by insertion order.
+ *
+ * Run with a warmed-up JVM and enough heap for the largest size, e.g.
+ * <code>java -Xmx4g FutureEventSetBenchmark [maxExp]</code>; the default
+ * maxExp is 6.
+ *
+ * @author Andras
+ */
+public class FutureEventSetBenchmark {
+    interface Distribution {
+        double next(Random random);
+    }
+
+    static final String[] NAMES = { "exponential", "uniform", "bimodal", "discrete" };
+    static final Distribution[] DISTRIBUTIONS = {
+        new Distribution() {
+            public double next(Random random) { return -Math.log(1 - random.nextDouble()); }
+        },
+        new Distribution() {
+            public double next(Random random) { return 2 * random.nextDouble(); }
+        },
+        new Distribution() {
+            public double next(Random random) { return random.nextDouble() < 0.9 ? 0.1 * random.nextDouble() : 100 * random.nextDouble(); }
+        },
+        new Distribution() {
+            public double next(Random random) { return random.nextInt(3); }  // many equal times
+        }
+    };
+
+    static class HoldEvent extends Event {
+        final int id;
+
+        HoldEvent(int id) {
+            this.id = id;
+        }
+
+        void execute() {
+        }
+    }
+
+    public static void main(String[] args) {
+        int maxExp = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+
+        for (int d = 0; d < DISTRIBUTIONS.length; d++)
+            verify(NAMES[d], DISTRIBUTIONS[d]);
+        System.out.println("Event order: OK");
+
+        System.out.println(String.format("%-12s %10s %14s %14s", "increments", "events", "heap ns/hold", "calendar ns/hold"));
+        for (int d = 0; d < DISTRIBUTIONS.length; d++) {
+            for (int exp = 3; exp <= maxExp; exp++) {
+                int n = (int)Math.pow(10, exp);
+                long holds = Math.max(2000000, 4L * n);
+                double heap = measure(new HeapEventSet(), DISTRIBUTIONS[d], n, holds);
+                double calendar = measure(new CalendarEventSet(), DISTRIBUTIONS[d], n, holds);
+                System.out.println(String.format("%-12s %10d %14.1f %14.1f", NAMES[d], n, heap, calendar));
+            }
+        }
+    }
+
+    /**
+     * Runs the hold model on both implementations, also growing and
+     * shrinking the FES, and checks that they return the same events in
+     * nondecreasing time order, with equal times in insertion order.
+     */
+    static void verify(String name, Distribution distribution) {
+        FutureEventSet[] sets = { new HeapEventSet(), new CalendarEventSet() };
+        Random random = new Random(1);
+        double now = 0;
+        int nextId = 0;
+        for (int step = 0; step < 400000; step++) {
+            // mostly insert in the first half of each phase, mostly remove in the second
+            boolean grow = step % 100000 < 50000;
+            boolean insert = grow ? random.nextInt(4) != 0 : random.nextInt(4) == 0;
+            if (insert || sets[0].isEmpty()) {
+                double time = now + distribution.next(random);
+                int id = nextId++;
+                for (FutureEventSet fes : sets) {
+                    HoldEvent e = new HoldEvent(id);
+                    e.time = time;
+                    fes.insert(e);
+                }
+            }
+            else {
+                HoldEvent a = (HoldEvent)sets[0].removeFirst();
+                HoldEvent b = (HoldEvent)sets[1].removeFirst();
+                if (a.id != b.id || a.time != b.time)
+                    throw new AssertionError(name + ": implementations return events in different order at step " + step);
+                now = a.time;
+            }
+        }
+
+        // drain both and check the order
+        for (FutureEventSet fes : sets) {
+            HoldEvent prev = null;
+            while (!fes.isEmpty()) {
+                HoldEvent e = (HoldEvent)fes.removeFirst();
+                if (prev != null && (e.time < prev.time || (e.time == prev.time && e.insertionOrder < prev.insertionOrder)))
+                    throw new AssertionError(name + ": events out of order");
+                prev = e;
+            }
+        }
+    }
+
+    /**
+     * Returns the average time of a hold operation in nanoseconds.
+     */
+    static double measure(FutureEventSet fes, Distribution distribution, int n, long holds) {
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++) {
+            HoldEvent e = new HoldEvent(i);
+            e.time = distribution.next(random);
+            fes.insert(e);
+        }
+        // warm-up, also lets the FES reach its steady state
+        hold(fes, distribution, random, holds / 4);
+        long start = System.nanoTime();
+        hold(fes, distribution, random, holds);
+        return (System.nanoTime() - start) / (double)holds;
+    }
+
+    static void hold(FutureEventSet fes, Distribution distribution, Random random, long holds) {
+        for (long i = 0; i < holds; i++) {
+            Event e = fes.removeFirst();
+            e.time += distribution.next(random);
+            fes.insert(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.omnetpp.scave.writers.example;
+
+import java.util.PriorityQueue;
+
+/**
+ * Future event set based on a binary heap (java.util.PriorityQueue).
+ * Insertion and removal are O(log n).
+ *
+ * @author Andras
+ */
+public class HeapEventSet implements FutureEventSet {
+    private PriorityQueue<Event> heap = new PriorityQueue<Event>();
+    private long insertCount = 0;
+
+    public void insert(Event event) {
+        event.insertionOrder = insertCount++;
+        heap.add(event);
+    }
+
+    public Event peekFirst() {
+        return heap.peek();
+    }
+
+    public Event removeFirst() {
+        return heap.poll();
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+}
@@ -3,7 +3,6 @@ package org.omnetpp.scave.writers.example;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 
 import org.omnetpp.scave.writers.IOutputScalarManager;
 import org.omnetpp.scave.writers.IOutputVectorManager;
@@ -13,13 +12,18 @@ import org.omnetpp.scave.writers.impl.FileOutputVectorManager;
 
 public class SimulationManager {
     double now = 0.0;
-    PriorityQueue<Event> fes = new PriorityQueue<Event>();
+    FutureEventSet fes;
     List<Component> components = new ArrayList<Component>();
 
     IOutputScalarManager scalarManager;
     IOutputVectorManager vectorManager;
 
     public SimulationManager(String runID, Map<String,String> runAttributes, String resultFilenameBase) {
+        this(runID, runAttributes, resultFilenameBase, new CalendarEventSet());
+    }
+
+    public SimulationManager(String runID, Map<String,String> runAttributes, String resultFilenameBase, FutureEventSet fes) {
+        this.fes = fes;
         scalarManager = new FileOutputScalarManager(resultFilenameBase+".sca");
         vectorManager = new FileOutputVectorManager(resultFilenameBase+".vec");
         vectorManager.setSimtimeProvider(new ISimulationTimeProvider() {
@@ -31,8 +35,8 @@ public class SimulationManager {
     }
 
     void simulate(double timeLimit) {
-        while (!fes.isEmpty() && fes.peek().time < timeLimit) {
-            Event event = fes.remove();
+        while (!fes.isEmpty() && fes.peekFirst().time < timeLimit) {
+            Event event = fes.removeFirst();
             now = event.time;
             event.execute();
         }
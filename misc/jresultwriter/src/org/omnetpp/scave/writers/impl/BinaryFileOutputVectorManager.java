@@ -0,0 +1,176 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.omnetpp.scave.writers.ResultRecordingException;
+
+/**
+ * An output vector manager that writes vector data in a binary, block-oriented
+ * format instead of text lines, which is considerably cheaper to produce
+ * and more compact. The index (".vci") file is the same as with
+ * FileOutputVectorManager: it contains the run header, the vector declarations,
+ * and one line per data block with the block's offset, size, time range and
+ * statistics (count, min, max, sum, sqrsum). Data in the vector file can be
+ * read back with BinaryVectorFileReader; see BinaryVectorFormat for the
+ * file layout.
+ *
+ * Samples are stored either as fixed-width (8+8 bytes) doubles, or
+ * delta/XOR-encoded as varints, which is typically much smaller for
+ * sample-hold style data. Blocks may additionally be deflate-compressed.
+ * Event numbers of ETV vectors are stored in the blocks as well. The file
+ * ends with a checksum footer; see VectorFileFooter.
+ *
+ * The IDE and opp_scavetool (src/scave) can load binary vector files, but
+ * only via their index: unlike text vector files, they cannot be re-indexed,
+ * so the ".vci" file must be kept along with the ".vec" file. Reading
+ * compressed files there requires OMNeT++ to be built with zlib.
+ *
+ * @author Andras
+ */
+public class BinaryFileOutputVectorManager extends FileOutputVectorManager {
+    /**
+     * Encoding of the samples in the data blocks.
+     */
+    public enum Encoding {
+        /** time and value as 8-byte IEEE doubles */
+        FIXED,
+        /** time as delta, value as XOR with the previous sample, both as varints */
+        DELTA_VARINT
+    }
+
+    protected Encoding encoding;
+    protected boolean compress;
+
+    private BinaryVectorFormat.Encoder encoder = new BinaryVectorFormat.Encoder();
+    private Deflater deflater;
+    private byte[] compressBuffer;
+    private ByteBuffer blockHeader = ByteBuffer.allocate(BinaryVectorFormat.BLOCK_HEADER_SIZE);
+
+    public BinaryFileOutputVectorManager(String fileName) {
+        this(fileName, Encoding.DELTA_VARINT, false);
+    }
+
+    public BinaryFileOutputVectorManager(String fileName, Encoding encoding, boolean compress) {
+        super(fileName);
+        this.encoding = encoding;
+        this.compress = compress;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public boolean isCompressed() {
+        return compress;
+    }
+
+    @Override
+    protected void writeVectorFileHeader() {
+        ByteBuffer header = ByteBuffer.allocate(BinaryVectorFormat.FILE_HEADER_SIZE);
+        header.putInt(BinaryVectorFormat.MAGIC);
+        header.putInt(BinaryVectorFormat.FORMAT_VERSION);
+        header.put(encodingCode());
+        header.put(compress ? BinaryVectorFormat.COMPRESSION_DEFLATE : BinaryVectorFormat.COMPRESSION_NONE);
+        header.put((byte)simtimeScaleExponent);
+        header.flip();
+        try {
+            writeFully(stream.getChannel(), header);
+        }
+        catch (IOException e) {
+            throw new ResultRecordingException("Cannot write output vector file " + file.getPath(), e);
+        }
+    }
+
+    @Override
+    protected void writeVectorDeclaration(OutputVector vector) throws IOException {
+        // vector declarations only go into the index file
+        writeIndexText(vector.header);
+    }
+
+    @Override
+    protected void writeBlockData(OutputVector vector, SampleBuffer b) throws IOException {
+        byte enc = encodingCode();
+        encoder.reset();
+        boolean eventNumbers = b.hasEventNumbers();
+        for (int i=0; i<b.n; i++) {
+            if (eventNumbers)
+                encoder.putEventNumber(enc, b.eventNumbers[i]);
+            if (b.isRawTime())
+                encoder.putRawTimeSample(enc, b.rawTimes[i], b.values[i]);
+            else
+                encoder.putSample(enc, b.times[i], b.values[i]);
+        }
+
+        byte[] payload = encoder.buf;
+        int rawLength = encoder.pos;
+        int payloadLength = rawLength;
+        if (compress) {
+            if (deflater == null)
+                deflater = new Deflater();
+            deflater.reset();
+            deflater.setInput(encoder.buf, 0, rawLength);
+            deflater.finish();
+            if (compressBuffer == null || compressBuffer.length < rawLength + 64)
+                compressBuffer = new byte[rawLength + rawLength/8 + 64];
+            payloadLength = 0;
+            while (!deflater.finished()) {
+                if (payloadLength == compressBuffer.length)
+                    compressBuffer = Arrays.copyOf(compressBuffer, compressBuffer.length * 2);
+                payloadLength += deflater.deflate(compressBuffer, payloadLength, compressBuffer.length - payloadLength);
+            }
+            payload = compressBuffer;
+        }
+
+        blockHeader.clear();
+        blockHeader.putInt(vector.id);
+        blockHeader.putInt(b.n);
+        byte timeFormat = b.isRawTime() ? BinaryVectorFormat.TIME_RAW : BinaryVectorFormat.TIME_DOUBLE;
+        if (eventNumbers)
+            timeFormat |= BinaryVectorFormat.EVENT_NUMBERS;
+        blockHeader.put(timeFormat);
+        blockHeader.putInt(rawLength);
+        blockHeader.putInt(payloadLength);
+        blockHeader.flip();
+
+        FileChannel channel = stream.getChannel();
+        writeFully(channel, blockHeader);
+        writeFully(channel, ByteBuffer.wrap(payload, 0, payloadLength));
+    }
+
+    @Override
+    protected void writeVectorFileFooter() throws IOException {
+        FileChannel channel = stream.getChannel();
+        ByteBuffer footer = ByteBuffer.allocate(VectorFileFooter.BINARY_FOOTER_SIZE);
+        footer.putInt(VectorFileFooter.FOOTER_ID);
+        footer.putLong(channel.position());
+        footer.putInt((int)checksum.getValue());
+        footer.flip();
+        writeFully(channel, footer);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    protected byte encodingCode() {
+        return encoding == Encoding.FIXED ? BinaryVectorFormat.ENCODING_FIXED : BinaryVectorFormat.ENCODING_DELTA_VARINT;
+    }
+
+    /**
+     * Writes the buffer into the vector file, and adds its contents to the checksum.
+     */
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
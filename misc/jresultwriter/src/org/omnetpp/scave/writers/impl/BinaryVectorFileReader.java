@@ -0,0 +1,147 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads vector files written by BinaryFileOutputVectorManager. Blocks can
+ * be read either sequentially, or randomly using the offsets stored in the
+ * index (".vci") file. Reading sequentially stops at the footer; use
+ * VectorFileFooter.verify() to check whether the file is complete.
+ *
+ * @author Andras
+ */
+public class BinaryVectorFileReader implements Closeable {
+    /**
+     * One data block of a vector.
+     */
+    public static class Block {
+        public int vectorId;
+        public int count;
+        public long[] eventNumbers;  // null unless the vector records event numbers
+        public double[] times;
+        public double[] values;
+    }
+
+    protected File file;
+    protected RandomAccessFile raf;
+    protected byte encoding;
+    protected boolean compressed;
+    protected int simtimeScaleExponent;
+
+    public BinaryVectorFileReader(String fileName) throws IOException {
+        file = new File(fileName);
+        raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.readInt() != BinaryVectorFormat.MAGIC)
+                throw new IOException("Not a binary output vector file: " + file.getPath());
+            int version = raf.readInt();
+            if (version != BinaryVectorFormat.FORMAT_VERSION)
+                throw new IOException("Unsupported binary output vector file version " + version + ": " + file.getPath());
+            encoding = raf.readByte();
+            compressed = raf.readByte() == BinaryVectorFormat.COMPRESSION_DEFLATE;
+            simtimeScaleExponent = raf.readByte();
+        }
+        catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public BinaryFileOutputVectorManager.Encoding getEncoding() {
+        return encoding == BinaryVectorFormat.ENCODING_FIXED ?
+                BinaryFileOutputVectorManager.Encoding.FIXED : BinaryFileOutputVectorManager.Encoding.DELTA_VARINT;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public int getSimtimeScaleExponent() {
+        return simtimeScaleExponent;
+    }
+
+    /**
+     * Reads the block at the given file offset, as found in the index file.
+     */
+    public Block readBlock(long offset) throws IOException {
+        raf.seek(offset);
+        return readNextBlock();
+    }
+
+    /**
+     * Reads the block at the current file position, or returns null
+     * at the footer or at the end of the file.
+     */
+    public Block readNextBlock() throws IOException {
+        if (raf.getFilePointer() >= raf.length())
+            return null;
+
+        Block block = new Block();
+        block.vectorId = raf.readInt();
+        if (block.vectorId == VectorFileFooter.FOOTER_ID) {
+            raf.seek(raf.length());
+            return null;
+        }
+        block.count = raf.readInt();
+        byte flags = raf.readByte();
+        boolean hasEventNumbers = (flags & BinaryVectorFormat.EVENT_NUMBERS) != 0;
+        byte timeFormat = (byte)(flags & ~BinaryVectorFormat.EVENT_NUMBERS);
+        if (timeFormat != BinaryVectorFormat.TIME_DOUBLE && timeFormat != BinaryVectorFormat.TIME_RAW)
+            throw new IOException("Unsupported time format " + timeFormat + " in " + file.getPath());
+        int rawLength = raf.readInt();
+        int payloadLength = raf.readInt();
+        byte[] payload = new byte[payloadLength];
+        raf.readFully(payload);
+
+        byte[] data = payload;
+        if (compressed) {
+            data = new byte[rawLength];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(payload);
+                int n = 0;
+                while (n < rawLength && !inflater.finished()) {
+                    int k = inflater.inflate(data, n, rawLength - n);
+                    if (k == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    n += k;
+                }
+                if (n != rawLength)
+                    throw new IOException("Corrupt compressed block in " + file.getPath());
+            }
+            catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed block in " + file.getPath(), e);
+            }
+            finally {
+                inflater.end();
+            }
+        }
+
+        block.times = new double[block.count];
+        block.values = new double[block.count];
+        if (hasEventNumbers)
+            block.eventNumbers = new long[block.count];
+        BinaryVectorFormat.Decoder decoder = new BinaryVectorFormat.Decoder(data, 0, rawLength);
+        boolean rawTime = timeFormat == BinaryVectorFormat.TIME_RAW;
+        try {
+            for (int i = 0; i < block.count; i++) {
+                if (hasEventNumbers)
+                    block.eventNumbers[i] = decoder.getEventNumber(encoding);
+                decoder.getSample(encoding, rawTime, simtimeScaleExponent, block.times, block.values, i);
+            }
+        }
+        catch (IllegalStateException e) {
+            throw new IOException(e.getMessage() + " in " + file.getPath(), e);
+        }
+        return block;
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+}
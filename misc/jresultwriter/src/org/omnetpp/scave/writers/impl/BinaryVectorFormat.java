@@ -0,0 +1,213 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.util.Arrays;
+
+/**
+ * Constants and sample encoding routines for the binary vector file format
+ * written by BinaryFileOutputVectorManager and read by BinaryVectorFileReader.
+ *
+ * File layout (all integers are big-endian):
+ * <pre>
+ *   file header:  int magic, int formatVersion, byte encoding, byte compression,
+ *                 byte simtimeScaleExponent
+ *   block:        int vectorId, int count, byte timeFormat,
+ *                 int rawLength, int payloadLength, byte[payloadLength] payload
+ * </pre>
+ * The payload holds <code>count</code> (time, value) pairs in the given
+ * encoding; time is either a double or a raw simulation time (a long that
+ * needs to be scaled by 10^simtimeScaleExponent), depending on timeFormat.
+ * If the EVENT_NUMBERS flag is set in timeFormat, each sample is preceded
+ * by its event number (a long, or a zigzag varint delta);
+ * the payload is optionally deflate-compressed (in which case rawLength is the
+ * uncompressed length). Block offsets and sizes in the index file refer to
+ * whole blocks including the block header.
+ *
+ * Files that were closed properly end with a footer: int -1 (in place of the
+ * vector id), long length, int crc32, where length is the footer's offset and
+ * crc32 is the checksum of the file contents before it.
+ *
+ * The format is also read by IndexedVectorFileReader in src/scave; keep
+ * the two in sync.
+ *
+ * @author Andras
+ */
+class BinaryVectorFormat {
+    static final int MAGIC = 0x4F564543; // "OVEC"
+    static final int FORMAT_VERSION = 1;
+
+    static final int FILE_HEADER_SIZE = 4 + 4 + 1 + 1 + 1;
+    static final int BLOCK_HEADER_SIZE = 4 + 4 + 1 + 4 + 4;
+
+    // values for the encoding byte
+    static final byte ENCODING_FIXED = 0;
+    static final byte ENCODING_DELTA_VARINT = 1;
+
+    // values for the compression byte
+    static final byte COMPRESSION_NONE = 0;
+    static final byte COMPRESSION_DEFLATE = 1;
+
+    // values for the block timeFormat byte
+    static final byte TIME_DOUBLE = 0;
+    static final byte TIME_RAW = 1;
+    static final byte EVENT_NUMBERS = 0x10;  // flag in the timeFormat byte
+
+    /**
+     * Growable byte buffer for encoding sample data; meant to be reused
+     * across blocks so that steady-state encoding does not allocate.
+     */
+    static class Encoder {
+        byte[] buf = new byte[1024];
+        int pos = 0;
+
+        long prevTimeBits;
+        long prevValueBits;
+        long prevEventNumber;
+
+        void reset() {
+            pos = 0;
+            prevTimeBits = 0;
+            prevValueBits = 0;
+            prevEventNumber = 0;
+        }
+
+        void ensureCapacity(int extra) {
+            if (pos + extra > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+        }
+
+        void putLong(long v) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                buf[pos++] = (byte)(v >>> shift);
+        }
+
+        void putVarLong(long v) {
+            ensureCapacity(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte)((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte)v;
+        }
+
+        void putEventNumber(byte encoding, long eventNumber) {
+            if (encoding == ENCODING_FIXED)
+                putLong(eventNumber);
+            else
+                putVarLong(zigzag(eventNumber - prevEventNumber));
+            prevEventNumber = eventNumber;
+        }
+
+        void putSample(byte encoding, double time, double value) {
+            putSampleBits(encoding, Double.doubleToRawLongBits(time), value);
+        }
+
+        void putRawTimeSample(byte encoding, long rawTime, double value) {
+            putSampleBits(encoding, rawTime, value);
+        }
+
+        private void putSampleBits(byte encoding, long timeBits, double value) {
+            long valueBits = Double.doubleToRawLongBits(value);
+            if (encoding == ENCODING_FIXED) {
+                putLong(timeBits);
+                putLong(valueBits);
+            }
+            else {
+                // timestamps are monotonic, and so are their bit patterns (raw simtimes,
+                // and doubles if non-negative): store the zigzag-encoded difference;
+                // for values, store the XOR with the previous value bit-reversed,
+                // so that the trailing zeros typical of "round" numbers become
+                // leading zeros
+                putVarLong(zigzag(timeBits - prevTimeBits));
+                putVarLong(Long.reverse(valueBits ^ prevValueBits));
+            }
+            prevTimeBits = timeBits;
+            prevValueBits = valueBits;
+        }
+    }
+
+    /**
+     * Decodes sample data produced by Encoder.
+     */
+    static class Decoder {
+        byte[] buf;
+        int pos;
+        int limit;
+
+        long prevTimeBits;
+        long prevValueBits;
+        long prevEventNumber;
+
+        Decoder(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.limit = offset + length;
+        }
+
+        long getLong() {
+            if (pos + 8 > limit)
+                throw new IllegalStateException("Truncated vector data block");
+            long v = 0;
+            for (int i = 0; i < 8; i++)
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            return v;
+        }
+
+        long getVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= limit)
+                    throw new IllegalStateException("Truncated vector data block");
+                byte b = buf[pos++];
+                v |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IllegalStateException("Malformed varint in vector data block");
+        }
+
+        long getEventNumber(byte encoding) {
+            long eventNumber = encoding == ENCODING_FIXED ? getLong() : prevEventNumber + unzigzag(getVarLong());
+            prevEventNumber = eventNumber;
+            return eventNumber;
+        }
+
+        /**
+         * Decodes the next sample into times[i] and values[i]. If rawTime is true,
+         * timestamps are raw simulation times, and they are converted to seconds
+         * using the given scale exponent.
+         */
+        void getSample(byte encoding, boolean rawTime, int exponent, double[] times, double[] values, int i) {
+            long timeBits, valueBits;
+            if (encoding == ENCODING_FIXED) {
+                timeBits = getLong();
+                valueBits = getLong();
+            }
+            else {
+                timeBits = prevTimeBits + unzigzag(getVarLong());
+                valueBits = prevValueBits ^ Long.reverse(getVarLong());
+            }
+            times[i] = rawTime ? scaleRawTime(timeBits, exponent) : Double.longBitsToDouble(timeBits);
+            values[i] = Double.longBitsToDouble(valueBits);
+            prevTimeBits = timeBits;
+            prevValueBits = valueBits;
+        }
+    }
+
+    /**
+     * Converts a raw simulation time to seconds. Dividing by an exact power
+     * of ten (instead of multiplying by its inexact reciprocal) ensures that
+     * the result is the same as parsing the decimal representation.
+     */
+    static double scaleRawTime(long raw, int exponent) {
+        return exponent < 0 ? raw / Math.pow(10, -exponent) : raw * Math.pow(10, exponent);
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,174 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.omnetpp.scave.writers.IOutputVector;
+
+/**
+ * A thread-safe variant of FileOutputVectorManager, for simulations that run
+ * several partitions (threads) in the same JVM and share one output vector
+ * manager.
+ *
+ * Vectors are grouped into shards: every vector belongs to the shard of the
+ * thread that created it, and every shard keeps its own count of buffered
+ * samples, so that threads do not contend on a global counter. The total
+ * buffer limit is divided evenly among the shards that have open vectors;
+ * when a shard exceeds its share, the thread that noticed it writes out the vectors of that shard.
+ * Blocks are always written by a single writer thread (this manager always
+ * operates in async mode), which serializes them into the vector and index
+ * files.
+ *
+ * Recording into a vector is synchronized on the vector, so a vector may be
+ * recorded into from several threads, but the timestamps must still be
+ * increasing in the order the record() calls are made. When using
+ * <code>record(double value)</code>, the simulation time provider must be
+ * thread-safe and return the time of the calling thread's partition.
+ *
+ * @author Andras
+ */
+public class ConcurrentFileOutputVectorManager extends FileOutputVectorManager {
+
+    /**
+     * The vectors created by one thread, and the number of samples buffered in them.
+     */
+    static class Shard {
+        final Set<OutputVector> vectors = Collections.newSetFromMap(new ConcurrentHashMap<OutputVector, Boolean>());
+        final AtomicInteger nbuffered = new AtomicInteger();
+    }
+
+    protected List<Shard> shards = new CopyOnWriteArrayList<Shard>(); // the ones with open vectors
+
+    private ThreadLocal<Shard> currentShard = new ThreadLocal<Shard>() {
+        @Override
+        protected Shard initialValue() {
+            return new Shard();
+        }
+    };
+
+    class ConcurrentOutputVector extends OutputVector {
+        final Shard shard;
+
+        public ConcurrentOutputVector(int id, String componentPath, String vectorName, Map<String, String> attributes, Shard shard) {
+            super(id, componentPath, vectorName, attributes);
+            this.shard = shard;
+        }
+
+        @Override
+        public boolean record(double time, double value) {
+            boolean recorded;
+            synchronized (this) {
+                recorded = super.record(time, value);
+            }
+            if (recorded)
+                checkShardLimit(shard);
+            return recorded;
+        }
+
+        @Override
+        public boolean recordRaw(long rawSimtime, double value) {
+            boolean recorded;
+            synchronized (this) {
+                recorded = super.recordRaw(rawSimtime, value);
+            }
+            if (recorded)
+                checkShardLimit(shard);
+            return recorded;
+        }
+
+        @Override
+        public synchronized void flush() {
+            super.flush();
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                super.close();
+            }
+            removeFromShard(this);
+        }
+    }
+
+    public ConcurrentFileOutputVectorManager(String fileName) {
+        super(fileName);
+        vectors = Collections.newSetFromMap(new ConcurrentHashMap<OutputVector, Boolean>());
+        asyncWriting = true;
+    }
+
+    /**
+     * This manager always writes asynchronously, so async mode cannot be turned off.
+     */
+    @Override
+    public void setAsyncWriting(boolean async) {
+        if (!async)
+            throw new IllegalArgumentException("ConcurrentFileOutputVectorManager always writes asynchronously");
+    }
+
+    @Override
+    public synchronized IOutputVector createVector(String componentPath, String vectorName, Map<String, String> attributes) {
+        int id = ++lastId;
+        Shard shard = currentShard.get();
+        ConcurrentOutputVector vector = new ConcurrentOutputVector(id, componentPath, vectorName, attributes, shard);
+        vectors.add(vector);
+        if (shard.vectors.isEmpty())
+            shards.add(shard);
+        shard.vectors.add(vector);
+        return vector;
+    }
+
+    /**
+     * Removes the closed vector from its shard, and the shard from the list
+     * if it has no more vectors, so that it no longer takes a share of the
+     * total buffer limit.
+     */
+    protected synchronized void removeFromShard(ConcurrentOutputVector vector) {
+        Shard shard = vector.shard;
+        if (shard.vectors.remove(vector) && shard.vectors.isEmpty())
+            shards.remove(shard);
+    }
+
+    @Override
+    protected void samplesBuffered(OutputVector vector, int count) {
+        ((ConcurrentOutputVector)vector).shard.nbuffered.addAndGet(count);
+    }
+
+    @Override
+    protected void changed(OutputVector vector) {
+        // called with the vector locked; the shard limit is checked by the
+        // caller after releasing the lock, see checkShardLimit()
+        if (vector.buffer.n >= perVectorLimit)
+            vector.writeBlock();
+    }
+
+    /**
+     * Writes out the vectors of the shard if it exceeds its share of the total
+     * buffer limit. Must not be called with a vector locked, as it locks the
+     * vectors of the shard one by one.
+     */
+    protected void checkShardLimit(Shard shard) {
+        if (shard.nbuffered.get() > totalLimit / Math.max(1, shards.size()))
+            writeBlocks(shard.vectors);
+    }
+
+    protected void writeBlocks(Set<OutputVector> vectors) {
+        for (OutputVector v : vectors) {
+            synchronized (v) {
+                if (v.id != -1)
+                    v.writeBlock();
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        writeBlocks(vectors);
+        if (writerThread != null)
+            writerThread.awaitCompletion();  // also flushes the files
+    }
+}
@@ -0,0 +1,257 @@
+package org.omnetpp.scave.writers.impl;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.ISimulationTimeProvider;
+
+/**
+ * Data reduction mode for output vectors, to be used with
+ * FilteringOutputVectorManager. Instances are obtained from the factory
+ * methods everyNth(), timeAverage() and minMax(); they wrap the output
+ * vectors of the underlying manager, and pass on only the reduced data.
+ *
+ * Interval-based modes only write out an interval when a sample from a
+ * later interval arrives, or when the vector is closed. Flushing the vector
+ * does not write out the current interval.
+ *
+ * @author Andras
+ */
+public abstract class Decimation {
+
+    /**
+     * Records only every nth sample, starting with the first one.
+     */
+    public static Decimation everyNth(final int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("n must be positive");
+        return new Decimation() {
+            IOutputVector wrap(IOutputVector vector, FilteringOutputVectorManager manager) {
+                return n == 1 ? vector : new EveryNthVector(vector, manager, n);
+            }
+            public String toString() {
+                return "everyNth(" + n + ")";
+            }
+        };
+    }
+
+    /**
+     * Records the mean of the samples in each interval [k*interval, (k+1)*interval),
+     * timestamped with the end of the interval. When the vector is closed,
+     * the last (incomplete) interval is timestamped with its last sample.
+     * Empty intervals produce no output.
+     */
+    public static Decimation timeAverage(final double interval) {
+        if (!(interval > 0))
+            throw new IllegalArgumentException("interval must be positive");
+        return new Decimation() {
+            IOutputVector wrap(IOutputVector vector, FilteringOutputVectorManager manager) {
+                return new TimeAverageVector(vector, manager, interval);
+            }
+            public String toString() {
+                return "timeAverage(" + interval + ")";
+            }
+        };
+    }
+
+    /**
+     * Records the minimum and the maximum sample of each interval
+     * [k*interval, (k+1)*interval), with their original timestamps. This
+     * preserves the envelope of the data, e.g. for plotting.
+     */
+    public static Decimation minMax(final double interval) {
+        if (!(interval > 0))
+            throw new IllegalArgumentException("interval must be positive");
+        return new Decimation() {
+            IOutputVector wrap(IOutputVector vector, FilteringOutputVectorManager manager) {
+                return new MinMaxVector(vector, manager, interval);
+            }
+            public String toString() {
+                return "minMax(" + interval + ")";
+            }
+        };
+    }
+
+    abstract IOutputVector wrap(IOutputVector vector, FilteringOutputVectorManager manager);
+
+    /**
+     * Base class of decimating output vectors.
+     */
+    static abstract class DecimatingVector implements IOutputVector {
+        final IOutputVector vector;
+        final FilteringOutputVectorManager manager;
+
+        DecimatingVector(IOutputVector vector, FilteringOutputVectorManager manager) {
+            this.vector = vector;
+            this.manager = manager;
+        }
+
+        public void flush() {
+            vector.flush();
+        }
+
+        public void close() {
+            vector.close();
+            manager.vectorClosed(this);
+        }
+
+        public boolean record(double value) {
+            ISimulationTimeProvider simtimeProvider = manager.getSimtimeProvider();
+            if (simtimeProvider == null)
+                throw new IllegalStateException("Simtime provider not yet specified");
+            return record(simtimeProvider.getSimulationTime().doubleValue(), value);
+        }
+
+        public boolean record(Number time, double value) {
+            return record(time.doubleValue(), value);
+        }
+    }
+
+    static class EveryNthVector extends DecimatingVector {
+        final int n;
+        int counter = 0;
+
+        EveryNthVector(IOutputVector vector, FilteringOutputVectorManager manager, int n) {
+            super(vector, manager);
+            this.n = n;
+        }
+
+        private boolean take() {
+            boolean result = counter == 0;
+            if (++counter == n)
+                counter = 0;
+            return result;
+        }
+
+        @Override
+        public boolean record(double value) {
+            return take() && vector.record(value);
+        }
+
+        public boolean record(double time, double value) {
+            return take() && vector.record(time, value);
+        }
+
+        public boolean recordRaw(long rawSimtime, double value) {
+            return take() && vector.recordRaw(rawSimtime, value);
+        }
+    }
+
+    static abstract class IntervalVector extends DecimatingVector {
+        final double interval;
+        final double simtimeScale;
+        long currentInterval;
+        boolean empty = true;
+
+        IntervalVector(IOutputVector vector, FilteringOutputVectorManager manager, double interval) {
+            super(vector, manager);
+            this.interval = interval;
+            this.simtimeScale = manager.getSimtimeScale();
+        }
+
+        public boolean record(double time, double value) {
+            collect(time, 0, false, value);
+            return true;
+        }
+
+        public boolean recordRaw(long rawSimtime, double value) {
+            collect(rawSimtime * simtimeScale, rawSimtime, true, value);
+            return true;
+        }
+
+        private void collect(double time, long rawTime, boolean isRaw, double value) {
+            long k = (long)Math.floor(time / interval);
+            if (!empty && k != currentInterval) {
+                writeInterval(false);
+                empty = true;
+            }
+            currentInterval = k;
+            add(time, rawTime, isRaw, value);
+            empty = false;
+        }
+
+        @Override
+        public void close() {
+            if (!empty) {
+                writeInterval(true);
+                empty = true;
+            }
+            super.close();
+        }
+
+        abstract void add(double time, long rawTime, boolean isRaw, double value);
+
+        abstract void writeInterval(boolean closing);
+    }
+
+    static class TimeAverageVector extends IntervalVector {
+        double sum;
+        long count;
+        double lastTime;
+
+        TimeAverageVector(IOutputVector vector, FilteringOutputVectorManager manager, double interval) {
+            super(vector, manager, interval);
+        }
+
+        void add(double time, long rawTime, boolean isRaw, double value) {
+            sum += value;
+            count++;
+            lastTime = time;
+        }
+
+        void writeInterval(boolean closing) {
+            double time = closing ? lastTime : (currentInterval + 1) * interval;
+            vector.record(time, sum / count);
+            sum = 0;
+            count = 0;
+        }
+    }
+
+    static class MinMaxVector extends IntervalVector {
+        long sampleCount = 0;  // identifies samples
+        long minSample, maxSample;
+        double minTime, maxTime, minValue, maxValue;
+        long minRawTime, maxRawTime;
+        boolean minIsRaw, maxIsRaw;
+
+        MinMaxVector(IOutputVector vector, FilteringOutputVectorManager manager, double interval) {
+            super(vector, manager, interval);
+        }
+
+        void add(double time, long rawTime, boolean isRaw, double value) {
+            long sample = ++sampleCount;
+            if (empty || value < minValue) {
+                minSample = sample;
+                minTime = time;
+                minRawTime = rawTime;
+                minIsRaw = isRaw;
+                minValue = value;
+            }
+            if (empty || value > maxValue) {
+                maxSample = sample;
+                maxTime = time;
+                maxRawTime = rawTime;
+                maxIsRaw = isRaw;
+                maxValue = value;
+            }
+        }
+
+        void writeInterval(boolean closing) {
+            if (minSample == maxSample)
+                write(minTime, minRawTime, minIsRaw, minValue);
+            else if (minSample < maxSample) {
+                write(minTime, minRawTime, minIsRaw, minValue);
+                write(maxTime, maxRawTime, maxIsRaw, maxValue);
+            }
+            else {
+                write(maxTime, maxRawTime, maxIsRaw, maxValue);
+                write(minTime, minRawTime, minIsRaw, minValue);
+            }
+        }
+
+        private void write(double time, long rawTime, boolean isRaw, double value) {
+            if (isRaw)
+                vector.recordRaw(rawTime, value);
+            else
+                vector.record(time, value);
+        }
+    }
+}
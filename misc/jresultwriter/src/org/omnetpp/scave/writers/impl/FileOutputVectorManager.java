@@ -9,6 +9,11 @@ import java.io.PrintStream;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 import org.omnetpp.scave.writers.IOutputVector;
 import org.omnetpp.scave.writers.IOutputVectorManager;
@@ -17,11 +22,23 @@ import org.omnetpp.scave.writers.ResultRecordingException;
 
 /**
  * An output vector manager that writes OMNeT++ vector (".vec") files.
- * Recording event numbers ("ETV" vectors) is not supported, because it is
- * practically only useful for sequence charts.
+ * Recording event numbers ("ETV" vectors) can be turned on with
+ * setRecordEventNumbers(); it is mostly useful for correlating vector data
+ * with the event log, e.g. on sequence charts.
+ *
+ * Recording can be restricted to a set of simulation time intervals, and
+ * a warm-up period can be set; see setRecordingIntervals() and
+ * setWarmupPeriod(). Samples outside the intervals are dropped in record(),
+ * before buffering.
+ *
+ * With setMappedIndex(), the index is collected in a memory-mapped binary
+ * file during the simulation (see MappedIndexWriter), and the text ".vci"
+ * file is only produced on close. On close, a checksum footer is appended
+ * to the vector file (see VectorFileFooter), so that readers can detect
+ * truncated or incomplete files.
  *
  * This class does not support filtering (of vectors or recorded data)
- * at all -- this functionality may be added via subclasses.
+ * at all -- use FilteringOutputVectorManager for that.
  *
  * @author Andras
  */
@@ -36,39 +53,61 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
     protected File indexFile;
     protected FileOutputStream indexStream;
     protected PrintStream indexOut;
+    protected File mappedIndexFile;
+    protected MappedIndexWriter mappedIndexWriter;
+    protected CRC32 checksum = new CRC32();  // of the vector file contents
 
     protected ISimulationTimeProvider simtimeProvider;
 
     protected int perVectorLimit = 1000;
     protected int totalLimit = 1000000;
 
+    protected int simtimeScaleExponent = -12;
+    protected double simtimeScale = 1e-12;
+
+    protected boolean recordEventNumbers = false;
+    protected RecordingIntervals recordingIntervals;  // null means always
+    protected double warmupPeriod = 0;
+    private RecordingIntervals effectiveIntervals;
+
     protected int lastId = 0;
     protected int nbuffered = 0;
 
+    protected boolean asyncWriting = false;
+    protected int writeQueueCapacity = 256;
+    protected WriterThread writerThread;
+
+    protected boolean mappedIndex = false;
+    protected int mappedIndexChunkSize = MappedIndexWriter.DEFAULT_CHUNK_SIZE;
+
+    private StringBuilder line = new StringBuilder();
+    private StringBuilder indexLine = new StringBuilder();
+
     protected Set<OutputVector> vectors = new HashSet<OutputVector>();
 
     class OutputVector implements IOutputVector {
         int id;
         byte[] header;
 
-        int n = 0;
-        Number[] times = new Number[10];
-        double[] values = new double[10];
-
-        Number blockStartTime = 0;
-        Number blockEndTime = 0;
-        double min = Double.NaN;
-        double max = Double.NaN;
-        double sum = 0;
-        double sqrSum = 0;
+        SampleBuffer buffer;
+        SampleBuffer spare;  // in async mode: the other buffer, or null while it is being written out
+        boolean doubleBuffered = false;
+        final Object spareLock = new Object();  // not "this", so that subclasses may synchronize on the vector
+        double lastTime = 0;
+        final boolean eventNumbers;
+        final RecordingIntervals.Cursor intervals;  // null if all data are recorded
 
         public OutputVector(int id, String componentPath, String vectorName, Map<String, String> attributes) {
             this.id = id;
+            this.eventNumbers = recordEventNumbers;
+            this.buffer = createBuffer();
+            RecordingIntervals effective = getEffectiveRecordingIntervals();
+            this.intervals = effective == null ? null : effective.newCursor();
 
             // postpone writing out vector declaration until there's actually something to record
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
             PrintStream tmp = new PrintStream(bos);
-            tmp.println("vector " + id + " " + q(componentPath) + " " + q(vectorName) + " TV");
+            tmp.println("vector " + id + " " + q(componentPath) + " " + q(vectorName) + (eventNumbers ? " ETV" : " TV"));
             writeAttributes(tmp, attributes);
             tmp.close();
             header = bos.toByteArray();
@@ -77,8 +116,7 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
         protected void writeVectorHeader() throws IOException {
             if (out == null)
                 open();
-            out.write(header);
-            indexOut.write(header);
+            writeVectorDeclaration(this);
             header = null;
         }
 
@@ -93,6 +131,8 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
                 throw new IllegalStateException("Output vector already closed");
 
             writeBlock();  // implies file flushing as well
+            if (writerThread != null)
+                writerThread.awaitCompletion();
         }
 
         public boolean record(double value) {
@@ -103,86 +143,233 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
         }
 
         public boolean record(Number time, double value) {
-            if (id == -1)
-                throw new IllegalStateException("Attempt to write to an output vector that's already closed");
+            return record(time.doubleValue(), value);
+        }
+
+        public boolean record(double time, double value) {
+            checkRecord(time);
+            if (intervals != null && !intervals.contains(time))
+                return false;
+            if (buffer.isRawTime())
+                writeBlock(); // one block may only contain one kind of timestamps
+            if (eventNumbers)
+                buffer.setEventNumber(getEventNumber());
+            buffer.add(time, value);
+            recorded();
+            return true;
+        }
 
-            if (time.doubleValue() < blockEndTime.doubleValue())
-                throw new IllegalStateException("Vector data must be recorded in increasing timestamp order (t="+time+ "tprev="+blockEndTime+")");
-
-            if (n == times.length) {
-                int newSize = (n * 3) / 2;
-                Number[] newTimes = new Number[newSize];
-                double[] newValues = new double[newSize];
-                System.arraycopy(times, 0, newTimes, 0, n);
-                System.arraycopy(values, 0, newValues, 0, n);
-                times = newTimes;
-                values = newValues;
+        public boolean recordRaw(long rawSimtime, double value) {
+            double time = rawSimtime * simtimeScale;
+            checkRecord(time);
+            if (intervals != null && !intervals.contains(time))
+                return false;
+            if (!buffer.isRawTime()) {
+                writeBlock(); // one block may only contain one kind of timestamps
+                buffer.setRawTime(true);
             }
+            if (eventNumbers)
+                buffer.setEventNumber(getEventNumber());
+            buffer.addRaw(rawSimtime, time, value);
+            recorded();
+            return true;
+        }
 
-            // store
-            times[n] = time;
-            values[n] = value;
-            if (n == 0)
-                blockStartTime = time;
-            blockEndTime = time;
-            n++;
+        private void checkRecord(double time) {
+            if (id == -1)
+                throw new IllegalStateException("Attempt to write to an output vector that's already closed");
+            if (time < lastTime)
+                throw new IllegalStateException("Vector data must be recorded in increasing timestamp order (t="+time+ "tprev="+lastTime+")");
+            lastTime = time;
+            if (buffer.isFull())
+                buffer.ensureCapacity(buffer.capacity() * 3 / 2 + 1); // only if limits were changed after creating the vector
+        }
+
+        private long getEventNumber() {
+            if (simtimeProvider == null)
+                throw new IllegalStateException("Simtime provider not yet specified, needed for recording event numbers");
+            return simtimeProvider.getEventNumber();
+        }
 
-            // update statistics
-            if (min > value || Double.isNaN(min))
-                min = value;
-            if (max < value || Double.isNaN(max))
-                max = value;
-            sum += value;
-            sqrSum += value*value;
+        SampleBuffer createBuffer() {
+            SampleBuffer b = new SampleBuffer(perVectorLimit);
+            if (eventNumbers)
+                b.enableEventNumbers();
+            return b;
+        }
 
-            ++nbuffered;
+        private void recorded() {
+            samplesBuffered(this, 1);
 
             // flush if needed
             changed(this);
-
-            return false;
         }
 
         protected void writeBlock() {
+            if (buffer.isEmpty()) {
+                buffer.setRawTime(false);
+                return;
+            }
+
+            samplesBuffered(this, -buffer.n);
+            if (writerThread == null) {
+                FileOutputVectorManager.this.writeBlock(this, buffer);
+                recycle(buffer);
+            }
+            else {
+                // hand over the buffer to the writer thread, and continue with the other one
+                writerThread.submit(this, buffer);
+                buffer = takeSpare();
+            }
+        }
+
+        void recycle(SampleBuffer b) {
+            b.clear();
+            b.setRawTime(false);
+        }
+
+        void recycleSpare(SampleBuffer b) {
+            synchronized (spareLock) {
+                recycle(b);
+                spare = b;
+                spareLock.notifyAll();
+            }
+        }
+
+        SampleBuffer takeSpare() {
+            synchronized (spareLock) {
+                if (!doubleBuffered) {
+                    doubleBuffered = true;
+                    return createBuffer();
+                }
+                try {
+                    while (spare == null)
+                        spareLock.wait();  // the writer thread is still busy with it
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ResultRecordingException("Interrupted while waiting for output vector writer thread", e);
+                }
+                SampleBuffer result = spare;
+                spare = null;
+                return result;
+            }
+        }
+    }
+
+    /**
+     * The background thread that writes out vector data blocks in async mode.
+     * The simulation thread hands over full buffers via a bounded queue;
+     * if the queue is full, the simulation thread blocks until there is room.
+     */
+    class WriterThread extends Thread {
+        private final BlockingQueue<WriteRequest> queue;
+        private volatile Throwable error;
+
+        WriterThread(int queueCapacity) {
+            super("Output vector writer for " + file.getPath());
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<WriteRequest>(queueCapacity);
+        }
+
+        void submit(OutputVector vector, SampleBuffer buffer) {
+            checkError();
+            put(new WriteRequest(vector, buffer, null));
+        }
+
+        /**
+         * Waits until all previously submitted blocks have been written out
+         * and the files flushed.
+         */
+        void awaitCompletion() {
+            CountDownLatch barrier = new CountDownLatch(1);
+            put(new WriteRequest(null, null, barrier));
             try {
-                // write out vector declaration if not yet done
-                if (header != null)
-                    writeVectorHeader();
-
-                // write data
-                long blockOffset = stream.getChannel().position();
-                for (int i=0; i<n; i++)
-                    out.println(id + " " + times[i] + " " + values[i]);
-                long blockSize = stream.getChannel().position() - blockOffset;
-
-                // make sure that the offsets referred to by the index file are exists in the vector file
-                // so the index can be used to access the vector file while it is being written
-                out.flush();
-                if (out.checkError())
-                    throw new ResultRecordingException("Cannot write output vector file " + file.getPath());
-
-                // write index
-                indexOut.println(id + " " + blockOffset + " " + blockSize + " " +
-                        blockStartTime + " " + blockEndTime + " " +
-                        n + " " + min + " " + max + " " + sum + " " + sqrSum);
-
-
-                // reset block
-                nbuffered -= n;
-                n = 0;
-                min = Double.NaN;
-                max = Double.NaN;
-                sum = 0;
-                sqrSum = 0;
-                times = new Number[10];
-                values = new double[10];
+                barrier.await();
             }
-            catch (IOException e) {
-                throw new ResultRecordingException("Error recording vector results:" + e.getMessage(), e);
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResultRecordingException("Interrupted while waiting for output vector writer thread", e);
+            }
+            checkError();
+        }
+
+        void shutdown() {
+            put(new WriteRequest(null, null, null));
+            try {
+                join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResultRecordingException("Interrupted while waiting for output vector writer thread", e);
+            }
+        }
+
+        private void put(WriteRequest request) {
+            try {
+                queue.put(request);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResultRecordingException("Interrupted while waiting for output vector writer thread", e);
+            }
+        }
+
+        private void checkError() {
+            Throwable e = error;
+            if (e instanceof ResultRecordingException)
+                throw (ResultRecordingException)e;
+            else if (e != null)
+                throw new ResultRecordingException("Error recording vector results: " + e.getMessage(), e);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    WriteRequest request = queue.take();
+                    if (request.vector != null) {
+                        try {
+                            if (error == null)
+                                writeBlock(request.vector, request.buffer);
+                        }
+                        catch (RuntimeException e) {
+                            error = e;
+                        }
+                        request.vector.recycleSpare(request.buffer);
+                    }
+                    else if (request.barrier != null) {
+                        try {
+                            if (error == null && out != null)
+                                flushAndCheck();
+                        }
+                        catch (RuntimeException e) {
+                            error = e;
+                        }
+                        request.barrier.countDown();
+                    }
+                    else
+                        break;  // shutdown
+                }
+            }
+            catch (InterruptedException e) {
+                // exit
             }
         }
     }
 
+    static class WriteRequest {
+        final OutputVector vector;
+        final SampleBuffer buffer;
+        final CountDownLatch barrier;
+
+        WriteRequest(OutputVector vector, SampleBuffer buffer, CountDownLatch barrier) {
+            this.vector = vector;
+            this.buffer = buffer;
+            this.barrier = barrier;
+        }
+    }
+
     public FileOutputVectorManager(String fileName) {
         file = new File(fileName);
         if (file.exists() && !file.delete())
@@ -192,6 +379,10 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
         indexFile = new File(indexFileName);
         if (indexFile.exists() && !indexFile.delete())
             throw new ResultRecordingException("Cannot delete old output vector index file " + indexFile.getPath());
+
+        mappedIndexFile = new File(indexFileName.replaceFirst("\\.vci$", "") + ".vcx");
+        if (mappedIndexFile.exists() && !mappedIndexFile.delete())
+            throw new ResultRecordingException("Cannot delete old output vector index file " + mappedIndexFile.getPath());
     }
 
     public ISimulationTimeProvider getSimtimeProvider() {
@@ -210,6 +401,68 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
         this.perVectorLimit = count;
     }
 
+    public int getSimtimeScaleExponent() {
+        return simtimeScaleExponent;
+    }
+
+    /**
+     * Sets the scale exponent for raw simulation times recorded via
+     * IOutputVector.recordRaw(): a raw simtime value r means r*10^exponent
+     * seconds. The default is -12 (picoseconds), the default in OMNeT++.
+     * May only be called before the first vector has been created.
+     */
+    public void setSimtimeScaleExponent(int exponent) {
+        if (lastId != 0)
+            throw new IllegalStateException("Cannot change simtime scale exponent after vectors have been created");
+        this.simtimeScaleExponent = exponent;
+        this.simtimeScale = Math.pow(10, exponent);
+    }
+
+    public boolean getRecordEventNumbers() {
+        return recordEventNumbers;
+    }
+
+    /**
+     * Turns on or off recording event numbers, i.e. writing "ETV" instead of
+     * "TV" vectors. Event numbers are obtained from the simulation time
+     * provider. Affects vectors created afterwards.
+     */
+    public void setRecordEventNumbers(boolean recordEventNumbers) {
+        this.recordEventNumbers = recordEventNumbers;
+    }
+
+    public RecordingIntervals getRecordingIntervals() {
+        return recordingIntervals;
+    }
+
+    /**
+     * Restricts recording to the given simulation time intervals; null means
+     * no restriction. Affects vectors created afterwards.
+     */
+    public void setRecordingIntervals(RecordingIntervals intervals) {
+        this.recordingIntervals = intervals;
+        this.effectiveIntervals = null;
+    }
+
+    public double getWarmupPeriod() {
+        return warmupPeriod;
+    }
+
+    /**
+     * Sets the warm-up period: samples with timestamps before it are not
+     * recorded. Affects vectors created afterwards.
+     */
+    public void setWarmupPeriod(double warmupPeriod) {
+        this.warmupPeriod = warmupPeriod;
+        this.effectiveIntervals = null;
+    }
+
+    protected RecordingIntervals getEffectiveRecordingIntervals() {
+        if (effectiveIntervals == null)
+            effectiveIntervals = RecordingIntervals.effective(recordingIntervals, warmupPeriod);
+        return effectiveIntervals;
+    }
+
     public int getTotalBufferLimit() {
         return totalLimit;
     }
@@ -218,9 +471,76 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
         this.totalLimit = count;
     }
 
+    public boolean isAsyncWriting() {
+        return asyncWriting;
+    }
+
+    /**
+     * Turns on or off asynchronous writing. In async mode, blocks of vector
+     * data are written out by a background thread, so that recording does not
+     * stall the simulation with formatting and I/O. Every vector has two
+     * buffers: while one is being written out, the other is being filled.
+     * flush() and close() wait until all data have been written. Must be
+     * called before open().
+     */
+    public void setAsyncWriting(boolean async) {
+        if (writerThread != null)
+            throw new IllegalStateException("Cannot change async mode after open()");
+        this.asyncWriting = async;
+    }
+
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of blocks that may wait for being written out
+     * in async mode. If the queue is full, recording blocks until the writer
+     * thread catches up. Must be called before open().
+     */
+    public void setWriteQueueCapacity(int capacity) {
+        if (writerThread != null)
+            throw new IllegalStateException("Cannot change write queue capacity after open()");
+        this.writeQueueCapacity = capacity;
+    }
+
+    public boolean isMappedIndex() {
+        return mappedIndex;
+    }
+
+    /**
+     * Turns on or off writing the index into a memory-mapped binary file
+     * (".vcx") during the simulation, instead of writing the text index file
+     * directly. The text index file is produced from it on close, and the
+     * binary file is deleted. Must be called before open().
+     */
+    public void setMappedIndex(boolean mappedIndex) {
+        if (out != null)
+            throw new IllegalStateException("Cannot change index mode after the vector file has been opened");
+        this.mappedIndex = mappedIndex;
+    }
+
+    public int getMappedIndexChunkSize() {
+        return mappedIndexChunkSize;
+    }
+
+    /**
+     * Sets the size in bytes by which the memory-mapped index file is grown
+     * when it becomes full. Must be called before open().
+     */
+    public void setMappedIndexChunkSize(int chunkSize) {
+        if (out != null)
+            throw new IllegalStateException("Cannot change chunk size after the vector file has been opened");
+        this.mappedIndexChunkSize = chunkSize;
+    }
+
     public void open(String runID, Map<String, String> runAttributes) {
         this.runID = runID;
         this.runAttributes = runAttributes;
+        if (asyncWriting) {
+            writerThread = new WriterThread(writeQueueCapacity);
+            writerThread.start();
+        }
     }
 
     protected void open() {
@@ -230,59 +550,221 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
         catch (FileNotFoundException e) {
             throw new ResultRecordingException("Cannot open output vector file " + file.getPath(), e);
         }
+        if (mappedIndex)
+            mappedIndexWriter = new MappedIndexWriter(mappedIndexFile, simtimeScaleExponent, mappedIndexChunkSize);
+        else {
+            try {
+                indexStream = new FileOutputStream(indexFile);
+            }
+            catch (FileNotFoundException e) {
+                throw new ResultRecordingException("Cannot open output vector index file " + indexFile.getPath(), e);
+            }
+            indexOut = new PrintStream(indexStream);
+            indexOut.format("%64s\n", " "); // room for "file ...." line
+        }
+
+        checksum.reset();
+        out = new PrintStream(new CheckedOutputStream(stream, checksum));
+        writeVectorFileHeader();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream tmp = new PrintStream(bos);
+        tmp.println("version " + FILE_VERSION);
+        tmp.println();
+        writeRunHeader(tmp, runID, runAttributes);
+        tmp.close();
+        writeIndexText(bos.toByteArray());
+
+        flushAndCheck();
+        if (mappedIndexWriter != null)
+            commitIndex();
+    }
+
+    /**
+     * Writes out the given buffer of the vector as a block: the data into
+     * the vector file, and the block's offset, size and statistics into the
+     * index file. In async mode, this method is called on the writer thread.
+     */
+    protected void writeBlock(OutputVector vector, SampleBuffer buffer) {
         try {
-            indexStream = new FileOutputStream(indexFile);
+            // write out vector declaration if not yet done
+            if (vector.header != null)
+                vector.writeVectorHeader();
+
+            // write data
+            long blockOffset = stream.getChannel().position();
+            writeBlockData(vector, buffer);
+            long blockSize = stream.getChannel().position() - blockOffset;
+
+            // write index
+            SampleBuffer b = buffer;
+            if (mappedIndexWriter != null) {
+                mappedIndexWriter.appendBlock(vector.id, blockOffset, blockSize, b);
+                mappedIndexWriter.commit(blockOffset + blockSize);
+                return;
+            }
+            indexLine.setLength(0);
+            indexLine.append(vector.id).append(' ').append(blockOffset).append(' ').append(blockSize).append(' ');
+            if (b.hasEventNumbers())
+                indexLine.append(b.eventNumbers[0]).append(' ').append(b.eventNumbers[b.n-1]).append(' ');
+            appendTime(indexLine, b, 0).append(' ');
+            appendTime(indexLine, b, b.n-1).append(' ');
+            indexLine.append(b.n).append(' ').append(b.min).append(' ').append(b.max).append(' ').append(b.sum).append(' ').append(b.sqrSum);
+            indexOut.println(indexLine);
         }
-        catch (FileNotFoundException e) {
-            throw new ResultRecordingException("Cannot open output vector index file " + indexFile.getPath(), e);
+        catch (IOException e) {
+            throw new ResultRecordingException("Error recording vector results:" + e.getMessage(), e);
         }
+    }
 
-        out = new PrintStream(stream);
+    /**
+     * Writes the file header (version and run header) into the vector file.
+     * Subclasses producing a different vector file format may override it.
+     */
+    protected void writeVectorFileHeader() {
         out.println("version " + FILE_VERSION);
         out.println();
         writeRunHeader(out, runID, runAttributes);
+    }
 
-        indexOut = new PrintStream(indexStream);
-        indexOut.format("%64s\n", " "); // room for "file ...." line
-        indexOut.println("version " + FILE_VERSION);
-        indexOut.println();
-        writeRunHeader(indexOut, runID, runAttributes);
+    /**
+     * Writes the vector file footer with the checksum of the file contents.
+     * Subclasses producing a different vector file format may override it.
+     */
+    protected void writeVectorFileFooter() throws IOException {
+        out.flush();
+        long length = stream.getChannel().position();
+        out.print(VectorFileFooter.textFooter(length, checksum.getValue()) + "\n");
+    }
 
-        flushAndCheck();
+    /**
+     * Writes the vector declaration ("vector" line and vector attributes)
+     * into both the vector file and the index file.
+     */
+    protected void writeVectorDeclaration(OutputVector vector) throws IOException {
+        out.write(vector.header);
+        writeIndexText(vector.header);
+    }
+
+    /**
+     * Writes lines (run header, vector declarations) into the index file.
+     */
+    protected void writeIndexText(byte[] text) {
+        if (mappedIndexWriter != null)
+            mappedIndexWriter.appendText(text);
+        else
+            indexOut.write(text, 0, text.length);
+    }
+
+    /**
+     * Commits the entries written so far into the mapped index file.
+     */
+    protected void commitIndex() {
+        try {
+            mappedIndexWriter.commit(stream.getChannel().position());
+        }
+        catch (IOException e) {
+            throw new ResultRecordingException("Error recording vector results:" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the buffered data of the given vector into the vector file.
+     * The data must be actually written into the file (i.e. not buffered)
+     * by the time this method returns, because the index file refers to
+     * the block offsets, and the index can be used to access the vector
+     * file while it is being written.
+     */
+    protected void writeBlockData(OutputVector vector, SampleBuffer b) throws IOException {
+        for (int i=0; i<b.n; i++) {
+            line.setLength(0);
+            line.append(vector.id).append(' ');
+            if (b.hasEventNumbers())
+                line.append(b.eventNumbers[i]).append(' ');
+            appendTime(line, b, i).append(' ').append(b.values[i]);
+            out.println(line);
+        }
+        out.flush();
+        if (out.checkError())
+            throw new ResultRecordingException("Cannot write output vector file " + file.getPath());
     }
 
     public void close() {
-        if (out != null) {
+        try {
             flush();
-            out.close();
+        }
+        finally {
+            if (writerThread != null) {
+                writerThread.shutdown();
+                writerThread = null;
+            }
+        }
 
-            // record size and timestamp of the vector file, for up-to-date checks
+        if (out != null) {
             try {
-                indexStream.getChannel().position(0);
+                writeVectorFileFooter();
             }
             catch (IOException e) {
-                throw new ResultRecordingException("Cannot rewind output vector index file " + indexFile.getPath(), e);
+                throw new ResultRecordingException("Cannot write output vector file " + file.getPath(), e);
+            }
+            if (out.checkError())
+                throw new ResultRecordingException("Cannot write output vector file " + file.getPath());
+            if (mappedIndexWriter != null) {
+                commitIndex();
+                out.close();
+                closeMappedIndex();
+            }
+            else {
+                out.close();
+
+                // record size and timestamp of the vector file, for up-to-date checks
+                try {
+                    indexStream.getChannel().position(0);
+                }
+                catch (IOException e) {
+                    throw new ResultRecordingException("Cannot rewind output vector index file " + indexFile.getPath(), e);
+                }
+                indexOut.print("file " + file.length() + " " + file.lastModified()/1000);
+                if (indexOut.checkError())
+                    throw new ResultRecordingException("Cannot write output vector index file " + indexFile.getPath());
+                indexOut.close();
             }
-            indexOut.print("file " + file.length() + " " + file.lastModified()/1000);
-            if (indexOut.checkError())
-                throw new ResultRecordingException("Cannot write output vector index file " + indexFile.getPath());
-            indexOut.close();
         }
         vectors.clear();
     }
 
+    /**
+     * Closes the mapped index file, and converts it into the text index file.
+     */
+    protected void closeMappedIndex() {
+        mappedIndexWriter.close();
+        mappedIndexWriter = null;
+        try {
+            MappedIndexWriter.writeTextIndex(mappedIndexFile, indexFile, file);
+        }
+        catch (IOException e) {
+            throw new ResultRecordingException("Cannot write output vector index file " + indexFile.getPath() + ": " + e.getMessage(), e);
+        }
+        if (!mappedIndexFile.delete())
+            throw new ResultRecordingException("Cannot delete output vector index file " + mappedIndexFile.getPath());
+    }
+
     public void flush() {
         for (OutputVector v : vectors)
             v.writeBlock();
 
-        if (out != null)
+        if (writerThread != null)
+            writerThread.awaitCompletion();  // also flushes the files
+        else if (out != null)
             flushAndCheck();
     }
 
     protected void flushAndCheck() {
         if (out.checkError()) // implies flush()
             throw new ResultRecordingException("Cannot write output vector file " + file.getPath());
-        if (indexOut.checkError())
+        if (mappedIndexWriter != null)
+            mappedIndexWriter.force();
+        else if (indexOut.checkError())
             throw new ResultRecordingException("Cannot write output vector index file " + indexFile.getPath());
     }
 
@@ -297,8 +779,64 @@ public class FileOutputVectorManager extends OutputFileManager implements IOutpu
         return vector;
     }
 
+    /**
+     * Appends the ith timestamp of the buffer to the string builder.
+     */
+    protected StringBuilder appendTime(StringBuilder sb, SampleBuffer buffer, int i) {
+        if (!buffer.isRawTime())
+            return sb.append(buffer.times[i]);
+        else
+            return appendRawTime(sb, buffer.rawTimes[i], simtimeScaleExponent);
+    }
+
+    /**
+     * Appends the raw simulation time scaled by 10^exponent in plain decimal
+     * notation (e.g. "1.5"), without allocating memory.
+     */
+    protected static StringBuilder appendRawTime(StringBuilder sb, long raw, int exponent) {
+        if (exponent >= 0) {
+            sb.append(raw);
+            for (int i=0; i<exponent && raw != 0; i++)
+                sb.append('0');
+            return sb;
+        }
+        if (raw < 0) {
+            sb.append('-');
+            raw = -raw;
+        }
+        int digits = -exponent;
+        long divisor = 1;
+        for (int i=0; i<digits; i++)
+            divisor *= 10;
+        long intPart = raw / divisor;
+        long fracPart = raw % divisor;
+        sb.append(intPart);
+        if (fracPart != 0) {
+            // strip trailing zeros
+            while (fracPart % 10 == 0) {
+                fracPart /= 10;
+                digits--;
+            }
+            sb.append('.');
+            for (long d = fracPart; d != 0; d /= 10)
+                digits--;
+            while (digits-- > 0)
+                sb.append('0'); // leading zeros of the fractional part
+            sb.append(fracPart);
+        }
+        return sb;
+    }
+
+    /**
+     * Called when samples are added to (positive count) or written out from
+     * (negative count) the buffers of the given vector.
+     */
+    protected void samplesBuffered(OutputVector vector, int count) {
+        nbuffered += count;
+    }
+
     protected void changed(OutputVector vector) {
-        if (vector.n > perVectorLimit)
+        if (vector.buffer.n >= perVectorLimit)
             vector.writeBlock();
         else if (nbuffered > totalLimit) {
             for (OutputVector v : vectors)
@@ -0,0 +1,236 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.IOutputVectorManager;
+import org.omnetpp.scave.writers.ISimulationTimeProvider;
+
+/**
+ * An output vector manager that adds filtering and data reduction to another
+ * output vector manager (file, binary, SQLite, etc.)
+ *
+ * Rules are matched against the full name of the vector, i.e. the component
+ * path and the vector name joined with a dot (e.g. "net.host[2].queue.length").
+ * Patterns may contain "?" (any character except dot), "*" (any sequence
+ * of characters except dot) and "**" (any sequence of characters); other
+ * characters match themselves. Rules are evaluated once, in createVector():
+ *
+ * <ul>
+ * <li> include() and exclude() rules decide whether a vector is recorded;
+ *      the first matching rule wins. If none matches, the vector is recorded
+ *      unless setRecordByDefault(false) was called. Excluded vectors are not
+ *      created in the underlying manager, and a NullOutputVector is returned.
+ * <li> decimate() rules select a data reduction mode (see Decimation) for the
+ *      vector; again, the first matching rule wins.
+ * </ul>
+ *
+ * Example:
+ * <pre>
+ * FilteringOutputVectorManager manager = new FilteringOutputVectorManager(new FileOutputVectorManager("out.vec"));
+ * manager.exclude("**.mac.*");
+ * manager.decimate("**.queue.length", Decimation.timeAverage(1.0));
+ * manager.decimate("**", Decimation.everyNth(10));
+ * </pre>
+ *
+ * This class is not thread-safe: vectors must be created and closed from
+ * one thread, even if the underlying manager is a concurrent one.
+ *
+ * @author Andras
+ */
+public class FilteringOutputVectorManager implements IOutputVectorManager {
+    protected IOutputVectorManager delegate;
+    protected ISimulationTimeProvider simtimeProvider;
+    protected Integer simtimeScaleExponent = null;  // null: same as the underlying manager
+    protected boolean recordByDefault = true;
+    protected List<Rule> recordingRules = new ArrayList<Rule>();
+    protected List<Rule> decimationRules = new ArrayList<Rule>();
+    protected Set<IOutputVector> decimatingVectors = new HashSet<IOutputVector>();
+    protected int numExcluded = 0;
+
+    static class Rule {
+        final String pattern;
+        final Pattern regex;
+        final boolean record;
+        final Decimation decimation;
+
+        Rule(String pattern, boolean record, Decimation decimation) {
+            this.pattern = pattern;
+            this.regex = compilePattern(pattern);
+            this.record = record;
+            this.decimation = decimation;
+        }
+
+        boolean matches(String name) {
+            return regex.matcher(name).matches();
+        }
+    }
+
+    public FilteringOutputVectorManager(IOutputVectorManager delegate) {
+        this.delegate = delegate;
+        this.simtimeProvider = delegate.getSimtimeProvider();
+    }
+
+    public IOutputVectorManager getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Records the vectors that match the pattern, unless an earlier rule excludes them.
+     */
+    public void include(String pattern) {
+        recordingRules.add(new Rule(pattern, true, null));
+    }
+
+    /**
+     * Does not record the vectors that match the pattern, unless an earlier rule includes them.
+     */
+    public void exclude(String pattern) {
+        recordingRules.add(new Rule(pattern, false, null));
+    }
+
+    /**
+     * Applies the given data reduction to the vectors that match the pattern,
+     * unless an earlier decimate() rule matches them.
+     */
+    public void decimate(String pattern, Decimation decimation) {
+        decimationRules.add(new Rule(pattern, true, decimation));
+    }
+
+    public boolean getRecordByDefault() {
+        return recordByDefault;
+    }
+
+    /**
+     * Sets whether vectors not matching any include/exclude rule are recorded.
+     */
+    public void setRecordByDefault(boolean record) {
+        this.recordByDefault = record;
+    }
+
+    /**
+     * Returns the number of vectors that were excluded by the rules.
+     */
+    public int getNumExcludedVectors() {
+        return numExcluded;
+    }
+
+    /**
+     * Returns the simulation time scale exponent used to convert raw simulation
+     * times for interval-based decimation. Unless set explicitly, it is taken
+     * from the underlying manager if that is a file or SQLite manager, and
+     * defaults to -12 otherwise.
+     */
+    public int getSimtimeScaleExponent() {
+        if (simtimeScaleExponent != null)
+            return simtimeScaleExponent;
+        else if (delegate instanceof FileOutputVectorManager)
+            return ((FileOutputVectorManager)delegate).getSimtimeScaleExponent();
+        else if (delegate instanceof SqliteOutputFileManager)
+            return ((SqliteOutputFileManager)delegate).getSimtimeScaleExponent();
+        else
+            return -12;
+    }
+
+    public void setSimtimeScaleExponent(int exponent) {
+        this.simtimeScaleExponent = exponent;
+    }
+
+    double getSimtimeScale() {
+        return Math.pow(10, getSimtimeScaleExponent());
+    }
+
+    public ISimulationTimeProvider getSimtimeProvider() {
+        return simtimeProvider;
+    }
+
+    public void setSimtimeProvider(ISimulationTimeProvider simtimeProvider) {
+        this.simtimeProvider = simtimeProvider;
+        delegate.setSimtimeProvider(simtimeProvider);
+    }
+
+    public void open(String runID, Map<String, String> runAttributes) {
+        delegate.open(runID, runAttributes);
+    }
+
+    public void close() {
+        // write out the pending intervals of decimating vectors
+        for (IOutputVector vector : new ArrayList<IOutputVector>(decimatingVectors))
+            vector.close();
+        delegate.close();
+    }
+
+    public void flush() {
+        delegate.flush();
+    }
+
+    public String getFileName() {
+        return delegate.getFileName();
+    }
+
+    public IOutputVector createVector(String componentPath, String vectorName, Map<String, String> attributes) {
+        String name = componentPath + "." + vectorName;
+        if (!isRecordingEnabled(name)) {
+            numExcluded++;
+            return NullOutputVector.INSTANCE;
+        }
+        IOutputVector vector = delegate.createVector(componentPath, vectorName, attributes);
+        Decimation decimation = getDecimation(name);
+        if (decimation != null) {
+            IOutputVector decimatingVector = decimation.wrap(vector, this);
+            if (decimatingVector != vector) {
+                decimatingVectors.add(decimatingVector);
+                vector = decimatingVector;
+            }
+        }
+        return vector;
+    }
+
+    void vectorClosed(IOutputVector vector) {
+        decimatingVectors.remove(vector);
+    }
+
+    protected boolean isRecordingEnabled(String name) {
+        for (Rule rule : recordingRules)
+            if (rule.matches(name))
+                return rule.record;
+        return recordByDefault;
+    }
+
+    protected Decimation getDecimation(String name) {
+        for (Rule rule : decimationRules)
+            if (rule.matches(name))
+                return rule.decimation;
+        return null;
+    }
+
+    /**
+     * Converts a pattern with "?", "*" and "**" wildcards into a regex.
+     */
+    protected static Pattern compilePattern(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                if (i+1 < pattern.length() && pattern.charAt(i+1) == '*') {
+                    regex.append(".*");
+                    i++;
+                }
+                else
+                    regex.append("[^.]*");
+            }
+            else if (c == '?')
+                regex.append("[^.]");
+            else if (Character.isLetterOrDigit(c) || c == '_')
+                regex.append(c);
+            else
+                regex.append('\\').append(c);
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,347 @@
+package org.omnetpp.scave.writers.impl;
+
+import org.omnetpp.scave.writers.IHistogramSummary;
+
+/**
+ * Streaming histogram with automatic range selection, similar to cHistogram
+ * with the auto-range strategy in OMNeT++.
+ *
+ * The first few observations are precollected; the histogram range and a
+ * "nice" bin size (1, 2 or 5 times a power of ten) are chosen from them.
+ * Later observations outside the range extend it with new bins; when the
+ * number of bins would exceed the limit, adjacent bins are merged pairwise
+ * (doubling the bin size). Memory use is therefore bounded by the bin limit
+ * and the precollection buffer, regardless of the number of observations.
+ * Only infinite values are counted as underflows/overflows.
+ *
+ * Histograms can be merged. Bins of the other histogram are added exactly if
+ * the bin edges coincide, otherwise their counts are distributed over the
+ * overlapping bins proportionally.
+ *
+ * @author Andras
+ */
+public class Histogram extends StdDev implements IHistogramSummary {
+    protected int numBinsHint = 60;
+    protected int maxNumBins = 1000;
+    protected double rangeExtensionFactor = 1.5;
+
+    // precollection
+    protected double[] precollectedValues;
+    protected double[] precollectedWeights;
+    protected int numPrecollected = 0;
+
+    // bins: bin k spans [(firstBin+k)*binSize, (firstBin+k+1)*binSize)
+    protected double binSize = Double.NaN;
+    protected long firstBin;
+    protected double[] binValues;  // null until the bins are set up
+    protected int numBins = 0;
+    protected double underflowSumWeights = 0;
+    protected double overflowSumWeights = 0;
+
+    public Histogram() {
+        this(60, false);
+    }
+
+    public Histogram(int numBinsHint, boolean weighted) {
+        this(numBinsHint, 1000, weighted);
+    }
+
+    /**
+     * Creates a histogram that aims at the given number of bins, and determines
+     * the range from the first numToPrecollect observations.
+     */
+    public Histogram(int numBinsHint, int numToPrecollect, boolean weighted) {
+        super(weighted);
+        if (numBinsHint < 1 || numToPrecollect < 1)
+            throw new IllegalArgumentException("numBinsHint and numToPrecollect must be positive");
+        this.numBinsHint = numBinsHint;
+        this.maxNumBins = Math.max(maxNumBins, 2 * numBinsHint);
+        this.precollectedValues = new double[numToPrecollect];
+        this.precollectedWeights = weighted ? new double[numToPrecollect] : null;
+    }
+
+    public int getMaxNumBins() {
+        return maxNumBins;
+    }
+
+    /**
+     * Sets the maximum number of bins; bins are merged pairwise when the
+     * range would need more. Must be at least 2.
+     */
+    public void setMaxNumBins(int maxNumBins) {
+        if (maxNumBins < 2)
+            throw new IllegalArgumentException("maxNumBins must be at least 2");
+        this.maxNumBins = maxNumBins;
+        while (numBins > maxNumBins)
+            mergeBinPairs();
+    }
+
+    @Override
+    public void collect(double value, double weight) {
+        if (Double.isNaN(value))
+            return;
+        super.collect(value, weight);
+        addValue(value, weight);
+    }
+
+    @Override
+    public void merge(StdDev other) {
+        super.merge(other);
+        if (other instanceof Histogram) {
+            Histogram h = (Histogram)other;
+            if (h.isSetUp()) {
+                if (!isSetUp()) {
+                    binSize = h.binSize;
+                    firstBin = h.firstBin;
+                    numBins = h.numBins;
+                    binValues = new double[Math.max(numBins, 16)];
+                    while (numBins > maxNumBins)
+                        mergeBinPairs();
+                    replayPrecollected();
+                }
+                for (int k = 0; k < h.numBins; k++)
+                    if (h.binValues[k] != 0)
+                        addToRange(h.getCellBoundary(k), h.getCellBoundary(k+1), h.binValues[k]);
+                underflowSumWeights += h.underflowSumWeights;
+                overflowSumWeights += h.overflowSumWeights;
+            }
+            else {
+                for (int i = 0; i < h.numPrecollected; i++)
+                    addValue(h.precollectedValues[i], h.weighted ? h.precollectedWeights[i] : 1);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        numPrecollected = 0;
+        binValues = null;
+        numBins = 0;
+        binSize = Double.NaN;
+        underflowSumWeights = overflowSumWeights = 0;
+    }
+
+    /**
+     * Returns true if the bins have already been set up, i.e. precollection is over.
+     */
+    public boolean isSetUp() {
+        return binValues != null;
+    }
+
+    /**
+     * Ends precollection and sets up the bins from the values collected so far.
+     * This is done automatically when the precollection buffer fills up, or
+     * when the bins are queried.
+     */
+    public void setUpBins() {
+        if (isSetUp() || numPrecollected == 0)
+            return;
+
+        // determine range from the finite precollected values
+        double min = Double.NaN, max = Double.NaN;
+        for (int i = 0; i < numPrecollected; i++) {
+            double v = precollectedValues[i];
+            if (Double.isInfinite(v))
+                continue;
+            if (min > v || Double.isNaN(min))
+                min = v;
+            if (max < v || Double.isNaN(max))
+                max = v;
+        }
+        if (Double.isNaN(min)) {
+            min = 0;  // only infinite values so far
+            max = 0;
+        }
+        double center = (min + max) / 2;
+        double halfRange = (max - min) / 2 * rangeExtensionFactor;
+        if (halfRange == 0)
+            halfRange = Math.max(Math.abs(center) / 10, 0.5);
+        double lo = center - halfRange;
+        double hi = center + halfRange;
+        if (min >= 0 && lo < 0)
+            lo = 0;  // do not extend a non-negative range into negative values
+
+        binSize = computeBinSize(hi - lo, numBinsHint);
+        firstBin = (long)Math.floor(lo / binSize);
+        long lastBin = (long)Math.floor(hi / binSize);
+        numBins = (int)Math.max(1, lastBin - firstBin + 1);
+        while (numBins > maxNumBins) { // only with pathological settings
+            binSize *= 2;
+            firstBin = (long)Math.floor(lo / binSize);
+            numBins = (int)(Math.floor(hi / binSize) - firstBin + 1);
+        }
+        binValues = new double[numBins];
+
+        replayPrecollected();
+    }
+
+    protected void replayPrecollected() {
+        int n = numPrecollected;
+        numPrecollected = 0;
+        for (int i = 0; i < n; i++)
+            addToBins(precollectedValues[i], weighted ? precollectedWeights[i] : 1);
+    }
+
+    /**
+     * Returns a "nice" bin size (1, 2 or 5 times a power of ten) that divides
+     * the given range into approximately the given number of bins.
+     */
+    protected static double computeBinSize(double range, int numBins) {
+        double raw = range / numBins;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(raw)));
+        double normalized = raw / magnitude;
+        double nice = normalized < 1.5 ? 1 : normalized < 3.5 ? 2 : normalized < 7.5 ? 5 : 10;
+        return nice * magnitude;
+    }
+
+    protected void addValue(double value, double weight) {
+        if (!isSetUp()) {
+            precollectedValues[numPrecollected] = value;
+            if (weighted)
+                precollectedWeights[numPrecollected] = weight;
+            numPrecollected++;
+            if (numPrecollected == precollectedValues.length)
+                setUpBins();
+        }
+        else
+            addToBins(value, weight);
+    }
+
+    protected void addToBins(double value, double weight) {
+        if (value == Double.NEGATIVE_INFINITY)
+            underflowSumWeights += weight;
+        else if (value == Double.POSITIVE_INFINITY)
+            overflowSumWeights += weight;
+        else {
+            extendToCover(value);
+            int k = (int)(binIndex(value) - firstBin);
+            binValues[k] += weight;
+        }
+    }
+
+    /**
+     * Adds the given weight to the range [lo,hi), distributing it over the
+     * overlapping bins proportionally.
+     */
+    protected void addToRange(double lo, double hi, double weight) {
+        extendToCover(lo);
+        extendToCover(Math.max(lo, hi - binSize / 2)); // hi itself is exclusive
+        long kLo = binIndex(lo) - firstBin;
+        long kHi = Math.min(binIndex(hi) - firstBin, numBins - 1);
+        for (long k = kLo; k <= kHi; k++) {
+            double overlap = Math.min(hi, getCellBoundary((int)k+1)) - Math.max(lo, getCellBoundary((int)k));
+            if (overlap > 0)
+                binValues[(int)k] += weight * overlap / (hi - lo);
+        }
+    }
+
+    protected long binIndex(double value) {
+        return (long)Math.floor(value / binSize);
+    }
+
+    /**
+     * Extends the range with new bins so that it covers the given value,
+     * merging bins as needed to stay within maxNumBins.
+     */
+    protected void extendToCover(double value) {
+        while (true) {
+            long index = binIndex(value);
+            long lowBins = Math.max(0, firstBin - index);
+            long highBins = Math.max(0, index - (firstBin + numBins - 1));
+            if (lowBins == 0 && highBins == 0)
+                return;
+            if (numBins + lowBins + highBins <= maxNumBins) {
+                resize((int)lowBins, (int)highBins);
+                return;
+            }
+            mergeBinPairs();
+        }
+    }
+
+    /**
+     * Adds the given number of empty bins at the low and high ends.
+     */
+    protected void resize(int lowBins, int highBins) {
+        int newNumBins = numBins + lowBins + highBins;
+        double[] newValues = binValues;
+        if (newNumBins > binValues.length || lowBins > 0) {
+            newValues = new double[Math.min(maxNumBins, Math.max(newNumBins, 2 * binValues.length))];
+            System.arraycopy(binValues, 0, newValues, lowBins, numBins);
+        }
+        binValues = newValues;
+        firstBin -= lowBins;
+        numBins = newNumBins;
+    }
+
+    /**
+     * Halves the number of bins by merging adjacent pairs. An empty bin is
+     * added at the low end if needed, so that bin edges stay multiples of
+     * the new bin size.
+     */
+    protected void mergeBinPairs() {
+        int shift = (firstBin & 1) != 0 ? 1 : 0;
+        int newNumBins = (numBins + shift + 1) / 2;
+        double[] newValues = new double[Math.max(newNumBins, 16)];
+        for (int k = 0; k < numBins; k++)
+            newValues[(k + shift) / 2] += binValues[k];
+        binValues = newValues;
+        firstBin = (firstBin - shift) / 2;
+        numBins = newNumBins;
+        binSize *= 2;
+    }
+
+    /**
+     * Returns the estimated q-quantile (0 <= q <= 1), assuming that observations
+     * are uniformly distributed within each bin.
+     */
+    public double getQuantile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException("Quantile must be in [0,1]: " + q);
+        if (count == 0)
+            return Double.NaN;
+        setUpBins();
+        double rank = q * sumWeights;
+        double cumulated = underflowSumWeights;
+        if (rank < cumulated)
+            return Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < numBins; k++) {
+            double value = binValues[k];
+            if (value > 0 && cumulated + value >= rank) {
+                double lo = getCellBoundary(k);
+                double result = lo + (rank - cumulated) / value * binSize;
+                return Math.max(minValue, Math.min(maxValue, result));
+            }
+            cumulated += value;
+        }
+        return maxValue;
+    }
+
+    public int getNumCells() {
+        setUpBins();
+        return numBins;
+    }
+
+    public double getCellBoundary(int k) {
+        setUpBins();
+        return (firstBin + k) * binSize;
+    }
+
+    public double getCellValue(int k) {
+        setUpBins();
+        return binValues[k];
+    }
+
+    public double getCellPDF(int k) {
+        setUpBins();
+        return sumWeights == 0 ? 0 : binValues[k] / binSize / sumWeights;
+    }
+
+    public long getUnderflowCell() {
+        return Math.round(underflowSumWeights);
+    }
+
+    public long getOverflowCell() {
+        return Math.round(overflowSumWeights);
+    }
+}
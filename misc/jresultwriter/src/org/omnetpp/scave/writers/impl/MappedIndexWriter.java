@@ -0,0 +1,294 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.omnetpp.scave.writers.ResultRecordingException;
+
+/**
+ * Writes the vector index in a binary form into a memory-mapped,
+ * preallocated file, and converts it into the text (".vci") index
+ * file at the end. This is used by FileOutputVectorManager when
+ * setMappedIndex() is turned on; it avoids formatting index lines and
+ * issuing small writes during the simulation, which becomes noticeable
+ * with large numbers of vectors.
+ *
+ * The file consists of a header followed by 8-byte aligned entries:
+ * <pre>
+ *   header:       int magic, int version, int simtimeScaleExponent, int reserved,
+ *                 2 commit slots of 32 bytes each
+ *   commit slot:  long sequence, long indexEnd, long vectorFileLength,
+ *                 int crc32 (of the previous 24 bytes), int reserved
+ *   text entry:   int TEXT, int length, byte[length] text (run header or
+ *                 vector declaration, copied verbatim into the .vci file)
+ *   block entry:  int BLOCK, int vectorId, int flags, int reserved,
+ *                 long offset, long size, long startEventNum, long endEventNum,
+ *                 long startTime, long endTime, long count,
+ *                 double min, double max, double sum, double sqrSum
+ * </pre>
+ * Start and end times are raw simulation times if the RAW_TIME flag is set,
+ * and the bits of doubles otherwise.
+ *
+ * Entries are appended after the committed end of the index, and only become
+ * valid when commit() records the new end in a commit slot. The two slots are
+ * written alternately and protected by a checksum, so a crash while writing
+ * one of them leaves the previous commit intact. After a crash, the text index
+ * can be recovered from the last commit with writeTextIndex().
+ *
+ * The mapped region is grown in chunks as needed. Not thread-safe.
+ *
+ * @author Andras
+ */
+public class MappedIndexWriter {
+    static final int MAGIC = 0x4F564358; // "OVCX"
+    static final int VERSION = 1;
+
+    static final int SLOT_OFFSET = 16;
+    static final int SLOT_SIZE = 32;
+    static final int DATA_OFFSET = SLOT_OFFSET + 2 * SLOT_SIZE;
+
+    static final int TEXT = 1;
+    static final int BLOCK = 2;
+    static final int BLOCK_ENTRY_SIZE = 16 + 11 * 8;
+
+    // block entry flags
+    static final int RAW_TIME = 1;
+    static final int EVENT_NUMBERS = 2;
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    protected File file;
+    protected RandomAccessFile raf;
+    protected FileChannel channel;
+    protected MappedByteBuffer buffer;
+    protected int chunkSize;
+
+    private long sequence = 0;
+    private int end = DATA_OFFSET;  // end of the entries written so far
+    private byte[] slot = new byte[SLOT_SIZE];
+    private CRC32 crc = new CRC32();
+
+    public MappedIndexWriter(File file, int simtimeScaleExponent, int chunkSize) {
+        if (chunkSize < DATA_OFFSET + BLOCK_ENTRY_SIZE)
+            throw new IllegalArgumentException("Chunk size too small: " + chunkSize);
+        this.file = file;
+        this.chunkSize = chunkSize;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            channel = raf.getChannel();
+            map(chunkSize);
+        }
+        catch (IOException e) {
+            close();
+            throw new ResultRecordingException("Cannot create output vector index file " + file.getPath(), e);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, simtimeScaleExponent);
+        commit(0);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends a text entry, e.g. a vector declaration. The text is copied into
+     * the text index file as it is, so it must consist of complete lines.
+     */
+    public void appendText(byte[] text) {
+        int size = align(8 + text.length);
+        ensureCapacity(size);
+        buffer.putInt(end, TEXT);
+        buffer.putInt(end + 4, text.length);
+        buffer.position(end + 8);
+        buffer.put(text);
+        end += size;
+    }
+
+    /**
+     * Appends the index entry of a data block that holds the buffer's contents.
+     */
+    void appendBlock(int vectorId, long offset, long size, SampleBuffer b) {
+        ensureCapacity(BLOCK_ENTRY_SIZE);
+        int flags = (b.isRawTime() ? RAW_TIME : 0) | (b.hasEventNumbers() ? EVENT_NUMBERS : 0);
+        int last = b.n - 1;
+        int p = end;
+        buffer.putInt(p, BLOCK);
+        buffer.putInt(p + 4, vectorId);
+        buffer.putInt(p + 8, flags);
+        buffer.putInt(p + 12, 0);
+        buffer.putLong(p + 16, offset);
+        buffer.putLong(p + 24, size);
+        buffer.putLong(p + 32, b.hasEventNumbers() ? b.eventNumbers[0] : 0);
+        buffer.putLong(p + 40, b.hasEventNumbers() ? b.eventNumbers[last] : 0);
+        buffer.putLong(p + 48, b.isRawTime() ? b.rawTimes[0] : Double.doubleToRawLongBits(b.times[0]));
+        buffer.putLong(p + 56, b.isRawTime() ? b.rawTimes[last] : Double.doubleToRawLongBits(b.times[last]));
+        buffer.putLong(p + 64, b.n);
+        buffer.putDouble(p + 72, b.min);
+        buffer.putDouble(p + 80, b.max);
+        buffer.putDouble(p + 88, b.sum);
+        buffer.putDouble(p + 96, b.sqrSum);
+        end += BLOCK_ENTRY_SIZE;
+    }
+
+    /**
+     * Makes the entries appended so far valid, and records the length of the
+     * vector file they refer to. Entries are written before the commit slot,
+     * so readers never see a partially written entry.
+     */
+    public void commit(long vectorFileLength) {
+        sequence++;
+        ByteBuffer s = ByteBuffer.wrap(slot);
+        s.putLong(sequence);
+        s.putLong(end);
+        s.putLong(vectorFileLength);
+        crc.reset();
+        crc.update(slot, 0, 24);
+        s.putInt((int)crc.getValue());
+        s.putInt(0);
+        buffer.position(SLOT_OFFSET + (int)(sequence & 1) * SLOT_SIZE);
+        buffer.put(slot);
+    }
+
+    /**
+     * Forces the contents of the mapped region to the storage device.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    public void close() {
+        try {
+            if (buffer != null)
+                buffer.force();
+            buffer = null;
+            if (raf != null)
+                raf.close();
+            raf = null;
+            channel = null;
+        }
+        catch (IOException e) {
+            throw new ResultRecordingException("Cannot close output vector index file " + file.getPath(), e);
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (end + size <= buffer.capacity())
+            return;
+        long newCapacity = buffer.capacity() + Math.max(chunkSize, size);
+        if (newCapacity > Integer.MAX_VALUE)
+            throw new ResultRecordingException("Output vector index file too large: " + file.getPath());
+        try {
+            buffer.force();
+            map((int)newCapacity);
+        }
+        catch (IOException e) {
+            throw new ResultRecordingException("Cannot grow output vector index file " + file.getPath(), e);
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * Writes the text (".vci") index file from the last commit of a binary
+     * index file. This is done by FileOutputVectorManager on close, but may
+     * also be used to recover the index after a crash. The "file" line is
+     * written with the vector file length at the time of the last commit, so
+     * if the vector file has grown since then, the index will be considered
+     * out of date and will be rebuilt by readers.
+     */
+    public static void writeTextIndex(File mappedIndexFile, File indexFile, File vectorFile) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mappedIndexFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.capacity() < DATA_OFFSET || in.getInt(0) != MAGIC)
+                throw new IOException("Not an output vector index file: " + mappedIndexFile.getPath());
+            if (in.getInt(4) != VERSION)
+                throw new IOException("Unsupported output vector index file version " + in.getInt(4) + ": " + mappedIndexFile.getPath());
+            int exponent = in.getInt(8);
+
+            // find the latest valid commit
+            long bestSequence = -1, indexEnd = 0, vectorFileLength = 0;
+            byte[] slot = new byte[SLOT_SIZE];
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < 2; i++) {
+                in.position(SLOT_OFFSET + i * SLOT_SIZE);
+                in.get(slot);
+                crc.reset();
+                crc.update(slot, 0, 24);
+                ByteBuffer s = ByteBuffer.wrap(slot);
+                long sequence = s.getLong(0);
+                if (s.getInt(24) == (int)crc.getValue() && sequence > bestSequence) {
+                    bestSequence = sequence;
+                    indexEnd = s.getLong(8);
+                    vectorFileLength = s.getLong(16);
+                }
+            }
+            if (bestSequence == -1 || indexEnd < DATA_OFFSET || indexEnd > in.capacity())
+                throw new IOException("No valid commit in output vector index file " + mappedIndexFile.getPath());
+
+            PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(indexFile), 65536));
+            String fileLine = "file " + vectorFileLength + " " + vectorFile.lastModified()/1000;
+            out.print(String.format("%-64s\n", fileLine));  // same layout as the directly written index file
+            StringBuilder line = new StringBuilder();
+            int p = DATA_OFFSET;
+            while (p < indexEnd) {
+                int type = in.getInt(p);
+                if (type == TEXT) {
+                    int length = in.getInt(p + 4);
+                    byte[] text = new byte[length];
+                    in.position(p + 8);
+                    in.get(text);
+                    out.write(text);
+                    p += align(8 + length);
+                }
+                else if (type == BLOCK) {
+                    int flags = in.getInt(p + 8);
+                    boolean rawTime = (flags & RAW_TIME) != 0;
+                    line.setLength(0);
+                    line.append(in.getInt(p + 4)).append(' ').append(in.getLong(p + 16)).append(' ').append(in.getLong(p + 24)).append(' ');
+                    if ((flags & EVENT_NUMBERS) != 0)
+                        line.append(in.getLong(p + 32)).append(' ').append(in.getLong(p + 40)).append(' ');
+                    appendTime(line, in.getLong(p + 48), rawTime, exponent).append(' ');
+                    appendTime(line, in.getLong(p + 56), rawTime, exponent).append(' ');
+                    line.append(in.getLong(p + 64)).append(' ').append(in.getDouble(p + 72)).append(' ').append(in.getDouble(p + 80));
+                    line.append(' ').append(in.getDouble(p + 88)).append(' ').append(in.getDouble(p + 96));
+                    out.println(line);
+                    p += BLOCK_ENTRY_SIZE;
+                }
+                else
+                    throw new IOException("Corrupt output vector index file " + mappedIndexFile.getPath() + " at offset " + p);
+            }
+            out.close();
+            if (out.checkError())
+                throw new IOException("Cannot write output vector index file " + indexFile.getPath());
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static StringBuilder appendTime(StringBuilder sb, long bits, boolean rawTime, int exponent) {
+        if (rawTime)
+            return FileOutputVectorManager.appendRawTime(sb, bits, exponent);
+        else
+            return sb.append(Double.longBitsToDouble(bits));
+    }
+}
@@ -0,0 +1,35 @@
+package org.omnetpp.scave.writers.impl;
+
+import org.omnetpp.scave.writers.IOutputVector;
+
+/**
+ * An output vector that discards all data. Returned for vectors whose
+ * recording has been disabled, so that model code does not need to check.
+ *
+ * @author Andras
+ */
+public class NullOutputVector implements IOutputVector {
+    public static final NullOutputVector INSTANCE = new NullOutputVector();
+
+    public void flush() {
+    }
+
+    public void close() {
+    }
+
+    public boolean record(double value) {
+        return false;
+    }
+
+    public boolean record(Number time, double value) {
+        return false;
+    }
+
+    public boolean record(double time, double value) {
+        return false;
+    }
+
+    public boolean recordRaw(long rawSimtime, double value) {
+        return false;
+    }
+}
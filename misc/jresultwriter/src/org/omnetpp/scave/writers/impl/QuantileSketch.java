@@ -0,0 +1,342 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.util.Arrays;
+
+import org.omnetpp.scave.writers.IHistogramSummary;
+
+/**
+ * Streaming quantile sketch with relative-error guarantees, after DDSketch
+ * (Masson, Rim and Lee: "DDSketch: A Fast and Fully-Mergeable Quantile
+ * Sketch with Relative-Error Guarantees", VLDB 2019).
+ *
+ * Values are counted in logarithmically sized buckets: with relative
+ * accuracy a, bucket i of positive values covers (g^(i-1), g^i], where
+ * g = (1+a)/(1-a). Any quantile is then estimated within a relative error of
+ * a, as long as the number of buckets stays below the limit. Negative values
+ * are mirrored into a separate set of buckets, and values very close to zero
+ * go into a zero bucket; infinite values are counted as underflows and
+ * overflows. When the limit is reached, the buckets of values
+ * closest to zero are collapsed, so the accuracy of the high quantiles is
+ * preserved. Sketches with the same accuracy can be merged without any
+ * loss of accuracy.
+ *
+ * The buckets are presented as histogram cells of varying width, so the
+ * sketch can be recorded as a histogram via recordStatistic().
+ *
+ * @author Andras
+ */
+public class QuantileSketch extends StdDev implements IHistogramSummary {
+    protected final double relativeAccuracy;
+    protected final double gamma;
+    protected final double logGamma;
+    protected final double minIndexableValue;
+
+    protected final BucketStore positiveBuckets;
+    protected final BucketStore negativeBuckets;
+    protected double zeroCount = 0;
+    protected double negativeInfinityCount = 0;
+    protected double positiveInfinityCount = 0;
+
+    // cell layout for IHistogramSummary, built on demand
+    private double[] cellBoundaries;
+    private double[] cellValues;
+
+    /**
+     * Contiguous range of bucket counters. Counters are kept for the range
+     * between the lowest and highest bucket index seen; if that would exceed
+     * maxNumBuckets, the lowest buckets are collapsed into one.
+     */
+    protected static class BucketStore {
+        final int maxNumBuckets;
+        double[] counts = new double[0];  // counts[i] belongs to bucket minIndex+i
+        int minIndex = 0;
+        int maxIndex = -1;  // empty if maxIndex < minIndex
+        double total = 0;
+
+        BucketStore(int maxNumBuckets) {
+            this.maxNumBuckets = maxNumBuckets;
+        }
+
+        boolean isEmpty() {
+            return maxIndex < minIndex;
+        }
+
+        double get(int index) {
+            return index < minIndex || index > maxIndex ? 0 : counts[index - minIndex];
+        }
+
+        void add(int index, double weight) {
+            if (isEmpty()) {
+                minIndex = maxIndex = index;
+                ensureLength(1);
+            }
+            else if (index < minIndex) {
+                int newMinIndex = Math.max(index, maxIndex - maxNumBuckets + 1);
+                if (newMinIndex < minIndex) {
+                    int shift = minIndex - newMinIndex;
+                    double[] newCounts = new double[Math.max(counts.length, maxIndex - newMinIndex + 1)];
+                    System.arraycopy(counts, 0, newCounts, shift, maxIndex - minIndex + 1);
+                    counts = newCounts;
+                    minIndex = newMinIndex;
+                }
+                index = Math.max(index, minIndex); // collapse into the lowest bucket
+            }
+            else if (index > maxIndex) {
+                int newMinIndex = index - maxNumBuckets + 1;
+                if (newMinIndex > minIndex)
+                    collapseBelow(newMinIndex);
+                maxIndex = index;
+                ensureLength(maxIndex - minIndex + 1);
+            }
+            counts[index - minIndex] += weight;
+            total += weight;
+        }
+
+        /**
+         * Merges the buckets below newMinIndex into bucket newMinIndex.
+         */
+        private void collapseBelow(int newMinIndex) {
+            int n = maxIndex - minIndex + 1;
+            int k = Math.min(newMinIndex - minIndex, n);
+            double collapsed = 0;
+            for (int i = 0; i < k; i++)
+                collapsed += counts[i];
+            System.arraycopy(counts, k, counts, 0, n - k);
+            Arrays.fill(counts, n - k, n, 0);
+            counts[0] += collapsed;
+            if (newMinIndex > maxIndex)
+                maxIndex = newMinIndex;
+            minIndex = newMinIndex;
+        }
+
+        private void ensureLength(int length) {
+            if (counts.length < length) {
+                double[] newCounts = new double[Math.min(maxNumBuckets, Math.max(length, 2 * counts.length + 16))];
+                System.arraycopy(counts, 0, newCounts, 0, counts.length);
+                counts = newCounts;
+            }
+        }
+
+        void merge(BucketStore other) {
+            for (int i = other.minIndex; i <= other.maxIndex; i++) {
+                double c = other.counts[i - other.minIndex];
+                if (c != 0)
+                    add(i, c);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            minIndex = 0;
+            maxIndex = -1;
+            total = 0;
+        }
+    }
+
+    /**
+     * Creates a sketch with 1% relative accuracy and at most 2048 buckets for
+     * each sign, which covers more than 17 orders of magnitude.
+     */
+    public QuantileSketch() {
+        this(0.01, 2048, false);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxNumBuckets, boolean weighted) {
+        super(weighted);
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1)
+            throw new IllegalArgumentException("Relative accuracy must be in (0,1): " + relativeAccuracy);
+        if (maxNumBuckets < 1)
+            throw new IllegalArgumentException("maxNumBuckets must be positive");
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.minIndexableValue = Double.MIN_NORMAL * gamma;
+        this.positiveBuckets = new BucketStore(maxNumBuckets);
+        this.negativeBuckets = new BucketStore(maxNumBuckets);
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    @Override
+    public void collect(double value, double weight) {
+        if (Double.isNaN(value))
+            return;
+        super.collect(value, weight);
+        if (weight == 0)
+            return;
+        if (Double.isInfinite(value)) {
+            if (value > 0)
+                positiveInfinityCount += weight;
+            else
+                negativeInfinityCount += weight;
+        }
+        else if (value > minIndexableValue)
+            positiveBuckets.add(index(value), weight);
+        else if (value < -minIndexableValue)
+            negativeBuckets.add(index(-value), weight);
+        else
+            zeroCount += weight;
+        cellBoundaries = null;
+    }
+
+    @Override
+    public void merge(StdDev other) {
+        super.merge(other);
+        if (other instanceof QuantileSketch) {
+            QuantileSketch s = (QuantileSketch)other;
+            if (s.gamma != gamma)
+                throw new IllegalArgumentException("Cannot merge quantile sketches of different accuracy");
+            positiveBuckets.merge(s.positiveBuckets);
+            negativeBuckets.merge(s.negativeBuckets);
+            zeroCount += s.zeroCount;
+            negativeInfinityCount += s.negativeInfinityCount;
+            positiveInfinityCount += s.positiveInfinityCount;
+            cellBoundaries = null;
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        positiveBuckets.clear();
+        negativeBuckets.clear();
+        zeroCount = negativeInfinityCount = positiveInfinityCount = 0;
+        cellBoundaries = null;
+    }
+
+    protected int index(double absValue) {
+        return (int)Math.ceil(Math.log(absValue) / logGamma);
+    }
+
+    /**
+     * Returns the lower boundary of the bucket with the given index.
+     */
+    protected double lowerBound(int index) {
+        return Math.exp((index - 1) * logGamma);
+    }
+
+    /**
+     * Returns the representative value of a bucket, which is within the
+     * relative accuracy from every value in the bucket.
+     */
+    protected double value(int index) {
+        return lowerBound(index) * (1 + relativeAccuracy);
+    }
+
+    /**
+     * Returns the estimated q-quantile (0 <= q <= 1) of the collected values.
+     */
+    public double getQuantile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException("Quantile must be in [0,1]: " + q);
+        if (count == 0)
+            return Double.NaN;
+
+        double rank = q * (sumWeights - (weighted ? 0 : 1));
+        double result;
+        double cumulated = negativeInfinityCount;
+        if (rank < cumulated)
+            return Double.NEGATIVE_INFINITY;
+        else if (rank < cumulated + negativeBuckets.total) {
+            int i = negativeBuckets.maxIndex;
+            for (; i > negativeBuckets.minIndex; i--) {
+                cumulated += negativeBuckets.get(i);
+                if (cumulated > rank)
+                    break;
+            }
+            result = -value(i);
+        }
+        else if (rank < cumulated + negativeBuckets.total + zeroCount)
+            result = 0;
+        else if (rank < cumulated + negativeBuckets.total + zeroCount + positiveBuckets.total) {
+            cumulated += negativeBuckets.total + zeroCount;
+            int i = positiveBuckets.minIndex;
+            for (; i < positiveBuckets.maxIndex; i++) {
+                cumulated += positiveBuckets.get(i);
+                if (cumulated > rank)
+                    break;
+            }
+            result = value(i);
+        }
+        else
+            return positiveInfinityCount > 0 ? Double.POSITIVE_INFINITY : maxValue;
+        return Math.max(minValue, Math.min(maxValue, result));
+    }
+
+    /**
+     * Returns the total number of buckets in use; memory use is proportional to it.
+     */
+    public int getNumBuckets() {
+        int n = 0;
+        if (!positiveBuckets.isEmpty())
+            n += positiveBuckets.maxIndex - positiveBuckets.minIndex + 1;
+        if (!negativeBuckets.isEmpty())
+            n += negativeBuckets.maxIndex - negativeBuckets.minIndex + 1;
+        return n;
+    }
+
+    /**
+     * Lays out the buckets as contiguous histogram cells, from the most
+     * negative to the most positive, with the zero bucket in between.
+     */
+    private void buildCells() {
+        if (cellBoundaries != null)
+            return;
+        boolean hasNegative = !negativeBuckets.isEmpty();
+        boolean hasPositive = !positiveBuckets.isEmpty();
+        boolean hasZero = zeroCount > 0 || (hasNegative && hasPositive);
+        int numNegative = hasNegative ? negativeBuckets.maxIndex - negativeBuckets.minIndex + 1 : 0;
+        int numPositive = hasPositive ? positiveBuckets.maxIndex - positiveBuckets.minIndex + 1 : 0;
+        int n = numNegative + (hasZero ? 1 : 0) + numPositive;
+        cellBoundaries = new double[n + 1];
+        cellValues = new double[n];
+        if (n == 0)
+            return;
+
+        int k = 0;
+        for (int i = negativeBuckets.maxIndex; hasNegative && i >= negativeBuckets.minIndex; i--) {
+            cellBoundaries[k] = -lowerBound(i + 1);
+            cellValues[k++] = negativeBuckets.get(i);
+        }
+        if (hasZero) {
+            cellBoundaries[k] = hasNegative ? -lowerBound(negativeBuckets.minIndex) : -minIndexableValue;
+            cellValues[k++] = zeroCount;
+        }
+        for (int i = positiveBuckets.minIndex; hasPositive && i <= positiveBuckets.maxIndex; i++) {
+            cellBoundaries[k] = lowerBound(i);
+            cellValues[k++] = positiveBuckets.get(i);
+        }
+        cellBoundaries[k] = hasPositive ? lowerBound(positiveBuckets.maxIndex + 1) :
+            hasZero ? minIndexableValue : -lowerBound(negativeBuckets.minIndex);
+    }
+
+    public int getNumCells() {
+        buildCells();
+        return cellValues.length;
+    }
+
+    public double getCellBoundary(int k) {
+        buildCells();
+        return cellBoundaries[k];
+    }
+
+    public double getCellValue(int k) {
+        buildCells();
+        return cellValues[k];
+    }
+
+    public double getCellPDF(int k) {
+        buildCells();
+        return sumWeights == 0 ? 0 : cellValues[k] / (cellBoundaries[k+1] - cellBoundaries[k]) / sumWeights;
+    }
+
+    public long getUnderflowCell() {
+        return Math.round(negativeInfinityCount);
+    }
+
+    public long getOverflowCell() {
+        return Math.round(positiveInfinityCount);
+    }
+}
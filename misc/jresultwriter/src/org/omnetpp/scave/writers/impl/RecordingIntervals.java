@@ -0,0 +1,214 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.util.Arrays;
+
+/**
+ * A set of simulation time intervals in which output vectors are recorded,
+ * like the vector-recording-intervals and warmup-period settings in OMNeT++.
+ * Intervals are half-open, [start,end); overlapping intervals are merged.
+ *
+ * Intervals can be given as a string in the OMNeT++ syntax, a comma-separated
+ * list of "start..end" items where either end may be omitted, and times are
+ * in seconds with an optional "s" suffix: "..100, 200..300, 500s..".
+ *
+ * Output vectors check their timestamps against the intervals via a Cursor,
+ * which remembers the stretch of time the last timestamp fell into. Since
+ * timestamps are increasing, the check is usually a single comparison.
+ *
+ * @author Andras
+ */
+public class RecordingIntervals {
+    private double[] starts = new double[0];
+    private double[] ends = new double[0];
+
+    /**
+     * Remembers which interval (or gap between intervals) the last checked
+     * time was in. Not thread-safe; every output vector needs its own.
+     */
+    class Cursor {
+        private double from = Double.POSITIVE_INFINITY;
+        private double until = Double.NEGATIVE_INFINITY;
+        private boolean inside;
+
+        boolean contains(double time) {
+            if (time >= until || time < from)
+                update(time);
+            return inside;
+        }
+
+        private void update(double time) {
+            int i = indexOf(time);
+            int n = starts.length;
+            if (i < n && starts[i] <= time) {
+                inside = true;
+                from = starts[i];
+                until = ends[i];
+            }
+            else {
+                inside = false;
+                from = i > 0 ? ends[i-1] : Double.NEGATIVE_INFINITY;
+                until = i < n ? starts[i] : Double.POSITIVE_INFINITY;
+            }
+        }
+    }
+
+    /**
+     * Creates an empty set of intervals, i.e. nothing is recorded; use add()
+     * to add intervals.
+     */
+    public RecordingIntervals() {
+    }
+
+    /**
+     * Parses intervals in the OMNeT++ syntax, e.g. "..100, 200..300, 500..".
+     */
+    public static RecordingIntervals parse(String text) {
+        RecordingIntervals result = new RecordingIntervals();
+        for (String item : text.split(",")) {
+            item = item.trim();
+            if (item.length() == 0)
+                continue;
+            int pos = item.indexOf("..");
+            if (pos == -1)
+                throw new IllegalArgumentException("Invalid recording interval '" + item + "': missing '..'");
+            double start = parseTime(item.substring(0, pos), Double.NEGATIVE_INFINITY);
+            double end = parseTime(item.substring(pos + 2), Double.POSITIVE_INFINITY);
+            result.add(start, end);
+        }
+        return result;
+    }
+
+    private static double parseTime(String text, double defaultValue) {
+        text = text.trim();
+        if (text.length() == 0)
+            return defaultValue;
+        if (text.endsWith("s"))
+            text = text.substring(0, text.length() - 1).trim();
+        try {
+            return Double.parseDouble(text);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid time in recording interval: '" + text + "'");
+        }
+    }
+
+    /**
+     * Adds the interval [start,end), and returns this object.
+     */
+    public RecordingIntervals add(double start, double end) {
+        if (!(start < end))
+            throw new IllegalArgumentException("Invalid recording interval: start must be less than end");
+        // insert, keeping the intervals sorted by start time
+        int n = starts.length;
+        int pos = 0;
+        while (pos < n && starts[pos] <= start)
+            pos++;
+        double[] newStarts = new double[n + 1];
+        double[] newEnds = new double[n + 1];
+        System.arraycopy(starts, 0, newStarts, 0, pos);
+        System.arraycopy(ends, 0, newEnds, 0, pos);
+        newStarts[pos] = start;
+        newEnds[pos] = end;
+        System.arraycopy(starts, pos, newStarts, pos + 1, n - pos);
+        System.arraycopy(ends, pos, newEnds, pos + 1, n - pos);
+
+        // merge overlapping and adjacent intervals
+        int k = 0;
+        for (int i = 0; i <= n; i++) {
+            if (k > 0 && newStarts[i] <= newEnds[k-1])
+                newEnds[k-1] = Math.max(newEnds[k-1], newEnds[i]);
+            else {
+                newStarts[k] = newStarts[i];
+                newEnds[k] = newEnds[i];
+                k++;
+            }
+        }
+        starts = Arrays.copyOf(newStarts, k);
+        ends = Arrays.copyOf(newEnds, k);
+        return this;
+    }
+
+    /**
+     * Returns the intervals restricted to times at or after the end of the
+     * warm-up period. This object is not modified.
+     */
+    public RecordingIntervals withWarmupPeriod(double warmupPeriod) {
+        RecordingIntervals result = new RecordingIntervals();
+        for (int i = 0; i < starts.length; i++)
+            if (ends[i] > warmupPeriod)
+                result.add(Math.max(starts[i], warmupPeriod), ends[i]);
+        return result;
+    }
+
+    /**
+     * Returns the intervals to be used for recording, given the configured
+     * intervals (may be null for "always") and warm-up period; returns null
+     * if everything is to be recorded. The result is always a new object,
+     * so later changes to the configured intervals do not affect it.
+     */
+    static RecordingIntervals effective(RecordingIntervals intervals, double warmupPeriod) {
+        if (intervals == null && warmupPeriod <= 0)
+            return null;
+        if (intervals == null)
+            intervals = new RecordingIntervals().add(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        return intervals.withWarmupPeriod(warmupPeriod > 0 ? warmupPeriod : Double.NEGATIVE_INFINITY);
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    public int getNumIntervals() {
+        return starts.length;
+    }
+
+    public double getStart(int i) {
+        return starts[i];
+    }
+
+    public double getEnd(int i) {
+        return ends[i];
+    }
+
+    /**
+     * Returns true if the given time is inside one of the intervals.
+     */
+    public boolean contains(double time) {
+        int i = indexOf(time);
+        return i < starts.length && starts[i] <= time;
+    }
+
+    Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the index of the first interval that ends after the given time.
+     */
+    private int indexOf(double time) {
+        int lo = 0, hi = ends.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] <= time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < starts.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            if (starts[i] != Double.NEGATIVE_INFINITY)
+                sb.append(starts[i]);
+            sb.append("..");
+            if (ends[i] != Double.POSITIVE_INFINITY)
+                sb.append(ends[i]);
+        }
+        return sb.toString();
+    }
+}
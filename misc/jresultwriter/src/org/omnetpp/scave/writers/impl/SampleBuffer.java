@@ -0,0 +1,137 @@
+package org.omnetpp.scave.writers.impl;
+
+/**
+ * Buffer for one block of output vector data, stored in primitive arrays.
+ * Buffers are allocated once (sized from the per-vector buffer limit) and
+ * reused after each block has been written out, so that recording samples
+ * does not allocate memory in steady state.
+ *
+ * Timestamps are either stored as doubles, or as raw (integer) simulation
+ * times that need to be scaled with the simtime scale exponent. A buffer
+ * holds only one kind of timestamps; see isRawTime(). Event numbers are
+ * only stored if enabled via enableEventNumbers().
+ *
+ * @author Andras
+ */
+class SampleBuffer {
+    int n = 0;
+    boolean rawTime = false;
+    double[] times;
+    long[] rawTimes;  // allocated on demand
+    long[] eventNumbers;  // allocated on demand
+    double[] values;
+
+    double min = Double.NaN;
+    double max = Double.NaN;
+    double sum = 0;
+    double sqrSum = 0;
+
+    SampleBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        times = new double[capacity];
+        values = new double[capacity];
+    }
+
+    int capacity() {
+        return values.length;
+    }
+
+    boolean isEmpty() {
+        return n == 0;
+    }
+
+    boolean isFull() {
+        return n == values.length;
+    }
+
+    boolean isRawTime() {
+        return rawTime;
+    }
+
+    /**
+     * Sets whether timestamps are stored as raw simulation times. May only
+     * be called when the buffer is empty.
+     */
+    void setRawTime(boolean rawTime) {
+        if (n != 0)
+            throw new IllegalStateException("Sample buffer not empty");
+        this.rawTime = rawTime;
+        if (rawTime && (rawTimes == null || rawTimes.length != values.length))
+            rawTimes = new long[values.length];
+    }
+
+    /**
+     * Turns on storing event numbers. If enabled, the event number of each
+     * sample must be stored via setEventNumber() before calling add().
+     */
+    void enableEventNumbers() {
+        if (eventNumbers == null)
+            eventNumbers = new long[values.length];
+    }
+
+    boolean hasEventNumbers() {
+        return eventNumbers != null;
+    }
+
+    void setEventNumber(long eventNumber) {
+        eventNumbers[n] = eventNumber;
+    }
+
+    /**
+     * Ensures the buffer can hold at least the given number of samples;
+     * this is only needed if the buffer limit was changed after creation.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            times = copyOf(times, capacity);
+            values = copyOf(values, capacity);
+            if (rawTimes != null)
+                rawTimes = copyOf(rawTimes, capacity);
+            if (eventNumbers != null)
+                eventNumbers = copyOf(eventNumbers, capacity);
+        }
+    }
+
+    void add(double time, double value) {
+        times[n] = time;
+        store(value);
+    }
+
+    void addRaw(long rawTime, double time, double value) {
+        rawTimes[n] = rawTime;
+        times[n] = time;
+        store(value);
+    }
+
+    private void store(double value) {
+        values[n++] = value;
+
+        // update statistics
+        if (min > value || Double.isNaN(min))
+            min = value;
+        if (max < value || Double.isNaN(max))
+            max = value;
+        sum += value;
+        sqrSum += value*value;
+    }
+
+    void clear() {
+        n = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+        sum = 0;
+        sqrSum = 0;
+    }
+
+    private double[] copyOf(double[] array, int capacity) {
+        double[] tmp = new double[capacity];
+        System.arraycopy(array, 0, tmp, 0, n);
+        return tmp;
+    }
+
+    private long[] copyOf(long[] array, int capacity) {
+        long[] tmp = new long[capacity];
+        System.arraycopy(array, 0, tmp, 0, n);
+        return tmp;
+    }
+}
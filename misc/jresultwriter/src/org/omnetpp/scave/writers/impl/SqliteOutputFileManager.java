@@ -0,0 +1,290 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import org.omnetpp.scave.writers.ResultRecordingException;
+
+/**
+ * Common base class for SqliteOutputVectorManager and SqliteOutputScalarManager.
+ * Result files use the same database schema as the SQLite result files written
+ * by OMNeT++ itself, so they can be opened in the IDE without indexing.
+ *
+ * Access is via JDBC; an SQLite JDBC driver (e.g. org.xerial:sqlite-jdbc)
+ * must be present on the class path. Inserts are batched via prepared
+ * statements, and committed in large transactions. The database is
+ * operated in WAL mode while recording, and switched back to the default
+ * journal mode on close, so that the result file is self-contained.
+ *
+ * @author Andras
+ */
+public abstract class SqliteOutputFileManager extends OutputFileManager {
+    public static final String JDBC_URL_PREFIX = "jdbc:sqlite:";
+
+    /**
+     * Same schema as the one in src/common/sqliteresultfileschema.cc.
+     */
+    protected static final String[] SQL_CREATE_TABLES = {
+        "CREATE TABLE IF NOT EXISTS run (" +
+            "runId INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "runName TEXT NOT NULL, " +
+            "simtimeExp INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS runAttr (" +
+            "runId INTEGER NOT NULL REFERENCES run(runId) ON DELETE CASCADE, " +
+            "attrName TEXT NOT NULL, " +
+            "attrValue TEXT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS runItervar (" +
+            "runId INTEGER NOT NULL REFERENCES run(runId) ON DELETE CASCADE, " +
+            "itervarName TEXT NOT NULL, " +
+            "itervarValue TEXT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS runConfig (" +
+            "runId INTEGER NOT NULL REFERENCES run(runId) ON DELETE CASCADE, " +
+            "configKey TEXT NOT NULL, " +
+            "configValue TEXT NOT NULL, " +
+            "configOrder INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS scalar (" +
+            "scalarId INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "runId INTEGER NOT NULL REFERENCES run(runId) ON DELETE CASCADE, " +
+            "moduleName TEXT NOT NULL, " +
+            "scalarName TEXT NOT NULL, " +
+            "scalarValue REAL)", // cannot be NOT NULL, because sqlite converts NaN double value to NULL
+        "CREATE TABLE IF NOT EXISTS scalarAttr (" +
+            "scalarId INTEGER NOT NULL REFERENCES scalar(scalarId) ON DELETE CASCADE, " +
+            "attrName TEXT NOT NULL, " +
+            "attrValue TEXT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS parameter (" +
+            "paramId INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "runId INTEGER NOT NULL REFERENCES run(runId) ON DELETE CASCADE, " +
+            "moduleName TEXT NOT NULL, " +
+            "paramName TEXT NOT NULL, " +
+            "paramValue TEXT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS paramAttr (" +
+            "paramId INTEGER NOT NULL REFERENCES parameter(paramId) ON DELETE CASCADE, " +
+            "attrName TEXT NOT NULL, " +
+            "attrValue TEXT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS statistic (" +
+            "statId INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "runId INTEGER NOT NULL REFERENCES run(runId) ON DELETE CASCADE, " +
+            "moduleName TEXT NOT NULL, " +
+            "statName TEXT NOT NULL, " +
+            "isHistogram INTEGER NOT NULL, " +
+            "isWeighted INTEGER NOT NULL, " +
+            "statCount INTEGER NOT NULL, " +
+            "statMean REAL, " +
+            "statStddev REAL, " +
+            "statSum REAL, " +
+            "statSqrsum REAL, " +
+            "statMin REAL, " +
+            "statMax REAL, " +
+            "statWeights REAL, " +
+            "statWeightedSum REAL, " +
+            "statSqrSumWeights REAL, " +
+            "statWeightedSqrSum REAL)",
+        "CREATE TABLE IF NOT EXISTS statisticAttr (" +
+            "statId INTEGER NOT NULL REFERENCES statistic(statId) ON DELETE CASCADE, " +
+            "attrName TEXT NOT NULL, " +
+            "attrValue TEXT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS histogramBin (" +
+            "statId INTEGER NOT NULL REFERENCES statistic(statId) ON DELETE CASCADE, " +
+            "lowerEdge REAL NOT NULL, " +
+            "binValue REAL NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS vector (" +
+            "vectorId INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "runId INTEGER NOT NULL REFERENCES run(runId) ON DELETE CASCADE, " +
+            "moduleName TEXT NOT NULL, " +
+            "vectorName TEXT NOT NULL, " +
+            "vectorCount INTEGER, " + // cannot be NOT NULL because we fill it in later
+            "vectorMin REAL, " +
+            "vectorMax REAL, " +
+            "vectorSum REAL, " +
+            "vectorSumSqr REAL, " +
+            "startEventNum INTEGER, " +
+            "endEventNum INTEGER, " +
+            "startSimtimeRaw INTEGER, " +
+            "endSimtimeRaw INTEGER)",
+        "CREATE TABLE IF NOT EXISTS vectorAttr (" +
+            "vectorId INTEGER NOT NULL REFERENCES vector(vectorId) ON DELETE CASCADE, " +
+            "attrName TEXT NOT NULL, " +
+            "attrValue TEXT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS vectorData (" +
+            "vectorId INTEGER NOT NULL REFERENCES vector(vectorId) ON DELETE CASCADE, " +
+            "eventNumber INTEGER NOT NULL, " +
+            "simtimeRaw INTEGER NOT NULL, " +
+            "value REAL)" // cannot be NOT NULL because of NaN values
+    };
+
+    protected static final long RUN_ID = 1; // the database is created from scratch, with a single run
+
+    protected String runID;
+    protected Map<String, String> runAttributes;
+    protected File file;
+    protected Connection connection;
+
+    protected int simtimeScaleExponent = -12;
+    protected int commitFrequency = 100000;
+    private int numInserts = 0;
+
+    public SqliteOutputFileManager(String fileName) {
+        file = new File(fileName);
+        if (file.exists() && !file.delete())
+            throw new ResultRecordingException("Cannot delete old output file " + file.getPath());
+    }
+
+    public int getSimtimeScaleExponent() {
+        return simtimeScaleExponent;
+    }
+
+    /**
+     * Sets the scale exponent of simulation time: a raw simtime value r means
+     * r*10^exponent seconds. Simulation times are stored as raw values in the
+     * database. The default is -12 (picoseconds), the default in OMNeT++.
+     * May only be called before recording begins.
+     */
+    public void setSimtimeScaleExponent(int exponent) {
+        if (connection != null)
+            throw new IllegalStateException("Cannot change simtime scale exponent after recording has begun");
+        this.simtimeScaleExponent = exponent;
+    }
+
+    public int getCommitFrequency() {
+        return commitFrequency;
+    }
+
+    /**
+     * Sets the number of rows inserted between commits. Larger transactions
+     * make inserting faster.
+     */
+    public void setCommitFrequency(int count) {
+        this.commitFrequency = count;
+    }
+
+    public void open(String runID, Map<String, String> runAttributes) {
+        this.runID = runID;
+        this.runAttributes = runAttributes;
+    }
+
+    /**
+     * Creates the database and writes the run; subclasses should call this
+     * before the first insert, then prepare their own statements.
+     */
+    protected void openDatabase() {
+        try {
+            connection = DriverManager.getConnection(JDBC_URL_PREFIX + file.getPath());
+            Statement statement = connection.createStatement();
+            statement.execute("PRAGMA page_size = 16384");
+            statement.execute("PRAGMA foreign_keys = ON");
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = OFF");
+            statement.execute("PRAGMA cache_size = 100000");
+            connection.setAutoCommit(false);
+            for (String sql : SQL_CREATE_TABLES)
+                statement.executeUpdate(sql);
+            statement.close();
+
+            PreparedStatement runStatement = connection.prepareStatement("INSERT INTO run (runId, runName, simtimeExp) VALUES (?, ?, ?)");
+            runStatement.setLong(1, RUN_ID);
+            runStatement.setString(2, runID);
+            runStatement.setInt(3, simtimeScaleExponent);
+            runStatement.executeUpdate();
+            runStatement.close();
+
+            if (runAttributes != null && !runAttributes.isEmpty()) {
+                PreparedStatement attrStatement = connection.prepareStatement("INSERT INTO runAttr (runId, attrName, attrValue) VALUES (?, ?, ?)");
+                for (String attr : runAttributes.keySet()) {
+                    attrStatement.setLong(1, RUN_ID);
+                    attrStatement.setString(2, attr);
+                    attrStatement.setString(3, runAttributes.get(attr));
+                    attrStatement.addBatch();
+                }
+                attrStatement.executeBatch();
+                attrStatement.close();
+            }
+            connection.commit();
+        }
+        catch (SQLException e) {
+            throw sqlError(e);
+        }
+    }
+
+    /**
+     * Counts inserted rows, and commits when the commit frequency is reached.
+     * The subclass' pending batches are executed first via executeBatches().
+     */
+    protected void inserted(int count) throws SQLException {
+        numInserts += count;
+        if (numInserts >= commitFrequency)
+            commit();
+    }
+
+    protected void commit() throws SQLException {
+        executeBatches();
+        connection.commit();
+        numInserts = 0;
+    }
+
+    /**
+     * Executes the batches of the subclass' prepared statements. Batches must
+     * be executed in an order that satisfies foreign key constraints, i.e.
+     * parent rows (e.g. scalars) before child rows (e.g. scalar attributes).
+     */
+    protected abstract void executeBatches() throws SQLException;
+
+    /**
+     * Closes the subclass' prepared statements.
+     */
+    protected abstract void closeStatements() throws SQLException;
+
+    protected void closeDatabase() {
+        if (connection == null)
+            return;
+        try {
+            commit();
+            closeStatements();
+            connection.setAutoCommit(true);
+            Statement statement = connection.createStatement();
+            statement.execute("PRAGMA journal_mode = DELETE"); // checkpoint and remove the WAL file
+            statement.close();
+            connection.close();
+            connection = null;
+        }
+        catch (SQLException e) {
+            throw sqlError(e);
+        }
+    }
+
+    public void flush() {
+        if (connection != null) {
+            try {
+                commit();
+            }
+            catch (SQLException e) {
+                throw sqlError(e);
+            }
+        }
+    }
+
+    public String getFileName() {
+        return file.getPath();
+    }
+
+    protected void insertAttributes(PreparedStatement statement, long id, Map<String, String> attributes) throws SQLException {
+        if (attributes != null) {
+            for (String attr : attributes.keySet()) {
+                statement.setLong(1, id);
+                statement.setString(2, attr);
+                statement.setString(3, attributes.get(attr));
+                statement.addBatch();
+            }
+            inserted(attributes.size());
+        }
+    }
+
+    protected ResultRecordingException sqlError(SQLException e) {
+        return new ResultRecordingException("SQLite error on file " + file.getPath() + ": " + e.getMessage(), e);
+    }
+}
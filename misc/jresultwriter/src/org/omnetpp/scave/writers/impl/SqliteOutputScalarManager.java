@@ -0,0 +1,160 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Map;
+
+import org.omnetpp.scave.writers.IHistogramSummary;
+import org.omnetpp.scave.writers.IOutputScalarManager;
+import org.omnetpp.scave.writers.IStatisticalSummary;
+import org.omnetpp.scave.writers.IStatisticalSummary2;
+
+/**
+ * An output scalar manager that writes OMNeT++ SQLite scalar files.
+ * See SqliteOutputFileManager for details.
+ *
+ * This class does not support filtering (of scalars or recorded data),
+ * this functionality may be added via subclasses.
+ *
+ * @author Andras
+ */
+public class SqliteOutputScalarManager extends SqliteOutputFileManager implements IOutputScalarManager {
+    protected PreparedStatement scalarStatement;
+    protected PreparedStatement scalarAttrStatement;
+    protected PreparedStatement statisticStatement;
+    protected PreparedStatement statisticAttrStatement;
+    protected PreparedStatement binStatement;
+
+    protected long lastScalarId = 0;
+    protected long lastStatisticId = 0;
+
+    public SqliteOutputScalarManager(String fileName) {
+        super(fileName);
+    }
+
+    protected void open() {
+        openDatabase();
+        try {
+            scalarStatement = connection.prepareStatement("INSERT INTO scalar (scalarId, runId, moduleName, scalarName, scalarValue) VALUES (?, ?, ?, ?, ?)");
+            scalarAttrStatement = connection.prepareStatement("INSERT INTO scalarAttr (scalarId, attrName, attrValue) VALUES (?, ?, ?)");
+            statisticStatement = connection.prepareStatement(
+                    "INSERT INTO statistic (statId, runId, moduleName, statName, isHistogram, isWeighted, " +
+                    "statCount, statMean, statStddev, statMin, statMax, statSum, statSqrsum, " +
+                    "statWeights, statWeightedSum, statSqrSumWeights, statWeightedSqrSum) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            statisticAttrStatement = connection.prepareStatement("INSERT INTO statisticAttr (statId, attrName, attrValue) VALUES (?, ?, ?)");
+            binStatement = connection.prepareStatement("INSERT INTO histogramBin (statId, lowerEdge, binValue) VALUES (?, ?, ?)");
+        }
+        catch (SQLException e) {
+            throw sqlError(e);
+        }
+    }
+
+    public void close() {
+        closeDatabase();
+    }
+
+    @Override
+    protected void executeBatches() throws SQLException {
+        scalarStatement.executeBatch();
+        scalarAttrStatement.executeBatch();
+        statisticStatement.executeBatch();
+        statisticAttrStatement.executeBatch();
+        binStatement.executeBatch();
+    }
+
+    @Override
+    protected void closeStatements() throws SQLException {
+        scalarStatement.close();
+        scalarAttrStatement.close();
+        statisticStatement.close();
+        statisticAttrStatement.close();
+        binStatement.close();
+    }
+
+    public void recordScalar(String componentPath, String name, double value, Map<String, String> attributes) {
+        if (connection == null)
+            open();
+        try {
+            long scalarId = ++lastScalarId;
+            scalarStatement.setLong(1, scalarId);
+            scalarStatement.setLong(2, RUN_ID);
+            scalarStatement.setString(3, componentPath);
+            scalarStatement.setString(4, name);
+            scalarStatement.setDouble(5, value);
+            scalarStatement.addBatch();
+            inserted(1);
+            insertAttributes(scalarAttrStatement, scalarId, attributes);
+        }
+        catch (SQLException e) {
+            throw sqlError(e);
+        }
+    }
+
+    public void recordScalar(String componentPath, String name, Number value, Map<String, String> attributes) {
+        recordScalar(componentPath, name, value.doubleValue(), attributes);
+    }
+
+    public void recordStatistic(String componentPath, String name, IStatisticalSummary statistic, Map<String, String> attributes) {
+        if (connection == null)
+            open();
+        try {
+            boolean isHistogram = statistic instanceof IHistogramSummary && ((IHistogramSummary)statistic).getNumCells() > 0;
+            IStatisticalSummary2 statistic2 = statistic instanceof IStatisticalSummary2 ? (IStatisticalSummary2)statistic : null;
+            boolean isWeighted = statistic2 != null && statistic2.isWeighted();
+
+            long statId = ++lastStatisticId;
+            PreparedStatement s = statisticStatement;
+            s.setLong(1, statId);
+            s.setLong(2, RUN_ID);
+            s.setString(3, componentPath);
+            s.setString(4, name);
+            s.setInt(5, isHistogram ? 1 : 0);
+            s.setInt(6, isWeighted ? 1 : 0);
+            s.setLong(7, statistic.getN());
+            s.setDouble(8, statistic.getMean());
+            s.setDouble(9, statistic.getStandardDeviation());
+            s.setDouble(10, statistic.getMin());
+            s.setDouble(11, statistic.getMax());
+            if (!isWeighted) {
+                s.setDouble(12, statistic.getSum());
+                s.setDouble(13, statistic.getSqrSum());
+                for (int i = 14; i <= 17; i++)
+                    s.setNull(i, Types.REAL);
+            }
+            else {
+                s.setNull(12, Types.REAL);
+                s.setNull(13, Types.REAL);
+                s.setDouble(14, statistic2.getWeights());
+                s.setDouble(15, statistic2.getWeightedSum());
+                s.setDouble(16, statistic2.getSqrSumWeights());
+                s.setDouble(17, statistic2.getWeightedSqrSum());
+            }
+            s.addBatch();
+            inserted(1);
+
+            insertAttributes(statisticAttrStatement, statId, attributes);
+
+            if (isHistogram) {
+                IHistogramSummary histogram = (IHistogramSummary)statistic;
+                int n = histogram.getNumCells();
+                addBin(statId, Double.NEGATIVE_INFINITY, histogram.getUnderflowCell());
+                for (int i = 0; i < n; i++)
+                    addBin(statId, histogram.getCellBoundary(i), histogram.getCellValue(i));
+                addBin(statId, histogram.getCellBoundary(n), histogram.getOverflowCell());
+                inserted(n + 2);
+            }
+        }
+        catch (SQLException e) {
+            throw sqlError(e);
+        }
+    }
+
+    protected void addBin(long statId, double lowerEdge, double value) throws SQLException {
+        binStatement.setLong(1, statId);
+        binStatement.setDouble(2, lowerEdge);
+        binStatement.setDouble(3, value);
+        binStatement.addBatch();
+    }
+}
@@ -0,0 +1,350 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.IOutputVectorManager;
+import org.omnetpp.scave.writers.ISimulationTimeProvider;
+
+/**
+ * An output vector manager that writes OMNeT++ SQLite vector files.
+ * See SqliteOutputFileManager for details. Timestamps are stored as raw
+ * simulation times (see setSimtimeScaleExponent()), and event numbers
+ * are taken from the simulation time provider (or -1 if there is none).
+ * Recording intervals and the warm-up period work the same way as in
+ * FileOutputVectorManager.
+ *
+ * Like FileOutputVectorManager, this class buffers recorded data, and
+ * writes out a vector's buffer when it reaches the per-vector limit,
+ * or the buffers of all vectors when the total limit is reached.
+ *
+ * @author Andras
+ */
+public class SqliteOutputVectorManager extends SqliteOutputFileManager implements IOutputVectorManager {
+    protected ISimulationTimeProvider simtimeProvider;
+
+    protected int perVectorLimit = 1000;
+    protected int totalLimit = 1000000;
+
+    protected long lastId = 0;
+    protected int nbuffered = 0;
+    protected double rawScale;  // 10^-exponent: multiply seconds by this to get raw simtime
+
+    protected RecordingIntervals recordingIntervals;  // null means always
+    protected double warmupPeriod = 0;
+
+    protected Set<OutputVector> vectors = new HashSet<OutputVector>();
+
+    protected PreparedStatement vectorStatement;
+    protected PreparedStatement vectorAttrStatement;
+    protected PreparedStatement dataStatement;
+    protected PreparedStatement updateVectorStatement;
+
+    class OutputVector implements IOutputVector {
+        long id;
+        SampleBuffer buffer;
+        double lastTime = 0;
+        final RecordingIntervals.Cursor intervals;  // null if all data are recorded
+
+        // statistics of the whole vector, for the "vector" table
+        long count = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        double sum = 0;
+        double sqrSum = 0;
+        long startEventNum, endEventNum;
+        long startTimeRaw, endTimeRaw;
+
+        public OutputVector(long id) {
+            this.id = id;
+            this.buffer = new SampleBuffer(perVectorLimit);
+            buffer.enableEventNumbers();
+            RecordingIntervals effective = RecordingIntervals.effective(recordingIntervals, warmupPeriod);
+            this.intervals = effective == null ? null : effective.newCursor();
+        }
+
+        public void close() {
+            flush();
+            updateVectorStatistics(this);
+            vectors.remove(this);
+            id = -1; // i.e. dead object
+        }
+
+        public void flush() {
+            if (id == -1)
+                throw new IllegalStateException("Output vector already closed");
+            writeBlock();
+        }
+
+        public boolean record(double value) {
+            if (simtimeProvider == null)
+                throw new IllegalStateException("Simtime provider not yet specified");
+
+            return record(simtimeProvider.getSimulationTime(), value);
+        }
+
+        public boolean record(Number time, double value) {
+            return record(time.doubleValue(), value);
+        }
+
+        public boolean record(double time, double value) {
+            checkRecord(time);
+            if (intervals != null && !intervals.contains(time))
+                return false;
+            if (buffer.isRawTime())
+                writeBlock(); // one block may only contain one kind of timestamps
+            buffer.setEventNumber(currentEventNumber());
+            buffer.add(time, value);
+            recorded();
+            return true;
+        }
+
+        public boolean recordRaw(long rawSimtime, double value) {
+            double time = rawSimtime / rawScale;
+            checkRecord(time);
+            if (intervals != null && !intervals.contains(time))
+                return false;
+            if (!buffer.isRawTime()) {
+                writeBlock(); // one block may only contain one kind of timestamps
+                buffer.setRawTime(true);
+            }
+            buffer.setEventNumber(currentEventNumber());
+            buffer.addRaw(rawSimtime, time, value);
+            recorded();
+            return true;
+        }
+
+        private void checkRecord(double time) {
+            if (id == -1)
+                throw new IllegalStateException("Attempt to write to an output vector that's already closed");
+            if (time < lastTime)
+                throw new IllegalStateException("Vector data must be recorded in increasing timestamp order (t="+time+ "tprev="+lastTime+")");
+            lastTime = time;
+            if (buffer.isFull())
+                buffer.ensureCapacity(buffer.capacity() * 3 / 2 + 1); // only if limits were changed after creating the vector
+        }
+
+        private void recorded() {
+            ++nbuffered;
+            changed(this);
+        }
+
+        long getRawTime(int i) {
+            return buffer.isRawTime() ? buffer.rawTimes[i] : Math.round(buffer.times[i] * rawScale);
+        }
+
+        protected void writeBlock() {
+            SampleBuffer b = buffer;
+            if (b.isEmpty()) {
+                b.setRawTime(false);
+                return;
+            }
+            try {
+                for (int i=0; i<b.n; i++) {
+                    dataStatement.setLong(1, id);
+                    dataStatement.setLong(2, b.eventNumbers[i]);
+                    dataStatement.setLong(3, getRawTime(i));
+                    dataStatement.setDouble(4, b.values[i]);
+                    dataStatement.addBatch();
+                }
+
+                // update vector statistics
+                if (count == 0) {
+                    startEventNum = b.eventNumbers[0];
+                    startTimeRaw = getRawTime(0);
+                }
+                endEventNum = b.eventNumbers[b.n-1];
+                endTimeRaw = getRawTime(b.n-1);
+                count += b.n;
+                if (min > b.min || Double.isNaN(min))
+                    min = b.min;
+                if (max < b.max || Double.isNaN(max))
+                    max = b.max;
+                sum += b.sum;
+                sqrSum += b.sqrSum;
+
+                nbuffered -= b.n;
+                int n = b.n;
+                b.clear();
+                b.setRawTime(false);
+                inserted(n);
+            }
+            catch (SQLException e) {
+                throw sqlError(e);
+            }
+        }
+    }
+
+    public SqliteOutputVectorManager(String fileName) {
+        super(fileName);
+    }
+
+    public ISimulationTimeProvider getSimtimeProvider() {
+        return simtimeProvider;
+    }
+
+    public void setSimtimeProvider(ISimulationTimeProvider simtimeProvider) {
+        this.simtimeProvider = simtimeProvider;
+    }
+
+    public int getPerVectorBufferLimit() {
+        return perVectorLimit;
+    }
+
+    public void setPerVectorBufferLimit(int count) {
+        this.perVectorLimit = count;
+    }
+
+    public int getTotalBufferLimit() {
+        return totalLimit;
+    }
+
+    public void setTotalBufferLimit(int count) {
+        this.totalLimit = count;
+    }
+
+    public RecordingIntervals getRecordingIntervals() {
+        return recordingIntervals;
+    }
+
+    /**
+     * Restricts recording to the given simulation time intervals; null means
+     * no restriction. Affects vectors created afterwards.
+     */
+    public void setRecordingIntervals(RecordingIntervals intervals) {
+        this.recordingIntervals = intervals;
+    }
+
+    public double getWarmupPeriod() {
+        return warmupPeriod;
+    }
+
+    /**
+     * Sets the warm-up period: samples with timestamps before it are not
+     * recorded. Affects vectors created afterwards.
+     */
+    public void setWarmupPeriod(double warmupPeriod) {
+        this.warmupPeriod = warmupPeriod;
+    }
+
+    protected void open() {
+        rawScale = Math.pow(10, -simtimeScaleExponent);
+        openDatabase();
+        try {
+            vectorStatement = connection.prepareStatement("INSERT INTO vector (vectorId, runId, moduleName, vectorName) VALUES (?, ?, ?, ?)");
+            vectorAttrStatement = connection.prepareStatement("INSERT INTO vectorAttr (vectorId, attrName, attrValue) VALUES (?, ?, ?)");
+            dataStatement = connection.prepareStatement("INSERT INTO vectorData (vectorId, eventNumber, simtimeRaw, value) VALUES (?, ?, ?, ?)");
+            updateVectorStatement = connection.prepareStatement("UPDATE vector " +
+                    "SET startEventNum=?, endEventNum=?, startSimtimeRaw=?, endSimtimeRaw=?, " +
+                    "vectorCount=?, vectorMin=?, vectorMax=?, vectorSum=?, vectorSumSqr=? " +
+                    "WHERE vectorId=?");
+        }
+        catch (SQLException e) {
+            throw sqlError(e);
+        }
+    }
+
+    public void close() {
+        if (connection != null) {
+            for (OutputVector v : vectors) {
+                v.writeBlock();
+                updateVectorStatistics(v);
+            }
+            try {
+                commit();
+                Statement statement = connection.createStatement();
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS vectorData_idx ON vectorData (vectorId)");
+                statement.close();
+            }
+            catch (SQLException e) {
+                throw sqlError(e);
+            }
+            closeDatabase();
+        }
+        vectors.clear();
+    }
+
+    @Override
+    public void flush() {
+        for (OutputVector v : vectors)
+            v.writeBlock();
+        super.flush();
+    }
+
+    @Override
+    protected void executeBatches() throws SQLException {
+        vectorStatement.executeBatch();
+        vectorAttrStatement.executeBatch();
+        dataStatement.executeBatch();
+        updateVectorStatement.executeBatch();
+    }
+
+    @Override
+    protected void closeStatements() throws SQLException {
+        vectorStatement.close();
+        vectorAttrStatement.close();
+        dataStatement.close();
+        updateVectorStatement.close();
+    }
+
+    public IOutputVector createVector(String componentPath, String vectorName, Map<String, String> attributes) {
+        if (connection == null)
+            open();
+        OutputVector vector = new OutputVector(++lastId);
+        try {
+            vectorStatement.setLong(1, vector.id);
+            vectorStatement.setLong(2, RUN_ID);
+            vectorStatement.setString(3, componentPath);
+            vectorStatement.setString(4, vectorName);
+            vectorStatement.addBatch();
+            inserted(1);
+            insertAttributes(vectorAttrStatement, vector.id, attributes);
+        }
+        catch (SQLException e) {
+            throw sqlError(e);
+        }
+        vectors.add(vector);
+        return vector;
+    }
+
+    protected void updateVectorStatistics(OutputVector v) {
+        if (v.count == 0)
+            return;
+        try {
+            PreparedStatement s = updateVectorStatement;
+            s.setLong(1, v.startEventNum);
+            s.setLong(2, v.endEventNum);
+            s.setLong(3, v.startTimeRaw);
+            s.setLong(4, v.endTimeRaw);
+            s.setLong(5, v.count);
+            s.setDouble(6, v.min);
+            s.setDouble(7, v.max);
+            s.setDouble(8, v.sum);
+            s.setDouble(9, v.sqrSum);
+            s.setLong(10, v.id);
+            s.addBatch();
+            inserted(1);
+        }
+        catch (SQLException e) {
+            throw sqlError(e);
+        }
+    }
+
+    protected long currentEventNumber() {
+        return simtimeProvider == null ? -1 : simtimeProvider.getEventNumber();
+    }
+
+    protected void changed(OutputVector vector) {
+        if (vector.buffer.n >= perVectorLimit)
+            vector.writeBlock();
+        else if (nbuffered > totalLimit) {
+            for (OutputVector v : vectors)
+                v.writeBlock();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.omnetpp.scave.writers.impl;
+
+import org.omnetpp.scave.writers.IStatisticalSummary2;
+
+/**
+ * Streaming accumulator for basic (optionally weighted) statistics: count,
+ * mean, standard deviation, minimum and maximum. Values are not stored, so
+ * memory use is constant. This is the Java counterpart of the OMNeT++ class
+ * cStdDev, and can be recorded with IOutputScalarManager.recordStatistic().
+ *
+ * Accumulators with the same weightedness can be merged, e.g. to combine
+ * statistics collected by several partitions or threads.
+ *
+ * @author Andras
+ */
+public class StdDev implements IStatisticalSummary2 {
+    protected final boolean weighted;
+    protected long count = 0;
+    protected double minValue = Double.NaN;
+    protected double maxValue = Double.NaN;
+    protected double sumWeights = 0;
+    protected double sumWeightedValues = 0;
+    protected double sumSquaredWeights = 0;
+    protected double sumWeightedSquaredValues = 0;
+
+    public StdDev() {
+        this(false);
+    }
+
+    public StdDev(boolean weighted) {
+        this.weighted = weighted;
+    }
+
+    /**
+     * Collects one observation.
+     */
+    public void collect(double value) {
+        collect(value, 1);
+    }
+
+    /**
+     * Collects one observation with the given weight. Weights other than 1
+     * are only accepted by weighted accumulators. NaN values are ignored.
+     */
+    public void collect(double value, double weight) {
+        if (Double.isNaN(value))
+            return;
+        if (weight < 0 || Double.isNaN(weight))
+            throw new IllegalArgumentException("Negative or NaN weight: " + weight);
+        if (!weighted && weight != 1)
+            throw new IllegalArgumentException("Weights are only accepted in weighted mode");
+
+        count++;
+        if (minValue > value || Double.isNaN(minValue))
+            minValue = value;
+        if (maxValue < value || Double.isNaN(maxValue))
+            maxValue = value;
+        sumWeights += weight;
+        sumWeightedValues += weight * value;
+        sumSquaredWeights += weight * weight;
+        sumWeightedSquaredValues += weight * value * value;
+    }
+
+    /**
+     * Adds the observations of another accumulator to this one.
+     */
+    public void merge(StdDev other) {
+        if (other.weighted != weighted)
+            throw new IllegalArgumentException("Cannot merge weighted and unweighted statistics");
+        if (other.count == 0)
+            return;
+        count += other.count;
+        if (minValue > other.minValue || Double.isNaN(minValue))
+            minValue = other.minValue;
+        if (maxValue < other.maxValue || Double.isNaN(maxValue))
+            maxValue = other.maxValue;
+        sumWeights += other.sumWeights;
+        sumWeightedValues += other.sumWeightedValues;
+        sumSquaredWeights += other.sumSquaredWeights;
+        sumWeightedSquaredValues += other.sumWeightedSquaredValues;
+    }
+
+    /**
+     * Removes all observations.
+     */
+    public void clear() {
+        count = 0;
+        minValue = maxValue = Double.NaN;
+        sumWeights = sumWeightedValues = sumSquaredWeights = sumWeightedSquaredValues = 0;
+    }
+
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    public long getN() {
+        return count;
+    }
+
+    public double getMin() {
+        return minValue;
+    }
+
+    public double getMax() {
+        return maxValue;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sumWeightedValues / sumWeights;
+    }
+
+    public double getVariance() {
+        if (count == 0)
+            return Double.NaN;
+        if (count == 1)
+            return 0;
+        double var;
+        if (!weighted)
+            var = (sumWeightedSquaredValues - sumWeightedValues*sumWeightedValues/count) / (count-1);
+        else {
+            double denominator = sumWeights*sumWeights - sumSquaredWeights;
+            if (denominator == 0)
+                return 0;
+            var = (sumWeights*sumWeightedSquaredValues - sumWeightedValues*sumWeightedValues) / denominator;
+        }
+        return var < 0 ? 0 : var; // protect against rounding errors
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Returns the sum of values; NaN for weighted statistics.
+     */
+    public double getSum() {
+        return weighted || count == 0 ? Double.NaN : sumWeightedValues;
+    }
+
+    /**
+     * Returns the sum of squared values; NaN for weighted statistics.
+     */
+    public double getSqrSum() {
+        return weighted || count == 0 ? Double.NaN : sumWeightedSquaredValues;
+    }
+
+    public double getWeights() {
+        return sumWeights;
+    }
+
+    public double getWeightedSum() {
+        return sumWeightedValues;
+    }
+
+    public double getSqrSumWeights() {
+        return sumSquaredWeights;
+    }
+
+    public double getWeightedSqrSum() {
+        return sumWeightedSquaredValues;
+    }
+}
@@ -0,0 +1,123 @@
+package org.omnetpp.scave.writers.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+/**
+ * The checksum footer written at the end of vector files on close, and
+ * a routine to verify it. A missing footer means that the file was not
+ * closed properly (e.g. the simulation crashed), or it was truncated
+ * afterwards; a checksum mismatch means it was damaged.
+ *
+ * In text vector files, the footer is a comment line (ignored by readers):
+ * <pre>
+ *   # crc32 &lt;8 hex digits&gt; &lt;length&gt;
+ * </pre>
+ * In binary vector files it is a pseudo-block with vector id FOOTER_ID,
+ * followed by the length and the CRC32 (as an int) of the file contents
+ * before the footer. In both cases, the checksum covers the whole file
+ * up to the footer.
+ *
+ * @author Andras
+ */
+public class VectorFileFooter {
+    public enum Status {
+        /** the footer is present and the checksum matches */
+        OK,
+        /** no footer, i.e. the file was not closed properly, or was truncated */
+        MISSING,
+        /** the checksum or the length does not match */
+        MISMATCH
+    }
+
+    static final String TEXT_PREFIX = "# crc32 ";
+    static final int FOOTER_ID = -1;
+    static final int BINARY_FOOTER_SIZE = 4 + 8 + 4;
+
+    private static final int MAX_TEXT_FOOTER_LENGTH = 64;
+
+    /**
+     * Returns the footer line of a text vector file with the given contents.
+     */
+    static String textFooter(long length, long crc) {
+        return TEXT_PREFIX + String.format("%08x", crc) + " " + length;
+    }
+
+    /**
+     * Checks the footer and the checksum of the given vector file, which
+     * may be in the text or the binary format. This reads the whole file.
+     */
+    public static Status verify(String fileName) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(new File(fileName), "r");
+        try {
+            long fileLength = raf.length();
+            boolean binary = fileLength >= 4 && raf.readInt() == BinaryVectorFormat.MAGIC;
+            long length;
+            long expectedCrc;
+            if (binary) {
+                if (fileLength < BinaryVectorFormat.FILE_HEADER_SIZE + BINARY_FOOTER_SIZE)
+                    return Status.MISSING;
+                raf.seek(fileLength - BINARY_FOOTER_SIZE);
+                if (raf.readInt() != FOOTER_ID)
+                    return Status.MISSING;
+                length = raf.readLong();
+                expectedCrc = raf.readInt() & 0xFFFFFFFFL;
+                if (length != fileLength - BINARY_FOOTER_SIZE)
+                    return Status.MISMATCH;
+            }
+            else {
+                String footer = readLastLine(raf, fileLength);
+                if (footer == null || !footer.startsWith(TEXT_PREFIX))
+                    return Status.MISSING;
+                String[] fields = footer.substring(TEXT_PREFIX.length()).split(" ");
+                try {
+                    expectedCrc = Long.parseLong(fields[0], 16);
+                    length = Long.parseLong(fields[1]);
+                }
+                catch (RuntimeException e) {
+                    return Status.MISMATCH;
+                }
+                if (length != fileLength - footer.length() - 1)
+                    return Status.MISMATCH;
+            }
+
+            CRC32 crc = new CRC32();
+            byte[] buf = new byte[65536];
+            raf.seek(0);
+            for (long remaining = length; remaining > 0; ) {
+                int n = raf.read(buf, 0, (int)Math.min(buf.length, remaining));
+                if (n < 0)
+                    return Status.MISMATCH;
+                crc.update(buf, 0, n);
+                remaining -= n;
+            }
+            return crc.getValue() == expectedCrc ? Status.OK : Status.MISMATCH;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the last line of a text file without the line terminator,
+     * or null if the file does not end with a (reasonably short) line.
+     */
+    private static String readLastLine(RandomAccessFile raf, long fileLength) throws IOException {
+        int n = (int)Math.min(fileLength, MAX_TEXT_FOOTER_LENGTH);
+        if (n < 2)
+            return null;
+        byte[] tail = new byte[n];
+        raf.seek(fileLength - n);
+        raf.readFully(tail);
+        if (tail[n-1] != '\n')
+            return null;
+        int start = n - 2;
+        while (start >= 0 && tail[start] != '\n')
+            start--;
+        if (start < 0 && n < fileLength)
+            return null;
+        return new String(tail, start + 1, n - start - 2, "US-ASCII");
+    }
+}
@@ -0,0 +1,147 @@
+package org.omnetpp.scave.writers.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.IOutputVectorManager;
+import org.omnetpp.scave.writers.impl.BinaryFileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.BinaryFileOutputVectorManager.Encoding;
+import org.omnetpp.scave.writers.impl.BinaryVectorFileReader;
+import org.omnetpp.scave.writers.impl.FileOutputScalarManager;
+import org.omnetpp.scave.writers.impl.FileOutputVectorManager;
+
+/**
+ * Records the same data with FileOutputVectorManager and with
+ * BinaryFileOutputVectorManager (in all encodings), then reads back both
+ * and checks that they contain the same samples, and that the index of
+ * the binary file correctly describes its blocks. Both double and raw
+ * simulation time timestamps, and asynchronous writing are tested.
+ */
+public class BinaryVectorFileTest {
+    public static void main(String[] args) throws IOException {
+        String runID = FileOutputScalarManager.generateRunID("bintest");
+
+        List<IOutputVectorManager> managers = new ArrayList<IOutputVectorManager>();
+        managers.add(new FileOutputVectorManager("bintest-text.vec"));
+        managers.add(new BinaryFileOutputVectorManager("bintest-fixed.vec", Encoding.FIXED, false));
+        managers.add(new BinaryFileOutputVectorManager("bintest-varint.vec", Encoding.DELTA_VARINT, false));
+        managers.add(new BinaryFileOutputVectorManager("bintest-varintz.vec", Encoding.DELTA_VARINT, true));
+        BinaryFileOutputVectorManager asyncManager = new BinaryFileOutputVectorManager("bintest-async.vec");
+        asyncManager.setAsyncWriting(true);
+        asyncManager.setWriteQueueCapacity(4); // exercise back-pressure
+        managers.add(asyncManager);
+        for (IOutputVectorManager manager : managers)
+            manager.open(runID, null);
+
+        Random random = new Random(1);
+        List<IOutputVector[]> vectors = new ArrayList<IOutputVector[]>();
+        for (int i=0; i<100000; i++) {
+            if (vectors.isEmpty() || random.nextDouble() < 0.001) {
+                IOutputVector[] v = new IOutputVector[managers.size()];
+                for (int k=0; k<managers.size(); k++)
+                    v[k] = managers.get(k).createVector("top.node"+(i%10), "vec"+vectors.size(), null);
+                vectors.add(v);
+            }
+            int index = random.nextInt(vectors.size());
+            IOutputVector[] v = vectors.get(index);
+            double value = random.nextBoolean() ? random.nextInt(5) : random.nextGaussian();
+            for (IOutputVector vk : v) {
+                if (index % 3 == 0)
+                    vk.recordRaw(i * 1000000000L + 7, value); // default scale exponent is -12
+                else
+                    vk.record(i * 0.001, value);
+            }
+        }
+        for (IOutputVectorManager manager : managers)
+            manager.close();
+
+        Map<Integer, List<double[]>> expected = readTextVectorFile("bintest-text.vec");
+        for (String name : new String[] {"bintest-fixed", "bintest-varint", "bintest-varintz", "bintest-async"}) {
+            Map<Integer, List<double[]>> actual = readBinaryVectorFile(name + ".vec", name + ".vci");
+            if (!equal(expected, actual))
+                throw new AssertionError(name + ".vec: data differs from text output");
+            System.out.println(name + ".vec: OK");
+        }
+    }
+
+    static Map<Integer, List<double[]>> readTextVectorFile(String fileName) throws IOException {
+        Map<Integer, List<double[]>> result = new HashMap<Integer, List<double[]>>();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.length() == 0 || !Character.isDigit(line.charAt(0)))
+                continue;
+            String[] fields = line.split(" ");
+            // "id time value", or "id eventnumber time value" for ETV vectors
+            int n = fields.length;
+            add(result, Integer.parseInt(fields[0]), Double.parseDouble(fields[n-2]), Double.parseDouble(fields[n-1]));
+        }
+        in.close();
+        return result;
+    }
+
+    static Map<Integer, List<double[]>> readBinaryVectorFile(String fileName, String indexFileName) throws IOException {
+        Map<Integer, List<double[]>> result = new HashMap<Integer, List<double[]>>();
+        BinaryVectorFileReader reader = new BinaryVectorFileReader(fileName);
+        BufferedReader index = new BufferedReader(new FileReader(indexFileName));
+        String line;
+        long expectedOffset = -1;
+        while ((line = index.readLine()) != null) {
+            if (line.length() == 0 || !Character.isDigit(line.charAt(0)))
+                continue;
+            // id offset size startTime endTime count min max sum sqrsum, with
+            // startEventNum endEventNum after size for ETV vectors
+            String[] fields = line.split(" ");
+            int k = fields.length == 12 ? 2 : 0;
+            int id = Integer.parseInt(fields[0]);
+            long offset = Long.parseLong(fields[1]);
+            long size = Long.parseLong(fields[2]);
+            int count = Integer.parseInt(fields[5+k]);
+            if (expectedOffset != -1 && offset != expectedOffset)
+                throw new AssertionError("Gap or overlap between blocks at offset " + offset);
+            expectedOffset = offset + size;
+
+            BinaryVectorFileReader.Block block = reader.readBlock(offset);
+            if (block.vectorId != id || block.count != count)
+                throw new AssertionError("Block at offset " + offset + " does not match index");
+            double sum = 0;
+            for (int i=0; i<block.count; i++) {
+                add(result, id, block.times[i], block.values[i]);
+                sum += block.values[i];
+            }
+            if (count > 0 && Math.abs(sum - Double.parseDouble(fields[8+k])) > 1e-9 * Math.max(1, Math.abs(sum)))
+                throw new AssertionError("Block sum does not match index at offset " + offset);
+        }
+        index.close();
+        reader.close();
+        return result;
+    }
+
+    static void add(Map<Integer, List<double[]>> map, int id, double time, double value) {
+        List<double[]> list = map.get(id);
+        if (list == null)
+            map.put(id, list = new ArrayList<double[]>());
+        list.add(new double[] {time, value});
+    }
+
+    static boolean equal(Map<Integer, List<double[]>> a, Map<Integer, List<double[]>> b) {
+        if (!a.keySet().equals(b.keySet()))
+            return false;
+        for (Integer id : a.keySet()) {
+            List<double[]> la = a.get(id), lb = b.get(id);
+            if (la.size() != lb.size())
+                return false;
+            for (int i=0; i<la.size(); i++)
+                if (la.get(i)[0] != lb.get(i)[0] || la.get(i)[1] != lb.get(i)[1])
+                    return false;
+        }
+        return true;
+    }
+}
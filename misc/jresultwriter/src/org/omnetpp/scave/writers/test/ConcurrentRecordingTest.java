@@ -0,0 +1,104 @@
+package org.omnetpp.scave.writers.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.impl.ConcurrentFileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.FileOutputScalarManager;
+
+/**
+ * Stress test for ConcurrentFileOutputVectorManager: many threads record into
+ * their own vectors and into a few shared vectors at the same time, with small
+ * buffer limits so that blocks are written out frequently. The resulting file
+ * is checked for completeness and timestamp order.
+ */
+public class ConcurrentRecordingTest {
+    static final int NUM_THREADS = 16;
+    static final int VECTORS_PER_THREAD = 20;
+    static final int NUM_SHARED_VECTORS = 4;
+    static final int SAMPLES_PER_THREAD = 200000;
+
+    public static void main(String[] args) throws Exception {
+        final ConcurrentFileOutputVectorManager manager = new ConcurrentFileOutputVectorManager("concurrent.vec");
+        manager.setPerVectorBufferLimit(100);
+        manager.setTotalBufferLimit(5000);
+        manager.setWriteQueueCapacity(8);
+        manager.open(FileOutputScalarManager.generateRunID("concurrent"), null);
+
+        final IOutputVector[] sharedVectors = new IOutputVector[NUM_SHARED_VECTORS];
+        final long[] sharedClocks = new long[NUM_SHARED_VECTORS];
+        for (int k = 0; k < NUM_SHARED_VECTORS; k++)
+            sharedVectors[k] = manager.createVector("net", "shared" + k, null);
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int threadIndex = t;
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        IOutputVector[] ownVectors = new IOutputVector[VECTORS_PER_THREAD];
+                        for (int k = 0; k < VECTORS_PER_THREAD; k++)
+                            ownVectors[k] = manager.createVector("net.partition" + threadIndex, "vec" + k, null);
+                        for (int i = 0; i < SAMPLES_PER_THREAD; i++) {
+                            if (i % 10 == 0) {
+                                int k = (i / 10) % NUM_SHARED_VECTORS;
+                                IOutputVector v = sharedVectors[k];
+                                synchronized (v) {
+                                    v.record(sharedClocks[k]++, 1);
+                                }
+                            }
+                            else
+                                ownVectors[(i / 10) % VECTORS_PER_THREAD].record(i * 0.5, 1);
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        long startTime = System.nanoTime();
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+
+        // the monotonic timestamp check must still be in effect
+        try {
+            sharedVectors[0].record(0, 1);
+            throw new AssertionError("Out-of-order record() was not detected");
+        }
+        catch (IllegalStateException e) {
+            // OK
+        }
+
+        manager.close();
+        System.out.println("Recording took " + (System.nanoTime() - startTime) / 1000000 + "ms");
+
+        check("concurrent.vec");
+        System.out.println("concurrent.vec: OK");
+    }
+
+    static void check(String fileName) throws IOException {
+        Map<Integer, List<double[]>> data = BinaryVectorFileTest.readTextVectorFile(fileName);
+        if (data.size() != NUM_SHARED_VECTORS + NUM_THREADS * VECTORS_PER_THREAD)
+            throw new AssertionError("Wrong number of vectors: " + data.size());
+        long total = 0;
+        for (Integer id : data.keySet()) {
+            List<double[]> samples = data.get(id);
+            for (int i = 1; i < samples.size(); i++)
+                if (samples.get(i)[0] < samples.get(i-1)[0])
+                    throw new AssertionError("Vector " + id + ": timestamps out of order");
+            total += samples.size();
+        }
+        if (total != (long)NUM_THREADS * SAMPLES_PER_THREAD)
+            throw new AssertionError("Wrong number of samples: " + total);
+    }
+}
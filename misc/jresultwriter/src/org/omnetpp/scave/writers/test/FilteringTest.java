@@ -0,0 +1,107 @@
+package org.omnetpp.scave.writers.test;
+
+import java.util.List;
+import java.util.Map;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.impl.Decimation;
+import org.omnetpp.scave.writers.impl.FileOutputScalarManager;
+import org.omnetpp.scave.writers.impl.FileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.FilteringOutputVectorManager;
+import org.omnetpp.scave.writers.impl.NullOutputVector;
+
+/**
+ * Tests FilteringOutputVectorManager: include/exclude rules and the
+ * decimation modes, by checking the contents of the resulting vector file.
+ */
+public class FilteringTest {
+    static final int N = 1000;
+
+    public static void main(String[] args) throws Exception {
+        FileOutputVectorManager fileManager = new FileOutputVectorManager("filter.vec");
+        FilteringOutputVectorManager manager = new FilteringOutputVectorManager(fileManager);
+        manager.include("net.host[0].mac.*");
+        manager.exclude("**.mac.*");
+        manager.exclude("net.server.?ueue*");
+        manager.decimate("**.avg", Decimation.timeAverage(10));
+        manager.decimate("**.minmax", Decimation.minMax(10));
+        manager.decimate("net.host[*].**", Decimation.everyNth(3));
+        manager.open(FileOutputScalarManager.generateRunID("filter"), null);
+
+        // vector ids in the file are assigned in creation order, excluded vectors get none
+        IOutputVector plain = manager.createVector("net.server", "plain", null);              // id 1
+        IOutputVector mac0 = manager.createVector("net.host[0].mac", "txBits", null);         // id 2, every 3rd
+        IOutputVector mac1 = manager.createVector("net.host[1].mac", "txBits", null);         // excluded
+        IOutputVector queue = manager.createVector("net.server", "queueLength", null);        // excluded
+        IOutputVector avg = manager.createVector("net.server", "avg", null);                  // id 3
+        IOutputVector minmax = manager.createVector("net.server", "minmax", null);            // id 4
+        IOutputVector rawMinmax = manager.createVector("net.server.sub", "minmax", null);     // id 5
+        IOutputVector closedEarly = manager.createVector("net.server", "avg.closed", null);   // id 6, not decimated
+
+        if (mac1 != NullOutputVector.INSTANCE || queue != NullOutputVector.INSTANCE)
+            throw new AssertionError("Vectors not excluded");
+        if (manager.getNumExcludedVectors() != 2)
+            throw new AssertionError("Wrong number of excluded vectors");
+        if (mac1.record(1, 1))
+            throw new AssertionError("Excluded vector claims to have recorded data");
+
+        for (int i = 0; i < N; i++) {
+            double t = i * 0.1;
+            plain.record(t, i);
+            mac0.record(t, i);
+            mac1.record(t, i);
+            queue.record(t, i);
+            avg.record(t, i);
+            minmax.record(t, Math.sin(i));
+            rawMinmax.recordRaw(i * 100000000000L, Math.sin(i)); // 0.1s steps with the default exponent -12
+            closedEarly.record(t, i);
+        }
+        closedEarly.close();
+        manager.close();
+
+        Map<Integer, List<double[]>> data = BinaryVectorFileTest.readTextVectorFile("filter.vec");
+        if (data.size() != 6)
+            throw new AssertionError("Wrong number of vectors: " + data.keySet());
+        checkCount("plain", data.get(1), N);
+        checkCount("every 3rd", data.get(2), (N + 2) / 3);
+        for (int k = 0; k < data.get(2).size(); k++)
+            checkSample("every 3rd", data.get(2).get(k), k * 3 * 0.1, k * 3);
+
+        // averages over intervals of 100 samples: 0..99, 100..199, ...
+        List<double[]> averages = data.get(3);
+        checkCount("time average", averages, N / 100);
+        for (int k = 0; k < N / 100 - 1; k++)
+            checkSample("time average", averages.get(k), (k + 1) * 10, k * 100 + 49.5);
+        checkSample("time average (last)", averages.get(N / 100 - 1), (N - 1) * 0.1, N - 100 + 49.5);
+
+        checkMinMax("minmax", data.get(4));
+        checkMinMax("raw minmax", data.get(5));
+        checkCount("closed early", data.get(6), N);
+        System.out.println("filter.vec: OK");
+    }
+
+    static void checkMinMax(String what, List<double[]> samples) {
+        checkCount(what, samples, 2 * N / 100);
+        for (int k = 0; k < N / 100; k++) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            int minIndex = -1, maxIndex = -1;
+            for (int i = k * 100; i < (k + 1) * 100; i++) {
+                if (Math.sin(i) < min) { min = Math.sin(i); minIndex = i; }
+                if (Math.sin(i) > max) { max = Math.sin(i); maxIndex = i; }
+            }
+            int first = Math.min(minIndex, maxIndex), second = Math.max(minIndex, maxIndex);
+            checkSample(what, samples.get(2 * k), first * 0.1, Math.sin(first));
+            checkSample(what, samples.get(2 * k + 1), second * 0.1, Math.sin(second));
+        }
+    }
+
+    static void checkCount(String what, List<double[]> samples, int expected) {
+        if (samples == null || samples.size() != expected)
+            throw new AssertionError(what + ": expected " + expected + " samples, got " + (samples == null ? 0 : samples.size()));
+    }
+
+    static void checkSample(String what, double[] sample, double time, double value) {
+        if (Math.abs(sample[0] - time) > 1e-9 || Math.abs(sample[1] - value) > 1e-9)
+            throw new AssertionError(what + ": expected (" + time + ", " + value + "), got (" + sample[0] + ", " + sample[1] + ")");
+    }
+}
@@ -0,0 +1,181 @@
+package org.omnetpp.scave.writers.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.ISimulationTimeProvider;
+import org.omnetpp.scave.writers.impl.BinaryFileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.FileOutputScalarManager;
+import org.omnetpp.scave.writers.impl.FileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.MappedIndexWriter;
+import org.omnetpp.scave.writers.impl.VectorFileFooter;
+
+/**
+ * Records the same data with the index written directly and via a memory-mapped
+ * index file, and checks that the resulting index files are the same. Also
+ * tests recovering the index of a vector file that was not closed, and the
+ * checksum footer of vector files.
+ */
+public class MappedIndexTest {
+    static long eventNumber;
+
+    public static void main(String[] args) throws IOException {
+        String runID = FileOutputScalarManager.generateRunID("mapped");
+        FileOutputVectorManager direct = new FileOutputVectorManager("mapped-direct.vec");
+        FileOutputVectorManager mapped = new FileOutputVectorManager("mapped.vec");
+        mapped.setMappedIndex(true);
+        mapped.setMappedIndexChunkSize(4096);  // exercise growing the mapped region
+        BinaryFileOutputVectorManager binary = new BinaryFileOutputVectorManager("mapped-bin.vec");
+        binary.setMappedIndex(true);
+        FileOutputVectorManager[] managers = { direct, mapped, binary };
+        record(managers, runID, 1000, 200000, true);
+
+        List<String> expected = readLines("mapped-direct.vci");
+        List<String> actual = readLines("mapped.vci");
+        checkFileLine(actual.get(0), new File("mapped.vec").length());
+        check(expected.get(0).length() == actual.get(0).length(), "file line layout differs");
+        check(expected.subList(1, expected.size()).equals(actual.subList(1, actual.size())), "mapped.vci differs from mapped-direct.vci");
+        check(!new File("mapped.vcx").exists(), "mapped.vcx not deleted");
+        System.out.println("mapped.vci: OK");
+
+        Map<Integer, List<double[]>> data = BinaryVectorFileTest.readTextVectorFile("mapped.vec");
+        check(BinaryVectorFileTest.equal(data, BinaryVectorFileTest.readBinaryVectorFile("mapped-bin.vec", "mapped-bin.vci")), "mapped-bin.vec: data differs from text output");
+        System.out.println("mapped-bin.vci: OK");
+
+        for (String name : new String[] {"mapped-direct.vec", "mapped.vec", "mapped-bin.vec"}) {
+            check(VectorFileFooter.verify(name) == VectorFileFooter.Status.OK, name + ": bad footer");
+            String copy = "damaged-" + name;
+            copyFile(name, copy, new File(name).length() - 1);
+            check(VectorFileFooter.verify(copy) == VectorFileFooter.Status.MISSING, copy + ": truncation not detected");
+            copyFile(name, copy, new File(name).length());
+            flipByte(copy, new File(copy).length() / 2);
+            check(VectorFileFooter.verify(copy) == VectorFileFooter.Status.MISMATCH, copy + ": damage not detected");
+            new File(copy).delete();
+        }
+        System.out.println("footers: OK");
+
+        testRecovery(runID);
+        System.out.println("recovery: OK");
+    }
+
+    static void record(FileOutputVectorManager[] managers, String runID, int numVectors, int numSamples, boolean close) {
+        for (FileOutputVectorManager manager : managers) {
+            manager.setSimtimeProvider(new ISimulationTimeProvider() {
+                public Number getSimulationTime() {
+                    return 0;
+                }
+                public long getEventNumber() {
+                    return eventNumber;
+                }
+            });
+            manager.setRecordEventNumbers(true);
+            manager.setPerVectorBufferLimit(50);
+            manager.open(runID, null);
+        }
+
+        Random random = new Random(1);
+        List<IOutputVector[]> vectors = new ArrayList<IOutputVector[]>();
+        for (int i = 0; i < numSamples; i++) {
+            if (vectors.size() < numVectors && (vectors.isEmpty() || random.nextDouble() < 0.01)) {
+                IOutputVector[] v = new IOutputVector[managers.length];
+                for (int k = 0; k < managers.length; k++)
+                    v[k] = managers[k].createVector("net.host[" + vectors.size() + "]", "delay", null);
+                vectors.add(v);
+            }
+            eventNumber = i;
+            int index = random.nextInt(vectors.size());
+            double value = random.nextGaussian();
+            for (IOutputVector v : vectors.get(index)) {
+                if (index % 2 == 0)
+                    v.recordRaw(i * 1000000000L + 3, value);
+                else
+                    v.record(i * 0.001, value);
+            }
+        }
+        // write out the remaining data in a fixed order, so that the files can be compared
+        for (IOutputVector[] v : vectors)
+            for (IOutputVector vk : v)
+                vk.flush();
+        for (FileOutputVectorManager manager : managers) {
+            if (close)
+                manager.close();
+            else
+                manager.flush();
+        }
+    }
+
+    /**
+     * Flushes a manager without closing it, i.e. as if the simulation crashed,
+     * and recovers the text index from the mapped index file.
+     */
+    static void testRecovery(String runID) throws IOException {
+        FileOutputVectorManager direct = new FileOutputVectorManager("crashed-direct.vec");
+        FileOutputVectorManager mapped = new FileOutputVectorManager("crashed.vec");
+        mapped.setMappedIndex(true);
+        record(new FileOutputVectorManager[] { direct, mapped }, runID, 100, 20000, false);
+
+        check(VectorFileFooter.verify("crashed.vec") == VectorFileFooter.Status.MISSING, "footer in unclosed file");
+        long length = new File("crashed.vec").length();
+        MappedIndexWriter.writeTextIndex(new File("crashed.vcx"), new File("crashed.vci"), new File("crashed.vec"));
+        List<String> recovered = readLines("crashed.vci");
+        checkFileLine(recovered.get(0), length);
+
+        // the directly written index has no "file" line yet, but otherwise it must be the same
+        List<String> expected = readLines("crashed-direct.vci");
+        check(expected.subList(1, expected.size()).equals(recovered.subList(1, recovered.size())), "recovered index differs");
+        direct.close();
+        mapped.close();
+    }
+
+    static void checkFileLine(String line, long length) {
+        String[] fields = line.trim().split(" ");
+        check(fields[0].equals("file") && Long.parseLong(fields[1]) == length, "wrong file line: " + line);
+    }
+
+    static List<String> readLines(String fileName) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        String line;
+        while ((line = in.readLine()) != null)
+            lines.add(line);
+        in.close();
+        return lines;
+    }
+
+    static void copyFile(String from, String to, long length) throws IOException {
+        FileInputStream in = new FileInputStream(from);
+        FileOutputStream out = new FileOutputStream(to);
+        byte[] buf = new byte[65536];
+        while (length > 0) {
+            int n = in.read(buf, 0, (int)Math.min(buf.length, length));
+            out.write(buf, 0, n);
+            length -= n;
+        }
+        in.close();
+        out.close();
+    }
+
+    static void flipByte(String fileName, long offset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(fileName, "rw");
+        raf.seek(offset);
+        int b = raf.read();
+        raf.seek(offset);
+        raf.write(b ^ 0x01);
+        raf.close();
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,74 @@
+package org.omnetpp.scave.writers.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.IOutputVectorManager;
+import org.omnetpp.scave.writers.impl.BinaryFileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.FileOutputScalarManager;
+
+/**
+ * Measures the throughput (samples/sec) and the heap allocation per sample
+ * of the different IOutputVector.record() variants. The primitive variants
+ * should not allocate in steady state; the boxed <code>record(Number, double)</code>
+ * variant only allocates if the JIT cannot eliminate the boxing. The binary
+ * vector file format is used, so that formatting output does not dominate
+ * the results.
+ *
+ * Run with a warmed-up JVM, e.g. <code>java -Xmx256m RecordingBenchmark [numSamples]</code>.
+ */
+public class RecordingBenchmark {
+    static final int NUM_VECTORS = 100;
+
+    interface Recorder {
+        void record(IOutputVector v, long i, double value);
+    }
+
+    public static void main(String[] args) {
+        int numSamples = args.length > 0 ? Integer.parseInt(args[0]) : 20000000;
+
+        Recorder boxed = new Recorder() {
+            public void record(IOutputVector v, long i, double value) { v.record(Double.valueOf(i * 0.001), value); }
+        };
+        Recorder primitive = new Recorder() {
+            public void record(IOutputVector v, long i, double value) { v.record(i * 0.001, value); }
+        };
+        Recorder raw = new Recorder() {
+            public void record(IOutputVector v, long i, double value) { v.recordRaw(i * 1000000000L, value); }
+        };
+
+        for (int round = 0; round < 2; round++) { // first round is warm-up
+            run("record(Number,double)", boxed, numSamples, round == 1);
+            run("record(double,double)", primitive, numSamples, round == 1);
+            run("recordRaw(long,double)", raw, numSamples, round == 1);
+        }
+    }
+
+    static void run(String label, Recorder recorder, int numSamples, boolean report) {
+        IOutputVectorManager manager = new BinaryFileOutputVectorManager("benchmark.vec");
+        manager.open(FileOutputScalarManager.generateRunID("benchmark"), (Map<String,String>)null);
+        IOutputVector[] vectors = new IOutputVector[NUM_VECTORS];
+        for (int k = 0; k < NUM_VECTORS; k++)
+            vectors[k] = manager.createVector("net.node" + k, "value", null);
+
+        long allocatedBefore = getAllocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numSamples; i++)
+            recorder.record(vectors[i % NUM_VECTORS], i, i & 0xFF);
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        manager.close();
+
+        if (report)
+            System.out.println(String.format("%-24s %12.0f samples/sec %8.2f bytes/sample",
+                    label, numSamples / (elapsed / 1e9), allocated / (double)numSamples));
+    }
+
+    static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+}
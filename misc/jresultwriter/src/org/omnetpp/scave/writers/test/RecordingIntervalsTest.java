@@ -0,0 +1,170 @@
+package org.omnetpp.scave.writers.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.ISimulationTimeProvider;
+import org.omnetpp.scave.writers.impl.BinaryFileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.BinaryVectorFileReader;
+import org.omnetpp.scave.writers.impl.ConcurrentFileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.FileOutputScalarManager;
+import org.omnetpp.scave.writers.impl.FileOutputVectorManager;
+import org.omnetpp.scave.writers.impl.RecordingIntervals;
+
+/**
+ * Tests recording intervals, the warm-up period and event number ("ETV")
+ * recording, with text (also written concurrently) and binary vector files.
+ */
+public class RecordingIntervalsTest {
+    static final int N = 400;  // samples at t = 0, 0.1, ..., 39.9
+    static final int EXPECTED = 50 + 100;  // in [5,10) and [20,30)
+
+    static double now;
+    static long eventNumber;
+
+    public static void main(String[] args) throws IOException {
+        testIntervals();
+        record(new FileOutputVectorManager("etv.vec"));
+        checkTextFile("etv.vec");
+        checkIndexFile("etv.vci");
+        System.out.println("etv.vec: OK");
+
+        record(new ConcurrentFileOutputVectorManager("etv-concurrent.vec"));
+        checkTextFile("etv-concurrent.vec");
+        checkIndexFile("etv-concurrent.vci");
+        System.out.println("etv-concurrent.vec: OK");
+
+        record(new BinaryFileOutputVectorManager("etv-bin.vec"));
+        checkIndexFile("etv-bin.vci");
+        checkBinaryFile("etv-bin.vec", "etv-bin.vci");
+        System.out.println("etv-bin.vec: OK");
+    }
+
+    static void testIntervals() {
+        RecordingIntervals intervals = RecordingIntervals.parse("200..300, ..10s, 250..350, 500..");
+        check(intervals.toString().equals("..10.0, 200.0..350.0, 500.0.."), "parse/merge: " + intervals);
+        check(intervals.contains(-1) && intervals.contains(9.99) && !intervals.contains(10), "first interval");
+        check(!intervals.contains(199) && intervals.contains(200) && intervals.contains(349) && !intervals.contains(350), "merged interval");
+        check(intervals.contains(1e100), "open-ended interval");
+        RecordingIntervals warm = intervals.withWarmupPeriod(250);
+        check(warm.toString().equals("250.0..350.0, 500.0.."), "warm-up: " + warm);
+        check(new RecordingIntervals().add(1, 2).add(2, 3).getNumIntervals() == 1, "adjacent intervals");
+        try {
+            RecordingIntervals.parse("10");
+            throw new AssertionError("Invalid interval accepted");
+        }
+        catch (IllegalArgumentException e) {
+            // OK
+        }
+        System.out.println("RecordingIntervals: OK");
+    }
+
+    static void record(FileOutputVectorManager manager) {
+        manager.setSimtimeProvider(new ISimulationTimeProvider() {
+            public Number getSimulationTime() {
+                return now;
+            }
+            public long getEventNumber() {
+                return eventNumber;
+            }
+        });
+        manager.setPerVectorBufferLimit(32);
+        manager.setRecordEventNumbers(true);
+        manager.setRecordingIntervals(RecordingIntervals.parse("..10, 20..30"));
+        manager.setWarmupPeriod(5);
+        manager.open(FileOutputScalarManager.generateRunID("etv"), null);
+
+        IOutputVector v1 = manager.createVector("net.host", "delay", null);
+        IOutputVector v2 = manager.createVector("net.host", "rawDelay", null);
+        IOutputVector v3 = manager.createVector("net.host", "implicitTime", null);
+        int recorded = 0;
+        for (int i = 0; i < N; i++) {
+            now = i / 10.0;
+            eventNumber = 3 * i;
+            boolean r1 = v1.record(now, i);
+            boolean r2 = v2.recordRaw(i * 100000000000L, i);
+            boolean r3 = v3.record(i);
+            check(r1 == r2 && r2 == r3, "record() return values differ at t=" + now);
+            if (r1)
+                recorded++;
+        }
+        check(recorded == EXPECTED, "record() returned true " + recorded + " times");
+        manager.close();
+    }
+
+    static void checkTextFile(String fileName) throws IOException {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("vector "))
+                check(line.endsWith(" ETV"), "not an ETV vector: " + line);
+            if (line.length() == 0 || !Character.isDigit(line.charAt(0)))
+                continue;
+            String[] fields = line.split(" ");
+            check(fields.length == 4, "not an ETV data line: " + line);
+            long e = Long.parseLong(fields[1]);
+            double t = Double.parseDouble(fields[2]);
+            double value = Double.parseDouble(fields[3]);
+            checkSample(e, t, value);
+            Integer count = counts.get(fields[0]);
+            counts.put(fields[0], count == null ? 1 : count + 1);
+        }
+        in.close();
+        check(counts.size() == 3, "wrong number of vectors: " + counts);
+        for (int count : counts.values())
+            check(count == EXPECTED, "wrong number of samples: " + counts);
+    }
+
+    static void checkIndexFile(String fileName) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        String line;
+        int total = 0;
+        while ((line = in.readLine()) != null) {
+            if (line.length() == 0 || !Character.isDigit(line.charAt(0)))
+                continue;
+            // id offset size startEventNum endEventNum startTime endTime count min max sum sqrsum
+            String[] fields = line.split(" ");
+            check(fields.length == 12, "not an ETV index line: " + line);
+            checkSample(Long.parseLong(fields[3]), Double.parseDouble(fields[5]), Double.parseDouble(fields[8]));
+            checkSample(Long.parseLong(fields[4]), Double.parseDouble(fields[6]), Double.parseDouble(fields[9]));
+            total += Integer.parseInt(fields[7]);
+        }
+        in.close();
+        check(total == 3 * EXPECTED, "wrong total count in index: " + total);
+    }
+
+    static void checkBinaryFile(String fileName, String indexFileName) throws IOException {
+        BinaryVectorFileReader reader = new BinaryVectorFileReader(fileName);
+        BinaryVectorFileReader.Block block;
+        int total = 0;
+        while ((block = reader.readNextBlock()) != null) {
+            check(block.eventNumbers != null, "block without event numbers");
+            for (int i = 0; i < block.count; i++)
+                checkSample(block.eventNumbers[i], block.times[i], block.values[i]);
+            total += block.count;
+        }
+        reader.close();
+        check(total == 3 * EXPECTED, "wrong number of samples in binary file: " + total);
+    }
+
+    /**
+     * Sample i was recorded at t=i/10 in event 3*i with value i, and only
+     * within [5,10) and [20,30).
+     */
+    static void checkSample(long eventNumber, double time, double value) {
+        int i = (int)value;
+        check(eventNumber == 3 * i, "wrong event number " + eventNumber + " for sample " + i);
+        check(Math.abs(time - i / 10.0) < 1e-9, "wrong time " + time + " for sample " + i);
+        check((time >= 5 && time < 10) || (time >= 20 && time < 30), "sample recorded outside intervals: t=" + time);
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
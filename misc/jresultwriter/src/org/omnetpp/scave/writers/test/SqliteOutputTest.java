@@ -0,0 +1,107 @@
+package org.omnetpp.scave.writers.test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.omnetpp.scave.writers.IOutputVector;
+import org.omnetpp.scave.writers.ISimulationTimeProvider;
+import org.omnetpp.scave.writers.impl.FileOutputScalarManager;
+import org.omnetpp.scave.writers.impl.SqliteOutputFileManager;
+import org.omnetpp.scave.writers.impl.SqliteOutputScalarManager;
+import org.omnetpp.scave.writers.impl.SqliteOutputVectorManager;
+
+/**
+ * Writes scalars and vectors into SQLite result files, and checks the
+ * contents via plain SQL queries. Needs an SQLite JDBC driver on the
+ * class path; the test is skipped if there is none.
+ */
+public class SqliteOutputTest {
+    static final int NUM_VECTORS = 10;
+    static final int NUM_SAMPLES = 100000;
+
+    static long eventNumber = 0;
+    static double now = 0;
+
+    public static void main(String[] args) throws Exception {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        }
+        catch (ClassNotFoundException e) {
+            System.out.println("SQLite JDBC driver not found on the class path, skipping test");
+            return;
+        }
+
+        String runID = FileOutputScalarManager.generateRunID("sqlitetest");
+        Map<String, String> attrs = new HashMap<String, String>();
+        attrs.put("unit", "s");
+
+        SqliteOutputScalarManager scalarManager = new SqliteOutputScalarManager("sqlitetest.sca");
+        scalarManager.setCommitFrequency(100);
+        scalarManager.open(runID, attrs);
+        for (int i = 0; i < 1000; i++)
+            scalarManager.recordScalar("top.node" + i, "pk-sent", i, i % 2 == 0 ? attrs : null);
+        scalarManager.recordScalar("top", "nan", Double.NaN, null);
+        scalarManager.close();
+
+        SqliteOutputVectorManager vectorManager = new SqliteOutputVectorManager("sqlitetest.vec");
+        vectorManager.setPerVectorBufferLimit(100);
+        vectorManager.setTotalBufferLimit(500);
+        vectorManager.setSimtimeProvider(new ISimulationTimeProvider() {
+            public Number getSimulationTime() {
+                return now;
+            }
+            public long getEventNumber() {
+                return eventNumber;
+            }
+        });
+        vectorManager.open(runID, null);
+        List<IOutputVector> vectors = new ArrayList<IOutputVector>();
+        for (int k = 0; k < NUM_VECTORS; k++)
+            vectors.add(vectorManager.createVector("top.node" + k, "eed", attrs));
+        long rawTime = 0;
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            eventNumber = i;
+            now = i * 0.001;
+            rawTime = i * 1000000000L;
+            if (i % 1000 < 500)
+                vectors.get(i % NUM_VECTORS).record(i);
+            else
+                vectors.get(i % NUM_VECTORS).recordRaw(rawTime, i);
+        }
+        vectors.get(0).close();
+        vectorManager.close();
+
+        Connection connection = DriverManager.getConnection(SqliteOutputFileManager.JDBC_URL_PREFIX + "sqlitetest.sca");
+        check(connection, "SELECT COUNT(*) FROM scalar", 1001);
+        check(connection, "SELECT COUNT(*) FROM scalarAttr", 500);
+        check(connection, "SELECT SUM(scalarValue) FROM scalar", 999*1000/2);
+        connection.close();
+
+        connection = DriverManager.getConnection(SqliteOutputFileManager.JDBC_URL_PREFIX + "sqlitetest.vec");
+        check(connection, "SELECT COUNT(*) FROM vector", NUM_VECTORS);
+        check(connection, "SELECT COUNT(*) FROM vectorData", NUM_SAMPLES);
+        check(connection, "SELECT SUM(vectorCount) FROM vector", NUM_SAMPLES);
+        check(connection, "SELECT COUNT(*) FROM vectorData WHERE simtimeRaw != eventNumber * 1000000000", 0);
+        check(connection, "SELECT MAX(endSimtimeRaw) FROM vector", (NUM_SAMPLES-1) * 1000000000L);
+        check(connection, "SELECT simtimeExp FROM run", -12);
+        connection.close();
+        System.out.println("sqlitetest.sca, sqlitetest.vec: OK");
+    }
+
+    static void check(Connection connection, String query, long expected) throws SQLException {
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(query);
+        resultSet.next();
+        long actual = resultSet.getLong(1);
+        statement.close();
+        if (actual != expected)
+            throw new AssertionError(query + ": expected " + expected + ", got " + actual);
+    }
+}
@@ -0,0 +1,209 @@
+package org.omnetpp.scave.writers.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.omnetpp.scave.writers.IHistogramSummary;
+import org.omnetpp.scave.writers.impl.FileOutputScalarManager;
+import org.omnetpp.scave.writers.impl.Histogram;
+import org.omnetpp.scave.writers.impl.QuantileSketch;
+
+/**
+ * Checks the quantiles estimated by QuantileSketch and Histogram against
+ * exact quantiles computed from the sorted samples, for several
+ * distributions. Also checks merging, weighted statistics, the bound on
+ * memory use, and the recorded "bin" lines.
+ */
+public class StatisticsAccuracyTest {
+    static final int N = 1000000;
+    static final double[] QUANTILES = {0, 0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1};
+    static final double ACCURACY = 0.01;
+
+    interface Distribution {
+        double next(Random random);
+    }
+
+    public static void main(String[] args) throws IOException {
+        check("uniform", new Distribution() {
+            public double next(Random random) { return random.nextDouble(); }
+        });
+        check("exponential", new Distribution() {
+            public double next(Random random) { return -Math.log(1 - random.nextDouble()); }
+        });
+        check("lognormal", new Distribution() {
+            public double next(Random random) { return Math.exp(2 * random.nextGaussian()); }
+        });
+        check("normal", new Distribution() {
+            public double next(Random random) { return 10 * random.nextGaussian(); }
+        });
+        check("discrete", new Distribution() {
+            public double next(Random random) { return random.nextInt(5) - 2; }
+        });
+        checkWeighted();
+        checkCollapsing();
+        checkRecording();
+    }
+
+    static void check(String name, Distribution distribution) {
+        Random random = new Random(1);
+        double[] samples = new double[N];
+        QuantileSketch sketch = new QuantileSketch();
+        Histogram histogram = new Histogram();
+        QuantileSketch[] sketchParts = new QuantileSketch[4];
+        Histogram[] histogramParts = new Histogram[4];
+        for (int k = 0; k < 4; k++) {
+            sketchParts[k] = new QuantileSketch();
+            histogramParts[k] = new Histogram();
+        }
+        double sum = 0;
+        for (int i = 0; i < N; i++) {
+            double value = distribution.next(random);
+            samples[i] = value;
+            sum += value;
+            sketch.collect(value);
+            histogram.collect(value);
+            sketchParts[i % 4].collect(value);
+            histogramParts[i % 4].collect(value);
+        }
+        QuantileSketch mergedSketch = new QuantileSketch();
+        Histogram mergedHistogram = new Histogram();
+        for (int k = 0; k < 4; k++) {
+            mergedSketch.merge(sketchParts[k]);
+            mergedHistogram.merge(histogramParts[k]);
+        }
+
+        double mean = sum / N;
+        double sqrDiffSum = 0;
+        for (double value : samples)
+            sqrDiffSum += (value - mean) * (value - mean);
+        double stddev = Math.sqrt(sqrDiffSum / (N - 1));
+        assertClose(name + " mean", mean, sketch.getMean(), 1e-9 * Math.max(1, Math.abs(mean)));
+        assertClose(name + " stddev", stddev, sketch.getStandardDeviation(), 1e-6 * stddev);
+        assertEquals(name + " merged count", N, mergedSketch.getN());
+
+        if (sketch.getNumBuckets() > 2 * 2048)
+            throw new AssertionError(name + ": too many sketch buckets: " + sketch.getNumBuckets());
+        if (histogram.getNumCells() > histogram.getMaxNumBins() || mergedHistogram.getNumCells() > mergedHistogram.getMaxNumBins())
+            throw new AssertionError(name + ": too many histogram bins");
+
+        Arrays.sort(samples);
+        double binSize = histogram.getCellBoundary(1) - histogram.getCellBoundary(0);
+        double mergedBinSize = mergedHistogram.getCellBoundary(1) - mergedHistogram.getCellBoundary(0);
+        double maxSketchError = 0, maxHistogramError = 0;
+        for (double q : QUANTILES) {
+            double exact = samples[(int)(q * (N - 1))];
+            double estimate = sketch.getQuantile(q);
+            assertClose(name + " sketch q=" + q, exact, estimate, ACCURACY * Math.abs(exact) + 1e-12);
+            assertEquals(name + " merged sketch q=" + q, estimate, mergedSketch.getQuantile(q));
+            assertClose(name + " histogram q=" + q, exact, histogram.getQuantile(q), binSize);
+            assertClose(name + " merged histogram q=" + q, exact, mergedHistogram.getQuantile(q), 2 * mergedBinSize);
+            if (exact != 0)
+                maxSketchError = Math.max(maxSketchError, Math.abs(estimate - exact) / Math.abs(exact));
+            maxHistogramError = Math.max(maxHistogramError, Math.abs(histogram.getQuantile(q) - exact));
+        }
+        System.out.printf("%s: OK (sketch: %d buckets, max rel. error %.5f; histogram: %d bins of %g, max abs. error %g)%n",
+                name, sketch.getNumBuckets(), maxSketchError, histogram.getNumCells(), binSize, maxHistogramError);
+    }
+
+    static void checkWeighted() {
+        // value v with weight v, for v = 1..1000
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 2048, true);
+        Histogram histogram = new Histogram(60, true);
+        double totalWeight = 0;
+        for (int v = 1; v <= 1000; v++) {
+            sketch.collect(v, v);
+            histogram.collect(v, v);
+            totalWeight += v;
+        }
+        assertClose("weighted mean", 667.0, sketch.getMean(), 1e-9);
+        for (double q : QUANTILES) {
+            double rank = q * totalWeight;
+            double cumulated = 0;
+            int exact = 1000;
+            for (int v = 1; v <= 1000; v++) {
+                cumulated += v;
+                if (cumulated > rank) {
+                    exact = v;
+                    break;
+                }
+            }
+            assertClose("weighted sketch q=" + q, exact, sketch.getQuantile(q), ACCURACY * exact);
+            assertClose("weighted histogram q=" + q, exact, histogram.getQuantile(q), histogram.getCellBoundary(1) - histogram.getCellBoundary(0));
+        }
+        System.out.println("weighted: OK");
+    }
+
+    static void checkCollapsing() {
+        // values spanning 30 orders of magnitude into a sketch with only 200 buckets
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 200, false);
+        Random random = new Random(2);
+        double[] samples = new double[N];
+        for (int i = 0; i < N; i++) {
+            samples[i] = Math.pow(10, 30 * random.nextDouble() - 15);
+            sketch.collect(samples[i]);
+        }
+        if (sketch.getNumBuckets() > 200)
+            throw new AssertionError("collapsing: too many buckets: " + sketch.getNumBuckets());
+        Arrays.sort(samples);
+        for (double q : new double[] {0.999, 0.9999, 1}) {
+            double exact = samples[(int)(q * (N - 1))];
+            assertClose("collapsing q=" + q, exact, sketch.getQuantile(q), ACCURACY * exact);
+        }
+        System.out.println("collapsing: OK");
+    }
+
+    static void checkRecording() throws IOException {
+        QuantileSketch sketch = new QuantileSketch();
+        Histogram histogram = new Histogram();
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            double value = random.nextGaussian();
+            sketch.collect(value);
+            histogram.collect(value);
+        }
+        sketch.collect(Double.POSITIVE_INFINITY);
+        histogram.collect(Double.NEGATIVE_INFINITY);
+
+        FileOutputScalarManager manager = new FileOutputScalarManager("stattest.sca");
+        manager.open(FileOutputScalarManager.generateRunID("stattest"), null);
+        manager.recordStatistic("top", "sketch", sketch, null);
+        manager.recordStatistic("top", "histogram", histogram, null);
+        manager.close();
+
+        int numBinLines = 0;
+        double binSum = 0;
+        BufferedReader reader = new BufferedReader(new FileReader("stattest.sca"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("bin ")) {
+                String[] fields = line.split(" ");
+                if (fields.length != 3)
+                    throw new AssertionError("Malformed bin line: " + line);
+                numBinLines++;
+                binSum += Double.parseDouble(fields[2]);
+            }
+        }
+        reader.close();
+        int expectedLines = count(sketch) + count(histogram);
+        assertEquals("bin lines", expectedLines, numBinLines);
+        assertClose("bin sum", 2 * 10001, binSum, 1e-6);
+        System.out.println("stattest.sca: OK");
+    }
+
+    static int count(IHistogramSummary histogram) {
+        return histogram.getNumCells() + 2;
+    }
+
+    static void assertClose(String what, double expected, double actual, double tolerance) {
+        if (!(Math.abs(expected - actual) <= tolerance))
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual + " (tolerance " + tolerance + ")");
+    }
+
+    static void assertEquals(String what, double expected, double actual) {
+        if (expected != actual)
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+    }
+}
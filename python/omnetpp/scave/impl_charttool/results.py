@@ -126,11 +126,35 @@ def get_scalars(filter_expression="", include_attrs=False, include_runattrs=Fals
     df = _pivot_results(df, include_attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries, merge_module_and_name)
     return df
 
-def get_vectors(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf):
+def _downsample(vectime, vecvalue, target_resolution, start_time, end_time):
+    # keeps the first, last, min and max points of each interval, like the IDE does
+    if vectime is None or len(vectime) == 0:
+        return vectime, vecvalue
+    start = start_time if np.isfinite(start_time) else vectime[0]
+    end = end_time if np.isfinite(end_time) else vectime[-1]
+    width = (end - start) / target_resolution
+    intervals = np.clip(np.floor((vectime - start) / width), 0, target_resolution - 1) if width > 0 else np.zeros(len(vectime))
+    keep = set()
+    for i in np.unique(intervals):
+        indices = np.nonzero(intervals == i)[0]
+        values = vecvalue[indices]
+        keep.update([indices[0], indices[-1], indices[np.argmin(values)], indices[np.argmax(values)]])
+    keep = sorted(keep)
+    return vectime[keep], vecvalue[keep]
+
+def get_vectors(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf, target_resolution=None):
     df = _get_results(filter_expression, ['.vec'], 'v', '--start-time', str(start_time), '--end-time', str(end_time))
     df = _pivot_results(df, include_attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries, merge_module_and_name)
+    if target_resolution and "vectime" in df:
+        downsampled = [_downsample(t, v, target_resolution, start_time, end_time) for t, v in zip(df["vectime"], df["vecvalue"])]
+        df["vectime"] = [t for t, v in downsampled]
+        df["vecvalue"] = [v for t, v in downsampled]
     return df
 
+def get_vectors_in_batches(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf, target_resolution=None):
+    # the data is loaded all at once here
+    yield get_vectors(**locals())
+
 def get_statistics(filter_expression, include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False):
     df = _get_results(filter_expression, ['.sca'], 't')
     df = _pivot_results(df, include_attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries, merge_module_and_name)
@@ -141,6 +165,58 @@ def get_histograms(filter_expression, include_attrs=False, include_runattrs=Fals
     df = _pivot_results(df, include_attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries, merge_module_and_name)
     return df
 
+def _aggregate(values, aggregate):
+    n = len(values)
+    if aggregate == "count":
+        return n
+    if aggregate == "sum":
+        return np.sum(values)
+    if n == 0 or (aggregate == "stddev" and n < 2):
+        return np.nan
+    return {"mean": np.mean, "min": np.min, "max": np.max, "stddev": lambda v: np.std(v, ddof=1)}[aggregate](values)
+
+def _aggregate_buckets(times, values, aggregates, time_bucket, origin):
+    # same bucketing as AggregatingResultsPickler in the IDE
+    indices = np.floor((times - origin) / time_bucket).astype(np.int64)
+    first = indices.min() if len(indices) else 0
+    num_buckets = indices.max() - first + 1 if len(indices) else 0
+    indices -= first
+    buckets = [values[indices == i] for i in range(num_buckets)]
+    vectime = origin + (first + np.arange(num_buckets)) * time_bucket
+    return [vectime] + [np.array([_aggregate(b, a) for b in buckets], dtype=float) for a in aggregates]
+
+def _get_aggregated_results(df, group_by, aggregates, time_bucket=None, start_time=-inf):
+    # this computes the same as the IDE, but only after all data is loaded
+    columns = [field.split(":", 1)[-1] for field in group_by]
+    for c in columns:
+        if c not in df:
+            df[c] = None
+    groups = df.groupby(columns, sort=False, dropna=False) if columns else [((), df)]
+    origin = 0 if np.isinf(start_time) else start_time
+
+    rows = list()
+    for key, group in groups:
+        key = list(key) if isinstance(key, tuple) else [key]
+        if "vecvalue" not in group:
+            rows.append(key + [_aggregate(group["value"].to_numpy(dtype=float), a) for a in aggregates])
+        else:
+            values = np.concatenate(list(group["vecvalue"])) if len(group) else np.array([])
+            if time_bucket:
+                times = np.concatenate(list(group["vectime"])) if len(group) else np.array([])
+                rows.append(key + _aggregate_buckets(times, values, aggregates, time_bucket, origin))
+            else:
+                rows.append(key + [_aggregate(values, a) for a in aggregates])
+
+    return pd.DataFrame(rows, columns=columns + (["vectime"] if time_bucket else []) + list(aggregates))
+
+def get_aggregated_scalars(filter_expression, group_by=["name"], aggregates=["count", "mean", "stddev", "min", "max"]):
+    df = get_scalars(filter_expression, include_attrs=True, include_runattrs=True, include_itervars=True)
+    return _get_aggregated_results(df, group_by, aggregates)
+
+def get_aggregated_vectors(filter_expression, group_by=["name"], aggregates=["count", "mean", "stddev", "min", "max"], time_bucket=None, start_time=-inf, end_time=inf):
+    df = get_vectors(filter_expression, include_attrs=True, include_runattrs=True, include_itervars=True, start_time=start_time, end_time=end_time)
+    return _get_aggregated_results(df, group_by, aggregates, time_bucket, start_time)
+
 
 def _get_metadata(filter_expression="", include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False):
     # TODO: factor out common parts of the ones below here
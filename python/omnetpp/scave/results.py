@@ -197,7 +197,7 @@ def get_parameters(filter_expression="", include_attrs=False, include_runattrs=F
     return impl.get_parameters(**locals())
 
 
-def get_vectors(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf):
+def get_vectors(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf, target_resolution=None):
     """
     Returns a filtered list of vector results.
 
@@ -213,6 +213,11 @@ def get_vectors(filter_expression="", include_attrs=False, include_runattrs=Fals
       is prepended to the value in the `name` column, joined by a period, in every row.
     - **start_time**, **end_time** *(double)*: Optional time limits to trim the data of vector type results.
       The unit is seconds, both the `vectime` and `vecvalue` arrays will be affected, the interval is left-closed, right-open.
+    - **target_resolution** *(int)*: Optional. When given, the vectors are downsampled for plotting:
+      the time range (`start_time` to `end_time`, or the extent of each vector) is divided into this
+      many equal intervals (for example, the width of the plot in pixels), and only the first, last,
+      minimum and maximum points of each interval are kept. This preserves the envelope of the data.
+      To see the details when zooming in, query the data again with a narrower time range.
 
     # Columns of the returned DataFrame
 
@@ -225,6 +230,23 @@ def get_vectors(filter_expression="", include_attrs=False, include_runattrs=Fals
     return impl.get_vectors(**locals())
 
 
+def get_vectors_in_batches(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf, target_resolution=None):
+    """
+    Like `get_vectors()`, but makes the vectors available as their data is being
+    loaded, so that they can be processed (e.g. plotted) while the rest is still
+    loading. Returns a generator that yields the same DataFrame several times: first
+    with only the metadata of all vectors filled in (`vectime` and `vecvalue` are
+    `None` in every row), then each time the data of a batch of vectors has arrived.
+    The vectors are loaded in row order, and once the generator is exhausted, the
+    DataFrame is the same as the one `get_vectors()` returns.
+
+    The parameters and the columns of the DataFrame are the same as with `get_vectors()`.
+    Outside the IDE, the data is loaded all at once, and the generator yields only the
+    complete DataFrame.
+    """
+    return impl.get_vectors_in_batches(**locals())
+
+
 def get_statistics(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False):
     """
     Returns a filtered list of statistics results.
@@ -279,6 +301,63 @@ def get_histograms(filter_expression="", include_attrs=False, include_runattrs=F
     return impl.get_histograms(**locals())
 
 
+def get_aggregated_scalars(filter_expression, group_by=["name"], aggregates=["count", "mean", "stddev", "min", "max"]):
+    """
+    Returns aggregates of the values of the scalars matching the filter, grouped
+    by the given fields. The aggregation is done where the results are loaded,
+    so only the aggregated values are transferred, not the scalars themselves.
+
+    # Parameters
+
+    - **filter_expression** *(string)*: The filter expression to select the desired scalars.
+      Example: `name =~ "channelUtilization*"`
+    - **group_by** *(list of strings)*: The fields whose values form the groups: `runID`, `module`,
+      `name`, and `runattr:<name>`, `itervar:<name>` or `attr:<name>`. Example: `["name", "itervar:numHosts"]`
+    - **aggregates** *(list of strings)*: The aggregate functions to compute for each group:
+      any of `count`, `sum`, `mean`, `stddev` (sample standard deviation), `min` and `max`.
+
+    # Columns of the returned DataFrame
+
+    - One column for each field in `group_by`, named after the field (without the `runattr:`,
+      `itervar:` or `attr:` prefix)
+    - One column for each function in `aggregates`, named after the function
+    """
+    return impl.get_aggregated_scalars(**locals())
+
+
+def get_aggregated_vectors(filter_expression, group_by=["name"], aggregates=["count", "mean", "stddev", "min", "max"], time_bucket=None, start_time=-inf, end_time=inf):
+    """
+    Returns aggregates of the values of the vectors matching the filter, grouped
+    by the given fields, optionally resampled into time buckets. The aggregation
+    is done where the results are loaded, so only the aggregated values are
+    transferred, not the vector data.
+
+    # Parameters
+
+    - **filter_expression** *(string)*: The filter expression to select the desired vectors.
+      Example: `name =~ "queueLength:vector"`
+    - **group_by** *(list of strings)*: The fields whose values form the groups: `runID`, `module`,
+      `name`, and `runattr:<name>`, `itervar:<name>` or `attr:<name>`. Example: `["runID"]`
+    - **aggregates** *(list of strings)*: The aggregate functions to compute for each group:
+      any of `count`, `sum`, `mean`, `stddev` (sample standard deviation), `min` and `max`.
+    - **time_bucket** *(double)*: Optional. If given, the values are aggregated separately in
+      consecutive time intervals of this length (in seconds), instead of over the whole vectors.
+      The intervals start at `start_time` if it is given, and at 0 otherwise.
+    - **start_time**, **end_time** *(double)*: Optional time limits to trim the data of the vectors
+      before aggregating it. The interval is left-closed, right-open.
+
+    # Columns of the returned DataFrame
+
+    - One column for each field in `group_by`, named after the field (without the `runattr:`,
+      `itervar:` or `attr:` prefix)
+    - **vectime** *(np.array)*: Only if `time_bucket` is given: the start times of the intervals
+    - One column for each function in `aggregates`, named after the function. If `time_bucket` is
+      given, these are np.arrays with one element per interval; `count` is 0 and the others are
+      NaN in intervals without values.
+    """
+    return impl.get_aggregated_vectors(**locals())
+
+
 def get_config_entries(filter_expression, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False):
     """
     Returns a filtered list of config entries. That is: parameter assignment patterns; and global and per-object config options.
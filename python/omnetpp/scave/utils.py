@@ -494,20 +494,39 @@ def plot_bars(df, props, names=None):
 
 
 def plot_vectors(df, props):
+    plot_vectors_in_batches([df], props)
+
+def plot_vectors_in_batches(batches, props):
+    """
+    Like `plot_vectors()`, but takes the DataFrames yielded by `results.get_vectors_in_batches()`,
+    and plots the vectors as their data arrives, so that on native charts the lines appear
+    while the rest of the data is still loading. The legend labels are determined from the
+    metadata of all vectors, so they are the same as with `plot_vectors()`. Returns the last
+    (complete) DataFrame.
+    """
     p = plot if chart.is_native_chart() else plt
 
     def get_prop(k):
         return props[k] if k in props else None
 
     column = "name" if get_prop("legend_labels") == "result names" else "title"
-    title_col, legend_cols = extract_label_columns(df, column)
 
-    for i, t in enumerate(df.itertuples(index=False)):
-        style = _make_line_args(props, t, df)
-        p.plot(t.vectime, t.vecvalue, label=make_legend_label(legend_cols, t), **style)
+    df = None
+    num_plotted = 0
+    for df in batches:
+        if num_plotted == 0:
+            title_col, legend_cols = extract_label_columns(df, column)
+
+        for t in df.iloc[num_plotted:].itertuples(index=False):
+            if t.vectime is None:  # not loaded yet
+                break
+            style = _make_line_args(props, t, df)
+            p.plot(t.vectime, t.vecvalue, label=make_legend_label(legend_cols, t), **style)
+            num_plotted += 1
 
     title = get_prop("title") or make_chart_title(df, title_col, legend_cols)
     set_plot_title(title)
+    return df
 
 def plot_histograms(df, props):
     p = plot if chart.is_native_chart() else plt
@@ -16,6 +16,11 @@
 
 #include <clocale>
 #include <cstdlib>
+#include <cstring>
+#ifdef WITH_ZLIB
+#include <zlib.h>
+#endif
+#include "common/commonutil.h"
 #include "common/exception.h"
 #include "common/linetokenizer.h"
 #include "common/stringutil.h"
@@ -33,6 +38,111 @@ namespace scave {
 
 #define VECTOR_FILE_VERSION 2
 
+// binary vector file format, see BinaryVectorFormat in misc/jresultwriter
+#define BINARY_FORMAT_VERSION       1
+#define BINARY_FILE_HEADER_SIZE     (4 + 4 + 1 + 1 + 1)
+#define BINARY_BLOCK_HEADER_SIZE    (4 + 4 + 1 + 4 + 4)
+
+#define ENCODING_FIXED           0
+#define ENCODING_DELTA_VARINT    1
+
+#define COMPRESSION_NONE       0
+#define COMPRESSION_DEFLATE    1
+
+#define TIME_DOUBLE      0
+#define TIME_RAW         1
+#define EVENT_NUMBERS    0x10  // flag in the timeFormat byte
+
+namespace {
+
+/**
+ * Reads big-endian integers and varints from a byte buffer.
+ */
+class BinaryDecoder
+{
+    private:
+        const unsigned char *p;
+        const unsigned char *end;
+
+        void check(size_t n) { if ((size_t)(end - p) < n) throw opp_runtime_error("Truncated data"); }
+
+    public:
+        BinaryDecoder(const unsigned char *data, size_t length) : p(data), end(data + length) {}
+
+        bool atEnd() const { return p == end; }
+
+        uint8_t getByte() { check(1); return *p++; }
+
+        uint32_t getInt() {
+            check(4);
+            uint32_t v = 0;
+            for (int i = 0; i < 4; i++)
+                v = (v << 8) | *p++;
+            return v;
+        }
+
+        uint64_t getLong() {
+            check(8);
+            uint64_t v = 0;
+            for (int i = 0; i < 8; i++)
+                v = (v << 8) | *p++;
+            return v;
+        }
+
+        uint64_t getVarLong() {
+            uint64_t v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                uint8_t b = getByte();
+                v |= (uint64_t)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw opp_runtime_error("Malformed varint");
+        }
+};
+
+inline uint64_t unzigzag(uint64_t v)
+{
+    return (v >> 1) ^ (~(v & 1) + 1);
+}
+
+inline uint64_t reverseBits(uint64_t v)
+{
+    uint64_t result = 0;
+    for (int i = 0; i < 64; i++, v >>= 1)
+        result = (result << 1) | (v & 1);
+    return result;
+}
+
+inline double bitsToDouble(uint64_t bits)
+{
+    double d;
+    memcpy(&d, &bits, sizeof(d));
+    return d;
+}
+
+/**
+ * Converts a double timestamp to simulation time the same way as it would be
+ * parsed from a text vector file, i.e. via the shortest decimal representation
+ * that converts back to the same double.
+ */
+simultime_t doubleToSimtime(double d)
+{
+    char buf[32];
+    setlocale(LC_NUMERIC, "C");
+    for (int precision = 15; precision <= 17; precision++) {
+        snprintf(buf, sizeof(buf), "%.*g", precision, d);
+        if (strtod(buf, nullptr) == d)
+            break;
+    }
+    simultime_t t;
+    if (!parseSimtime(buf, t))
+        throw opp_runtime_error("Malformed simulation time");
+    return t;
+}
+
+}  // namespace
+
 //=========================================================================
 
 IndexedVectorFileReader::IndexedVectorFileReader(const char *filename, bool includeEventNumbers, AdapterLambdaType adapterLambda)
@@ -41,6 +151,17 @@ IndexedVectorFileReader::IndexedVectorFileReader(const char *filename, bool incl
     std::string ifname = IndexFileUtils::getIndexFileName(filename);
     IndexFileReader indexReader(ifname.c_str());
     index = indexReader.readAll();
+
+    isBinary = IndexFileUtils::isBinaryVectorFile(filename);
+    if (isBinary) {
+        try {
+            readBinaryFileHeader();
+        }
+        catch (std::exception&) {
+            delete index;
+            throw;
+        }
+    }
 }
 
 IndexedVectorFileReader::~IndexedVectorFileReader()
@@ -61,8 +182,41 @@ IndexedVectorFileReader::~IndexedVectorFileReader()
                                         msg, fname.c_str(), (int64_t)block.startOffset, line);\
             }
 
+void IndexedVectorFileReader::readBinaryFileHeader()
+{
+    unsigned char buffer[BINARY_FILE_HEADER_SIZE];
+    FILE *f = fopen(fname.c_str(), "rb");
+    if (!f)
+        throw opp_runtime_error("Cannot open vector file '%s'", fname.c_str());
+    size_t numRead = fread(buffer, 1, sizeof(buffer), f);
+    fclose(f);
+    if (numRead != sizeof(buffer))
+        throw opp_runtime_error("Invalid binary vector file '%s': truncated file header", fname.c_str());
+
+    BinaryDecoder decoder(buffer, sizeof(buffer));
+    decoder.getInt();  // magic, already checked
+    int version = decoder.getInt();
+    binaryEncoding = decoder.getByte();
+    binaryCompression = decoder.getByte();
+    simtimeScaleExponent = (int8_t)decoder.getByte();
+
+    if (version != BINARY_FORMAT_VERSION)
+        throw opp_runtime_error("Binary vector file '%s' has unsupported format version %d", fname.c_str(), version);
+    if (binaryEncoding != ENCODING_FIXED && binaryEncoding != ENCODING_DELTA_VARINT)
+        throw opp_runtime_error("Binary vector file '%s' has unknown sample encoding %d", fname.c_str(), binaryEncoding);
+    if (binaryCompression != COMPRESSION_NONE && binaryCompression != COMPRESSION_DEFLATE)
+        throw opp_runtime_error("Binary vector file '%s' has unknown compression %d", fname.c_str(), binaryCompression);
+#ifndef WITH_ZLIB
+    if (binaryCompression == COMPRESSION_DEFLATE)
+        throw opp_runtime_error("Cannot read compressed binary vector file '%s': OMNeT++ was built without zlib", fname.c_str());
+#endif
+}
+
 Entries IndexedVectorFileReader::loadBlock(const Block& block, std::function<bool(const VectorDatum&)> filter)
 {
+    if (isBinary)
+        return loadBinaryBlock(block, filter);
+
     std::vector<VectorDatum> result;
 
     VectorInfo *vector = index->getVectorById(block.vectorId);
@@ -113,6 +267,100 @@ Entries IndexedVectorFileReader::loadBlock(const Block& block, std::function<boo
     return result;
 }
 
+#define BINARY_CHECK(cond, msg, block) \
+            if (!(cond))\
+            {\
+                throw opp_runtime_error("Invalid binary vector file: %s, file %s, block offset %" PRId64, \
+                                        msg, fname.c_str(), (int64_t)block.startOffset);\
+            }
+
+Entries IndexedVectorFileReader::loadBinaryBlock(const Block& block, std::function<bool(const VectorDatum&)> filter)
+{
+    // read the whole block at once; its size in the index includes the block header
+    BINARY_CHECK(block.size >= BINARY_BLOCK_HEADER_SIZE, "Block is too short", block);
+    std::vector<unsigned char> buffer(block.size);
+    FILE *f = fopen(fname.c_str(), "rb");
+    if (!f)
+        throw opp_runtime_error("Cannot open vector file '%s'", fname.c_str());
+    bool ok = opp_fseek(f, block.startOffset, SEEK_SET) == 0 && fread(buffer.data(), 1, buffer.size(), f) == buffer.size();
+    fclose(f);
+    BINARY_CHECK(ok, "Unexpected end of file", block);
+
+    BinaryDecoder header(buffer.data(), BINARY_BLOCK_HEADER_SIZE);
+    int vectorId = header.getInt();
+    long count = header.getInt();
+    int timeFormat = header.getByte();
+    size_t rawLength = header.getInt();
+    size_t payloadLength = header.getInt();
+
+    BINARY_CHECK(vectorId == block.vectorId, "Unexpected vector id", block);
+    BINARY_CHECK(count == block.getCount(), "Sample count differs from the index", block);
+    BINARY_CHECK(BINARY_BLOCK_HEADER_SIZE + payloadLength == (size_t)block.size, "Block size differs from the index", block);
+    BINARY_CHECK((timeFormat & ~EVENT_NUMBERS) == TIME_DOUBLE || (timeFormat & ~EVENT_NUMBERS) == TIME_RAW, "Unknown time format", block);
+
+    const unsigned char *payload = buffer.data() + BINARY_BLOCK_HEADER_SIZE;
+    std::vector<unsigned char> inflated;
+    if (binaryCompression == COMPRESSION_DEFLATE) {
+#ifdef WITH_ZLIB
+        inflated.resize(rawLength);
+        uLongf inflatedLength = rawLength;
+        int err = uncompress(inflated.data(), &inflatedLength, payload, payloadLength);
+        BINARY_CHECK(err == Z_OK && inflatedLength == rawLength, "Corrupt compressed data", block);
+        payload = inflated.data();
+        payloadLength = rawLength;
+#endif
+    }
+    else {
+        BINARY_CHECK(rawLength == payloadLength, "Inconsistent block lengths", block);
+    }
+
+    bool rawTime = (timeFormat & ~EVENT_NUMBERS) == TIME_RAW;
+    bool hasEventNumbers = (timeFormat & EVENT_NUMBERS) != 0;
+    bool fixed = binaryEncoding == ENCODING_FIXED;
+
+    std::vector<VectorDatum> result;
+    result.reserve(count);
+
+    // delta encoding starts afresh in each block
+    BinaryDecoder decoder(payload, payloadLength);
+    uint64_t prevTimeBits = 0, prevValueBits = 0, prevEventNumber = 0;
+    try {
+        for (long i = 0; i < count; ++i) {
+            VectorDatum entry;
+            entry.serial = block.startSerial+i;
+
+            if (hasEventNumbers) {
+                uint64_t eventNumber = fixed ? decoder.getLong() : prevEventNumber + unzigzag(decoder.getVarLong());
+                if (includeEventNumbers)
+                    entry.eventNumber = (eventnumber_t)eventNumber;
+                prevEventNumber = eventNumber;
+            }
+
+            uint64_t timeBits, valueBits;
+            if (fixed) {
+                timeBits = decoder.getLong();
+                valueBits = decoder.getLong();
+            }
+            else {
+                timeBits = prevTimeBits + unzigzag(decoder.getVarLong());
+                valueBits = prevValueBits ^ reverseBits(decoder.getVarLong());
+            }
+            entry.simtime = rawTime ? BigDecimal((int64_t)timeBits, simtimeScaleExponent) : doubleToSimtime(bitsToDouble(timeBits));
+            entry.value = bitsToDouble(valueBits);
+            prevTimeBits = timeBits;
+            prevValueBits = valueBits;
+
+            if (!filter || filter(entry))
+                result.push_back(entry);
+        }
+    }
+    catch (opp_runtime_error& e) {
+        BINARY_CHECK(false, e.what(), block);
+    }
+    BINARY_CHECK(decoder.atEnd(), "Unexpected data at the end of the block", block);
+    return result;
+}
+
 VectorDatum *IndexedVectorFileReader::getEntryBySerial(int vectorId, int64_t serial)
 {
     VectorInfo *vector = index->getVectorById(vectorId);
@@ -178,10 +426,22 @@ VectorDatum *IndexedVectorFileReader::getEntryByEventnum(int vectorId, eventnumb
     }
 }
 
+const IndexedVectorFileReader::Block *IndexedVectorFileReader::getNextBlockOfVector(const Block *block, std::map<int,size_t>& blockPositions)
+{
+    // the blocks of each vector are in file order in VectorInfo::blocks too
+    const std::vector<Block *>& blocks = index->getVectorById(block->vectorId)->blocks;
+    size_t pos = blockPositions[block->vectorId]++;
+    Assert(pos < blocks.size() && blocks[pos] == block);
+    return pos + 1 < blocks.size() ? blocks[pos + 1] : nullptr;
+}
+
 void IndexedVectorFileReader::collectEntries(const std::set<int>& vectorIds)
 {
+    std::map<int,size_t> blockPositions;
     for (auto block : index->getBlocks()) {
         if (contains(vectorIds, block->vectorId)) {
+            if (blockSkipper && blockSkipper(*block, getNextBlockOfVector(block, blockPositions)))
+                continue;
             std::vector<VectorDatum> data = loadBlock(*block);
             adapterLambda(block->vectorId, data);
         }
@@ -190,13 +450,17 @@ void IndexedVectorFileReader::collectEntries(const std::set<int>& vectorIds)
 
 void IndexedVectorFileReader::collectEntriesInSimtimeInterval(const std::set<int>& vectorIds, simultime_t startTime, simultime_t endTime)
 {
+    std::map<int,size_t> blockPositions;
     for (const auto &block : index->getBlocks()) {
         if (contains(vectorIds, block->vectorId)) {
+            const Block *nextBlock = blockSkipper ? getNextBlockOfVector(block, blockPositions) : nullptr;
             if (block->endTime < startTime || block->startTime >= endTime) {
                 // no-op, block is completely out of filtered range
             }
             else if (block->startTime >= startTime && block->endTime < endTime) {
                 // no need for filter, completely in range
+                if (blockSkipper && blockSkipper(*block, nextBlock))
+                    continue;
                 std::vector<VectorDatum> data = loadBlock(*block);
                 adapterLambda(block->vectorId, data);
             }
@@ -37,24 +37,50 @@ namespace scave {
 /**
  * Vector file reader with random access.
  * Each instance reads one vector from a vector file.
+ * Besides text vector files, it can also read the binary vector files
+ * written by BinaryFileOutputVectorManager in misc/jresultwriter; those
+ * can only be read via their index file, as written by the recorder.
  */
 class SCAVE_API IndexedVectorFileReader : public IVectorDataReader
 {
     using VectorInfo = VectorFileIndex::VectorInfo;
     using Block = VectorFileIndex::Block;
 
+    public:
+        /**
+         * See setBlockSkipper(). The second argument is the next block of the same
+         * vector, or nullptr if the first one is the last block of the vector.
+         */
+        using BlockSkipperType = std::function<bool(const VectorFileIndex::Block& /* block */, const VectorFileIndex::Block * /* nextBlock */)>;
+
     private:
 
         AdapterLambdaType adapterLambda;
+        BlockSkipperType blockSkipper;
 
         std::string fname;  // file name of the vector file
         VectorFileIndex *index; // index of the vector file, loaded fully into the memory
         bool includeEventNumbers;
 
+        // binary vector files: settings from the file header
+        bool isBinary = false;
+        int binaryEncoding = 0;
+        int binaryCompression = 0;
+        int simtimeScaleExponent = 0;
+
     protected:
+        /** reads the header of a binary vector file */
+        void readBinaryFileHeader();
+
         /** reads a block from the vector file */
         Entries loadBlock(const Block& block, std::function<bool(const VectorDatum&)> filter = nullptr);
 
+        /** reads a block from a binary vector file */
+        Entries loadBinaryBlock(const Block& block, std::function<bool(const VectorDatum&)> filter);
+
+        /** returns the block that follows the given one in its vector, or nullptr; blocks must be visited in file order */
+        const Block *getNextBlockOfVector(const Block *block, std::map<int,size_t>& blockPositions);
+
     public:
         explicit IndexedVectorFileReader(const char* filename, bool includeEventNumbers, Adapter *adapter) :
             IndexedVectorFileReader(filename, includeEventNumbers, [adapter](int vectorId, const std::vector<VectorDatum>& data) { adapter->process(vectorId, data); })
@@ -69,6 +95,14 @@ class SCAVE_API IndexedVectorFileReader : public IVectorDataReader
         VectorDatum *getEntryBySimtime(int vectorId, simultime_t simtime, bool after) override;
         VectorDatum *getEntryByEventnum(int vectorId, eventnumber_t eventNum, bool after) override;
 
+        /**
+         * Sets a function that is called before loading a block that is entirely
+         * within the requested range in the collectEntries...() methods. If it
+         * returns true, the block is not loaded, and not passed to the adapter.
+         * This allows skipping blocks based on their statistics in the index.
+         */
+        void setBlockSkipper(BlockSkipperType skipper) { blockSkipper = skipper; }
+
         void collectEntries(const std::set<int>& vectorIds) override;
         void collectEntriesInSimtimeInterval(const std::set<int>& vectorIds, simultime_t startTime, simultime_t endTime) override;
         void collectEntriesInEventnumInterval(const std::set<int>& vectorIds, eventnumber_t startEventNum, eventnumber_t endEventNum) override;
@@ -16,6 +16,7 @@
 
 #include <sys/stat.h>
 #include <cstdint>
+#include <cstring>
 #include <algorithm>
 #include <clocale>
 #include "common/exception.h"
@@ -33,6 +34,8 @@ using namespace omnetpp::common;
 namespace omnetpp {
 namespace scave {
 
+#define BINARY_VECTOR_FILE_MAGIC  "OVEC"
+
 static bool isFileReadable(const char *filename)
 {
     FILE *f = fopen(filename, "r");
@@ -58,10 +61,24 @@ bool IndexFileUtils::isExistingVectorFile(const char *filename)
     char buf[20] = "";
     fgets(buf, 20, f);
     fclose(f);
+    if (memcmp(buf, BINARY_VECTOR_FILE_MAGIC, 4) == 0)
+        return true;
     std::string trimmed = opp_trim(buf);
     return trimmed == "version 2" || trimmed == "version 3";
 }
 
+bool IndexFileUtils::isBinaryVectorFile(const char *filename)
+{
+    FILE *f = fopen(filename, "rb");
+    if (!f)
+        return false;
+
+    char buf[4];
+    bool isBinary = fread(buf, 1, 4, f) == 4 && memcmp(buf, BINARY_VECTOR_FILE_MAGIC, 4) == 0;
+    fclose(f);
+    return isBinary;
+}
+
 std::string IndexFileUtils::getVectorFileName(const char *filename)
 {
     std::string vectorFileName(filename);
@@ -37,6 +37,11 @@ class SCAVE_API IndexFileUtils
     public:
         static bool isIndexFile(const char *indexFileName);
         static bool isExistingVectorFile(const char *vectorFileName);
+        /**
+         * Returns true if the file is a binary vector file, as written by
+         * BinaryFileOutputVectorManager in misc/jresultwriter.
+         */
+        static bool isBinaryVectorFile(const char *vectorFileName);
         static std::string getIndexFileName(const char *vectorFileName);
         static std::string getVectorFileName(const char *indexFileName);
         /**
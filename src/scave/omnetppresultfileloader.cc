@@ -382,7 +382,11 @@ ResultFile *OmnetppResultFileLoader::loadFile(const char *displayName, const cha
             LOG << "file " << fileSystemFileName << " has no valid index, ";
             switch (indexingOption) {
             case ResultFileManager::SKIP_IF_NO_INDEX: LOG << "skipping\n"; return nullptr;
-            case ResultFileManager::ALLOW_LOADING_WITHOUT_INDEX: LOG << "scanning vec file instead of vci\n"; break;
+            case ResultFileManager::ALLOW_LOADING_WITHOUT_INDEX:
+                if (IndexFileUtils::isBinaryVectorFile(fileSystemFileName))
+                    throw ResultFileFormatException("Binary vector file has no up-to-date index file, and cannot be loaded without it", fileSystemFileName, -1);
+                LOG << "scanning vec file instead of vci\n";
+                break;
             case ResultFileManager::ALLOW_INDEXING: {
                 LOG << "reindexing..." << std::flush;
                 VectorFileIndexer().generateIndex(fileSystemFileName, nullptr);
@@ -59,6 +59,10 @@ static string createTempFileName(const string& baseFileName)
 // TODO: adjacent blocks are merged
 void VectorFileIndexer::generateIndex(const char *vectorFileName, IProgressMonitor *monitor)
 {
+    // the vector declarations of binary vector files are only stored in the index file written by the recorder
+    if (IndexFileUtils::isBinaryVectorFile(vectorFileName))
+        throw ResultFileFormatException("Vector file indexer: Binary vector files cannot be indexed, their index file must be the one written along with them", vectorFileName, -1);
+
     FileReader reader(vectorFileName);
     LineTokenizer tokenizer(1024);
     VectorFileIndex index;
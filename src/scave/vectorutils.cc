@@ -18,6 +18,9 @@
 #include "vectorutils.h"
 
 #include <set>
+#include <map>
+#include <algorithm>
+#include <cmath>
 #include "common/opp_ctype.h"
 #include "common/commonutil.h"
 #include "common/stringutil.h"
@@ -123,6 +126,177 @@ vector<XYArray *> readVectorsIntoArrays(ResultFileManager *manager, const IDList
     return result;
 }
 
+namespace {
+
+/**
+ * Keeps the first, last, minimum and maximum points of each time interval of a vector.
+ */
+class IntervalDownsampler
+{
+    struct Point {
+        long index; // order of adding; VectorDatum::serial cannot be used, as it is -1 for SQLite files
+        double x, y;
+    };
+
+    struct Interval {
+        bool empty = true;
+        Point first, last, min, max;
+    };
+
+    double startTime;
+    double width;
+    double limit; // points at or after this are not in the range
+    std::vector<Interval> intervals;
+    long numAdded = 0;
+
+  public:
+    IntervalDownsampler(double startTime, double endTime, double limit, int numIntervals)
+        : startTime(startTime), width((endTime - startTime) / numIntervals), limit(limit), intervals(numIntervals) {}
+
+    int getIntervalIndex(double t) const {
+        if (!(width > 0))
+            return 0;
+        double i = std::floor((t - startTime) / width);
+        return i < 0 ? 0 : i >= intervals.size() ? intervals.size() - 1 : (int)i;
+    }
+
+    void add(const VectorDatum& datum) {
+        Point p { numAdded++, datum.simtime.dbl(), datum.value };
+        Interval& interval = intervals[getIntervalIndex(p.x)];
+        if (interval.empty) {
+            interval.first = interval.last = interval.min = interval.max = p;
+            interval.empty = false;
+        }
+        else {
+            interval.last = p;
+            if (p.y < interval.min.y)
+                interval.min = p;
+            if (p.y > interval.max.y)
+                interval.max = p;
+        }
+    }
+
+    /**
+     * A block can be skipped if it is within an interval that already has a first
+     * point, it cannot contain the last point of the interval (i.e. the next block
+     * also starts in the same interval), and its values are within the current
+     * minimum and maximum of the interval.
+     */
+    bool canSkip(const VectorFileIndex::Block& block, const VectorFileIndex::Block *nextBlock) const {
+        if (nextBlock == nullptr || !(nextBlock->startTime.dbl() < limit))
+            return false;
+        int i = getIntervalIndex(block.startTime.dbl());
+        const Interval& interval = intervals[i];
+        return !interval.empty &&
+                getIntervalIndex(block.endTime.dbl()) == i &&
+                getIntervalIndex(nextBlock->startTime.dbl()) == i &&
+                block.stat.getMin() >= interval.min.y &&
+                block.stat.getMax() <= interval.max.y;
+    }
+
+    void fillArray(XYArray *array) const {
+        for (const Interval& interval : intervals) {
+            if (interval.empty)
+                continue;
+            Point points[] = { interval.first, interval.min, interval.max, interval.last };
+            std::sort(points, points + 4, [](const Point& a, const Point& b) { return a.index < b.index; });
+            for (int i = 0; i < 4; i++) {
+                if (i > 0 && points[i].index == points[i-1].index)
+                    continue;
+                array->xs.push_back(points[i].x);
+                array->ys.push_back(points[i].y);
+            }
+        }
+    }
+};
+
+} // namespace
+
+vector<XYArray *> readDownsampledVectorsIntoArrays(ResultFileManager *manager, const IDList& idlist, int numIntervals, double simTimeStart, double simTimeEnd, const InterruptedFlag& interrupted)
+{
+    if (numIntervals <= 0)
+        throw opp_runtime_error("readDownsampledVectorsIntoArrays: the number of intervals must be positive");
+
+    std::vector<XYArray *> result;
+    for (int i = 0; i < idlist.size(); ++i)
+        result.push_back(new XYArray());
+
+    ResultFileList *filteredVectorFileList = manager->getUniqueFiles(idlist);
+
+    try {
+        for (int i = 0; i < (int)filteredVectorFileList->size(); i++) {
+            ResultFile *resultFile = filteredVectorFileList->at(i);
+            RunList runs = manager->getRunsInFile(resultFile);
+            if (runs.size() > 1)
+                throw opp_runtime_error("More than one run in vector file.");
+
+            IDList idsInFile = manager->filterIDList(idlist, runs[0], nullptr, nullptr);
+
+            std::set<int> vectorIdsInFile;
+            std::map<int, int> vectorIdToIndex;
+            std::map<int, IntervalDownsampler> downsamplers;
+
+            for (ID id : idsInFile) {
+                const VectorResult& vector = manager->getVector(id);
+                int vectorID = vector.getVectorId();
+                vectorIdsInFile.insert(vectorID);
+                vectorIdToIndex[vectorID] = idlist.indexOf(id);
+                double startTime = std::isfinite(simTimeStart) ? simTimeStart : vector.getStartTime().dbl();
+                double endTime = std::isfinite(simTimeEnd) ? simTimeEnd : vector.getEndTime().dbl();
+                downsamplers.emplace(vectorID, IntervalDownsampler(startTime, endTime, simTimeEnd, numIntervals));
+            }
+
+            auto adapter = [&](int vectorId, const std::vector<VectorDatum>& data) {
+                IntervalDownsampler& downsampler = downsamplers.at(vectorId);
+                for (const VectorDatum &vd : data)
+                    downsampler.add(vd);
+
+                if (interrupted.flag)
+                    throw InterruptedException("Vector loading interrupted");
+            };
+
+            IVectorDataReader *reader;
+            if (SqliteResultFileUtils::isSqliteFile(resultFile->getFileSystemFilePath().c_str()))
+                reader = new SqliteVectorDataReader(resultFile->getFileSystemFilePath().c_str(), false, adapter);
+            else {
+                IndexedVectorFileReader *indexedReader = new IndexedVectorFileReader(resultFile->getFileSystemFilePath().c_str(), false, adapter);
+                indexedReader->setBlockSkipper([&](const VectorFileIndex::Block& block, const VectorFileIndex::Block *nextBlock) {
+                    return downsamplers.at(block.vectorId).canSkip(block, nextBlock);
+                });
+                reader = indexedReader;
+            }
+
+            try {
+                if (simTimeStart == -INFINITY && simTimeEnd == INFINITY)
+                    reader->collectEntries(vectorIdsInFile);
+                else
+                    reader->collectEntriesInSimtimeInterval(vectorIdsInFile, simTimeStart, simTimeEnd);
+                delete reader;
+            }
+            catch (std::exception &e) {
+                delete reader;
+                throw;
+            }
+
+            for (auto& entry : downsamplers)
+                entry.second.fillArray(result[vectorIdToIndex.at(entry.first)]);
+        }
+    }
+    catch (std::exception &e) {
+        delete filteredVectorFileList;
+        for (XYArray *a : result)
+            delete a;
+        throw;
+    }
+
+    delete filteredVectorFileList;
+    return result;
+}
+
+XYArrayVector *readDownsampledVectorsIntoArrays2(ResultFileManager *manager, const IDList& idlist, int numIntervals, double simTimeStart, double simTimeEnd, const InterruptedFlag& interrupted) {
+    return new XYArrayVector(readDownsampledVectorsIntoArrays(manager, idlist, numIntervals, simTimeStart, simTimeEnd, interrupted));
+}
+
 XYArrayVector *readVectorsIntoArrays2(ResultFileManager *manager, const IDList& idlist, bool includePreciseX, bool includeEventNumbers, size_t memoryLimitBytes, double simTimeStart, double simTimeEnd, const InterruptedFlag& interrupted) {
     return new XYArrayVector(readVectorsIntoArrays(manager, idlist, includePreciseX, includeEventNumbers, memoryLimitBytes, simTimeStart, simTimeEnd, interrupted));
 }
@@ -60,6 +60,26 @@ class SCAVE_API XYArrayVector {
  */
 SCAVE_API XYArrayVector *readVectorsIntoArrays2(ResultFileManager *manager, const IDList& idlist, bool includePreciseX, bool includeEventNumbers, size_t memoryLimitBytes = std::numeric_limits<size_t>::max(), double simTimeStart = -INFINITY, double simTimeEnd = INFINITY, const InterruptedFlag& interrupted = InterruptedFlag());
 
+/**
+ * Reads the VectorResult items in the IDList into XYArrays, downsampled for
+ * plotting: the time range is divided into numIntervals equal intervals, and
+ * only the first, last, minimum and maximum points of each interval are kept
+ * (in their original order). This preserves the envelope of the data, and
+ * the appearance of line plots at a horizontal resolution of numIntervals.
+ * The time range is [simTimeStart, simTimeEnd), where the infinite ends are
+ * replaced by the start/end time of the vector.
+ *
+ * For indexed vector files, blocks that are within a single interval and
+ * cannot change its points are not even read, based on the block statistics
+ * in the index file. numIntervals must be positive.
+ */
+SCAVE_API std::vector<XYArray *> readDownsampledVectorsIntoArrays(ResultFileManager *manager, const IDList& idlist, int numIntervals, double simTimeStart = -INFINITY, double simTimeEnd = INFINITY, const InterruptedFlag& interrupted = InterruptedFlag());
+
+/*
+ * The same as readDownsampledVectorsIntoArrays, except the result is wrapped into an XYArrayVector.
+ */
+SCAVE_API XYArrayVector *readDownsampledVectorsIntoArrays2(ResultFileManager *manager, const IDList& idlist, int numIntervals, double simTimeStart = -INFINITY, double simTimeEnd = INFINITY, const InterruptedFlag& interrupted = InterruptedFlag());
+
 } // namespace scave
 }  // namespace omnetpp
 
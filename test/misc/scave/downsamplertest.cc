@@ -0,0 +1,76 @@
+//=========================================================================
+//  DOWNSAMPLERTEST.CC - part of
+//                  OMNeT++/OMNEST
+//           Discrete System Simulation in C++
+//
+//=========================================================================
+
+/*--------------------------------------------------------------*
+  Copyright (C) 1992-2015 Andras Varga
+
+  This file is distributed WITHOUT ANY WARRANTY. See the file
+  `license' for details on this and other legal matters.
+*--------------------------------------------------------------*/
+
+#include <exception>
+#include <iostream>
+#include <string>
+#include <vector>
+
+#include <common/exception.h>
+#include <scave/resultfilemanager.h>
+#include <scave/idlist.h>
+#include <scave/xyarray.h>
+#include <scave/vectorutils.h>
+#include <scave/sqlitevectorfileexporter.h>
+
+using namespace omnetpp;
+using namespace omnetpp::common;
+using namespace omnetpp::scave;
+using namespace std;
+
+static vector<XYArray *> downsample(const char *fileName, int numIntervals)
+{
+    ResultFileManager manager;
+    manager.loadFile(fileName, fileName, ResultFileManager::LOADFLAGS_DEFAULTS, nullptr);
+    return readDownsampledVectorsIntoArrays(&manager, manager.getAllVectors(), numIntervals);
+}
+
+/**
+ * Converts the vectors of inputfile into SQLite format (as outputfile), and
+ * downsamples the vectors of both files. The results must be identical:
+ * SQLite vector data has no serial numbers, so this checks that the points
+ * kept for an interval are ordered and deduplicated correctly without them.
+ */
+void testDownsampler(const char *inputfile, const char *outputfile)
+{
+    {
+        ResultFileManager manager;
+        manager.loadFile(inputfile, inputfile, ResultFileManager::LOADFLAGS_DEFAULTS, nullptr);
+        SqliteVectorFileExporter exporter;
+        exporter.saveResults(outputfile, &manager, manager.getAllVectors());
+    }
+
+    const int numIntervals = 10;
+    vector<XYArray *> expected = downsample(inputfile, numIntervals);
+    vector<XYArray *> actual = downsample(outputfile, numIntervals);
+
+    if (expected.size() != actual.size())
+        throw opp_runtime_error("Number of vectors differ: %d vs %d", (int)expected.size(), (int)actual.size());
+
+    for (size_t i = 0; i < expected.size(); i++) {
+        XYArray *e = expected[i], *a = actual[i];
+        if (e->length() > 4 * numIntervals)
+            throw opp_runtime_error("Vector %d: too many points after downsampling: %d", (int)i, e->length());
+        if (e->length() != a->length())
+            throw opp_runtime_error("Vector %d: number of points differ: %d vs %d", (int)i, e->length(), a->length());
+        for (int j = 0; j < e->length(); j++)
+            if (e->getX(j) != a->getX(j) || e->getY(j) != a->getY(j))
+                throw opp_runtime_error("Vector %d: point %d differs: (%g,%g) vs (%g,%g)", (int)i, j, e->getX(j), e->getY(j), a->getX(j), a->getY(j));
+    }
+
+    for (XYArray *array : expected)
+        delete array;
+    for (XYArray *array : actual)
+        delete array;
+}
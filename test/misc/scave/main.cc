@@ -26,6 +26,7 @@ void testReaderBuilder(const char *inputfile, const char *outputfile);
 void testResultFileManager(const char *inputfile);
 void testIndexer(const char *inputFile);
 void testReader(const char *readerNodeType, const char *inputFile, int *vectorIds, int count);
+void testDownsampler(const char *inputfile, const char *outputfile);
 
 static void usage(char *message)
 {
@@ -41,7 +42,8 @@ static void usage(char *message)
     cerr << "resultfilemanager <input-file>\n";
     cerr << "indexer <input-file>\n";
     cerr << "reader <input-file> <vector-id-list>\n";
-    cerr << "indexedreader <input-file> <vector-id-list>\n\n";
+    cerr << "indexedreader <input-file> <vector-id-list>\n";
+    cerr << "downsampler <input-file> <sqlite-output-file>\n\n";
 }
 
 static void parseIntList(const char *str, int *& result, int& len)
@@ -132,6 +134,13 @@ int main(int argc, char **argv)
                 }
                 testIndexer(argv[2]);
             }
+            else if (strcmp(argv[1], "downsampler") == 0) {
+                if (argc < 4) {
+                    usage("Not enough arguments specified");
+                    return -1;
+                }
+                testDownsampler(argv[2], argv[3]);
+            }
             else if (strcmp(argv[1], "indexedvectorfilereader") == 0 ||
                      strcmp(argv[1], "indexedvectorfilereader2") == 0 ||
                      strcmp(argv[1], "vectorfilereader") == 0)
@@ -108,6 +108,27 @@ sub generateVectorFile
   close(OUT);
 }
 
+sub testDownsampler
+{
+  my($fileName) = @_;
+  local($resultFileName);
+
+  print("Testing downsampler on $fileName...\n");
+  $resultFileName = $fileName;
+  $resultFileName =~ s/^(.*)\.(.*)/\1_sqlite\.\2/;
+  $resultFileName =~ s/^(.*)\//result\//;
+  unlink $resultFileName;
+
+  if (system("test downsampler $fileName $resultFileName") == 0)
+  {
+     print("PASS: Downsampler test on $fileName\n\n");
+  }
+  else
+  {
+     print("FAIL: Downsampler test on $fileName\n\n");
+  }
+}
+
 sub testIndexer
 {
   my($fileName) = @_;
@@ -170,6 +191,9 @@ testExport("testfiles/vectors.vec", "matlab");
 testExport("testfiles/vectors.vec", "octave");
 testExport("testfiles/vectors.vec", "csv");
 
+testDownsampler("testfiles/omnetpp1.vec");
+testDownsampler("testfiles/vectors.vec");
+
 generateVectorFile("testfiles/big.vec", 1000, 10000000, 10000);
 testIndexer("testfiles/big.vec");
 testReader2("indexedvectorfilereader", "testfiles/big.vec", "100,200,300,400,500,600,700,800,900,1000");
@@ -0,0 +1,117 @@
+package org.omnetpp.scave.python;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+/**
+ * Checks the mean and standard deviation computed by Accumulator, both by
+ * adding values one by one and by merging partial accumulators (as done
+ * for time buckets), against a two-pass reference computation. The data
+ * sets include values with a large offset relative to their spread, where
+ * the sum-of-squares formula loses all precision.
+ */
+public class AccumulatorTest {
+    static final int N = 100000;
+    static final double ACCURACY = 1e-9; // relative to the standard deviation
+
+    interface Distribution {
+        double next(Random random);
+    }
+
+    public static void main(String[] args) {
+        check("normal", new Distribution() {
+            public double next(Random random) { return random.nextGaussian(); }
+        });
+        check("large offset", new Distribution() {
+            public double next(Random random) { return 1e9 + random.nextGaussian() * 1e-3; }
+        });
+        check("timestamps", new Distribution() {
+            double t = 1e6;
+            public double next(Random random) { return t += random.nextDouble() * 1e-6; }
+        });
+        check("mixed magnitudes", new Distribution() {
+            public double next(Random random) { return random.nextBoolean() ? 1e8 + random.nextInt(5) : -1e8 + random.nextGaussian(); }
+        });
+        checkSmall();
+    }
+
+    static void check(String name, Distribution distribution) {
+        Random random = new Random(1);
+        double[] values = new double[N];
+        for (int i = 0; i < N; i++)
+            values[i] = distribution.next(random);
+
+        // two-pass reference, computed exactly (up to the final rounding)
+        BigDecimal sum = BigDecimal.ZERO;
+        for (double value : values)
+            sum = sum.add(new BigDecimal(value));
+        BigDecimal exactMean = sum.divide(BigDecimal.valueOf(N), MathContext.DECIMAL128);
+        BigDecimal sumSquaredDiffs = BigDecimal.ZERO;
+        for (double value : values) {
+            BigDecimal diff = new BigDecimal(value).subtract(exactMean);
+            sumSquaredDiffs = sumSquaredDiffs.add(diff.multiply(diff, MathContext.DECIMAL128));
+        }
+        double mean = exactMean.doubleValue();
+        double stddev = Math.sqrt(sumSquaredDiffs.divide(BigDecimal.valueOf(N - 1), MathContext.DECIMAL128).doubleValue());
+
+        Accumulator added = new Accumulator();
+        for (double value : values)
+            added.add(value);
+        checkAccumulator(name + ", added", added, mean, stddev);
+
+        // merge chunks of random sizes, including empty and single-value ones
+        Accumulator merged = new Accumulator();
+        Accumulator chunk = new Accumulator();
+        for (int i = 0; i < N; ) {
+            int size = Math.min(N - i, random.nextInt(4) == 0 ? random.nextInt(2) : random.nextInt(1000));
+            chunk.clear();
+            for (int j = 0; j < size; j++)
+                chunk.add(values[i + j]);
+            merged.merge(chunk);
+            i += size;
+        }
+        checkAccumulator(name + ", merged", merged, mean, stddev);
+
+        System.out.println(name + ": OK");
+    }
+
+    static void checkAccumulator(String name, Accumulator accumulator, double mean, double stddev) {
+        check(accumulator.get("count") == N, name + ": wrong count");
+        check(Math.abs(accumulator.get("mean") - mean) < ACCURACY * stddev, name + ": mean " + accumulator.get("mean") + " instead of " + mean);
+        check(Math.abs(accumulator.get("stddev") - stddev) < ACCURACY * stddev, name + ": stddev " + accumulator.get("stddev") + " instead of " + stddev);
+    }
+
+    static void checkSmall() {
+        Accumulator empty = new Accumulator();
+        check(empty.get("count") == 0 && Double.isNaN(empty.get("mean")) && Double.isNaN(empty.get("stddev")) && Double.isNaN(empty.get("min")), "empty accumulator");
+
+        Accumulator one = new Accumulator();
+        one.add(5);
+        check(one.get("mean") == 5 && Double.isNaN(one.get("stddev")) && one.get("min") == 5 && one.get("max") == 5, "single value");
+
+        Accumulator a = new Accumulator(), b = new Accumulator();
+        a.add(1);
+        a.add(2);
+        b.add(3);
+        b.add(4);
+        a.merge(b);
+        a.merge(empty);
+        check(a.get("count") == 4 && a.get("sum") == 10 && a.get("mean") == 2.5 && a.get("min") == 1 && a.get("max") == 4, "merged aggregates");
+        check(Math.abs(a.get("stddev") - Math.sqrt(5.0 / 3)) < 1e-15, "merged stddev");
+
+        empty.merge(a);
+        check(empty.get("count") == 4 && empty.get("stddev") == a.get("stddev"), "merge into empty");
+
+        Accumulator constant = new Accumulator();
+        for (int i = 0; i < 1000; i++)
+            constant.add(0.1);
+        check(constant.get("mean") == 0.1 && constant.get("stddev") == 0, "constant values");
+        System.out.println("small cases: OK");
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
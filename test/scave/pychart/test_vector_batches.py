@@ -0,0 +1,120 @@
+import pickle
+import unittest
+
+import numpy as np
+
+from omnetpp.internal import Gateway
+from omnetpp.scave import results, utils
+from omnetpp.scave.impl_ide import results as impl_results
+from omnetpp.scave.impl_ide import plot as impl_plot
+
+
+class _Recorder:
+    """Does nothing for any method call, except for the ones defined in subclasses."""
+    def __getattr__(self, name):
+        return lambda *args: None
+
+
+class _FakeStream(_Recorder):
+    """An IPickleStream that hands over each pickle of the sequence as a separate chunk."""
+    def __init__(self, pickles, shm, log):
+        self.pickles = pickles
+        self.shm = shm
+        self.log = log
+        self.next = 0
+
+    def nextChunk(self):
+        if self.next == len(self.pickles):
+            return None
+        name = "chunk" + str(self.next)
+        self.shm[name] = self.pickles[self.next]
+        self.log.append(("chunk", self.next))
+        self.next += 1
+        return name + " " + str(len(self.shm[name]))
+
+
+class _FakeResultsProvider(_Recorder):
+    def __init__(self, pickles, shm, log):
+        self.stream = _FakeStream(pickles, shm, log)
+
+    def getVectorsPickleStream(self, filter_expression, include_attrs, start_time, end_time, target_resolution):
+        return self.stream
+
+
+class _FakeChartProvider(_Recorder):
+    def getChartType(self):
+        return "LINE"
+
+
+class VectorBatchesTest(unittest.TestCase):
+
+    NUM_BATCHES = 3
+    VECTORS_PER_BATCH = 2
+
+    def setUp(self):
+        self.log = []
+        self.shm = dict()
+
+        # the sequence of pickles VectorBatchesPickler produces: the metadata, then the data of each batch
+        num_vectors = self.NUM_BATCHES * self.VECTORS_PER_BATCH
+        rows = [("run1", "net.host[" + str(i) + "]", "queueLength:vector") for i in range(num_vectors)]
+        self.pickles = [pickle.dumps((rows, None))]
+        for b in range(self.NUM_BATCHES):
+            descriptors = []
+            for i in range(b * self.VECTORS_PER_BATCH, (b + 1) * self.VECTORS_PER_BATCH):
+                self.shm["t" + str(i)] = np.array([0.0, 1.0, 2.0], dtype='>f8').tobytes()
+                self.shm["v" + str(i)] = np.array([i, i + 1, i + 2], dtype='>f8').tobytes()
+                descriptors.append(("t" + str(i) + " 24", "v" + str(i) + " 24"))
+            self.pickles.append(pickle.dumps(descriptors))
+
+        def fake_get_array_from_shm(name_and_size, dtype='>f8', segments=None):
+            return np.frombuffer(self.shm[name_and_size.split(" ")[0]], dtype=np.dtype(dtype))
+
+        def fake_plot_lines(df, props=dict()):
+            for row in df.itertuples(index=False):
+                self.log.append(("plot", row.label))
+
+        self.saved = (impl_results._get_array_from_shm, impl_plot.plot_lines, Gateway.results_provider, Gateway.chart_provider, Gateway.chart_plotter)
+        impl_results._get_array_from_shm = fake_get_array_from_shm
+        impl_plot.plot_lines = fake_plot_lines
+        Gateway.results_provider = _FakeResultsProvider(self.pickles, self.shm, self.log)
+        Gateway.chart_provider = _FakeChartProvider()
+        Gateway.chart_plotter = _Recorder()
+
+    def tearDown(self):
+        impl_results._get_array_from_shm, impl_plot.plot_lines, Gateway.results_provider, Gateway.chart_provider, Gateway.chart_plotter = self.saved
+
+    def test_batches_are_plotted_as_they_arrive(self):
+        df = utils.plot_vectors_in_batches(results.get_vectors_in_batches("name =~ *"), dict())
+
+        last_chunk = self.log.index(("chunk", len(self.pickles) - 1))
+        first_plot = next(i for i, e in enumerate(self.log) if e[0] == "plot")
+        self.assertLess(first_plot, last_chunk, "lines must be plotted before the last batch arrives")
+
+        # each batch is plotted before the next one is read
+        for b in range(1, self.NUM_BATCHES):
+            chunk = self.log.index(("chunk", b + 1))
+            num_plotted = len([e for e in self.log[:chunk] if e[0] == "plot"])
+            self.assertEqual(num_plotted, b * self.VECTORS_PER_BATCH)
+
+        self.assertEqual(len([e for e in self.log if e[0] == "plot"]), len(df))
+
+    def test_batches_add_up_to_all_vectors(self):
+        dfs = [df.copy() for df in results.get_vectors_in_batches("name =~ *")]
+
+        self.assertEqual(len(dfs), 1 + self.NUM_BATCHES)
+        self.assertTrue(all(v is None for v in dfs[0]["vecvalue"]))
+        for b in range(1, self.NUM_BATCHES + 1):
+            loaded = [v is not None for v in dfs[b]["vecvalue"]]
+            self.assertEqual(loaded, [i < b * self.VECTORS_PER_BATCH for i in range(len(loaded))])
+
+        df = dfs[-1]
+        self.assertEqual(list(df.columns[:5]), ["runID", "module", "name", "vectime", "vecvalue"])
+        for i, t in enumerate(df.itertuples(index=False)):
+            self.assertEqual(t.module, "net.host[" + str(i) + "]")
+            self.assertEqual(list(t.vectime), [0.0, 1.0, 2.0])
+            self.assertEqual(list(t.vecvalue), [i, i + 1, i + 2])
+
+
+if __name__ == "__main__":
+    unittest.main()
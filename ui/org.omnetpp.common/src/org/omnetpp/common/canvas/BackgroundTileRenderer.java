@@ -0,0 +1,239 @@
+/*--------------------------------------------------------------*
+  Copyright (C) 2006-2015 OpenSim Ltd.
+
+  This file is distributed WITHOUT ANY WARRANTY. See the file
+  'License' for details on this and other legal matters.
+*--------------------------------------------------------------*/
+
+package org.omnetpp.common.canvas;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.draw2d.Graphics;
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.gmf.runtime.draw2d.ui.render.awt.internal.graphics.GraphicsToGraphics2DAdaptor;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.widgets.Display;
+import org.omnetpp.common.CommonPlugin;
+import org.omnetpp.common.Debug;
+import org.omnetpp.common.image.ImageUtils;
+
+/**
+ * Renders areas of a CachingCanvas with its ITileRenderer on a pool of worker
+ * threads shared by all canvases, and hands over the finished images to the
+ * canvas in the UI thread.
+ *
+ * Each job draws into an AWT image through the GMF Graphics2D adaptor (the
+ * same one used for SVG export), so the workers do not touch native SWT
+ * resources. If the renderer asks for it, a coarse image is produced first,
+ * which is displayed as a placeholder until the full image is ready; only the
+ * full image goes into the tile cache. Wide areas are split into strips that
+ * are rendered in parallel.
+ *
+ * Methods of this class must be called in the UI thread.
+ */
+@SuppressWarnings("restriction")
+class BackgroundTileRenderer {
+    private static final boolean debug = Debug.isChannelEnabled("cachingcanvas");
+
+    // areas wider than this are split into strips; a multiple of the tile width of XYTileCache
+    private static final int STRIP_WIDTH = 240;
+
+    private static final int NUM_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static ExecutorService executor;
+
+    private CachingCanvas canvas;
+    private Display display;
+    private List<Job> pendingJobs = new ArrayList<>();
+
+    private class Job implements Runnable {
+        final LargeRect rect; // virtual coordinates
+        final ITileRenderer renderer;
+        final BufferedImage bufferedImage;
+        final Graphics graphics;
+        volatile boolean canceled = false;
+        Image coarseImage; // accessed from the UI thread only
+
+        Job(LargeRect rect, ITileRenderer renderer) {
+            this.rect = rect;
+            this.renderer = renderer;
+
+            // the adaptor creates SWT resources internally, so it must be created in the UI thread
+            Rectangle canvasRect = canvas.virtualToCanvasRect(rect);
+            bufferedImage = new BufferedImage(canvasRect.width, canvasRect.height, BufferedImage.TYPE_INT_RGB);
+            graphics = new GraphicsToGraphics2DAdaptor(bufferedImage.createGraphics(), new Rectangle(0, 0, canvasRect.width, canvasRect.height));
+            graphics.translate(-canvasRect.x, -canvasRect.y);
+            graphics.setClip(new Rectangle(canvasRect.x, canvasRect.y, canvasRect.width, canvasRect.height));
+        }
+
+        @Override
+        public void run() {
+            ImageData imageData = null;
+            try {
+                if (canceled)
+                    return;
+                if (renderer.hasCoarsePass()) {
+                    render(true);
+                    if (!canceled) {
+                        ImageData coarseImageData = ImageUtils.convertToSWT(bufferedImage);
+                        asyncExec(() -> coarseImageRendered(this, coarseImageData));
+                    }
+                }
+                if (!canceled) {
+                    render(false);
+                    if (!canceled)
+                        imageData = ImageUtils.convertToSWT(bufferedImage);
+                }
+            }
+            catch (CancellationException e) {
+                // nothing to do
+            }
+            catch (Throwable e) {
+                // the canvas may have been changed under our feet; only report errors if not
+                if (!canceled)
+                    CommonPlugin.logError("Error while rendering canvas in the background", e);
+            }
+            finally {
+                ImageData finalImageData = imageData;
+                asyncExec(() -> imageRendered(this, finalImageData));
+            }
+        }
+
+        private void render(boolean coarse) {
+            long startTime = System.currentTimeMillis();
+            graphics.pushState();
+            try {
+                renderer.render(graphics, coarse, () -> canceled);
+            }
+            finally {
+                graphics.popState();
+            }
+            if (debug)
+                Debug.println("background rendering of " + rect + (coarse ? " (coarse)" : "") + ": " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+
+        void dispose() {
+            if (coarseImage != null)
+                coarseImage.dispose();
+            coarseImage = null;
+            graphics.dispose();
+        }
+    }
+
+    public BackgroundTileRenderer(CachingCanvas canvas) {
+        this.canvas = canvas;
+        this.display = canvas.getDisplay();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(NUM_THREADS, (runnable) -> {
+                Thread thread = new Thread(runnable, "Canvas renderer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Returns true if the given area (in virtual coordinates) is being rendered.
+     */
+    public boolean isPending(LargeRect area) {
+        LargeRect remaining = new LargeRect(area);
+        for (Job job : pendingJobs) {
+            // strips of the same area are adjacent horizontally, so cut them off one by one
+            if (job.rect.contains(remaining))
+                return true;
+            if (job.rect.y <= remaining.y && job.rect.bottom() >= remaining.bottom()) {
+                if (job.rect.x <= remaining.x && job.rect.right() > remaining.x) {
+                    remaining.width = remaining.right() - job.rect.right();
+                    remaining.x = job.rect.right();
+                    if (remaining.width <= 0)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts rendering the given area (in virtual coordinates) with the renderer.
+     */
+    public void submit(LargeRect area, ITileRenderer renderer) {
+        int numStrips = (int)Math.max(1, Math.min(NUM_THREADS, area.width / STRIP_WIDTH));
+        long stripWidth = (area.width + numStrips - 1) / numStrips;
+        stripWidth = (stripWidth + STRIP_WIDTH - 1) / STRIP_WIDTH * STRIP_WIDTH;
+        for (long x = area.x; x < area.right(); x += stripWidth) {
+            LargeRect strip = new LargeRect(x, area.y, Math.min(stripWidth, area.right() - x), area.height);
+            Job job = new Job(strip, renderer);
+            pendingJobs.add(job);
+            getExecutor().execute(job);
+        }
+    }
+
+    /**
+     * Draws the coarse images of the pending jobs that intersect the given
+     * area (in canvas coordinates), clipped to the area.
+     */
+    public void paintPlaceholders(Graphics graphics, Rectangle area) {
+        LargeRect virtualArea = canvas.canvasToVirtualRect(area);
+        for (Job job : pendingJobs) {
+            if (job.coarseImage != null && job.rect.intersects(virtualArea)) {
+                graphics.pushState();
+                graphics.clipRect(area);
+                graphics.drawImage(job.coarseImage, canvas.virtualToCanvasX(job.rect.x), canvas.virtualToCanvasY(job.rect.y));
+                graphics.popState();
+            }
+        }
+    }
+
+    /**
+     * Cancels all jobs; their results will be thrown away.
+     */
+    public void cancelAll() {
+        if (debug && !pendingJobs.isEmpty())
+            Debug.println("canceling " + pendingJobs.size() + " background rendering jobs");
+        for (Job job : pendingJobs)
+            job.canceled = true;
+        pendingJobs.clear();
+    }
+
+    public int getPendingCount() {
+        return pendingJobs.size();
+    }
+
+    private void asyncExec(Runnable runnable) {
+        if (!display.isDisposed())
+            display.asyncExec(runnable);
+    }
+
+    private void coarseImageRendered(Job job, ImageData imageData) {
+        if (job.canceled || canvas.isDisposed())
+            return;
+        job.coarseImage = new Image(display, imageData);
+        redraw(job.rect);
+    }
+
+    private void imageRendered(Job job, ImageData imageData) {
+        pendingJobs.remove(job);
+        boolean ok = !job.canceled && imageData != null && !canvas.isDisposed();
+        job.dispose();
+        if (ok) {
+            canvas.addTileToCache(job.rect, new Image(display, imageData));
+            redraw(job.rect);
+        }
+    }
+
+    private void redraw(LargeRect rect) {
+        Rectangle r = canvas.virtualToCanvasRect(rect);
+        canvas.redraw(r.x, r.y, r.width, r.height, false);
+    }
+}
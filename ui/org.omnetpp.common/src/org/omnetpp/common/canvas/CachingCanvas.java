@@ -59,6 +59,8 @@ public abstract class CachingCanvas extends LargeScrollableCanvas {
 
     private boolean doCaching = true;
     private ITileCache tileCache = new XYTileCache();
+    private BackgroundTileRenderer backgroundRenderer = null; // null if background rendering is off
+    private boolean paintSynchronously = false; // temporarily overrides background rendering
     private boolean debug = Debug.isChannelEnabled("cachingcanvas");
 
     /**
@@ -76,6 +78,11 @@ public abstract class CachingCanvas extends LargeScrollableCanvas {
                     Debug.println("actual painting done");
             }
         });
+
+        addDisposeListener((e) -> {
+            if (backgroundRenderer != null)
+                backgroundRenderer.cancelAll();
+        });
     }
 
     /**
@@ -107,6 +114,28 @@ public abstract class CachingCanvas extends LargeScrollableCanvas {
         clearCanvasCache();
     }
 
+    /**
+     * Returns whether the cachable layer is rendered in background threads.
+     */
+    public boolean getBackgroundRendering() {
+        return backgroundRenderer != null;
+    }
+
+    /**
+     * Turns on/off rendering the cachable layer in background threads. It only
+     * takes effect if caching is on, and createTileRenderer() is overridden.
+     * While an area is being rendered, a coarse version of it or nothing is
+     * displayed there.
+     */
+    public void setBackgroundRendering(boolean backgroundRendering) {
+        if (backgroundRendering != getBackgroundRendering()) {
+            if (backgroundRenderer != null)
+                backgroundRenderer.cancelAll();
+            backgroundRenderer = backgroundRendering ? new BackgroundTileRenderer(this) : null;
+            clearCanvasCache();
+        }
+    }
+
     /**
      * Copies the image of the chart to the clipboard.
      * Uses AWT functionality, because SWT does not support ImageTransfer yet.
@@ -205,8 +234,14 @@ public abstract class CachingCanvas extends LargeScrollableCanvas {
     public Image getImage(int width, int height) {
         Image image = new Image(getDisplay(), width, height);
         GC gc = new GC(image);
-        paint(gc);
-        gc.dispose();
+        paintSynchronously = true;
+        try {
+            paint(gc);
+        }
+        finally {
+            paintSynchronously = false;
+            gc.dispose();
+        }
         return image;
     }
 
@@ -249,11 +284,25 @@ public abstract class CachingCanvas extends LargeScrollableCanvas {
                 debugDrawTile(graphics, tile.rect, new Color(null,0,255,0));
             }
 
-            // draw missing tiles
+            // draw missing tiles, or start rendering them in the background
+            ITileRenderer tileRenderer = null;
+            if (backgroundRenderer != null && !paintSynchronously && !missingAreas.isEmpty())
+                tileRenderer = createTileRenderer();
+
             for (LargeRect lrect : missingAreas) {
                 Rectangle rect = virtualToCanvasRect(lrect);
                 Assert.isTrue(!rect.isEmpty()); // tile cache should not return empty rectangles
 
+                if (tileRenderer != null) {
+                    if (!backgroundRenderer.isPending(lrect))
+                        backgroundRenderer.submit(lrect, tileRenderer);
+                    graphics.setBackgroundColor(getBackground());
+                    graphics.fillRectangle(rect);
+                    backgroundRenderer.paintPlaceholders(graphics, rect);
+                    debugDrawTile(graphics, lrect, new Color(null,0,0,255));
+                    continue;
+                }
+
                 Graphics imageGraphics = null;
                 GC imageGC = null;
                 Transform transform = null;
@@ -322,6 +371,24 @@ public abstract class CachingCanvas extends LargeScrollableCanvas {
      */
     protected abstract void paintCachableLayer(Graphics graphics);
 
+    /**
+     * Override this method to render the cachable layer in background threads
+     * (see setBackgroundRendering()). The returned object is used instead of
+     * paintCachableLayer() for the areas missing from the cache at the time
+     * of the call. May return null, which means painting synchronously with
+     * paintCachableLayer() this time (e.g. because it is fast enough anyway).
+     */
+    protected ITileRenderer createTileRenderer() {
+        return null;
+    }
+
+    /**
+     * Puts an image rendered in the background into the tile cache.
+     */
+    void addTileToCache(LargeRect rect, Image image) {
+        tileCache.add(rect, image);
+    }
+
     /**
      * Paint in this method anything that you don't want to be cached
      * (selection marks, etc). It will paint over the cachable layer.
@@ -332,6 +399,8 @@ public abstract class CachingCanvas extends LargeScrollableCanvas {
      * Clears the tile cache. To be called any time the drawing changes.
      */
     public void clearCanvasCache() {
+        if (backgroundRenderer != null)
+            backgroundRenderer.cancelAll();
         tileCache.clear();
         if (debug)
             Debug.println("canvas cache cleared");
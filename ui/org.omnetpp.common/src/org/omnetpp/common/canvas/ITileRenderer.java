@@ -0,0 +1,42 @@
+/*--------------------------------------------------------------*
+  Copyright (C) 2006-2015 OpenSim Ltd.
+
+  This file is distributed WITHOUT ANY WARRANTY. See the file
+  'License' for details on this and other legal matters.
+*--------------------------------------------------------------*/
+
+package org.omnetpp.common.canvas;
+
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.draw2d.Graphics;
+
+/**
+ * Paints the cachable layer of a CachingCanvas in background threads, see
+ * CachingCanvas.createTileRenderer().
+ *
+ * Renderers are created in the UI thread, and should capture everything they
+ * need from the canvas at that time (coordinate mapping, colors, etc.), because
+ * render() is called in a worker thread, and must not access widgets. render()
+ * may be called concurrently for different areas of the canvas.
+ */
+public interface ITileRenderer {
+
+    /**
+     * Returns true if a coarse (quick, approximate) rendering should be done
+     * and displayed before the full one.
+     */
+    public boolean hasCoarsePass();
+
+    /**
+     * Paints the cachable layer, like CachingCanvas.paintCachableLayer() does.
+     * The graphics has the same translation and clipping as there. Long
+     * operations should check isCanceled regularly, and return (or throw
+     * CancellationException) when it returns true.
+     *
+     * @param graphics  draws into an off-screen image
+     * @param coarse  whether this is the coarse pass
+     * @param isCanceled  returns true if the result is no longer needed
+     */
+    public void render(Graphics graphics, boolean coarse, BooleanSupplier isCanceled);
+}
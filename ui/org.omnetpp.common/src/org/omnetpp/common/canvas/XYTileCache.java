@@ -57,7 +57,7 @@ public class XYTileCache implements ITileCache {
         for (long x = startX; x+TILE_WIDTH<=rect.right(); x+=TILE_WIDTH) {
             for (long y = startY; y+TILE_HEIGHT<=rect.bottom(); y+=TILE_HEIGHT) {
                 LargePoint key = new LargePoint(x,y);
-                Assert.isTrue(!cache.containsKey(key)); // because CachingCanvas only calls us with tiles we reported missing
+                // Note: the tile may already be present if it was rendered in the background, as part of another area
                 if (!cache.containsKey(key)) {
                     if (debug) {
                         gc.drawLine((int)(x - rect.x), (int)(y - rect.y), (int)(x - rect.x)+10, (int)(y - rect.y)+10);
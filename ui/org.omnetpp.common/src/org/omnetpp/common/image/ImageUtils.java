@@ -12,6 +12,7 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
@@ -102,7 +103,16 @@ public class ImageUtils {
     }
 
     public static ImageData convertToSWT(BufferedImage bufferedImage) {
-        if (bufferedImage.getColorModel() instanceof DirectColorModel) {
+        if (bufferedImage.getType() == BufferedImage.TYPE_INT_RGB && isWholeIntRaster(bufferedImage)) {
+            // fast path: copy whole rows of pixels (used for off-screen rendering)
+            int width = bufferedImage.getWidth(), height = bufferedImage.getHeight();
+            int[] pixels = ((DataBufferInt)bufferedImage.getRaster().getDataBuffer()).getData();
+            ImageData data = new ImageData(width, height, 32, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+            for (int y = 0; y < height; y++)
+                data.setPixels(0, y, width, pixels, y * width);
+            return data;
+        }
+        else if (bufferedImage.getColorModel() instanceof DirectColorModel) {
             DirectColorModel colorModel = (DirectColorModel)bufferedImage.getColorModel();
             PaletteData palette = new PaletteData(colorModel.getRedMask(), colorModel.getGreenMask(), colorModel.getBlueMask());
             ImageData data = new ImageData(bufferedImage.getWidth(), bufferedImage.getHeight(), colorModel.getPixelSize(), palette);
@@ -167,6 +177,12 @@ public class ImageUtils {
         }
     }
 
+    private static boolean isWholeIntRaster(BufferedImage bufferedImage) {
+        // i.e. not a subimage sharing the pixel array of a larger image
+        return bufferedImage.getRaster().getDataBuffer() instanceof DataBufferInt &&
+                ((DataBufferInt)bufferedImage.getRaster().getDataBuffer()).getData().length == bufferedImage.getWidth() * bufferedImage.getHeight();
+    }
+
     public static BufferedImage getResampledAWTImage(BufferedImage img, int width, int height) {
         BufferedImage resultImage = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
 
@@ -5,6 +5,7 @@ import java.lang.reflect.Field;
 import org.eclipse.draw2d.Graphics;
 import org.eclipse.draw2d.SWTGraphics;
 import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.gmf.runtime.draw2d.ui.render.awt.internal.graphics.GraphicsToGraphics2DAdaptor;
 import org.eclipse.gmf.runtime.draw2d.ui.render.awt.internal.svg.export.GraphicsSVG;
 import org.eclipse.swt.graphics.FontMetrics;
 import org.eclipse.swt.graphics.GC;
@@ -50,4 +51,12 @@ public class GraphicsUtils {
     public static boolean isSVGGraphics(Graphics graphics) {
         return graphics instanceof GraphicsSVG;
     }
+
+    /**
+     * Returns true if the graphics draws on an AWT Graphics2D (this includes SVG
+     * export and background rendering), i.e. it does not support all operations.
+     */
+    public static boolean isAWTGraphics(Graphics graphics) {
+        return graphics instanceof GraphicsToGraphics2DAdaptor;
+    }
 }
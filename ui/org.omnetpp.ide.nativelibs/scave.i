@@ -619,6 +619,12 @@ namespace omnetpp { namespace scave {
 %include "scave/sqliteresultfileutils.h"
 
 /* ------------------ xyarray.h ----------------------- */
+
+namespace omnetpp { namespace scave {
+// getCPtr() is needed for copyXYArrayToBuffers()
+SWIG_JAVABODY_METHODS(public, public, XYArray)
+} } // namespaces
+
 %include "scave/xyarray.h"
 
 /* ------------------ vectorutils.h ----------------------- */
@@ -626,6 +632,8 @@ namespace omnetpp { namespace scave {
 namespace omnetpp { namespace scave {
 %ignore readVectorsIntoArrays;
 %newobject readVectorsIntoArrays2;
+%ignore readDownsampledVectorsIntoArrays;
+%newobject readDownsampledVectorsIntoArrays2;
 
 } } // namespaces
 
@@ -647,3 +655,6 @@ namespace omnetpp { namespace scave {
 %native(unmapSharedMemory) void unmapSharedMemory(jobject buf);
 
 %native(removeSharedMemory) void removeSharedMemory(jstring name);
+
+// copies the x and y values of an XYArray (given with XYArray.getCPtr()) into direct buffers, big-endian
+%native(copyXYArrayToBuffers) void copyXYArrayToBuffers(jlong arrayPtr, jobject xBuf, jlong xOffset, jobject yBuf, jlong yOffset);
@@ -36,6 +36,10 @@
 #endif
 
 #include <jni.h>
+#include <cstdint>
+#include "scave/xyarray.h"
+
+using omnetpp::scave::XYArray;
 
 extern "C" {
 
@@ -210,4 +214,46 @@ JNIEXPORT void JNICALL Java_org_omnetpp_scave_engine_ScaveEngineJNI_removeShared
 #endif
 }
 
+// utility function, not called from Java
+static inline void putBigEndianDouble(char *dest, double d)
+{
+    uint64_t bits;
+    memcpy(&bits, &d, 8);
+    for (int k = 7; k >= 0; k--) {
+        dest[k] = (char)(bits & 0xFF);
+        bits >>= 8;
+    }
+}
+
+JNIEXPORT void JNICALL Java_org_omnetpp_scave_engine_ScaveEngineJNI_copyXYArrayToBuffers(JNIEnv* env, jobject clazz, jlong arrayPtr, jobject xBuffer, jlong xOffset, jobject yBuffer, jlong yOffset)
+{
+    const XYArray *array = (const XYArray *)arrayPtr;
+    char *xBuf = (char *)env->GetDirectBufferAddress(xBuffer);
+    char *yBuf = (char *)env->GetDirectBufferAddress(yBuffer);
+    jlong xCapacity = env->GetDirectBufferCapacity(xBuffer);
+    jlong yCapacity = env->GetDirectBufferCapacity(yBuffer);
+
+    if (array == nullptr || xBuf == nullptr || yBuf == nullptr) {
+        throwRuntimeException(env, "copyXYArrayToBuffers: null array or not a direct buffer");
+        return;
+    }
+
+    size_t n = array->xs.size();
+    jlong bytes = (jlong)n * 8;
+    if (xOffset < 0 || yOffset < 0 || xOffset + bytes > xCapacity || yOffset + bytes > yCapacity) {
+        throwRuntimeException(env, std::string("copyXYArrayToBuffers: ") + std::to_string(n) + " values do not fit into the buffers at the given offsets");
+        return;
+    }
+
+    // same byte order as ByteBuffer.putDouble(), because the Python side reads '>f8'
+    const double *xs = array->xs.data();
+    const double *ys = array->ys.data();
+    char *xDest = xBuf + xOffset;
+    char *yDest = yBuf + yOffset;
+    for (size_t i = 0; i < n; i++) {
+        putBigEndianDouble(xDest + 8 * i, xs[i]);
+        putBigEndianDouble(yDest + 8 * i, ys[i]);
+    }
+}
+
 } // extern "C"
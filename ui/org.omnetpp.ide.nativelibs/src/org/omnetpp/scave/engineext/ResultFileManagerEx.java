@@ -46,6 +46,9 @@ public class ResultFileManagerEx extends ResultFileManager {
 
     private ListenerList<IResultFileManagerDisposeListener> disposeListeners = new ListenerList<>();
 
+    // incremented on every change of the loaded files; used as part of cache keys
+    private volatile long changeSerial = 0;
+
     public void addDisposeListener(IResultFileManagerDisposeListener listener) {
         disposeListeners.add(listener);
     }
@@ -63,6 +66,7 @@ public class ResultFileManagerEx extends ResultFileManager {
      *               Writer methods
      *-------------------------------------------*/
     public void dispose() {
+        changeSerial++;
         delete();
         notifyDisposeListeners();
     }
@@ -70,6 +74,7 @@ public class ResultFileManagerEx extends ResultFileManager {
     @Override
     public void clear() {
         checkNotDeleted();
+        changeSerial++;
         super.clear();
     }
 
@@ -77,6 +82,7 @@ public class ResultFileManagerEx extends ResultFileManager {
     public ResultFile loadFile(String displayName, String osFileName, int flags, InterruptedFlag interrupted) {
         checkNotDeleted();
         checkWriteLock();
+        changeSerial++;
         return super.loadFile(displayName, osFileName, flags, interrupted);
     }
 
@@ -84,6 +90,7 @@ public class ResultFileManagerEx extends ResultFileManager {
     public void unloadFile(ResultFile file) {
         checkNotDeleted();
         checkWriteLock();
+        changeSerial++;
         super.unloadFile(file);
     }
 
@@ -91,6 +98,7 @@ public class ResultFileManagerEx extends ResultFileManager {
     public void unloadFile(String fileName) {
         checkNotDeleted();
         checkWriteLock();
+        changeSerial++;
         super.unloadFile(fileName);
     }
 
@@ -100,6 +108,13 @@ public class ResultFileManagerEx extends ResultFileManager {
      *-------------------------------------------*/
 
 
+    /**
+     * Returns a number that changes whenever files are loaded or unloaded.
+     */
+    public long getChangeSerial() {
+        return changeSerial;
+    }
+
     public boolean isDisposed() {
         return getCPtr(this) == 0;
     }
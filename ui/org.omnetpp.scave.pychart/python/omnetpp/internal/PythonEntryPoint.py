@@ -1,7 +1,9 @@
 import time
 import sys
 import os
+import gc
 import math
+import warnings
 import traceback
 import pickle as pl
 
@@ -23,10 +25,39 @@ except ImportError as e:
     print("can't import " + e.name)
     sys.exit(1)
 
+# imported here (not by the chart scripts on first use) so that processes
+# waiting in the IDE's process pool are ready to run charts right away
+from omnetpp.scave import utils, vectorops
+
 # the print function is replaced so it will flush after each line
-execContext = {
-    "print": print
-}
+def _make_exec_context():
+    return {
+        "print": print
+    }
+
+execContext = _make_exec_context()
+
+# the state that reset() restores, so the process can be reused for another chart
+_initial_cwd = os.getcwd()
+_initial_sys_path = list(sys.path)
+_initial_rc_params = {k: v for k, v in mpl.rcParams.items() if k != "backend"}
+
+
+def _get_rss_kib():
+    """
+    Returns the current resident set size of the process in KiB, or -1 if unknown.
+    """
+    try:
+        with open("/proc/self/statm") as f:
+            return int(f.read().split()[1]) * os.sysconf("SC_PAGE_SIZE") // 1024
+    except (OSError, ValueError, IndexError, AttributeError):
+        pass
+    try:
+        import resource  # no current RSS here, only the peak
+        rss = resource.getrusage(resource.RUSAGE_SELF).ru_maxrss
+        return rss // 1024 if sys.platform == "darwin" else rss
+    except (ImportError, OSError):
+        return -1
 
 
 class PythonEntryPoint(object):
@@ -59,6 +90,45 @@ class PythonEntryPoint(object):
         global execContext
         execContext[name] = pl.loads(pickle)
 
+    def reset(self):
+        """
+        Clears what the last chart script left behind (globals, figures, style
+        settings, working directory, modules imported from the chart's directory),
+        and drops the providers of the last chart. The modules imported at startup
+        stay loaded. Returns the resident set size of the process in KiB, or -1.
+        """
+        global execContext
+        plt.close("all")
+        execContext = _make_exec_context()
+
+        from omnetpp.scave.impl_ide import chart as chart_impl, results as results_impl
+        chart_impl._properties = None
+        gc.collect()
+        results_impl._flush_released_shm()
+
+        Gateway.results_provider = None
+        chart.results_provider = None
+        Gateway.chart_provider = None
+        Gateway.widget_provider = None
+        Gateway.chart_plotter = None
+
+        added_paths = [os.path.abspath(p) for p in sys.path if p not in _initial_sys_path]
+        for name, module in list(sys.modules.items()):
+            file = getattr(module, "__file__", None)
+            if file and any(os.path.abspath(file).startswith(p + os.sep) for p in added_paths):
+                del sys.modules[name]
+        sys.path[:] = _initial_sys_path
+        os.chdir(_initial_cwd)
+
+        with warnings.catch_warnings():
+            warnings.simplefilter("ignore")  # about deprecated settings
+            mpl.rcParams.update(_initial_rc_params)
+        gc.collect()
+        # releases queued since the flush above (e.g. by the collection above) belong
+        # to the chart that just finished, whose objects the IDE has already reclaimed
+        del results_impl._released_shm_names[:]
+        return _get_rss_kib()
+
 
 if __name__ == "__main__":
     # I believe the purpose of the following piece of code is entirely achieved by the "-u" command line argument.
@@ -88,6 +88,7 @@ import traceback
 if os.name != 'nt':
     import posix_ipc
 import mmap
+import numpy as np
 
 from omnetpp.internal import Gateway
 from omnetpp.internal.TimeAndGuard import TimeAndGuard, for_all_methods
@@ -391,7 +392,6 @@ class FigureCanvasSWTAgg(FigureCanvasSWT, FigureCanvasAgg):
             self.figure.canvas.toolbar.push_current()
 
     def blit(self, bbox=None):
-        # TODO use SHM here as well!
         if bbox is None and self.figure:
             bbox = self.figure.bbox
 
@@ -402,11 +402,37 @@ class FigureCanvasSWTAgg(FigureCanvasSWT, FigureCanvasAgg):
         h = int(t) - int(b)
         t = int(b) + h
 
+        if self.useSharedMemory and self._blit_shared(l, int(self.renderer.height - t), w, h):
+            return
+
         reg = self.copy_from_bbox(bbox)
         pixelBuffer = reg.to_string_argb()
 
         self.widget.blit(pixelBuffer, l, int(self.renderer.height - t), w, h)
 
+    def _blit_shared(self, x, y, w, h):
+        """
+        Copies only the given rectangle of the rendered image into the shared
+        memory (which holds the last full frame), and tells the widget about it.
+        Returns False if this is not possible because there was no full frame yet.
+        """
+        fw, fh = self.get_width_height()
+        if not self.shmMmap or self.shmMmap.size() < fw * fh * 4:
+            return False
+        src = np.asarray(self.buffer_rgba())
+        if src.size != fw * fh * 4:
+            return False  # the renderer has not been resized yet
+
+        x0, y0 = max(x, 0), max(y, 0)
+        x1, y1 = min(x + w, fw), min(y + h, fh)
+        if x1 > x0 and y1 > y0:
+            src = src.reshape(fh, fw, 4)
+            dst = np.frombuffer(self.shmMmap, dtype=np.uint8, count=fw * fh * 4).reshape(fh, fw, 4)
+            dst[y0:y1, x0:x1] = src[y0:y1, x0:x1]
+            del dst  # the mmap cannot be closed while it is exported
+            self.widget.updatePixelsShared(fw, fh, x0, y0, x1 - x0, y1 - y0)
+        return True
+
     def print_figure(self, *args, **kwargs):
         FigureCanvasAgg.print_figure(self, *args, **kwargs)
         self.draw()
@@ -3,6 +3,8 @@ import numpy as np
 from math import inf
 import platform
 import pickle
+import io
+import weakref
 
 # posix_ipc is required for POSIX shm on Linux and Mac
 if platform.system() in ['Linux', 'Darwin']:
@@ -14,52 +16,201 @@ from omnetpp.internal import Gateway
 import functools
 print = functools.partial(print, flush=True)
 
-def _get_array_from_shm(name_and_size):
+# (results provider, name) pairs of the SHM objects no longer in use, to be released to the IDE in the next call
+_released_shm_names = []
+
+def _release_shm(name, results_provider):
+    """
+    Internal. Marks the SHM object as unused. This can be called from finalizers,
+    so it only queues the name; the IDE is notified in _flush_released_shm().
+    `results_provider` is the one the object was received from.
+    """
+    _released_shm_names.append((results_provider, name))
+
+
+def _flush_released_shm():
+    """
+    Internal. Tells the IDE that the SHM objects queued by _release_shm() can be
+    reused. (Objects are not unlinked here, because the IDE keeps them in a pool.)
+    Objects received from the results provider of an earlier chart are dropped:
+    the IDE reclaimed them when that chart finished, and they may have been
+    given out again since, e.g. to the current chart.
+    """
+    if _released_shm_names and Gateway.results_provider is not None:
+        entries = list(_released_shm_names)
+        del _released_shm_names[:len(entries)]
+        names = [name for results_provider, name in entries if results_provider is Gateway.results_provider]
+        if names:
+            Gateway.results_provider.releaseSharedMemory(names)
+
+
+def _get_array_from_shm(name_and_size, dtype='>f8', segments=None):
     """
     Internal. Opens a shared memory object (region, file, content) in a platform-specific
-    way, and returns the whole contents of it as a np.array of doubles.
-    `name_and_size` should be a space-separated pair of an object name and an integer,
-    which is the size of the named SHM object in bytes.
+    way, and returns the whole contents of it as a np.array of the given dtype (doubles
+    by default). `name_and_size` should be a space-separated pair of an object name and
+    an integer, which is the size of the named SHM object in bytes.
+
+    `name_and_size` may also contain a byte offset and a number of items, when several
+    arrays are packed into the same SHM object; then only that part is returned. Each
+    SHM object can only be opened once, so in this case, `segments` must be a dict
+    that caches the contents of the already opened objects, shared by all such calls.
+
+    The SHM objects are owned by the IDE, which may pool them for reuse. They are
+    released once the returned arrays (or, on Linux, where they are not copied,
+    all arrays and views referring to them) are garbage collected.
     """
     if not name_and_size:
         return None
 
-    name, size = name_and_size.split(" ")
-    size = int(size)
+    _flush_released_shm()
+
+    parts = name_and_size.split(" ")
+    name, size = parts[0], int(parts[1])
 
     if name == "<EMPTY>" and size == 0:
-        return np.array([])
+        return np.array([], dtype=np.dtype(dtype))
+
+    if len(parts) == 4:
+        offset, length = int(parts[2]), int(parts[3])
+        if name not in segments:
+            segments[name] = _get_array_from_shm(name + " " + str(size), 'u1')
+        dtype = np.dtype(dtype)
+        return segments[name][offset:offset + length * dtype.itemsize].view(dtype)
 
     system = platform.system()
     if system in ['Linux', 'Darwin']:
         mem = posix_ipc.SharedMemory(name)
 
+        # the object may be larger than the data in it (it comes from a pool)
         if system == 'Darwin':
             # for some reason we can't directly np.memmap the shm file, because it is "unseekable"
             # but the mmap module works with it, so we just copy the data into np, and release the shared memory
-            with mmap.mmap(mem.fd, length=mem.size) as mf:
-                arr = np.frombuffer(mf.read(), dtype=np.dtype('>f8'))
+            with mmap.mmap(mem.fd, length=size) as mf:
+                arr = np.frombuffer(mf.read(size), dtype=np.dtype(dtype))
+            mem.close_fd()
+            _release_shm(name, Gateway.results_provider)
         else:
-            # on Linux, we can just continue to use the existing shm memory without copying
-            with open(mem.fd, 'wb') as mf:
-                arr = np.memmap(mf, dtype=np.dtype('>f8'))
-
-        # on Mac we are done with shm (data is copied), on Linux we can delete the name even though the mapping is still in use
-        mem.unlink()
+            # on Linux, we can just continue to use the existing shm memory without copying,
+            # and release it when the array is no longer used; it is mapped copy-on-write,
+            # because the same object may be shared by several charts (see BatchResultsCache)
+            with open(mem.fd, 'rb') as mf:
+                arr = np.memmap(mf, dtype=np.dtype(dtype), mode='c', shape=(size // np.dtype(dtype).itemsize,))
+            weakref.finalize(arr, _release_shm, name, Gateway.results_provider)
     elif system == 'Windows':
         # on Windows, the mmap module in itself provides shared memory functionality. and we copy the data here as well.
         with mmap.mmap(-1, size, tagname=name) as mf:
-            arr = np.frombuffer(mf.read(), dtype=np.dtype('>f8'))
+            arr = np.frombuffer(mf.read(size), dtype=np.dtype(dtype))
+        _release_shm(name, Gateway.results_provider)
     else:
         raise RuntimeError("unsupported platform")
 
     return arr
 
 
+class _PickleStreamReader(io.RawIOBase):
+    """
+    Internal. A readable binary stream over an IPickleStream, which hands over
+    a pickle in shared memory chunks while it is being produced. Each chunk is
+    mapped when needed, and released once consumed, so only a few chunks of
+    the pickle are in memory at any time.
+    """
+    def __init__(self, stream):
+        self.stream = stream
+        self.chunk = None
+        self.pos = 0
+        self.eof = False
+
+    def readable(self):
+        return True
+
+    def readinto(self, b):
+        while self.chunk is None or self.pos >= len(self.chunk):
+            self.chunk = None
+            if self.eof:
+                return 0
+            name_and_size = self.stream.nextChunk()
+            if name_and_size is None:
+                self.eof = True
+                return 0
+            self.chunk = _get_array_from_shm(name_and_size, 'u1')
+            self.pos = 0
+
+        n = min(len(b), len(self.chunk) - self.pos)
+        b[:n] = self.chunk[self.pos:self.pos + n]
+        self.pos += n
+        return n
+
+    def close(self):
+        if not self.closed:
+            self.chunk = None
+            self.stream.close()
+        super().close()
+
+
+def _load_pickle_stream(stream):
+    """
+    Internal. Unpickles the object from an IPickleStream while it is being
+    transferred, instead of waiting for the whole pickle first.
+    """
+    with io.BufferedReader(_PickleStreamReader(stream), 1024 * 1024) as f:
+        return pickle.load(f)
+
+
+def _load_pickle_sequence(stream):
+    """
+    Internal. Unpickles the objects from an IPickleStream that contains a
+    sequence of pickles (see IPickleSequenceWriter on the Java side), and
+    yields each of them as soon as it has arrived.
+    """
+    with io.BufferedReader(_PickleStreamReader(stream), 1024 * 1024) as f:
+        while True:
+            try:
+                obj = pickle.load(f)
+            except EOFError:
+                return
+            yield obj
+
+
+def _get_columns(columns, categorical=False):
+    """
+    Internal. Turns the list of column tuples produced by ColumnarResultsPickler
+    into a DataFrame. Dictionary-encoded string columns become object columns
+    (so they behave the same as with the row-based format), or pd.Categorical
+    if `categorical` is True. Array columns become columns of np.arrays.
+    """
+    data = dict()
+    for column in columns:
+        name, kind = column[0], column[1]
+        if kind == "category":
+            codes = _get_array_from_shm(column[2], '>i4')
+            if categorical:
+                data[name] = pd.Categorical.from_codes(codes.astype(np.int32), categories=column[3])
+            else:
+                data[name] = np.array(column[3], dtype=object)[codes] if len(column[3]) else np.array([], dtype=object)
+        elif kind == "array":
+            offsets = _get_array_from_shm(column[2], '>i8')
+            values = _get_array_from_shm(column[3], '>f8')
+            data[name] = np.split(values, offsets[1:-1]) if len(offsets) > 1 else []
+        else:
+            data[name] = _get_array_from_shm(column[2], '>' + kind)
+    return pd.DataFrame(data, columns=[column[0] for column in columns])
+
+
+def _get_results_in_columns(result_type, filter_expression, include_attrs):
+    """
+    Internal. Returns the results of the given type and their attributes
+    (if requested) as a pair of DataFrames, using the columnar format.
+    """
+    pk = Gateway.results_provider.getResultColumnsPickle(result_type, filter_expression, bool(include_attrs))
+    columns, attr_columns = pickle.loads(pk)
+    return _get_columns(columns), None if attr_columns is None else _get_columns(attr_columns)
+
+
 def get_results(filter_expression="", row_types=['runattr', 'itervar', 'config', 'scalar', 'vector', 'statistic', 'histogram', 'param', 'attr'], omit_unused_columns=True, start_time=-inf, end_time=inf):
-    pk = Gateway.results_provider.getResultsPickle(filter_expression, list(row_types), bool(omit_unused_columns), float(start_time), float(end_time))
+    stream = Gateway.results_provider.getResultsPickleStream(filter_expression, list(row_types), bool(omit_unused_columns), float(start_time), float(end_time))
 
-    df = pd.DataFrame(pickle.loads(pk), columns=[
+    df = pd.DataFrame(_load_pickle_stream(stream), columns=[
         "runID", "type", "module", "name", "attrname", "attrvalue",
         "value", "count", "sumweights", "mean", "stddev", "min", "max",
         "underflows", "overflows", "binedges", "binvalues", "vectime", "vecvalue"])
@@ -67,8 +218,9 @@ def get_results(filter_expression="", row_types=['runattr', 'itervar', 'config',
     df["binedges"] = df["binedges"].map(lambda v: np.frombuffer(v, dtype=np.dtype('>f8')), na_action='ignore')
     df["binvalues"] = df["binvalues"].map(lambda v: np.frombuffer(v, dtype=np.dtype('>f8')), na_action='ignore')
 
-    df["vectime"] = df["vectime"].map(_get_array_from_shm)
-    df["vecvalue"] = df["vecvalue"].map(_get_array_from_shm)
+    segments = dict()
+    df["vectime"] = df["vectime"].map(lambda v: _get_array_from_shm(v, segments=segments))
+    df["vecvalue"] = df["vecvalue"].map(lambda v: _get_array_from_shm(v, segments=segments))
 
     if omit_unused_columns:  # maybe do this in Java?
         df.dropna(axis='columns', how='all', inplace=True)
@@ -94,7 +246,8 @@ def _append_additional_data(df, attrs, include_runattrs, include_itervars, inclu
     metadata as columns onto the result DataFrames.
     """
     if attrs is not None:
-        attrs = pd.DataFrame(attrs, columns=["runID", "module", "name", "attrname", "attrvalue"])
+        if not isinstance(attrs, pd.DataFrame):
+            attrs = pd.DataFrame(attrs, columns=["runID", "module", "name", "attrname", "attrvalue"])
         if not attrs.empty:
             attrs = pd.pivot_table(attrs, columns="attrname", aggfunc='first', index=["runID", "module", "name"], values="attrvalue")
             df = df.merge(attrs, left_on=["runID", "module", "name"], right_index=True, how='left')
@@ -140,10 +293,7 @@ def get_itervars(filter_expression="", include_runattrs=False, include_itervars=
 
 
 def get_scalars(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False):
-    pk = Gateway.results_provider.getScalarsPickle(filter_expression, include_attrs)
-
-    scalars, attrs = pickle.loads(pk)
-    df = pd.DataFrame(scalars, columns=["runID", "module", "name", "value"])
+    df, attrs = _get_results_in_columns("scalar", filter_expression, include_attrs)
 
     df =_append_additional_data(df, attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries)
     if merge_module_and_name:
@@ -166,40 +316,74 @@ def get_parameters(filter_expression="", include_attrs=False, include_runattrs=F
     return df
 
 
-def get_vectors(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf):
-    pk = Gateway.results_provider.getVectorsPickle(filter_expression, include_attrs, float(start_time), float(end_time))
+def get_vectors(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf, target_resolution=None):
+    for df in get_vectors_in_batches(**locals()):
+        pass
+    return df
+
 
-    scalars, attrs = pickle.loads(pk)
-    df = pd.DataFrame(scalars, columns=["runID", "module", "name", "vectime", "vecvalue"])
+def get_vectors_in_batches(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, start_time=-inf, end_time=inf, target_resolution=None):
+    stream = Gateway.results_provider.getVectorsPickleStream(filter_expression, include_attrs, float(start_time), float(end_time), int(target_resolution or 0))
+    pickles = _load_pickle_sequence(stream)
 
-    df["vectime"] = df["vectime"].map(_get_array_from_shm)
-    df["vecvalue"] = df["vecvalue"].map(_get_array_from_shm)
+    # the metadata of all vectors comes first, then the data in batches, in the same order
+    rows, attrs = next(pickles)
+    df = pd.DataFrame(rows, columns=["runID", "module", "name"])
+    df["vectime"] = None
+    df["vecvalue"] = None
 
     df = _append_additional_data(df, attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries)
     if merge_module_and_name:
         df.name = df.module + "." + df.name
-    return df
+    yield df
+
+    segments = dict()
+    vectimes = [None] * len(df)
+    vecvalues = [None] * len(df)
+    num_loaded = 0
+    for batch in pickles:
+        for vectime, vecvalue in batch:
+            vectimes[num_loaded] = _get_array_from_shm(vectime, segments=segments)
+            vecvalues[num_loaded] = _get_array_from_shm(vecvalue, segments=segments)
+            num_loaded += 1
+        df["vectime"] = pd.Series(vectimes, index=df.index, dtype=object)
+        df["vecvalue"] = pd.Series(vecvalues, index=df.index, dtype=object)
+        yield df
 
 
 def get_statistics(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False):
-    pk = Gateway.results_provider.getStatisticsPickle(filter_expression, include_attrs)
-
-    scalars, attrs = pickle.loads(pk)
-    df = pd.DataFrame(scalars, columns=["runID", "module", "name", "count", "sumweights", "mean", "stddev", "min", "max"])
+    df, attrs = _get_results_in_columns("statistic", filter_expression, include_attrs)
 
     return _append_additional_data(df, attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries)
 
 
 def get_histograms(filter_expression="", include_attrs=False, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False, merge_module_and_name=False, include_statistics_fields=False):
-    pk = Gateway.results_provider.getHistogramsPickle(filter_expression, include_attrs)
+    df, attrs = _get_results_in_columns("histogram", filter_expression, include_attrs)
 
-    scalars, attrs = pickle.loads(pk)
-    df = pd.DataFrame(scalars, columns=["runID", "module", "name", "count", "sumweights", "mean", "stddev", "min", "max", "underflows", "overflows", "binedges", "binvalues"])
+    return _append_additional_data(df, attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries)
 
-    df["binedges"] = df["binedges"].map(lambda v: np.frombuffer(v, dtype=np.dtype('>f8')), na_action='ignore')
-    df["binvalues"] = df["binvalues"].map(lambda v: np.frombuffer(v, dtype=np.dtype('>f8')), na_action='ignore')
 
-    return _append_additional_data(df, attrs, include_runattrs, include_itervars, include_param_assignments, include_config_entries)
+def _get_aggregated_results(result_type, filter_expression, group_by, aggregates, time_bucket, start_time, end_time):
+    """
+    Internal. Returns the aggregates computed by AggregatingResultsPickler as a DataFrame.
+    """
+    group_by, aggregates = list(group_by), list(aggregates)
+    pk = Gateway.results_provider.getAggregatedResultsPickle(result_type, filter_expression, group_by, aggregates,
+                                                             float(time_bucket or 0), float(start_time), float(end_time))
+    columns = [field.split(":", 1)[-1] for field in group_by] + (["vectime"] if time_bucket else []) + aggregates
+    df = pd.DataFrame(pickle.loads(pk), columns=columns)
+    if time_bucket:
+        for column in ["vectime"] + aggregates:
+            df[column] = df[column].map(lambda v: np.frombuffer(v, dtype=np.dtype('>f8')))
+    return df
+
+
+def get_aggregated_scalars(filter_expression, group_by=["name"], aggregates=["count", "mean", "stddev", "min", "max"]):
+    return _get_aggregated_results("scalar", filter_expression, group_by, aggregates, None, -inf, inf)
+
+
+def get_aggregated_vectors(filter_expression, group_by=["name"], aggregates=["count", "mean", "stddev", "min", "max"], time_bucket=None, start_time=-inf, end_time=inf):
+    return _get_aggregated_results("vector", filter_expression, group_by, aggregates, time_bucket, start_time, end_time)
 
 
 def get_config_entries(filter_expression, include_runattrs=False, include_itervars=False, include_param_assignments=False, include_config_entries=False):
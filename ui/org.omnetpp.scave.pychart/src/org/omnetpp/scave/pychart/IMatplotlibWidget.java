@@ -21,6 +21,12 @@ public interface IMatplotlibWidget {
     void setSharedMemoryNameAndSize(String name, long size);
     void setPixelsShared(int w, int h);
 
+    /**
+     * Like setPixelsShared, but only the given rectangle of the
+     * w*h image in the shared memory has changed. Used by blitting.
+     */
+    void updatePixelsShared(int w, int h, int x, int y, int rw, int rh);
+
     /**
      * This is used for updating the canvas partially.
      * It paints on top of the already existing canvas contents.
@@ -0,0 +1,24 @@
+package org.omnetpp.scave.pychart;
+
+import java.io.IOException;
+
+/**
+ * A pickle that is produced and transferred in chunks, while the Python
+ * process is already reading it. Each chunk is a shared memory object,
+ * which the Python side maps, consumes, and removes.
+ */
+public interface IPickleStream {
+    /**
+     * Waits until the next chunk of the pickle is ready, and returns it as a
+     * "name size" string, the same way shared memory objects are pickled.
+     * Returns null at the end of the pickle. Throws an exception if producing
+     * the pickle failed.
+     */
+    String nextChunk() throws IOException;
+
+    /**
+     * Stops producing the pickle (if it is not complete yet), and removes
+     * the chunks not consumed. Must be called even if all chunks were read.
+     */
+    void close();
+}
@@ -20,4 +20,9 @@ public interface IPythonEntryPoint {
     void setGlobalObjectPickle(String name, byte[] pickle);
 
     void execute(String command) throws Py4JException;
+
+    // Clears what the last chart script left behind, so the process
+    // can be reused for another chart. Returns the resident set size
+    // of the process in KiB, or -1 if unknown.
+    int reset();
 }
@@ -31,4 +31,19 @@ public interface IScaveResultsPickleProvider {
     byte[] getHistogramsPickle(String filterExpression, boolean includeAttrs) throws PickleException, IOException;
 
     byte[] getParamValuesPickle(String filter, boolean include_attrs) throws PickleException, IOException;
+
+    // streaming variants, without a size limit on the pickle; the vectors are sent as a
+    // sequence of pickles, one for the metadata of all vectors and one for each batch of data
+    IPickleStream getResultsPickleStream(String filterExpression, List<String> rowTypes, boolean omitUnusedColumns, double simTimeStart, double simTimeEnd) throws PickleException, IOException;
+    IPickleStream getVectorsPickleStream(String filterExpression, boolean includeAttrs, double simTimeStart, double simTimeEnd, int targetResolution) throws PickleException, IOException;
+
+    // columnar format; resultType is "scalar", "statistic" or "histogram"
+    byte[] getResultColumnsPickle(String resultType, String filterExpression, boolean includeAttrs) throws PickleException, IOException;
+
+    // aggregates of scalars or vectors per group, computed without transferring the data;
+    // resultType is "scalar" or "vector", timeBucket <= 0 means no resampling
+    byte[] getAggregatedResultsPickle(String resultType, String filterExpression, List<String> groupBy, List<String> aggregates, double timeBucket, double simTimeStart, double simTimeEnd) throws PickleException, IOException;
+
+    // shared memory objects the Python side no longer uses
+    void releaseSharedMemory(List<String> names);
 }
@@ -18,16 +18,41 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.PaletteData;
 import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Menu;
 import org.omnetpp.scave.engine.ScaveEngine;
-
+import org.omnetpp.scave.pychart.PythonCallerThread.Priority;
+
+/**
+ * Displays a Matplotlib figure rendered by the Python process.
+ *
+ * Frames arrive from Python (on Py4J threads) through shared memory, and are
+ * copied right away into a staging framebuffer, only the changed rectangle for
+ * blits. The UI thread transfers the accumulated dirty area of the staging
+ * buffer into the displayed image at most once per FRAME_INTERVAL_MILLIS, so
+ * frames arriving faster than that are coalesced. The displayed image is only
+ * recreated when its size changes; otherwise only the dirty area is drawn
+ * into it.
+ */
 public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
-    ByteBuffer buf;
-    ImageData imageData;
-    Image image;
+    // about the refresh rate of displays
+    static final int FRAME_INTERVAL_MILLIS = 16;
+
+    // the pixel format of the frames (RGBA bytes)
+    static final PaletteData RGBA_PALETTE = new PaletteData(0xFF000000, 0xFF0000, 0xFF00);
+
+    ByteBuffer buf; // the shared memory segment from Python; guarded by framebufferLock
+
+    final Object framebufferLock = new Object();
+    ImageData framebuffer; // staging buffer for the next frame; guarded by framebufferLock
+    Rectangle dirtyRect; // area of the framebuffer not yet transferred into image; guarded by framebufferLock
+    boolean frameScheduled = false; // guarded by framebufferLock
+    long lastFrameTime = 0; // accessed from the UI thread only
+
+    Image image; // the displayed image; accessed from the UI thread only
 
     // this seems to improve responsiveness by "cheating", but can sometimes
     // draw ugly glitches for a short time when resizing is too quick
@@ -60,8 +85,8 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
 
         addPaintListener(e -> {
             if (image != null) {
-                int width = image.getImageData().width;
-                int height = image.getImageData().height;
+                int width = image.getBounds().width; // not getImageData(), that would copy the pixels
+                int height = image.getBounds().height;
 
                 if (stretchOnResize) {
                     if (width == getSize().x && height == getSize().y)
@@ -104,7 +129,7 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
             int sy = getSize().y;
             if (pythonProcess != null && pythonProcess.isAlive()) {
                 pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().mouseMoveEvent(e.x, sy - e.y),
-                        figureNumber * 100 + EVENTSTREAM_MOUSEMOVE);
+                        figureNumber * 100 + EVENTSTREAM_MOUSEMOVE, Priority.INTERACTIVE);
             }
         });
 
@@ -116,7 +141,7 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
             @Override
             public void mouseExit(MouseEvent arg0) {
                 if (pythonProcess != null && pythonProcess.isAlive()) {
-                    pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().leaveEvent());
+                    pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().leaveEvent(), Priority.INTERACTIVE);
                     mouseIsOverMe = false;
                     redraw();
                 }
@@ -125,7 +150,7 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
             @Override
             public void mouseEnter(MouseEvent e) {
                 if (pythonProcess != null && pythonProcess.isAlive()) {
-                    pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().enterEvent(e.x, e.y));
+                    pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().enterEvent(e.x, e.y), Priority.INTERACTIVE);
                     mouseIsOverMe = true;
                     redraw();
                 }
@@ -137,7 +162,7 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
             public void mouseUp(MouseEvent e) {
                 if (pythonProcess != null && pythonProcess.isAlive()) {
                     int sy = getSize().y;
-                    pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().mouseReleaseEvent(e.x, sy - e.y, e.button));
+                    pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().mouseReleaseEvent(e.x, sy - e.y, e.button), Priority.INTERACTIVE);
                 }
             }
 
@@ -150,7 +175,7 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
                             contextMenu.setVisible(true);
                     }
                     else
-                        pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().mousePressEvent(e.x, sy - e.y, e.button));
+                        pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().mousePressEvent(e.x, sy - e.y, e.button), Priority.INTERACTIVE);
                 }
                 setFocus();
             }
@@ -160,7 +185,7 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
                 if (pythonProcess != null && pythonProcess.isAlive()) {
                     int sy = getSize().y;
                     pythonProcess.pythonCallerThread
-                            .asyncExec(() -> getCanvas().mouseDoubleClickEvent(e.x, sy - e.y, e.button));
+                            .asyncExec(() -> getCanvas().mouseDoubleClickEvent(e.x, sy - e.y, e.button), Priority.INTERACTIVE);
                 }
             }
         });
@@ -172,7 +197,7 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
                     int x = getSize().x;
                     int y = getSize().y;
                     if (x > 2 && y > 2)
-                        pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().resizeEvent(x, y), figureNumber * 100 + EVENTSTREAM_RESIZE);
+                        pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().resizeEvent(x, y), figureNumber * 100 + EVENTSTREAM_RESIZE, Priority.RESIZE);
                 }
             }
 
@@ -184,57 +209,64 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
 
     @Override
     public void setSharedMemoryNameAndSize(String name, long size) {
-        if (buf != null)
-            ScaveEngine.unmapSharedMemory(buf);
-        buf = ScaveEngine.mapSharedMemory(name, size);
+        synchronized (framebufferLock) {
+            if (buf != null)
+                ScaveEngine.unmapSharedMemory(buf);
+            buf = ScaveEngine.mapSharedMemory(name, size);
+        }
     }
 
     @Override
     public void setPixelsShared(int w, int h) {
+        updatePixelsShared(w, h, 0, 0, w, h);
+    }
+
+    @Override
+    public void updatePixelsShared(int w, int h, int x, int y, int rw, int rh) {
         if (isRefreshing)
             setMessage(null);
         isRefreshing = false;
 
-        if (buf == null || buf.capacity() == 0)
-            return; // avoids InvalidArgumentException
-
-        // copy the data synchronously
-        Display.getDefault().syncExec(() -> {
-            if (imageData == null || w != imageData.width || h != imageData.height) {
-                PaletteData palette = new PaletteData(0xFF000000, 0xFF0000, 0xFF00);
-                imageData = new ImageData(w, h, 32, palette);
+        synchronized (framebufferLock) {
+            if (buf == null || buf.capacity() < 4L * w * h)
+                return; // avoids InvalidArgumentException
+            boolean resized = ensureFramebuffer(w, h);
+            if (resized) {
+                x = y = 0;
+                rw = w;
+                rh = h;
             }
-            // Have to up-cast buf because Java 9 added a covariant
-            // override of rewind to ByteBuffer, so we weren't always
-            // compatible (got NoSuchMethodException).
-            // see: https://github.com/eclipse/jetty.project/issues/3244
-            ((Buffer)buf).rewind();
-            buf.get(imageData.data);
-
-        });
-
-        // then update the image itself and redraw asynchronously, because this part takes longer
-        Display.getDefault().asyncExec(() -> {
-            if (!isDisposed()) {
-                if (image != null)
-                    image.dispose();
-
-                // this is actually the slowest part... consider using BufferedImage or
-                // something like that?
-                image = new Image(getDisplay(), imageData);
-
-                redraw();
-                update();
+            Rectangle r = new Rectangle(x, y, rw, rh).intersection(new Rectangle(0, 0, w, h));
+            if (r.isEmpty())
+                return;
+
+            // copy the data synchronously, since Python may overwrite it after we return
+            ByteBuffer src = buf.duplicate();
+            int bytesPerLine = framebuffer.bytesPerLine;
+            if (r.x == 0 && r.width == w && bytesPerLine == 4 * w) {
+                // Have to up-cast because Java 9 added a covariant override of
+                // position() to ByteBuffer, so we weren't always compatible (got
+                // NoSuchMethodException). see: https://github.com/eclipse/jetty.project/issues/3244
+                ((Buffer)src).position(r.y * bytesPerLine);
+                src.get(framebuffer.data, r.y * bytesPerLine, r.height * bytesPerLine);
             }
-
-        });
-
+            else {
+                for (int row = r.y; row < r.y + r.height; row++) {
+                    ((Buffer)src).position((row * w + r.x) * 4);
+                    src.get(framebuffer.data, row * bytesPerLine + r.x * 4, r.width * 4);
+                }
+            }
+            addDirtyRect(r);
+        }
     }
 
     @Override
     public void dispose() {
-        if (buf != null)
-            ScaveEngine.unmapSharedMemory(buf);
+        synchronized (framebufferLock) {
+            if (buf != null)
+                ScaveEngine.unmapSharedMemory(buf);
+            buf = null;
+        }
         if (image != null)
             image.dispose();
         super.dispose();
@@ -246,25 +278,93 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
             setMessage(null);
         isRefreshing = false;
 
-        Display.getDefault().asyncExec(() -> {
-            if (!isDisposed()) {
-                if (pixels.length == 0)
-                    return; // avoids InvalidArgumentException
+        if (pixels.length < 4 * w * h)
+            return; // avoids InvalidArgumentException
+
+        synchronized (framebufferLock) {
+            ensureFramebuffer(w, h);
+            for (int row = 0; row < h; row++)
+                System.arraycopy(pixels, row * w * 4, framebuffer.data, row * framebuffer.bytesPerLine, w * 4);
+            addDirtyRect(new Rectangle(0, 0, w, h));
+        }
+    }
+
+    /**
+     * (Re)allocates the framebuffer if its size is different, and returns
+     * whether it did. Must be called with framebufferLock held.
+     */
+    private boolean ensureFramebuffer(int w, int h) {
+        if (framebuffer != null && framebuffer.width == w && framebuffer.height == h)
+            return false;
+        framebuffer = new ImageData(w, h, 32, RGBA_PALETTE);
+        dirtyRect = null;
+        return true;
+    }
 
-                PaletteData palette = new PaletteData(0xFF000000, 0xFF0000, 0xFF00);
-                ImageData imageData = new ImageData(w, h, 32, palette, 1, pixels);
+    /**
+     * Marks an area of the framebuffer to be transferred into the displayed
+     * image, and schedules a frame if needed. Must be called with
+     * framebufferLock held.
+     */
+    private void addDirtyRect(Rectangle r) {
+        dirtyRect = dirtyRect == null ? r : dirtyRect.union(r);
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Display display = Display.getDefault();
+            display.asyncExec(() -> {
+                long delay = lastFrameTime + FRAME_INTERVAL_MILLIS - System.currentTimeMillis();
+                if (delay > 0)
+                    display.timerExec((int)delay, () -> presentFrame());
+                else
+                    presentFrame();
+            });
+        }
+    }
 
+    /**
+     * Transfers the dirty area of the framebuffer into the displayed image.
+     * Runs in the UI thread.
+     */
+    private void presentFrame() {
+        Rectangle r;
+        ImageData dirtyData = null;
+        synchronized (framebufferLock) {
+            frameScheduled = false;
+            if (isDisposed() || dirtyRect == null)
+                return;
+            r = dirtyRect;
+            dirtyRect = null;
+
+            Rectangle bounds = image == null ? null : image.getBounds();
+            if (bounds == null || bounds.width != framebuffer.width || bounds.height != framebuffer.height || r.equals(new Rectangle(0, 0, framebuffer.width, framebuffer.height))) {
+                // full frame: the image is recreated from the framebuffer directly
                 if (image != null)
                     image.dispose();
+                image = new Image(getDisplay(), framebuffer);
+                r = image.getBounds();
+            }
+            else {
+                dirtyData = new ImageData(r.width, r.height, 32, RGBA_PALETTE);
+                for (int row = 0; row < r.height; row++)
+                    System.arraycopy(framebuffer.data, (r.y + row) * framebuffer.bytesPerLine + r.x * 4, dirtyData.data, row * dirtyData.bytesPerLine, r.width * 4);
+            }
+        }
 
-                // this is actually the slowest part... consider using BufferedImage or
-                // something like that?
-                image = new Image(getDisplay(), imageData);
+        if (dirtyData != null) {
+            Image dirtyImage = new Image(getDisplay(), dirtyData);
+            GC gc = new GC(image);
+            gc.drawImage(dirtyImage, r.x, r.y);
+            gc.dispose();
+            dirtyImage.dispose();
+        }
+        lastFrameTime = System.currentTimeMillis();
 
-                redraw();
-                update();
-            }
-        });
+        Rectangle bounds = image.getBounds();
+        if (bounds.width == getSize().x && bounds.height == getSize().y)
+            redraw(r.x, r.y, r.width, r.height, false);
+        else
+            redraw(); // stretched
+        update();
     }
 
     public void rebindToNewProcess(PythonProcess pythonProcess, IMatplotlibFigureCanvas canvas) {
@@ -274,7 +374,7 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
         int y = getSize().y;
         isRefreshing = true;
 
-        pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().resizeEvent(x, y), figureNumber * 100 + EVENTSTREAM_RESIZE);
+        pythonProcess.pythonCallerThread.asyncExec(() -> getCanvas().resizeEvent(x, y), figureNumber * 100 + EVENTSTREAM_RESIZE, Priority.RESIZE);
 
         redraw();
         update();
@@ -285,27 +385,27 @@ public class MatplotlibWidget extends Canvas implements IMatplotlibWidget {
         if (isRefreshing)
             setMessage(null);
         isRefreshing = false;
-        Display.getDefault().asyncExec(() -> {
-            if (!isDisposed()) {
-                // TODO: could be optimized
-
-                GC gc = new GC(image);
-
-                // this is ARGB, and maybe a different endianness, so BGRA, which is
-                // different than in setPixels
-                PaletteData palette = new PaletteData(0xFF00, 0xFF0000, 0xFF000000);
-                ImageData imageData = new ImageData(w, h, 32, palette, 1, pixels);
 
-                Image im = new Image(getDisplay(), imageData);
-
-                gc.drawImage(im, x, y);
-
-                gc.dispose();
-
-                redraw();
-                update();
+        synchronized (framebufferLock) {
+            if (framebuffer == null || pixels.length < 4 * w * h)
+                return;
+            Rectangle r = new Rectangle(x, y, w, h).intersection(new Rectangle(0, 0, framebuffer.width, framebuffer.height));
+            if (r.isEmpty())
+                return;
+            // this is ARGB, and maybe a different endianness, so BGRA, which is
+            // different than in setPixels
+            for (int row = r.y; row < r.y + r.height; row++) {
+                int src = ((row - y) * w + (r.x - x)) * 4;
+                int dst = row * framebuffer.bytesPerLine + r.x * 4;
+                for (int i = 0; i < r.width; i++, src += 4, dst += 4) {
+                    framebuffer.data[dst] = pixels[src + 2];
+                    framebuffer.data[dst + 1] = pixels[src + 1];
+                    framebuffer.data[dst + 2] = pixels[src];
+                    framebuffer.data[dst + 3] = pixels[src + 3];
+                }
             }
-        });
+            addDirtyRect(r);
+        }
     }
 
     @Override
@@ -1,11 +1,38 @@
 package org.omnetpp.scave.pychart;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.omnetpp.common.Debug;
 import py4j.Py4JException;
 
+/**
+ * Executes calls into the Python process in a dedicated thread, one at a time.
+ *
+ * Submitted Runnables are queued in priority lanes: interactive (mouse)
+ * events are executed first, then resize events, then everything else (most
+ * importantly, chart scripts). The order is preserved within a lane. A
+ * running Runnable is never interrupted, so events still wait for a chart
+ * script that has already been started.
+ *
+ * Runnables submitted with an event stream id coalesce: if the previous
+ * Runnable of the same stream is still the last one waiting in its lane, it
+ * is replaced by the new one ("latest wins"), e.g. the processing of previous
+ * MouseMove or Resize events is skipped if a newer one arrived.
+ *
+ * Queue depth and queueing latency are recorded, see getQueueDepth() and
+ * getMetrics().
+ */
 public class PythonCallerThread extends Thread {
 
+    public enum Priority {
+        INTERACTIVE, RESIZE, NORMAL
+    }
+
+    // queueing latency above which a warning is printed to the debug channel
+    private static final long SATURATION_WARNING_MILLIS = 500;
+
     PythonProcess proc;
 
     public interface ExceptionHandler {
@@ -17,16 +44,36 @@ public class PythonCallerThread extends Thread {
         this.proc = proc;
     }
 
-    ConcurrentLinkedQueue<CustomRunnable> queue = new ConcurrentLinkedQueue<CustomRunnable>();
+    final Object lock = new Object();
+    @SuppressWarnings("unchecked")
+    final ArrayDeque<CustomRunnable>[] lanes = new ArrayDeque[Priority.values().length]; // guarded by lock
+    final Map<Integer, CustomRunnable> lastOfStream = new HashMap<>(); // the last waiting Runnable of each event stream; guarded by lock
+    boolean busy = false; // guarded by lock
+    {
+        for (int i = 0; i < lanes.length; i++)
+            lanes[i] = new ArrayDeque<>();
+    }
+
+    // metrics, guarded by lock
+    long numSubmitted = 0;
+    long numCoalesced = 0;
+    long numExecuted = 0;
+    long totalLatencyNanos = 0;
+    long maxLatencyNanos = 0;
+    int maxQueueDepth = 0;
 
     class CustomRunnable implements Runnable {
         Runnable wrapped;
         boolean done = false;
         int eventStream;
+        Priority priority;
+        long submitTime; // System.nanoTime()
 
-        public CustomRunnable(Runnable wrapped, int eventStream) {
+        public CustomRunnable(Runnable wrapped, int eventStream, Priority priority) {
             this.wrapped = wrapped;
             this.eventStream = eventStream;
+            this.priority = priority;
+            this.submitTime = System.nanoTime();
         }
 
         public boolean isDone() {
@@ -64,27 +111,47 @@ public class PythonCallerThread extends Thread {
     // wait for it to complete, allowing us (and the user) to
     // cancel it by (for example) killing the Python process.
     public void asyncExec(Runnable runnable) {
-        asyncExec(runnable, -1);
+        asyncExec(runnable, -1, Priority.NORMAL);
+    }
+
+    public void asyncExec(Runnable runnable, Priority priority) {
+        asyncExec(runnable, -1, priority);
     }
 
     /**
-     * If eventStream is non-negative, all Runnables with the same eventStream are
-     * removed from the queue before 'runnable' is submitted. This makes it possible
-     * to "skip" the processing of previous MouseMove or Resize events if a newer
-     * one arrived.
+     * If eventStream is non-negative, the previous Runnable of the same
+     * eventStream is dropped if it is still the last one waiting in its lane.
      */
     public void asyncExec(Runnable runnable, int eventStream) {
-        CustomRunnable cr = new CustomRunnable(runnable, eventStream);
+        asyncExec(runnable, eventStream, Priority.NORMAL);
+    }
+
+    public void asyncExec(Runnable runnable, int eventStream, Priority priority) {
+        CustomRunnable cr = new CustomRunnable(runnable, eventStream, priority);
 
-        synchronized (queue) {
-            if (eventStream >= 0)
-                queue.removeIf(icr -> icr.getEventStream() == eventStream);
-            queue.add(cr);
-            queue.notify();
+        synchronized (lock) {
+            ArrayDeque<CustomRunnable> lane = lanes[priority.ordinal()];
+            numSubmitted++;
+            if (eventStream >= 0) {
+                CustomRunnable previous = lastOfStream.put(eventStream, cr);
+                if (previous != null && lane.peekLast() == previous) {
+                    // replace it, keeping its submission time, so the latency is not underestimated
+                    lane.pollLast();
+                    cr.submitTime = previous.submitTime;
+                    numCoalesced++;
+                }
+            }
+            lane.addLast(cr);
+            maxQueueDepth = Math.max(maxQueueDepth, getQueueDepthLocked());
+            lock.notify();
         }
     }
 
     public void asyncExec(Runnable runnable, int eventStream, Runnable runAfterDone, ExceptionHandler errorHandler) {
+        asyncExec(runnable, eventStream, Priority.NORMAL, runAfterDone, errorHandler);
+    }
+
+    public void asyncExec(Runnable runnable, int eventStream, Priority priority, Runnable runAfterDone, ExceptionHandler errorHandler) {
         asyncExec(() -> {
             try {
                 runnable.run();
@@ -98,42 +165,119 @@ public class PythonCallerThread extends Thread {
 
             if (runAfterDone != null)
                 runAfterDone.run();
-        }, eventStream);
+        }, eventStream, priority);
     }
 
     public void asyncExec(Runnable runnable, Runnable runAfterDone, ExceptionHandler errorHandler) {
         asyncExec(runnable, -1, runAfterDone, errorHandler);
     }
 
+    /**
+     * Returns true if nothing is running or waiting to be run.
+     */
+    public boolean isIdle() {
+        synchronized (lock) {
+            return getQueueDepthLocked() == 0 && !busy && isAlive();
+        }
+    }
+
+    /**
+     * Returns the number of Runnables waiting to be run.
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return getQueueDepthLocked();
+        }
+    }
+
+    public int getQueueDepth(Priority priority) {
+        synchronized (lock) {
+            return lanes[priority.ordinal()].size();
+        }
+    }
+
+    /**
+     * Returns how long the oldest waiting Runnable has been waiting, in
+     * milliseconds, or 0 if none is waiting. If this keeps growing, the
+     * Python process cannot keep up with the requests.
+     */
+    public long getOldestWaitingMillis() {
+        synchronized (lock) {
+            long oldest = Long.MAX_VALUE;
+            for (ArrayDeque<CustomRunnable> lane : lanes)
+                if (!lane.isEmpty())
+                    oldest = Math.min(oldest, lane.peekFirst().submitTime);
+            return oldest == Long.MAX_VALUE ? 0 : (System.nanoTime() - oldest) / 1_000_000;
+        }
+    }
+
+    /**
+     * Returns the queueing statistics in a human-readable form.
+     */
+    public String getMetrics() {
+        synchronized (lock) {
+            return "queued: " + getQueueDepthLocked() + " (max " + maxQueueDepth + "), submitted: " + numSubmitted +
+                    ", coalesced: " + numCoalesced + ", executed: " + numExecuted +
+                    ", latency avg: " + (numExecuted == 0 ? 0 : totalLatencyNanos / numExecuted / 1_000_000) + " ms" +
+                    ", max: " + maxLatencyNanos / 1_000_000 + " ms";
+        }
+    }
+
+    private int getQueueDepthLocked() {
+        int depth = 0;
+        for (ArrayDeque<CustomRunnable> lane : lanes)
+            depth += lane.size();
+        return depth;
+    }
+
+    /**
+     * Removes the next Runnable to run, from the highest priority nonempty lane.
+     * Must be called with the lock held.
+     */
+    private CustomRunnable takeNext() {
+        for (ArrayDeque<CustomRunnable> lane : lanes) {
+            CustomRunnable cr = lane.pollFirst();
+            if (cr != null) {
+                if (cr.eventStream >= 0 && lastOfStream.get(cr.eventStream) == cr)
+                    lastOfStream.remove(cr.eventStream);
+                long latency = System.nanoTime() - cr.submitTime;
+                numExecuted++;
+                totalLatencyNanos += latency;
+                maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+                if (PythonProcess.debug && latency > SATURATION_WARNING_MILLIS * 1_000_000)
+                    Debug.println("Python executor: " + cr.priority + " call waited " + latency / 1_000_000 + " ms; " + getMetrics());
+                return cr;
+            }
+        }
+        return null;
+    }
+
     @Override
     public void run() {
-        outer: while (true) {
-            synchronized (queue) {
+        while (true) {
+            CustomRunnable r;
+            synchronized (lock) {
                 try {
                     // There is nothing to do, wait until a Runnable is submitted...
-                    if (queue.isEmpty())
-                        queue.wait();
+                    while ((r = takeNext()) == null)
+                        lock.wait();
                 }
                 catch (InterruptedException e) {
                     break; // rude...
                 }
+                busy = true;
             }
 
-            while (!queue.isEmpty()) {
-                Runnable r = null;
-                synchronized (queue) {
-                    // double-check to avoid race condition if a submission to an event stream just emptied the queue
-                    if (!queue.isEmpty())
-                        r = queue.remove();
-                }
-                if (r != null) {
-                    try {
-                        r.run();
-                    }
-                    catch (Py4JException e) {
-                        PyChartPlugin.logError(e);
-                        break outer;
-                    }
+            try {
+                r.run();
+            }
+            catch (Py4JException e) {
+                PyChartPlugin.logError(e);
+                break;
+            }
+            finally {
+                synchronized (lock) {
+                    busy = false;
                 }
             }
         }
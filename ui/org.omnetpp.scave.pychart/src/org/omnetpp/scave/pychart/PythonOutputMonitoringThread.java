@@ -2,8 +2,8 @@ package org.omnetpp.scave.pychart;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class PythonOutputMonitoringThread extends Thread {
     public Process process;
@@ -18,8 +18,8 @@ public class PythonOutputMonitoringThread extends Thread {
         void outputReceived(String content, boolean stdErr);
     }
 
-    List<IOutputListener> outputListeners = new ArrayList<IOutputListener>();
-    List<Runnable> deathListeners = new ArrayList<Runnable>();
+    List<IOutputListener> outputListeners = new CopyOnWriteArrayList<IOutputListener>();
+    List<Runnable> deathListeners = new CopyOnWriteArrayList<Runnable>();
 
     public PythonOutputMonitoringThread(Process process, boolean monitorStdErr) {
         super("Python output monitoring");
@@ -31,10 +31,18 @@ public class PythonOutputMonitoringThread extends Thread {
         deathListeners.add(listener);
     }
 
+    public void removeDeathListener(Runnable listener) {
+        deathListeners.remove(listener);
+    }
+
     public void addOutputListener(IOutputListener listener) {
         outputListeners.add(listener);
     }
 
+    public void removeOutputListener(IOutputListener listener) {
+        outputListeners.remove(listener);
+    }
+
     @Override
     public void run() {
         byte[] readBuffer = new byte[4096];
@@ -63,4 +71,8 @@ public class PythonOutputMonitoringThread extends Thread {
     public String getOutputSoFar() {
         return outputSoFar;
     }
+
+    public void clearOutputSoFar() {
+        outputSoFar = "";
+    }
 }
\ No newline at end of file
@@ -11,6 +11,8 @@ public class PythonProcess {
     private Process process;
     private ClientServer clientServer = null;
     boolean killedByUs = false;
+    boolean omnetppMplBackend = true; // whether started with the IDE's Matplotlib backend
+    int useCount = 0; // number of times handed out by the pool
 
     protected InterruptedFlag interruptedFlag = new InterruptedFlag();
 
@@ -18,7 +20,7 @@ public class PythonProcess {
     public PythonOutputMonitoringThread errorMonitoringThread;
     public PythonCallerThread pythonCallerThread;
 
-    IPythonEntryPoint entryPoint = null;
+    volatile IPythonEntryPoint entryPoint = null;
 
     public PythonProcess(Process process, ClientServer clientServer) {
         this.process = process;
@@ -35,33 +37,49 @@ public class PythonProcess {
         pythonCallerThread.start();
     }
 
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
     public IPythonEntryPoint getEntryPoint() {
+        return getEntryPoint(DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Returns the entry point of the Python process, waiting at most timeoutMillis
+     * for it to connect (it only does that after having done its imports).
+     * Gives up earlier if the process exits.
+     */
+    public synchronized IPythonEntryPoint getEntryPoint(long timeoutMillis) {
         if (entryPoint != null)
             return entryPoint;
 
         if (debug)
             Debug.println("getting entry point...");
-        int tries = 0;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
         boolean ok = false;
-        while (!ok && tries < 5) {
+        while (!ok && isAlive()) {
             try {
                 entryPoint = (IPythonEntryPoint) clientServer
                         .getPythonServerEntryPoint(new Class[] { IPythonEntryPoint.class });
                 if (debug)
                     Debug.println("checking the entry point...");
-                ++tries;
                 ok = entryPoint.check();
                 if (debug)
                     Debug.println("we have the entry point? " + ok);
             }
             catch (Exception e) {
-                Debug.println("can't connect yet, trying again in a bit...");
-                try {
-                    Thread.sleep(500);
-                }
-                catch (InterruptedException e1) {
-                    PyChartPlugin.logError(e1);
-                }
+                if (debug)
+                    Debug.println("can't connect yet");
+            }
+            if (ok || System.currentTimeMillis() > deadline)
+                break;
+            if (debug)
+                Debug.println("trying again in a bit...");
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
 
@@ -77,6 +95,21 @@ public class PythonProcess {
         return entryPoint;
     }
 
+    /**
+     * Returns true if the process is alive, is connected, and answers a check() call.
+     */
+    public boolean isResponsive() {
+        IPythonEntryPoint ep = entryPoint;
+        if (!isAlive() || ep == null)
+            return false;
+        try {
+            return ep.check();
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
     public void kill() {
         if (process != null) {
             interruptedFlag.setFlag(true);
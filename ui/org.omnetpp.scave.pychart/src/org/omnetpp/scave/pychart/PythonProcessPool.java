@@ -2,8 +2,13 @@ package org.omnetpp.scave.pychart;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.omnetpp.common.Debug;
 import org.omnetpp.common.OmnetppDirs;
@@ -11,50 +16,382 @@ import org.omnetpp.common.util.StringUtils;
 
 import py4j.ClientServer;
 
+/**
+ * Keeps a number of started and connected Python processes ready, so that
+ * chart scripts can be run without waiting for Python to start up.
+ *
+ * A process is only considered ready after it has connected back to the IDE,
+ * i.e. after it has imported the modules chart scripts use (see
+ * PythonEntryPoint.py). The pool keeps at least minSize ready processes; if
+ * more processes are requested at once, it starts more (in parallel), up to
+ * maxSize ready and starting processes in total. Ready processes above
+ * minSize that are not requested for idleTimeoutMillis are killed. Processes
+ * that die while waiting in the pool are discarded.
+ *
+ * getProcess() blocks until a process is ready. Processes handed out are no
+ * longer managed by the pool: the caller must either kill them, or give them
+ * back with releaseProcess() when the chart script has finished. Released
+ * processes are reset (the modules stay imported) and reused, unless they have
+ * been used maxUses times or their memory usage exceeds maxResidentSetSize.
+ */
 public class PythonProcessPool {
-    private boolean shouldSetOmnetppMplBackend = true;
-    private ArrayList<PythonProcess> availableProcesses = new ArrayList<PythonProcess>();
-    private String errorMessage = null;
-    private boolean threadExit = false;
-    private Thread launcherThread;
+    public static final int DEFAULT_MAX_SIZE = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+    public static final int DEFAULT_MAX_USES = 50;
+    public static final long DEFAULT_MAX_RESIDENT_SET_SIZE = 1024L * 1024 * 1024;
+    private static final long RELEASE_TIMEOUT_MILLIS = 5_000;
+    public static final long CONNECT_TIMEOUT_MILLIS = 60_000;
+    public static final long ACQUIRE_TIMEOUT_MILLIS = 120_000;
+    private static final long MAINTENANCE_PERIOD_MILLIS = 5_000;
+
+    private static class ReadyProcess {
+        final PythonProcess process;
+        final long readySince = System.currentTimeMillis();
+
+        ReadyProcess(PythonProcess process) {
+            this.process = process;
+        }
+    }
+
+    private final int minSize;
+    private final int maxSize;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private int maxUses = DEFAULT_MAX_USES;
+    private long maxResidentSetSize = DEFAULT_MAX_RESIDENT_SET_SIZE; // bytes
+    private volatile boolean shouldSetOmnetppMplBackend = true;
+
+    private LinkedBlockingDeque<ReadyProcess> readyProcesses = new LinkedBlockingDeque<>();
+    private int numStarting = 0; // guarded by this
+    private int numWaiting = 0; // number of getProcess() calls waiting; guarded by this
+    private volatile String errorMessage = null; // error of the last failed process start
+    private volatile boolean disposed = false;
+
+    private ExecutorService launcher;
+    private ScheduledExecutorService maintenance;
+
+    // metrics
+    private volatile long numStarted = 0;
+    private volatile long numHandedOut = 0;
+    private volatile long numDiscarded = 0;
+    private volatile long numRecycled = 0;
+    private volatile long numEvicted = 0;
 
     public PythonProcessPool() {
         this(1);
     }
 
-    public PythonProcessPool(int N) {
+    public PythonProcessPool(int minSize) {
+        this(minSize, Math.max(minSize, DEFAULT_MAX_SIZE));
+    }
 
-        launcherThread = new Thread(() -> {
-            while (!threadExit) {
-                if (availableProcesses.size() < N) {
-                    try {
-                        availableProcesses.add(createProcess());
-                    }
-                    catch (IOException e) {
-                        errorMessage = e.getMessage();
-                        threadExit = true;
+    public PythonProcessPool(int minSize, int maxSize) {
+        if (minSize < 0 || maxSize < Math.max(1, minSize))
+            throw new IllegalArgumentException("Invalid Python process pool size: min=" + minSize + ", max=" + maxSize);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+
+        launcher = Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "Python process launcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "Python process pool maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, MAINTENANCE_PERIOD_MILLIS, MAINTENANCE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+
+        replenish();
+    }
+
+    /**
+     * Processes started from now on will (not) use the IDE's Matplotlib backend.
+     * Ready processes started with the other setting are discarded.
+     */
+    public void setShouldSetOmnetppMplBackend(boolean value) {
+        if (value != shouldSetOmnetppMplBackend) {
+            shouldSetOmnetppMplBackend = value;
+            ReadyProcess ready;
+            while ((ready = readyProcesses.pollFirst()) != null)
+                discard(ready.process, "started with the other Matplotlib backend setting");
+            replenish();
+        }
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Released processes that have been handed out this many times are killed
+     * instead of being reused.
+     */
+    public void setMaxUses(int maxUses) {
+        this.maxUses = maxUses;
+    }
+
+    /**
+     * Released processes using more memory than this (in bytes) are killed
+     * instead of being reused. Zero or negative means no limit.
+     */
+    public void setMaxResidentSetSize(long maxResidentSetSize) {
+        this.maxResidentSetSize = maxResidentSetSize;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getReadyCount() {
+        return readyProcesses.size();
+    }
+
+    public synchronized int getStartingCount() {
+        return numStarting;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ready: " + readyProcesses.size() + ", starting: " + numStarting + ", waiting: " + numWaiting +
+                "; started: " + numStarted + ", handed out: " + numHandedOut + ", recycled: " + numRecycled + ", discarded: " + numDiscarded + ", evicted: " + numEvicted;
+    }
+
+    /**
+     * Returns a ready process, waiting for one to be started if there is none.
+     * Throws RuntimeException if processes cannot be started.
+     */
+    public PythonProcess getProcess() {
+        if (disposed)
+            throw new IllegalStateException("Python process pool already disposed");
+
+        synchronized (this) {
+            numWaiting++;
+            errorMessage = null;
+        }
+        try {
+            long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT_MILLIS;
+            while (true) {
+                replenish();
+                ReadyProcess ready = readyProcesses.pollFirst(200, TimeUnit.MILLISECONDS);
+                if (ready != null) {
+                    if (isUsable(ready.process)) {
+                        ready.process.useCount++;
+                        numHandedOut++;
+                        if (PythonProcess.debug)
+                            Debug.println("PythonProcessPool: handing out a process; " + this);
+                        return ready.process;
                     }
-                    if (PythonProcess.debug)
-                        Debug.println("We have " + availableProcesses.size() + " processes.");
+                    discard(ready.process, "not responding");
+                    continue;
                 }
-                try {
-                    Thread.sleep(1000);
+
+                synchronized (this) {
+                    if (errorMessage != null && numStarting == 0 && readyProcesses.isEmpty())
+                        throw new RuntimeException(errorMessage);
                 }
-                catch (InterruptedException e) {
-                    // need to create a process right away - most likely
+                if (disposed)
+                    throw new IllegalStateException("Python process pool disposed while waiting for a process");
+                if (System.currentTimeMillis() > deadline)
+                    throw new RuntimeException("Timed out waiting for a Python process to start");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a Python process", e);
+        }
+        finally {
+            synchronized (this) {
+                numWaiting--;
+            }
+            replenish(); // start the replacement right away
+        }
+    }
+
+    /**
+     * Gives back a process obtained from getProcess(), after the chart script
+     * has finished in it and the caller has removed its listeners from it. The
+     * process is reset and put back into the pool in the background, or killed
+     * if it cannot be reused. The caller must not use the process afterwards.
+     */
+    public void releaseProcess(PythonProcess process) {
+        if (disposed || !process.isAlive() || process.isKilledByUs() || process.getInterruptedFlag().getFlag() ||
+                process.useCount >= maxUses || process.omnetppMplBackend != shouldSetOmnetppMplBackend) {
+            discard(process, "not reusable");
+            replenish();
+            return;
+        }
+        synchronized (this) {
+            numStarting++; // it is on its way back
+        }
+        launcher.execute(() -> recycleProcess(process));
+    }
+
+    public void dispose() {
+        disposed = true;
+        maintenance.shutdownNow();
+        launcher.shutdown(); // processes that are still starting will be killed when they are done
+        ReadyProcess ready;
+        while ((ready = readyProcesses.pollFirst()) != null)
+            ready.process.kill();
+    }
+
+    /**
+     * Starts new processes if there are fewer ready and starting ones than
+     * needed (minSize, plus one for each waiting request), up to maxSize.
+     */
+    protected synchronized void replenish() {
+        if (disposed)
+            return;
+        int target = Math.min(maxSize, Math.max(minSize, numWaiting));
+        while (readyProcesses.size() + numStarting < target) {
+            numStarting++;
+            launcher.execute(this::startProcess);
+        }
+    }
+
+    /**
+     * Starts processes in advance so that the given number of them (up to
+     * maxSize) will be ready or starting, e.g. before a batch of charts is run.
+     * The ones above minSize are evicted after the idle timeout.
+     */
+    public synchronized void prewarm(int count) {
+        if (disposed)
+            return;
+        int target = Math.min(maxSize, count);
+        while (readyProcesses.size() + numStarting < target) {
+            numStarting++;
+            launcher.execute(this::startProcess);
+        }
+    }
+
+    private void startProcess() {
+        boolean withMplBackend = shouldSetOmnetppMplBackend;
+        PythonProcess process = null;
+        try {
+            long startTime = System.currentTimeMillis();
+            process = createProcess(withMplBackend);
+            numStarted++;
+            // wait until the Python side has done its imports and connected back
+            process.getEntryPoint(CONNECT_TIMEOUT_MILLIS);
+            if (PythonProcess.debug)
+                Debug.println("PythonProcessPool: process ready in " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        catch (IOException | RuntimeException e) {
+            errorMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (process != null)
+                process.kill();
+            process = null;
+            if (PythonProcess.debug)
+                Debug.println("PythonProcessPool: cannot start process: " + errorMessage);
+        }
+        finally {
+            synchronized (this) {
+                numStarting--;
+            }
+        }
+
+        if (process == null)
+            return;
+        process.omnetppMplBackend = withMplBackend;
+        if (disposed || withMplBackend != shouldSetOmnetppMplBackend) {
+            discard(process, disposed ? "pool disposed" : "Matplotlib backend setting changed");
+            replenish();
+        }
+        else
+            readyProcesses.offerLast(new ReadyProcess(process));
+    }
+
+    private void recycleProcess(PythonProcess process) {
+        String problem = null;
+        try {
+            // the script may still be finishing up, e.g. calling the "done" callback
+            long deadline = System.currentTimeMillis() + RELEASE_TIMEOUT_MILLIS;
+            while (!process.pythonCallerThread.isIdle() && System.currentTimeMillis() < deadline)
+                Thread.sleep(20);
+            if (!process.pythonCallerThread.isIdle())
+                problem = "still busy";
+            else {
+                int residentSetSizeKiB = process.getEntryPoint().reset();
+                if (maxResidentSetSize > 0 && residentSetSizeKiB * 1024L > maxResidentSetSize)
+                    problem = "uses too much memory: " + residentSetSizeKiB + " KiB";
+            }
+        }
+        catch (InterruptedException e) {
+            problem = "interrupted";
+        }
+        catch (RuntimeException e) {
+            problem = "reset failed: " + e.getMessage();
+        }
+        finally {
+            synchronized (this) {
+                numStarting--;
+            }
+        }
+
+        if (problem == null && (disposed || readyProcesses.size() >= maxSize))
+            problem = disposed ? "pool disposed" : "pool is full";
+        if (problem != null) {
+            discard(process, problem);
+            replenish();
+        }
+        else {
+            process.outputMonitoringThread.clearOutputSoFar();
+            process.errorMonitoringThread.clearOutputSoFar();
+            numRecycled++;
+            readyProcesses.offerLast(new ReadyProcess(process));
+        }
+    }
+
+    /**
+     * Periodically discards dead processes, and those above minSize that have
+     * been idle for too long.
+     */
+    protected void maintain() {
+        try {
+            for (Iterator<ReadyProcess> it = readyProcesses.iterator(); it.hasNext(); ) {
+                ReadyProcess ready = it.next();
+                if (!ready.process.isAlive() && readyProcesses.removeFirstOccurrence(ready))
+                    discard(ready.process, "died");
+            }
+
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                // the oldest ones are at the front
+                while (readyProcesses.size() > Math.max(minSize, numWaiting)) {
+                    ReadyProcess oldest = readyProcesses.peekFirst();
+                    if (oldest == null || now - oldest.readySince < idleTimeoutMillis || !readyProcesses.removeFirstOccurrence(oldest))
+                        break;
+                    oldest.process.kill();
+                    numEvicted++;
+                    if (PythonProcess.debug)
+                        Debug.println("PythonProcessPool: evicted an idle process; " + this);
                 }
             }
-        });
 
-        launcherThread.setDaemon(true);
-        launcherThread.start();
+            replenish();
+        }
+        catch (RuntimeException e) {
+            PyChartPlugin.logError(e);
+        }
     }
 
-    public void setShouldSetOmnetppMplBackend(boolean value) {
-        this.shouldSetOmnetppMplBackend = value;
+    private boolean isUsable(PythonProcess process) {
+        return process.isAlive() && process.isResponsive();
+    }
+
+    private void discard(PythonProcess process, String reason) {
+        process.kill();
+        numDiscarded++;
+        if (PythonProcess.debug)
+            Debug.println("PythonProcessPool: discarded a process (" + reason + ")");
     }
 
-    private PythonProcess createProcess() throws IOException {
+    private PythonProcess createProcess(boolean withMplBackend) throws IOException {
         if (PythonProcess.debug)
             Debug.println("connecting...");
 
@@ -72,13 +409,20 @@ public class PythonProcessPool {
         Map<String, String> env = pb.environment();
         env.put("WITHIN_OMNETPP_IDE", "yes");
         env.put("PYTHONPATH", extendPythonPath(env.get("PYTHONPATH")));
-        if (shouldSetOmnetppMplBackend)
+        if (withMplBackend)
             env.put("MPLBACKEND", "module://omnetpp.internal.backend_SWTAgg");
 
         if (PythonProcess.debug)
             Debug.println("starting python process... with path " + env.get("PYTHONPATH"));
 
-        Process process = pb.start();
+        Process process;
+        try {
+            process = pb.start();
+        }
+        catch (IOException e) {
+            clientServer.shutdown();
+            throw e;
+        }
 
         return new PythonProcess(process, clientServer);
     }
@@ -92,29 +436,4 @@ public class PythonProcessPool {
 
         return oldPythonPath == null ? locationsToPrepend : locationsToPrepend + File.pathSeparator + oldPythonPath;
     }
-
-    public void dispose() {
-        threadExit = true;
-        launcherThread.interrupt();
-        for (PythonProcess pr : availableProcesses)
-            pr.kill();
-        availableProcesses.clear();
-    }
-
-    public PythonProcess getProcess() {
-
-        while (availableProcesses.isEmpty()) {
-            launcherThread.interrupt();
-            // TODO: make sure to wait for a process to become available
-
-            if (errorMessage != null)
-                throw new RuntimeException(errorMessage);
-        }
-
-        PythonProcess pr = availableProcesses.remove(0);
-        // waking up the launcher to replenish the supply of processes
-        launcherThread.interrupt();
-
-        return pr;
-    }
 }
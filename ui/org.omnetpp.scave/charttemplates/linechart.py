@@ -10,14 +10,19 @@ filter_expression = props["filter"]
 start_time = float(props["vector_start_time"] or -math.inf)
 end_time = float(props["vector_end_time"] or math.inf)
 
-# query vector data into a data frame
-df = results.get_vectors(filter_expression, include_attrs=True, include_itervars=True, start_time=start_time, end_time=end_time)
+if props["vector_operations"]:
+    # query vector data into a data frame
+    df = results.get_vectors(filter_expression, include_attrs=True, include_itervars=True, start_time=start_time, end_time=end_time)
 
-# apply vector operations
-df = ops.perform_vector_ops(df, props["vector_operations"])
+    # apply vector operations (these may need all vectors at once)
+    df = ops.perform_vector_ops(df, props["vector_operations"])
 
-# plot
-utils.plot_vectors(df, props)
+    # plot
+    utils.plot_vectors(df, props)
+else:
+    # query vector data, and plot each batch of vectors as soon as it is loaded
+    batches = results.get_vectors_in_batches(filter_expression, include_attrs=True, include_itervars=True, start_time=start_time, end_time=end_time)
+    df = utils.plot_vectors_in_batches(batches, props)
 
 utils.postconfigure_plot(props)
 
@@ -25,7 +25,9 @@ import org.eclipse.ui.ISharedImages;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.omnetpp.common.Debug;
+import org.omnetpp.scave.jobs.ChartExport;
 import org.omnetpp.scave.pychart.PythonProcessPool;
+import org.omnetpp.scave.python.SharedMemoryRegistry;
 import org.osgi.framework.BundleContext;
 import org.python.pydev.ast.interpreter_managers.InterpreterInfo;
 import org.python.pydev.ast.interpreter_managers.InterpreterManagersAPI;
@@ -166,6 +168,8 @@ public class ScavePlugin extends AbstractUIPlugin {
      * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
      */
     public void stop(BundleContext context) throws Exception {
+        ChartExport.disposeProcessPool();
+        SharedMemoryRegistry.disposeInstance();
         plugin = null;
         super.stop(context);
     }
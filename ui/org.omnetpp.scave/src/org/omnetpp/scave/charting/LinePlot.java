@@ -49,6 +49,7 @@ import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.Composite;
 import org.omnetpp.common.Debug;
 import org.omnetpp.common.canvas.ICoordsMapping;
+import org.omnetpp.common.canvas.ITileRenderer;
 import org.omnetpp.common.canvas.RectangularArea;
 import org.omnetpp.common.color.ColorFactory;
 import org.omnetpp.common.util.Converter;
@@ -77,6 +78,9 @@ import org.omnetpp.scave.python.XYDataset;
 public class LinePlot extends PlotBase {
     private static final boolean debug = false;
 
+    // below this number of points, lines are painted synchronously, because that is fast enough
+    private static final long BACKGROUND_RENDERING_MIN_POINTS = 100_000;
+
     private static final PlotProperty[] LINEPLOT_PROPERTIES = ArrayUtils.addAll(PLOTBASE_PROPERTIES, new PlotProperty[] {
             PROP_X_AXIS_TITLE,
             PROP_Y_AXIS_TITLE,
@@ -200,6 +204,7 @@ public class LinePlot extends PlotBase {
         crosshair = new CrossHair(this);
         lineProperties = new ArrayList<LineProperties>();
         lines = new Lines(this);
+        setBackgroundRendering(true);
         this.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseDown(MouseEvent e) {
@@ -638,6 +643,16 @@ public class LinePlot extends PlotBase {
         }
     }
 
+    @Override
+    protected ITileRenderer createTileRenderer() {
+        // the data of XYDataset can be protected from being disposed while drawing (see XYDataset.acquire())
+        if (!(dataset instanceof XYDataset) || getClientArea().isEmpty())
+            return null;
+        if (LinesRenderer.getTotalItemCount(dataset, dataset.getSeriesCount()) < BACKGROUND_RENDERING_MIN_POINTS)
+            return null;
+        return new LinesRenderer(this, (XYDataset)dataset, getOptimizedCoordinateMapper(), lines.getPlotRectangle(), xAxis, yAxis);
+    }
+
     @Override
     protected void doPaintNoncachableLayer(Graphics graphics, ICoordsMapping coordsMapping) {
         paintInsets(graphics);
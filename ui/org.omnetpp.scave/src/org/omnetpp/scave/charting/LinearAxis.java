@@ -35,7 +35,7 @@ public class LinearAxis {
     private boolean logarithmic; // logarithmic axis
     private boolean drawAxisToPlot;
     private ShowGrid showGrid;
-    private RGB gridColor;
+    private Color gridColor;
     private boolean drawTickLabels = true;
     private boolean drawTitle = true;
     private String title;
@@ -56,6 +56,18 @@ public class LinearAxis {
         this.drawAxisToPlot = drawAxisToPlot;
     }
 
+    /**
+     * Returns a copy of the axis with the properties used by transform(),
+     * inverseTransform() and drawGrid(), which can be used in a background
+     * thread while this axis is being modified (see LinesRenderer).
+     */
+    LinearAxis getGridSnapshot() {
+        LinearAxis copy = new LinearAxis(vertical, logarithmic, drawAxisToPlot);
+        copy.showGrid = showGrid;
+        copy.gridColor = gridColor;
+        return copy;
+    }
+
     public double transform(double coord) {
         return logarithmic ? Math.log10(coord) : coord;
     }
@@ -140,7 +152,7 @@ public class LinearAxis {
         if (ticks != null) {
             graphics.pushState();
             graphics.setLineStyle(Graphics.LINE_DOT);
-            graphics.setForegroundColor(new Color(null, gridColor));
+            graphics.setForegroundColor(gridColor);
             for (BigDecimal tick : ticks) {
                 if (showGrid == ShowGrid.All || ticks.isMajorTick(tick)) {
                     if (vertical) {
@@ -309,7 +321,7 @@ public class LinearAxis {
     }
 
     public void setGridColor(RGB color) {
-        this.gridColor = color;
+        this.gridColor = new Color(null, color);
     }
 
     public boolean isDrawTickLabels() {
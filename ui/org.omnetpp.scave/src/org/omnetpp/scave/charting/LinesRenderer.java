@@ -0,0 +1,264 @@
+/*--------------------------------------------------------------*
+  Copyright (C) 2006-2015 OpenSim Ltd.
+
+  This file is distributed WITHOUT ANY WARRANTY. See the file
+  'License' for details on this and other legal matters.
+*--------------------------------------------------------------*/
+
+package org.omnetpp.scave.charting;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.draw2d.Graphics;
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.omnetpp.common.canvas.ICoordsMapping;
+import org.omnetpp.common.canvas.ITileRenderer;
+import org.omnetpp.common.engine.BigDecimal;
+import org.omnetpp.common.util.GraphicsUtils;
+import org.omnetpp.scave.charting.LinePlot.LineProperties;
+import org.omnetpp.scave.charting.dataset.IXYDataset;
+import org.omnetpp.scave.charting.plotter.ILinePlotter;
+import org.omnetpp.scave.charting.plotter.IPlotSymbol;
+import org.omnetpp.scave.python.XYDataset;
+
+/**
+ * Renders the cachable layer of a LinePlot (background, grid and lines) in
+ * background threads, see CachingCanvas.createTileRenderer(). This is the
+ * background counterpart of LinePlot.doPaintCachableLayer() and Lines.draw(),
+ * without their time limits.
+ *
+ * The coordinate mapping, the grid and transform settings of the axes, and the
+ * drawing properties of the lines are captured at construction time, in the UI
+ * thread, as the plot may be modified while rendering is in progress. The
+ * coarse pass only draws every n-th point of the series, so that about
+ * COARSE_POINTS points are drawn.
+ */
+class LinesRenderer implements ITileRenderer {
+
+    private static final long COARSE_POINTS = 200_000;
+
+    private static class LineDrawingProperties {
+        ILinePlotter plotter;
+        IPlotSymbol symbol;
+        Color color;
+        int lineStyle;
+        float lineWidth;
+    }
+
+    private LinePlot parent;
+    private XYDataset dataset;
+    private ICoordsMapping coordsMapping;
+    private Rectangle plotRectangle;
+    private LinearAxis xAxis; // snapshot
+    private LinearAxis yAxis; // snapshot
+    private boolean antialias;
+    private LineDrawingProperties[] lines; // null elements for lines not displayed
+    private long totalItemCount;
+
+    public LinesRenderer(LinePlot parent, XYDataset dataset, ICoordsMapping coordsMapping, Rectangle plotRectangle, LinearAxis xAxis, LinearAxis yAxis) {
+        this.parent = parent;
+        this.dataset = dataset;
+        this.coordsMapping = coordsMapping;
+        this.plotRectangle = plotRectangle.getCopy();
+        this.xAxis = xAxis.getGridSnapshot();
+        this.yAxis = yAxis.getGridSnapshot();
+        this.antialias = parent.getAntialias();
+
+        int numSeries = dataset.getSeriesCount();
+        lines = new LineDrawingProperties[numSeries];
+        for (int series = 0; series < numSeries; series++) {
+            LineProperties props = parent.getLineProperties(series);
+            if (props.getEffectiveDisplayLine()) {
+                LineDrawingProperties line = new LineDrawingProperties();
+                line.plotter = props.getLinePlotter();
+                line.symbol = props.getSymbolPlotter();
+                line.color = props.getEffectiveLineColor();
+                line.lineStyle = props.getEffectiveLineStyle().getDraw2DConstant();
+                line.lineWidth = props.getEffectiveLineWidth();
+                lines[series] = line;
+            }
+        }
+        totalItemCount = getTotalItemCount(dataset, numSeries);
+    }
+
+    public static long getTotalItemCount(IXYDataset dataset, int numSeries) {
+        long count = 0;
+        for (int series = 0; series < numSeries; series++)
+            count += dataset.getItemCount(series);
+        return count;
+    }
+
+    @Override
+    public boolean hasCoarsePass() {
+        return totalItemCount > 2 * COARSE_POINTS;
+    }
+
+    @Override
+    public void render(Graphics graphics, boolean coarse, BooleanSupplier isCanceled) {
+        if (!dataset.acquire())
+            return; // disposed in the meantime
+        try {
+            parent.resetDrawingStylesAndColors(graphics);
+            graphics.fillRectangle(GraphicsUtils.getClip(graphics));
+            xAxis.drawGrid(graphics, coordsMapping);
+            yAxis.drawGrid(graphics, coordsMapping);
+
+            int stride = coarse ? (int)Math.max(1, totalItemCount / COARSE_POINTS) : 1;
+            Plot plot = new Plot(new StridedDataset(dataset, stride, isCanceled));
+
+            for (int series = 0; series < lines.length; series++) {
+                if (isCanceled.getAsBoolean())
+                    return;
+                LineDrawingProperties line = lines[series];
+                if (line != null) {
+                    parent.resetDrawingStylesAndColors(graphics);
+                    graphics.setAntialias(antialias ? SWT.ON : SWT.OFF);
+                    graphics.setForegroundColor(line.color);
+                    graphics.setBackgroundColor(line.color);
+                    graphics.setLineStyle(line.lineStyle);
+                    graphics.setLineWidthFloat(line.lineWidth);
+                    line.plotter.plot(plot, series, graphics, coordsMapping, line.symbol, Integer.MAX_VALUE);
+                }
+            }
+        }
+        finally {
+            dataset.release();
+        }
+    }
+
+    /**
+     * The ILinePlot the plotters see during rendering.
+     */
+    private class Plot implements ILinePlot {
+        private IXYDataset plotDataset;
+
+        public Plot(IXYDataset plotDataset) {
+            this.plotDataset = plotDataset;
+        }
+
+        public IXYDataset getDataset() {
+            return plotDataset;
+        }
+
+        public Rectangle getPlotRectangle() {
+            return plotRectangle;
+        }
+
+        public double transformX(double x) {
+            return xAxis.transform(x);
+        }
+
+        public double transformY(double y) {
+            return yAxis.transform(y);
+        }
+
+        public double inverseTransformX(double x) {
+            return xAxis.inverseTransform(x);
+        }
+
+        public double inverseTransformY(double y) {
+            return yAxis.inverseTransform(y);
+        }
+    }
+
+    /**
+     * Presents every stride-th item of the series of a dataset. Also makes the
+     * plotters stop when rendering is canceled, by throwing CancellationException
+     * from copyRange() (which they call for every few thousand items).
+     */
+    private static class StridedDataset implements IXYDataset {
+        private IXYDataset dataset;
+        private int stride;
+        private BooleanSupplier isCanceled;
+
+        public StridedDataset(IXYDataset dataset, int stride, BooleanSupplier isCanceled) {
+            this.dataset = dataset;
+            this.stride = stride;
+            this.isCanceled = isCanceled;
+        }
+
+        public String getTitle(String format) {
+            return dataset.getTitle(format);
+        }
+
+        public int getSeriesCount() {
+            return dataset.getSeriesCount();
+        }
+
+        public String getSeriesKey(int series) {
+            return dataset.getSeriesKey(series);
+        }
+
+        public String getSeriesTitle(int series) {
+            return dataset.getSeriesTitle(series);
+        }
+
+        public Type getSeriesType(int series) {
+            return dataset.getSeriesType(series);
+        }
+
+        public InterpolationMode getSeriesInterpolationMode(int series) {
+            return dataset.getSeriesInterpolationMode(series);
+        }
+
+        public int getItemCount(int series) {
+            return (dataset.getItemCount(series) + stride - 1) / stride;
+        }
+
+        public double getX(int series, int item) {
+            return dataset.getX(series, item * stride);
+        }
+
+        public String getXAsString(int series, int item) {
+            return dataset.getXAsString(series, item * stride);
+        }
+
+        public BigDecimal getPreciseX(int series, int item) {
+            return dataset.getPreciseX(series, item * stride);
+        }
+
+        public double getMinX() {
+            return dataset.getMinX();
+        }
+
+        public double getMaxX() {
+            return dataset.getMaxX();
+        }
+
+        public double getY(int series, int item) {
+            return dataset.getY(series, item * stride);
+        }
+
+        public String getYAsString(int series, int item) {
+            return dataset.getYAsString(series, item * stride);
+        }
+
+        public BigDecimal getPreciseY(int series, int item) {
+            return dataset.getPreciseY(series, item * stride);
+        }
+
+        public double getMinY() {
+            return dataset.getMinY();
+        }
+
+        public double getMaxY() {
+            return dataset.getMaxY();
+        }
+
+        public void copyRange(int series, int from, int to, double[] xs, double[] ys) {
+            if (isCanceled.getAsBoolean())
+                throw new CancellationException();
+            if (stride == 1)
+                dataset.copyRange(series, from, to, xs, ys);
+            else {
+                for (int i = from; i < to; i++) {
+                    xs[i-from] = dataset.getX(series, i * stride);
+                    ys[i-from] = dataset.getY(series, i * stride);
+                }
+            }
+        }
+    }
+}
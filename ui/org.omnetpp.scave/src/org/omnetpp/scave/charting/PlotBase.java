@@ -591,8 +591,8 @@ public abstract class PlotBase extends ZoomableCachingCanvas implements IPlotVie
         //graphics.setLineJoin();
         //graphics.setXORMode(false);
         //graphics.setFont(null);
-        // TODO: these operations are not supported by SVGGraphics yet
-        if (!GraphicsUtils.isSVGGraphics(graphics)) {
+        // TODO: these operations are not supported by SVGGraphics (and other AWT-based graphics) yet
+        if (!GraphicsUtils.isAWTGraphics(graphics)) {
             graphics.setBackgroundPattern(null);
             graphics.setForegroundPattern(null);
             graphics.setInterpolation(SWT.DEFAULT);
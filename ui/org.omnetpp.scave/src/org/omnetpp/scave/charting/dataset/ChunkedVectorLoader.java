@@ -0,0 +1,136 @@
+/*--------------------------------------------------------------*
+  Copyright (C) 2006-2015 OpenSim Ltd.
+
+  This file is distributed WITHOUT ANY WARRANTY. See the file
+  'License' for details on this and other legal matters.
+*--------------------------------------------------------------*/
+
+package org.omnetpp.scave.charting.dataset;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.omnetpp.common.Debug;
+import org.omnetpp.common.util.StringUtils;
+import org.omnetpp.scave.engine.IDList;
+import org.omnetpp.scave.engine.InterruptedFlag;
+import org.omnetpp.scave.engine.ResultFileManager;
+import org.omnetpp.scave.engine.XYArrayVector;
+
+/**
+ * Loads the data of vectors in batches, instead of all at once with
+ * VectorDataLoader.getDataOfVectors(), and hands over each batch as soon as
+ * it is loaded. This way the first vectors can be processed (e.g. sent to the
+ * chart) while the rest are still loading, only one batch needs to be in
+ * memory at a time, and progress can be reported in between.
+ *
+ * Batches are formed in IDList order, and are limited both in the number of
+ * vectors and in the number of values (based on the vector statistics), so
+ * the time until the first batch does not depend on the total size of the
+ * data. A single vector is never split.
+ */
+public class ChunkedVectorLoader {
+    public static boolean debug = VectorDataLoader.debug;
+
+    public static final int DEFAULT_MAX_VECTORS_PER_BATCH = 256;
+    public static final long DEFAULT_MAX_VALUES_PER_BATCH = 4_000_000;
+
+    /**
+     * Receives the loaded batches. The data is deleted after handleBatch()
+     * returns, so it must be copied if needed later.
+     */
+    public interface IBatchHandler {
+        /**
+         * @param startIndex  index of the first vector of the batch in the IDList
+         * @param vectors  the IDs of the vectors in the batch
+         * @param data  the data of the vectors, in the same order
+         */
+        void handleBatch(int startIndex, IDList vectors, XYArrayVector data);
+    }
+
+    private ResultFileManager manager;
+    private IDList idlist;
+    private double simTimeStart;
+    private double simTimeEnd;
+    private int targetResolution;
+    private int maxVectorsPerBatch = DEFAULT_MAX_VECTORS_PER_BATCH;
+    private long maxValuesPerBatch = DEFAULT_MAX_VALUES_PER_BATCH;
+
+    /**
+     * targetResolution <= 0 means full data, see VectorDataLoader.getDataOfVectors().
+     */
+    public ChunkedVectorLoader(ResultFileManager manager, IDList idlist, double simTimeStart, double simTimeEnd, int targetResolution) {
+        this.manager = manager;
+        this.idlist = idlist;
+        this.simTimeStart = simTimeStart;
+        this.simTimeEnd = simTimeEnd;
+        this.targetResolution = targetResolution;
+    }
+
+    public void setMaxVectorsPerBatch(int maxVectorsPerBatch) {
+        this.maxVectorsPerBatch = maxVectorsPerBatch;
+    }
+
+    public void setMaxValuesPerBatch(long maxValuesPerBatch) {
+        this.maxValuesPerBatch = maxValuesPerBatch;
+    }
+
+    /**
+     * Loads all vectors, calling the handler for each batch in order. Progress
+     * is reported to the monitor (may be null) in terms of vector values.
+     * Cancellation through the monitor is checked between batches, and
+     * results in OperationCanceledException; setting the interrupted flag
+     * also stops the loading of the current batch.
+     */
+    public void load(IProgressMonitor monitor, InterruptedFlag interruptedFlag, IBatchHandler handler) {
+        int numVectors = idlist.size();
+        long[] counts = new long[numVectors];
+        long totalValues = 0;
+        for (int i = 0; i < numVectors; i++)
+            totalValues += counts[i] = getValueCount(idlist.get(i));
+
+        // the monitor works with ints
+        int scale = (int)Math.max(1, totalValues / Integer.MAX_VALUE + 1);
+        SubMonitor subMonitor = SubMonitor.convert(monitor, "Loading " + StringUtils.formatCounted(numVectors, "vector"), (int)(totalValues / scale));
+
+        int start = 0;
+        while (start < numVectors) {
+            if (subMonitor.isCanceled())
+                throw new OperationCanceledException();
+
+            // collect a batch: at least one vector, and at most maxVectorsPerBatch / maxValuesPerBatch
+            int end = start;
+            long batchValues = 0;
+            IDList batch = new IDList();
+            while (end < numVectors && end - start < maxVectorsPerBatch && (end == start || batchValues + counts[end] <= maxValuesPerBatch)) {
+                batch.add(idlist.get(end));
+                batchValues += counts[end];
+                end++;
+            }
+
+            if (debug)
+                Debug.println("loading vectors " + start + ".." + (end-1) + " of " + numVectors + ", " + batchValues + " values");
+
+            subMonitor.subTask("Vectors " + (start+1) + "-" + end + " of " + numVectors);
+            XYArrayVector data = VectorDataLoader.getDataOfVectors(manager, batch, simTimeStart, simTimeEnd, targetResolution, interruptedFlag);
+            try {
+                handler.handleBatch(start, batch, data);
+            }
+            finally {
+                data.delete();
+            }
+            subMonitor.worked((int)(batchValues / scale));
+
+            if (interruptedFlag.getFlag())
+                throw new RuntimeException("Vector loading interrupted");
+
+            start = end;
+        }
+        subMonitor.done();
+    }
+
+    private long getValueCount(long id) {
+        // with downsampling, the number of values read can still be the full count (unless blocks are skipped)
+        return Math.max(1, manager.getVector(id).getStatistics().getCount());
+    }
+}
@@ -139,4 +139,23 @@ public interface IXYDataset extends IDataset {
      * Returns the maximum value of the y coordinates.
      */
     public double getMaxY();
+
+    /**
+     * Copies the x and y values of the items in the [from, to) index range of
+     * a series into the given arrays, starting at index 0. This is the fast way
+     * of iterating over large series, implementations should override the
+     * default, which calls getX() and getY() for each item.
+     *
+     * @param series  the series index (zero-based).
+     * @param from  the index of the first item (inclusive).
+     * @param to  the index of the last item (exclusive).
+     * @param xs  receives the x values, must have room for to-from items.
+     * @param ys  receives the y values, must have room for to-from items.
+     */
+    public default void copyRange(int series, int from, int to, double[] xs, double[] ys) {
+        for (int i = from; i < to; i++) {
+            xs[i-from] = getX(series, i);
+            ys[i-from] = getY(series, i);
+        }
+    }
 }
@@ -44,4 +44,29 @@ public class VectorDataLoader {
 
         return out;
     }
+
+    /**
+     * Like getDataOfVectors(), but if targetResolution is positive, the data is
+     * downsampled for plotting: the time range is divided into targetResolution
+     * intervals (e.g. the width of the plot in pixels), and only the first, last,
+     * minimum and maximum points of each interval are returned. Blocks of indexed
+     * vector files that cannot affect the result are not even read.
+     * To see the details when zooming in, load the data again with a narrower
+     * time range.
+     */
+    public static XYArrayVector getDataOfVectors(ResultFileManager manager, IDList idlist, double simTimeStart, double simTimeEnd, int targetResolution, InterruptedFlag interruptedFlag) {
+        if (targetResolution <= 0)
+            return getDataOfVectors(manager, idlist, simTimeStart, simTimeEnd, interruptedFlag);
+
+        if (debug)
+            Debug.println("getting data of vectors, downsampled to " + targetResolution + " intervals");
+
+        // at most 4 points per interval, so there is no need for a memory limit
+        XYArrayVector out = ScaveEngine.readDownsampledVectorsIntoArrays2(manager, idlist, targetResolution, simTimeStart, simTimeEnd, interruptedFlag);
+
+        if (debug)
+            Debug.println("downsampled vector data loaded");
+
+        return out;
+    }
 }
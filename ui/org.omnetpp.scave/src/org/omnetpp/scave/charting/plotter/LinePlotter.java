@@ -25,6 +25,13 @@ import org.omnetpp.scave.charting.dataset.IXYDataset;
  */
 public abstract class LinePlotter implements ILinePlotter {
 
+    /**
+     * The number of items copied out of the dataset at once with
+     * IXYDataset.copyRange(), so that the inner loops of plotters work on
+     * primitive arrays instead of calling getX()/getY() for each item.
+     */
+    protected static final int CHUNK_SIZE = 4096;
+
     public int[] indexRange(ILinePlot plot, int series, Graphics graphics, ICoordsMapping mapping) {
         IXYDataset dataset = plot.getDataset();
         int n = dataset.getItemCount(series);
@@ -83,29 +90,36 @@ public abstract class LinePlotter implements ILinePlotter {
         long startTime = System.currentTimeMillis();
         HashSet<Long> yset = new HashSet<Long>();
         long prevCanvasX = Long.MIN_VALUE;
-        for (int i = first; i <= last; i++) {
-            if ((i & 255)==0 && System.currentTimeMillis() - startTime > timeLimitMillis)
-                return false; // timed out
-
-            double y = plot.transformY(dataset.getY(series, i));
-            if (y < lo || y > hi || Double.isNaN(y))  // even skip coord transform for off-screen values
-                continue;
-
-            double x = plot.transformX(dataset.getX(series, i));
-            long canvasX = mapping.toCanvasX(x);
-            long canvasY = mapping.toCanvasY(y);
-
-            if (prevCanvasX != canvasX) {
-                yset.clear();
-                prevCanvasX = canvasX;
-                symbol.drawSymbol(graphics, canvasX, canvasY);
-                yset.add(canvasY);
-            }
-            else {
-                if (!yset.contains(canvasY)) {
+        double[] xs = new double[CHUNK_SIZE];
+        double[] ys = new double[CHUNK_SIZE];
+        for (int chunkStart = first; chunkStart <= last; chunkStart += CHUNK_SIZE) {
+            int chunkEnd = Math.min(last+1, chunkStart + CHUNK_SIZE);
+            dataset.copyRange(series, chunkStart, chunkEnd, xs, ys);
+
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                if ((i & 255)==0 && System.currentTimeMillis() - startTime > timeLimitMillis)
+                    return false; // timed out
+
+                double y = plot.transformY(ys[i-chunkStart]);
+                if (y < lo || y > hi || Double.isNaN(y))  // even skip coord transform for off-screen values
+                    continue;
+
+                double x = plot.transformX(xs[i-chunkStart]);
+                long canvasX = mapping.toCanvasX(x);
+                long canvasY = mapping.toCanvasY(y);
+
+                if (prevCanvasX != canvasX) {
+                    yset.clear();
+                    prevCanvasX = canvasX;
                     symbol.drawSymbol(graphics, canvasX, canvasY);
                     yset.add(canvasY);
                 }
+                else {
+                    if (!yset.contains(canvasY)) {
+                        symbol.drawSymbol(graphics, canvasX, canvasY);
+                        yset.add(canvasY);
+                    }
+                }
             }
         }
         return true;
@@ -51,42 +51,49 @@ public class LinearLinePlotter extends LinePlotter {
 
         long startTime = System.currentTimeMillis();
 
-        for (int i = first; i <= last; i++) {
-            if ((i & 255)==0 && System.currentTimeMillis() - startTime > timeLimitMillis)
-                return false; // timed out
-
-            long x = mapping.toCanvasX(plot.transformX(dataset.getX(series, i)));
-            long y = mapping.toCanvasY(plot.transformY(dataset.getY(series, i))); // note: this maps +-INF to +-MAXPIX, which works out just fine here
-
-            // for testing:
-            // if (i%5==0) y = NANPIX;
-            // if (i%5==2 && prevX!=Integer.MIN_VALUE) x = prevX;
-
-            // draw line
-            if (y != NAN_PIX) {
-                if (x != prevX) {
-                    if (prevY != NAN_PIX) {
-                        if (antialias != origAntialias) graphics.setAntialias(antialias= origAntialias);
-                        LargeGraphics.drawLine(graphics, prevX, prevY, x, y);
+        double[] xs = new double[CHUNK_SIZE];
+        double[] ys = new double[CHUNK_SIZE];
+        for (int chunkStart = first; chunkStart <= last; chunkStart += CHUNK_SIZE) {
+            int chunkEnd = Math.min(last+1, chunkStart + CHUNK_SIZE);
+            dataset.copyRange(series, chunkStart, chunkEnd, xs, ys);
+
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                if ((i & 255)==0 && System.currentTimeMillis() - startTime > timeLimitMillis)
+                    return false; // timed out
+
+                long x = mapping.toCanvasX(plot.transformX(xs[i-chunkStart]));
+                long y = mapping.toCanvasY(plot.transformY(ys[i-chunkStart])); // note: this maps +-INF to +-MAXPIX, which works out just fine here
+
+                // for testing:
+                // if (i%5==0) y = NANPIX;
+                // if (i%5==2 && prevX!=Integer.MIN_VALUE) x = prevX;
+
+                // draw line
+                if (y != NAN_PIX) {
+                    if (x != prevX) {
+                        if (prevY != NAN_PIX) {
+                            if (antialias != origAntialias) graphics.setAntialias(antialias= origAntialias);
+                            LargeGraphics.drawLine(graphics, prevX, prevY, x, y);
+                        }
+                        minY = maxY = y;
                     }
-                    minY = maxY = y;
-                }
-                else if (y < minY) {
-                    if (antialias != SWT.OFF) graphics.setAntialias(antialias= SWT.OFF);
-                    LargeGraphics.drawLine(graphics, x, minY, x, y);
-                    minY = y;
+                    else if (y < minY) {
+                        if (antialias != SWT.OFF) graphics.setAntialias(antialias= SWT.OFF);
+                        LargeGraphics.drawLine(graphics, x, minY, x, y);
+                        minY = y;
+                    }
+                    else if (y > maxY) {
+                        if (antialias != SWT.OFF) graphics.setAntialias(antialias= SWT.OFF);
+                        LargeGraphics.drawLine(graphics, x, maxY, x, y);
+                        maxY = y;
+                    }
+                    prevX = x;
                 }
-                else if (y > maxY) {
-                    if (antialias != SWT.OFF) graphics.setAntialias(antialias= SWT.OFF);
-                    LargeGraphics.drawLine(graphics, x, maxY, x, y);
-                    maxY = y;
+                else {
+                    prevX = Long.MIN_VALUE; // invalidate minX/maxX
                 }
-                prevX = x;
-            }
-            else {
-                prevX = Long.MIN_VALUE; // invalidate minX/maxX
+                prevY = y;
             }
-            prevY = y;
         }
 
         graphics.setAntialias(origAntialias);
@@ -71,30 +71,37 @@ public class PinsLinePlotter extends LinePlotter {
         IXYDataset dataset = plot.getDataset();
         long startTime = System.currentTimeMillis();
 
-        for (int i = first; i <= last; i++) {
-            if ((i & 255)==0 && System.currentTimeMillis() - startTime > timeLimitMillis)
-                return false; // timed out
-
-            double value = plot.transformY(dataset.getY(series, i));
-            if ((transformedReferenceLevel < lo && value < lo) || (transformedReferenceLevel > hi && value > hi) || Double.isNaN(value) )
-                continue; // pin is off-screen
-
-            long x = mapping.toCanvasX(plot.transformX(dataset.getX(series, i)));
-            long y = mapping.toCanvasY(value); // note: this maps +-INF to +-MAXPIX, which works out just fine here
-
-            if (prevX != x) {
-                LargeGraphics.drawLine(graphics, x, refY, x, y);
-                prevX = x;
-                minY = Math.min(y, refY);
-                maxY = Math.max(y, refY);
-            }
-            else if (y < minY) {
-                LargeGraphics.drawLine(graphics, x, minY, x, y);
-                minY = y;
-            }
-            else if (y > maxY) {
-                LargeGraphics.drawLine(graphics, x, maxY, x, y);
-                maxY = y;
+        double[] xs = new double[CHUNK_SIZE];
+        double[] ys = new double[CHUNK_SIZE];
+        for (int chunkStart = first; chunkStart <= last; chunkStart += CHUNK_SIZE) {
+            int chunkEnd = Math.min(last+1, chunkStart + CHUNK_SIZE);
+            dataset.copyRange(series, chunkStart, chunkEnd, xs, ys);
+
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                if ((i & 255)==0 && System.currentTimeMillis() - startTime > timeLimitMillis)
+                    return false; // timed out
+
+                double value = plot.transformY(ys[i-chunkStart]);
+                if ((transformedReferenceLevel < lo && value < lo) || (transformedReferenceLevel > hi && value > hi) || Double.isNaN(value) )
+                    continue; // pin is off-screen
+
+                long x = mapping.toCanvasX(plot.transformX(xs[i-chunkStart]));
+                long y = mapping.toCanvasY(value); // note: this maps +-INF to +-MAXPIX, which works out just fine here
+
+                if (prevX != x) {
+                    LargeGraphics.drawLine(graphics, x, refY, x, y);
+                    prevX = x;
+                    minY = Math.min(y, refY);
+                    maxY = Math.max(y, refY);
+                }
+                else if (y < minY) {
+                    LargeGraphics.drawLine(graphics, x, minY, x, y);
+                    minY = y;
+                }
+                else if (y > maxY) {
+                    LargeGraphics.drawLine(graphics, x, maxY, x, y);
+                    maxY = y;
+                }
             }
         }
 
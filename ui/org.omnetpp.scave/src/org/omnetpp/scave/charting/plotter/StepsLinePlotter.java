@@ -80,88 +80,96 @@ public class StepsLinePlotter extends LinePlotter {
 
         long startTime = System.currentTimeMillis();
 
-        for (int i = first+1; i <= last; i++) {
-            if ((i & 255)==0 && System.currentTimeMillis() - startTime > timeLimitMillis)
-                return false; // timed out
+        // chunks are copied with one extra item at the end, for nextX
+        double[] xs = new double[CHUNK_SIZE+1];
+        double[] ys = new double[CHUNK_SIZE+1];
+        for (int chunkStart = first+1; chunkStart <= last; chunkStart += CHUNK_SIZE) {
+            int chunkEnd = Math.min(last+1, chunkStart + CHUNK_SIZE);
+            dataset.copyRange(series, chunkStart, Math.min(n, chunkEnd+1), xs, ys);
 
-            double value = plot.transformY(dataset.getY(series, i));
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                if ((i & 255)==0 && System.currentTimeMillis() - startTime > timeLimitMillis)
+                    return false; // timed out
 
-            // for testing:
-            //if (i%5==0) value = 0.0/0.0; //NaN
+                double value = plot.transformY(ys[i-chunkStart]);
 
-            boolean isNaN = Double.isNaN(value); // see isNaN handling later
+                // for testing:
+                //if (i%5==0) value = 0.0/0.0; //NaN
 
-            long x = mapping.toCanvasX(plot.transformX(dataset.getX(series, i)));
-            long y = mapping.toCanvasY(value); // note: this maps +-INF to +-MAXPIX, which works out just fine here
+                boolean isNaN = Double.isNaN(value); // see isNaN handling later
 
-            long nextX = x;
-            if (i < n-1)
-                nextX = mapping.toCanvasX(plot.transformX(dataset.getX(series, i+1)));
+                long x = mapping.toCanvasX(plot.transformX(xs[i-chunkStart]));
+                long y = mapping.toCanvasY(value); // note: this maps +-INF to +-MAXPIX, which works out just fine here
 
-            // nextY is not needed
+                long nextX = x;
+                if (i < n-1)
+                    nextX = mapping.toCanvasX(plot.transformX(xs[i+1-chunkStart]));
 
-            // for testing:
-            //if (i%5==1) x = prevX;
+                // nextY is not needed
 
-            if (x != prevX) {
-                switch (mode) {
-                case MID:
-                    if (!isNaN) {
-                        long fromX = (prevX + x) / 2;
-                        long toX = (x + nextX) / 2;
+                // for testing:
+                //if (i%5==1) x = prevX;
 
-                        graphics.setLineStyle(origLineStyle);
-                        LargeGraphics.drawLine(graphics, fromX, y, toX, y); // horizontal
+                if (x != prevX) {
+                    switch (mode) {
+                    case MID:
+                        if (!isNaN) {
+                            long fromX = (prevX + x) / 2;
+                            long toX = (x + nextX) / 2;
 
-                        graphics.setLineDash(dots);
-                        if (!prevIsNaN) {
-                            LargeGraphics.drawLine(graphics, fromX, prevY, fromX, y); // vertical
-                        }
-                    }
-                    break;
-                case POST:
-                    if (!prevIsNaN) { // forward
-                        graphics.setLineStyle(origLineStyle);
-                        LargeGraphics.drawLine(graphics, prevX, prevY, x, prevY); // horizontal
+                            graphics.setLineStyle(origLineStyle);
+                            LargeGraphics.drawLine(graphics, fromX, y, toX, y); // horizontal
 
-                        graphics.setLineDash(dots);
-                        if (!isNaN) {
-                            LargeGraphics.drawLine(graphics, x, prevY, x, y); // vertical
+                            graphics.setLineDash(dots);
+                            if (!prevIsNaN) {
+                                LargeGraphics.drawLine(graphics, fromX, prevY, fromX, y); // vertical
+                            }
                         }
-                    }
-                    break;
-                case PRE:
-                    if (!isNaN) {
-                        graphics.setLineStyle(origLineStyle);
-                        LargeGraphics.drawLine(graphics, prevX, y, x, y); // horizontal
-
-                        graphics.setLineDash(dots);
-                        if (!prevIsNaN) {
-                            LargeGraphics.drawLine(graphics, prevX, prevY, prevX, y); // vertical
+                        break;
+                    case POST:
+                        if (!prevIsNaN) { // forward
+                            graphics.setLineStyle(origLineStyle);
+                            LargeGraphics.drawLine(graphics, prevX, prevY, x, prevY); // horizontal
+
+                            graphics.setLineDash(dots);
+                            if (!isNaN) {
+                                LargeGraphics.drawLine(graphics, x, prevY, x, y); // vertical
+                            }
+                        }
+                        break;
+                    case PRE:
+                        if (!isNaN) {
+                            graphics.setLineStyle(origLineStyle);
+                            LargeGraphics.drawLine(graphics, prevX, y, x, y); // horizontal
+
+                            graphics.setLineDash(dots);
+                            if (!prevIsNaN) {
+                                LargeGraphics.drawLine(graphics, prevX, prevY, prevX, y); // vertical
+                            }
                         }
+                        break;
                     }
-                    break;
-                }
 
-                minY = maxY = y;
-            }
-            else if (!isNaN) {
-                // same x coord, only vertical line needs to be drawn
-                if (y < minY) {
-                    LargeGraphics.drawLine(graphics, x, minY, x, y);  // in lineDash(dots) mode
-                    minY = y;
+                    minY = maxY = y;
                 }
-                else if (y > maxY) {
-                    LargeGraphics.drawLine(graphics, x, maxY, x, y);  // in lineDash(dots) mode
-                    maxY = y;
+                else if (!isNaN) {
+                    // same x coord, only vertical line needs to be drawn
+                    if (y < minY) {
+                        LargeGraphics.drawLine(graphics, x, minY, x, y);  // in lineDash(dots) mode
+                        minY = y;
+                    }
+                    else if (y > maxY) {
+                        LargeGraphics.drawLine(graphics, x, maxY, x, y);  // in lineDash(dots) mode
+                        maxY = y;
+                    }
                 }
-            }
 
-            if (!isNaN) {  // condition is to handle case when first value on this x is NaN
-                prevX = x;
-                prevY = y;
+                if (!isNaN) {  // condition is to handle case when first value on this x is NaN
+                    prevX = x;
+                    prevY = y;
+                }
+                prevIsNaN = isNaN;
             }
-            prevIsNaN = isNaN;
         }
 
         if (!prevIsNaN && mode == Mode.POST)
@@ -1,11 +1,18 @@
 package org.omnetpp.scave.editors;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.omnetpp.scave.engine.InterruptedFlag;
 import org.omnetpp.scave.engine.ResultFileManager;
+import org.omnetpp.scave.pychart.IPickleStream;
 import org.omnetpp.scave.pychart.IScaveResultsPickleProvider;
+import org.omnetpp.scave.python.AggregatingResultsPickler;
+import org.omnetpp.scave.python.BatchResultsCache;
+import org.omnetpp.scave.python.ColumnarResultsPickler;
 import org.omnetpp.scave.python.ConfigEntriesPickler;
 import org.omnetpp.scave.python.CsvResultsPickler;
 import org.omnetpp.scave.python.HistogramResultsPickler;
@@ -13,98 +20,264 @@ import org.omnetpp.scave.python.IterVarsPickler;
 import org.omnetpp.scave.python.ParamAssignmentsPickler;
 import org.omnetpp.scave.python.ParamValuesPickler;
 import org.omnetpp.scave.python.ResultPicklingUtils;
+import org.omnetpp.scave.python.ResultPicklingUtils.PickleSizeLimitExceededException;
+import org.omnetpp.scave.python.ResultQueryCache;
 import org.omnetpp.scave.python.RunAttrsPickler;
 import org.omnetpp.scave.python.RunsPickler;
 import org.omnetpp.scave.python.ScalarResultsPickler;
+import org.omnetpp.scave.python.SharedMemoryPickleStream;
+import org.omnetpp.scave.python.SharedMemoryRegistry;
 import org.omnetpp.scave.python.StatisticsResultsPickler;
+import org.omnetpp.scave.python.VectorBatchesPickler;
 import org.omnetpp.scave.python.VectorResultsPickler;
 
+import net.razorvine.pickle.IObjectPickler;
 import net.razorvine.pickle.PickleException;
 
 public class ResultsProvider implements IScaveResultsPickleProvider {
     ResultFileManager rfm;
     InterruptedFlag interruptedFlag;
+    IProgressMonitor progressMonitor;
+    BatchResultsCache batchCache;
+    BooleanSupplier consumerAliveCheck;
+    List<SharedMemoryPickleStream> openStreams = new ArrayList<>(); // guarded by itself
+    boolean disposed = false; // guarded by openStreams
 
     public ResultsProvider(ResultFileManager rfm, InterruptedFlag interruptedFlag) {
         this.rfm = rfm;
         this.interruptedFlag = interruptedFlag;
     }
 
+    /**
+     * Sets the monitor to report the progress of loading vector data to (may
+     * be null). It is called from the thread serving the Python process.
+     */
+    public void setProgressMonitor(IProgressMonitor progressMonitor) {
+        this.progressMonitor = progressMonitor;
+    }
+
+    /**
+     * Makes the queries go through the given cache, which shares their results
+     * with the other charts of the batch (may be null).
+     */
+    public void setBatchCache(BatchResultsCache batchCache) {
+        this.batchCache = batchCache;
+    }
+
+    /**
+     * Sets the check that tells if the Python process using this provider is
+     * still alive, so that the pickle streams can stop if it is not.
+     */
+    public void setConsumerAliveCheck(BooleanSupplier consumerAliveCheck) {
+        this.consumerAliveCheck = consumerAliveCheck;
+    }
+
+    protected VectorResultsPickler createVectorsPickler(String filterExpression, boolean includeAttrs, double simTimeStart, double simTimeEnd, int targetResolution) {
+        VectorResultsPickler pickler = new VectorResultsPickler(filterExpression, includeAttrs, simTimeStart, simTimeEnd, targetResolution, interruptedFlag);
+        pickler.setProgressMonitor(progressMonitor);
+        return pickler;
+    }
+
+    protected VectorBatchesPickler createVectorBatchesPickler(String filterExpression, boolean includeAttrs, double simTimeStart, double simTimeEnd, int targetResolution) {
+        VectorBatchesPickler pickler = new VectorBatchesPickler(filterExpression, includeAttrs, simTimeStart, simTimeEnd, targetResolution, interruptedFlag);
+        pickler.setProgressMonitor(progressMonitor);
+        return pickler;
+    }
+
     @Override
     public byte[] getRunsPickle(String filterExpression) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new RunsPickler(filterExpression, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new RunsPickler(filterExpression, interruptedFlag), this), "getRunsPickle", filterExpression);
     }
 
     @Override
     public byte[] getResultsPickle(String filterExpression, List<String> rowTypes, boolean omitUnusedColumns, double simTimeStart, double simTimeEnd) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new CsvResultsPickler(filterExpression, rowTypes, omitUnusedColumns, simTimeStart, simTimeEnd, interruptedFlag));
+        ResultQueryCache.PickleProducer producer = () -> ResultPicklingUtils.pickleResultsUsing(rfm, new CsvResultsPickler(filterExpression, rowTypes, omitUnusedColumns, simTimeStart, simTimeEnd, interruptedFlag), this);
+        // vector data is passed in shared memory, so those pickles can only be used once (except from the batch cache)
+        if (rowTypes.contains("vector"))
+            return batchCache == null ? producer.produce() : batchShared(new CsvResultsPickler(filterExpression, rowTypes, omitUnusedColumns, simTimeStart, simTimeEnd, interruptedFlag),
+                    "getResultsPickle", filterExpression, rowTypes, omitUnusedColumns, simTimeStart, simTimeEnd);
+        return cached(producer, "getResultsPickle", filterExpression, rowTypes, omitUnusedColumns, simTimeStart, simTimeEnd);
     }
 
     @Override
     public byte[] getRunAttrsPickle(String filter) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new RunAttrsPickler(filter, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new RunAttrsPickler(filter, interruptedFlag), this), "getRunAttrsPickle", filter);
     }
 
     @Override
     public byte[] getItervarsPickle(String filter) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new IterVarsPickler(filter, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new IterVarsPickler(filter, interruptedFlag), this), "getItervarsPickle", filter);
     }
 
     @Override
     public byte[] getItervarsForRunsPickle(List<String> runIDs) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new IterVarsPickler(runIDs, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new IterVarsPickler(runIDs, interruptedFlag), this), "getItervarsForRunsPickle", runIDs);
     }
 
     @Override
     public byte[] getRunAttrsForRunsPickle(List<String> runIDs) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new RunAttrsPickler(runIDs, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new RunAttrsPickler(runIDs, interruptedFlag), this), "getRunAttrsForRunsPickle", runIDs);
     }
 
     @Override
     public byte[] getParamAssignmentsForRunsPickle(List<String> runIDs) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new ParamAssignmentsPickler(runIDs, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new ParamAssignmentsPickler(runIDs, interruptedFlag), this), "getParamAssignmentsForRunsPickle", runIDs);
     }
 
     @Override
     public byte[] getConfigEntriesForRunsPickle(List<String> runIDs) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new ConfigEntriesPickler(runIDs, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new ConfigEntriesPickler(runIDs, interruptedFlag), this), "getConfigEntriesForRunsPickle", runIDs);
     }
 
 
     @Override
     public byte[] getScalarsPickle(String filterExpression, boolean includeAttrs) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new ScalarResultsPickler(filterExpression, includeAttrs, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new ScalarResultsPickler(filterExpression, includeAttrs, interruptedFlag), this), "getScalarsPickle", filterExpression, includeAttrs);
     }
 
     @Override
     public byte[] getVectorsPickle(String filterExpression, boolean includeAttrs, double simTimeStart, double simTimeEnd) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new VectorResultsPickler(filterExpression, includeAttrs, simTimeStart, simTimeEnd, interruptedFlag));
+        if (batchCache != null)
+            return batchShared(createVectorsPickler(filterExpression, includeAttrs, simTimeStart, simTimeEnd, 0), "getVectorsPickle", filterExpression, includeAttrs, simTimeStart, simTimeEnd);
+        return ResultPicklingUtils.pickleResultsUsing(rfm, createVectorsPickler(filterExpression, includeAttrs, simTimeStart, simTimeEnd, 0), this);
     }
 
     @Override
     public byte[] getStatisticsPickle(String filterExpression, boolean includeAttrs) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new StatisticsResultsPickler(filterExpression, includeAttrs, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new StatisticsResultsPickler(filterExpression, includeAttrs, interruptedFlag), this), "getStatisticsPickle", filterExpression, includeAttrs);
     }
 
     @Override
     public byte[] getHistogramsPickle(String filterExpression, boolean includeAttrs) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new HistogramResultsPickler(filterExpression, includeAttrs, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new HistogramResultsPickler(filterExpression, includeAttrs, interruptedFlag), this), "getHistogramsPickle", filterExpression, includeAttrs);
+    }
+
+    @Override
+    public IPickleStream getResultsPickleStream(String filterExpression, List<String> rowTypes, boolean omitUnusedColumns, double simTimeStart, double simTimeEnd) throws PickleException, IOException {
+        SharedMemoryPickleStream stream = batchSharedStream(new CsvResultsPickler(filterExpression, rowTypes, omitUnusedColumns, simTimeStart, simTimeEnd, interruptedFlag),
+                "getResultsPickle", filterExpression, rowTypes, omitUnusedColumns, simTimeStart, simTimeEnd);
+        if (stream == null)
+            stream = ResultPicklingUtils.streamResultsUsing(rfm, new CsvResultsPickler(filterExpression, rowTypes, omitUnusedColumns, simTimeStart, simTimeEnd, interruptedFlag), interruptedFlag, this);
+        return track(stream);
+    }
+
+    @Override
+    public IPickleStream getVectorsPickleStream(String filterExpression, boolean includeAttrs, double simTimeStart, double simTimeEnd, int targetResolution) throws PickleException, IOException {
+        SharedMemoryPickleStream stream = batchSharedStream(createVectorBatchesPickler(filterExpression, includeAttrs, simTimeStart, simTimeEnd, targetResolution),
+                "getVectorsPickleStream", filterExpression, includeAttrs, simTimeStart, simTimeEnd, targetResolution);
+        if (stream == null)
+            stream = ResultPicklingUtils.streamResultsUsing(rfm, createVectorBatchesPickler(filterExpression, includeAttrs, simTimeStart, simTimeEnd, targetResolution), interruptedFlag, this);
+        return track(stream);
+    }
+
+    @Override
+    public byte[] getResultColumnsPickle(String resultType, String filterExpression, boolean includeAttrs) throws PickleException, IOException {
+        int type = ColumnarResultsPickler.getResultType(resultType);
+        if (batchCache != null)
+            return batchShared(new ColumnarResultsPickler(filterExpression, type, includeAttrs, interruptedFlag), "getResultColumnsPickle", resultType, filterExpression, includeAttrs);
+        return ResultPicklingUtils.pickleResultsUsing(rfm, new ColumnarResultsPickler(filterExpression, type, includeAttrs, interruptedFlag), this);
+    }
+
+    @Override
+    public byte[] getAggregatedResultsPickle(String resultType, String filterExpression, List<String> groupBy, List<String> aggregates, double timeBucket, double simTimeStart, double simTimeEnd) throws PickleException, IOException {
+        int type = AggregatingResultsPickler.getResultType(resultType);
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new AggregatingResultsPickler(filterExpression, type, groupBy, aggregates, timeBucket, simTimeStart, simTimeEnd, interruptedFlag), this),
+                "getAggregatedResultsPickle", resultType, filterExpression, groupBy, aggregates, timeBucket, simTimeStart, simTimeEnd);
     }
 
     @Override
     public byte[] getConfigEntriesPickle(String filter) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new ConfigEntriesPickler(filter, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new ConfigEntriesPickler(filter, interruptedFlag), this), "getConfigEntriesPickle", filter);
     }
 
 
     @Override
     public byte[] getParamAssignmentsPickle(String filter) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new ParamAssignmentsPickler(filter, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new ParamAssignmentsPickler(filter, interruptedFlag), this), "getParamAssignmentsPickle", filter);
     }
 
 
     @Override
     public byte[] getParamValuesPickle(String filterExpression, boolean includeAttrs) throws PickleException, IOException {
-        return ResultPicklingUtils.pickleResultsUsing(rfm, new ParamValuesPickler(filterExpression, includeAttrs, interruptedFlag));
+        return cached(() -> ResultPicklingUtils.pickleResultsUsing(rfm, new ParamValuesPickler(filterExpression, includeAttrs, interruptedFlag), this), "getParamValuesPickle", filterExpression, includeAttrs);
+    }
+
+    @Override
+    public void releaseSharedMemory(List<String> names) {
+        SharedMemoryRegistry registry = SharedMemoryRegistry.getInstance();
+        for (String name : names)
+            registry.release(name, this); // objects shared via the batch cache are not ours
+    }
+
+    /**
+     * Returns the pickle from the query cache of the ResultFileManager, or
+     * produces it if it is not cached. Only for pickles that do not refer to
+     * shared memory objects, as those are released by the Python process.
+     */
+    protected byte[] cached(ResultQueryCache.PickleProducer producer, Object... keyParts) throws PickleException, IOException {
+        ResultQueryCache cache = ResultQueryCache.getInstance(rfm);
+        ResultQueryCache.PickleProducer cachedProducer = cache == null ? producer : () -> cache.getPickle(producer, keyParts);
+        return batchCache == null ? cachedProducer.produce() : batchCache.getPickle(this, (owner) -> cachedProducer.produce(), keyParts);
+    }
+
+    /**
+     * Returns the pickle produced by the pickler from the batch cache, which
+     * must be set. Shared memory objects are owned by the cache entry.
+     */
+    protected byte[] batchShared(IObjectPickler pickler, Object... keyParts) throws PickleException, IOException {
+        return batchCache.getPickle(this, (owner) -> ResultPicklingUtils.pickleResultsUsing(rfm, pickler, owner), keyParts);
+    }
+
+    /**
+     * Like batchShared(), but hands over the pickle as a stream. Returns null
+     * if there is no batch cache, or the pickle is too large to be cached
+     * (the cache remembers that, so only the first user tries to pickle it).
+     */
+    protected SharedMemoryPickleStream batchSharedStream(IObjectPickler pickler, Object... keyParts) throws PickleException, IOException {
+        if (batchCache == null)
+            return null;
+        try {
+            return ResultPicklingUtils.streamPickle(batchShared(pickler, keyParts), interruptedFlag, this);
+        }
+        catch (PickleSizeLimitExceededException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Remembers the stream, so it can be closed in dispose() even if the
+     * Python process never does.
+     */
+    protected IPickleStream track(SharedMemoryPickleStream stream) {
+        stream.setConsumerAliveCheck(consumerAliveCheck);
+        synchronized (openStreams) {
+            openStreams.removeIf(SharedMemoryPickleStream::isDone);
+            if (!disposed) {
+                openStreams.add(stream);
+                return stream;
+            }
+        }
+        stream.close();
+        return stream;
+    }
+
+    /**
+     * Reclaims the shared memory objects given to the Python process, and
+     * stops producing the pickle streams it has not closed.
+     * To be called when the process is gone.
+     */
+    public void dispose() {
+        // the producers hold the read lock of the results while waiting for the reader
+        List<SharedMemoryPickleStream> streams;
+        synchronized (openStreams) {
+            disposed = true;
+            streams = new ArrayList<>(openStreams);
+            openStreams.clear();
+        }
+        for (SharedMemoryPickleStream stream : streams)
+            stream.close();
+        SharedMemoryRegistry.getInstance().releaseAll(this);
+        if (batchCache != null)
+            batchCache.unpinAll(this);
     }
-}
\ No newline at end of file
+}
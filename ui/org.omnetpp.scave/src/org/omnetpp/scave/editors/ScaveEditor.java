@@ -140,6 +140,7 @@ import org.omnetpp.scave.model2.ScaveModelUtil;
 import org.omnetpp.scave.pychart.PythonProcessPool;
 import org.omnetpp.scave.python.ChartViewerBase;
 import org.omnetpp.scave.python.NativeChartViewer;
+import org.omnetpp.scave.python.ResultQueryCache;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -538,6 +539,7 @@ public class ScaveEditor extends MultiPageEditorPartExt
 
         IFile inputFile = ((IFileEditorInput) getEditorInput()).getFile();
         tracker = new ResultFilesTracker(manager, analysis.getInputs(), inputFile.getParent());
+        tracker.addChangeListener((event) -> ResultQueryCache.invalidate(event.getResultFileManager()));
         analysis.addListener(modelChangeListener);
         analysis.addListener(tracker);
     }
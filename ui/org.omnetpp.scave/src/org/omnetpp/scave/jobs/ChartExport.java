@@ -34,16 +34,26 @@ import org.omnetpp.scave.pychart.PythonCallerThread.ExceptionHandler;
 import org.omnetpp.scave.pychart.PythonOutputMonitoringThread.IOutputListener;
 import org.omnetpp.scave.pychart.PythonProcess;
 import org.omnetpp.scave.pychart.PythonProcessPool;
+import org.omnetpp.scave.python.BatchResultsCache;
 
 /**
  * Runs chart scripts in background jobs, with the purpose of exporting plot graphics, data, etc.
  *
+ * The charts of a batch are run in parallel, in processes of a shared pool.
+ * Their result queries go through a BatchResultsCache, so each distinct query
+ * is only run once per batch, and the results (incl. vector data in shared
+ * memory) are shared by the charts. The results are treated as a snapshot:
+ * if they change during the export, the affected charts fail.
+ *
  * @author andras
  */
 public class ChartExport {
 
     private static final String CONSOLE_MARKER_ATTRIBUTE_KEY = "FOR_CHART_EXPORT";
 
+    // shared by all export jobs, so that Python processes are reused across charts
+    private static PythonProcessPool processPool;
+
     private static class Context {
         public Context(Map<String, String> extraProperties, File chartsDir, ResultFileManager manager, boolean stopOnError, int numConcurrentProcesses) {
             this.extraProperties = extraProperties;
@@ -51,38 +61,47 @@ public class ChartExport {
             this.manager = manager;
             this.stopOnError = stopOnError;
             this.numConcurrentProcesses = numConcurrentProcesses;
+            this.resultsCache = new BatchResultsCache(manager);
         }
         final Map<String, String> extraProperties;
         final File chartsDir;
         final ResultFileManager manager;
         final boolean stopOnError;
         final int numConcurrentProcesses;
+        final BatchResultsCache resultsCache;
     }
 
     protected static class ChartExportJob extends Job {
         private Chart chart;
         private Context context;
+        private boolean disposeResultsCache; // true if not part of a batch
 
-        public ChartExportJob(Chart chart, Context context) {
+        public ChartExportJob(Chart chart, Context context, boolean disposeResultsCache) {
             super("Exporting chart '" + chart.getName() + "'");
             this.chart = chart;
             this.context = context;
+            this.disposeResultsCache = disposeResultsCache;
         }
 
         @Override
         protected IStatus run(final IProgressMonitor monitor) {
             try {
-                ResultFileManager.runWithReadLock(context.manager, () -> {
-                    PythonProcessPool processPool = new PythonProcessPool(1);
-                    processPool.setShouldSetOmnetppMplBackend(false);
-                    runChartScript(chart, processPool, context, monitor);
-                });
+                // the queries take the read lock themselves; holding it for the whole
+                // script is only needed if changes of the results cannot be detected
+                if (context.resultsCache.canDetectChanges())
+                    runChartScript(chart, getProcessPool(), context, monitor);
+                else
+                    ResultFileManager.runWithReadLock(context.manager, () -> {
+                        runChartScript(chart, getProcessPool(), context, monitor);
+                    });
                 return Status.OK_STATUS;
             }
             catch (RuntimeException e) {
                 return ScavePlugin.getErrorStatus(0, "Failed to export chart", e);
             }
             finally {
+                if (disposeResultsCache)
+                    context.resultsCache.dispose();
                 monitor.done();
             }
         }
@@ -106,8 +125,10 @@ public class ChartExport {
                     return numberOfCanceledJobs > 0 || (context.stopOnError && numberOfFailedJobs > 0);
                 }
             };
+            // start the processes for the first round of charts at once, instead of on demand
+            getProcessPool().prewarm(Math.min(context.numConcurrentProcesses, charts.size()));
             for (Chart chart : charts) {
-                Job job1 = new ChartExportJob(chart, context);
+                Job job1 = new ChartExportJob(chart, context, false);
                 job1.setJobGroup(jobGroup);
                 job1.setPriority(Job.BUILD);
                 job1.setSystem(false);
@@ -119,16 +140,41 @@ public class ChartExport {
             catch (OperationCanceledException | InterruptedException e) {
                 Debug.println("Cancelling group");
                 jobGroup.cancel();
+                // the canceled jobs still need the cached results until they stop
+                try {
+                    jobGroup.join(0, null);
+                }
+                catch (OperationCanceledException | InterruptedException e1) {
+                    // dispose anyway
+                }
                 return Status.CANCEL_STATUS;
             }
+            finally {
+                context.resultsCache.dispose();
+            }
             return Status.OK_STATUS;
         }
 
     };
 
+    protected static synchronized PythonProcessPool getProcessPool() {
+        if (processPool == null) {
+            // no processes are kept around when not exporting
+            processPool = new PythonProcessPool(0, Math.max(2, Runtime.getRuntime().availableProcessors()));
+            processPool.setShouldSetOmnetppMplBackend(false);
+        }
+        return processPool;
+    }
+
+    public static synchronized void disposeProcessPool() {
+        if (processPool != null)
+            processPool.dispose();
+        processPool = null;
+    }
+
     protected static void startExportJob(Chart chart, Context context) {
         chart = (Chart)chart.dup(); // since job runs in another thread, and we don't want locking
-        Job job = new ChartExportJob(chart, context);
+        Job job = new ChartExportJob(chart, context, true);
         job.setPriority(Job.BUILD);
         job.setSystem(false);
         job.setUser(true);
@@ -216,7 +262,10 @@ public class ChartExport {
         proc.outputMonitoringThread.addOutputListener(outputListener);
         proc.errorMonitoringThread.addOutputListener(outputListener);
 
-        proc.getEntryPoint().setResultsProvider(new ResultsProvider(context.manager, proc.getInterruptedFlag()));
+        ResultsProvider resultsProvider = new ResultsProvider(context.manager, proc.getInterruptedFlag());
+        resultsProvider.setBatchCache(context.resultsCache);
+        resultsProvider.setConsumerAliveCheck(() -> proc.isAlive());
+        proc.getEntryPoint().setResultsProvider(resultsProvider);
         proc.getEntryPoint().setChartProvider(new ChartProvider(chart, context.extraProperties));
 
         final Thread waitingThread = Thread.currentThread();
@@ -254,8 +303,13 @@ public class ChartExport {
             }
         }
 
-        proc.kill();
-        processPool.dispose();
+        proc.outputMonitoringThread.removeOutputListener(outputListener);
+        proc.errorMonitoringThread.removeOutputListener(outputListener);
+        if (executionDone[0])
+            processPool.releaseProcess(proc);
+        else
+            proc.kill(); // canceled
+        resultsProvider.dispose();
     }
 
 }
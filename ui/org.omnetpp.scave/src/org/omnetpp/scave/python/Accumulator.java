@@ -0,0 +1,87 @@
+package org.omnetpp.scave.python;
+
+/**
+ * Accumulates count, sum, mean, variance, min and max of a set of values,
+ * for AggregatingResultsPickler.
+ *
+ * The mean and the sum of squared differences from the mean (M2) are
+ * updated with Welford's algorithm, and accumulators are merged with Chan's
+ * formula, so the standard deviation stays accurate even if the values are
+ * large compared to their spread (e.g. timestamps), where the textbook
+ * sum-of-squares formula cancels catastrophically. For the same reason, the
+ * mean is kept relative to the first value (shift).
+ */
+class Accumulator {
+    long count = 0;
+    double sum = 0;
+    double shift = 0;
+    double mean = 0; // of value - shift
+    double m2 = 0;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+
+    void add(double value) {
+        if (count == 0)
+            shift = value;
+        count++;
+        sum += value;
+        double x = value - shift;
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+    }
+
+    /**
+     * Adds all values accumulated by the other accumulator.
+     */
+    void merge(Accumulator other) {
+        if (other.count == 0)
+            return;
+        if (count == 0) {
+            count = other.count;
+            sum = other.sum;
+            shift = other.shift;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        long n = count + other.count;
+        double delta = (other.shift - shift) + (other.mean - mean);
+        mean += delta * other.count / n;
+        m2 += other.m2 + delta * delta * ((double)count * other.count / n);
+        count = n;
+        sum += other.sum;
+        if (other.min < min)
+            min = other.min;
+        if (other.max > max)
+            max = other.max;
+    }
+
+    void clear() {
+        count = 0;
+        sum = 0;
+        shift = 0;
+        mean = 0;
+        m2 = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    double get(String aggregate) {
+        switch (aggregate) {
+        case "count": return count;
+        case "sum": return sum;
+        case "mean": return count == 0 ? Double.NaN : shift + mean;
+        case "stddev": return count < 2 ? Double.NaN : Math.sqrt(m2 / (count - 1));
+        case "min": return count == 0 ? Double.NaN : min;
+        case "max": return count == 0 ? Double.NaN : max;
+        default: throw new IllegalArgumentException("Unknown aggregate function: " + aggregate);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package org.omnetpp.scave.python;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.omnetpp.common.Debug;
+import org.omnetpp.scave.charting.dataset.VectorDataLoader;
+import org.omnetpp.scave.engine.IDList;
+import org.omnetpp.scave.engine.InterruptedFlag;
+import org.omnetpp.scave.engine.ResultFileManager;
+import org.omnetpp.scave.engine.ResultItem;
+import org.omnetpp.scave.engine.Run;
+import org.omnetpp.scave.engine.ScalarResult;
+import org.omnetpp.scave.engine.ScaveEngine;
+import org.omnetpp.scave.engine.StringMap;
+import org.omnetpp.scave.engine.XYArray;
+import org.omnetpp.scave.engine.XYArrayVector;
+
+import net.razorvine.pickle.IObjectPickler;
+import net.razorvine.pickle.Opcodes;
+import net.razorvine.pickle.PickleException;
+import net.razorvine.pickle.Pickler;
+
+/**
+ * Groups the scalars or vectors matching a filter expression, and pickles
+ * only aggregates of their values per group, so the data itself does not
+ * need to be transferred to the Python process.
+ *
+ * Groups are formed by the values of the groupBy fields, which are the same
+ * as in filter expressions: "runID", "module", "name", "runattr:NAME",
+ * "itervar:NAME" and "attr:NAME" (missing values become None). The aggregate
+ * functions are "count", "sum", "mean", "stddev" (sample standard deviation),
+ * "min" and "max"; for vectors, they are computed over all values of all
+ * vectors in the group. If a time bucket width is given for vectors, the
+ * values are resampled instead: each aggregate is computed per bucket, and
+ * is pickled as an array, together with the start times of the buckets.
+ * Buckets start at simTimeStart if it is finite, otherwise at 0, so buckets
+ * of different groups are aligned; empty buckets inside the time range of a
+ * group have a count of 0, and NaN for the other aggregates.
+ *
+ * The result is a list of tuples, one per group, in the order of the first
+ * result of each group: the values of the groupBy fields, then the
+ * aggregates (doubles), or for resampling, the bucket start times and the
+ * aggregates (big-endian double arrays, like histogram bins).
+ */
+public class AggregatingResultsPickler implements IObjectPickler {
+
+    public static final List<String> AGGREGATES = Arrays.asList("count", "sum", "mean", "stddev", "min", "max");
+
+    protected static final int VECTOR_BATCH_SIZE = 64;
+    protected static final int MAX_BUCKETS = 10_000_000;
+
+    /**
+     * The values of one group: a single accumulator, or one per time bucket.
+     * Buckets are stored from firstBucket, and the array grows in both directions.
+     */
+    protected class Group {
+        Accumulator total = new Accumulator();
+        Accumulator[] buckets;
+        long firstBucket;
+
+        void add(double time, double value) {
+            if (timeBucket <= 0) {
+                total.add(value);
+                return;
+            }
+            double index = Math.floor((time - bucketOrigin) / timeBucket);
+            if (Double.isNaN(index) || Double.isInfinite(index))
+                return;
+            getBucket((long)index).add(value);
+        }
+
+        /**
+         * Adds the values of a vector. Consecutive values that fall into the same
+         * time bucket are accumulated separately, and merged into the group at once.
+         */
+        void addVector(DoubleBuffer times, DoubleBuffer values, int length) {
+            Accumulator run = scratchAccumulator;
+            run.clear();
+            if (timeBucket <= 0) {
+                for (int i = 0; i < length; ++i)
+                    run.add(values.get(i));
+                total.merge(run);
+                return;
+            }
+            double runIndex = Double.NaN;
+            for (int i = 0; i < length; ++i) {
+                double index = Math.floor((times.get(i) - bucketOrigin) / timeBucket);
+                if (Double.isNaN(index) || Double.isInfinite(index))
+                    continue;
+                if (index != runIndex && run.count > 0) {
+                    getBucket((long)runIndex).merge(run);
+                    run.clear();
+                }
+                runIndex = index;
+                run.add(values.get(i));
+            }
+            if (run.count > 0)
+                getBucket((long)runIndex).merge(run);
+        }
+
+        Accumulator getBucket(long index) {
+            if (buckets == null) {
+                buckets = new Accumulator[16];
+                firstBucket = index;
+            }
+            if (index < firstBucket || index >= firstBucket + buckets.length) {
+                long newFirst = Math.min(firstBucket, index);
+                long newEnd = Math.max(firstBucket + buckets.length, index + 1);
+                if (newEnd - newFirst > MAX_BUCKETS)
+                    throw new IllegalArgumentException("Too many time buckets (more than " + MAX_BUCKETS + "), use a larger bucket width or a narrower time range");
+                int newLength = (int)Math.min(MAX_BUCKETS, Math.max(newEnd - newFirst, 2L * buckets.length));
+                if (index < firstBucket)
+                    newFirst = newEnd - newLength;
+                Accumulator[] newBuckets = new Accumulator[newLength];
+                System.arraycopy(buckets, 0, newBuckets, (int)(firstBucket - newFirst), buckets.length);
+                buckets = newBuckets;
+                firstBucket = newFirst;
+            }
+            int i = (int)(index - firstBucket);
+            if (buckets[i] == null)
+                buckets[i] = new Accumulator();
+            return buckets[i];
+        }
+    }
+
+    String filterExpression;
+    int resultType;
+    List<String> groupBy;
+    List<String> aggregates;
+    double timeBucket;
+    double bucketOrigin;
+    double simTimeStart;
+    double simTimeEnd;
+    InterruptedFlag interruptedFlag;
+
+    private Accumulator scratchAccumulator = new Accumulator();
+
+    /**
+     * Creates a pickler for scalars (ResultFileManager.SCALAR) or vectors
+     * (ResultFileManager.VECTOR). timeBucket, simTimeStart and simTimeEnd are
+     * only used for vectors; timeBucket <= 0 means no resampling.
+     */
+    public AggregatingResultsPickler(String filterExpression, int resultType, List<String> groupBy, List<String> aggregates,
+            double timeBucket, double simTimeStart, double simTimeEnd, InterruptedFlag interruptedFlag) {
+        if (resultType != ResultFileManager.SCALAR && resultType != ResultFileManager.VECTOR)
+            throw new IllegalArgumentException("Only scalars and vectors can be aggregated");
+        for (String field : groupBy)
+            checkGroupByField(field);
+        for (String aggregate : aggregates)
+            if (!AGGREGATES.contains(aggregate))
+                throw new IllegalArgumentException("Unknown aggregate function: '" + aggregate + "', supported ones are: " + String.join(", ", AGGREGATES));
+        if (resultType != ResultFileManager.VECTOR && timeBucket > 0)
+            throw new IllegalArgumentException("Time buckets can only be used with vectors");
+
+        this.filterExpression = filterExpression;
+        this.resultType = resultType;
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+        this.timeBucket = timeBucket;
+        this.bucketOrigin = Double.isInfinite(simTimeStart) ? 0 : simTimeStart;
+        this.simTimeStart = simTimeStart;
+        this.simTimeEnd = simTimeEnd;
+        this.interruptedFlag = interruptedFlag;
+    }
+
+    public static int getResultType(String resultType) {
+        switch (resultType) {
+            case "scalar": return ResultFileManager.SCALAR;
+            case "vector": return ResultFileManager.VECTOR;
+            default: throw new IllegalArgumentException("Unsupported result type for aggregation: " + resultType);
+        }
+    }
+
+    protected static void checkGroupByField(String field) {
+        if (field.equals("runID") || field.equals("module") || field.equals("name"))
+            return;
+        if ((field.startsWith("runattr:") || field.startsWith("itervar:") || field.startsWith("attr:")) && field.indexOf(':') < field.length() - 1)
+            return;
+        throw new IllegalArgumentException("Unsupported group-by field: '" + field + "', use runID, module, name, runattr:<name>, itervar:<name> or attr:<name>");
+    }
+
+    protected static String getFieldValue(ResultItem item, String field) {
+        switch (field) {
+            case "runID": return item.getRun().getRunName();
+            case "module": return item.getModuleName();
+            case "name": return item.getName();
+        }
+        int colon = field.indexOf(':');
+        String prefix = field.substring(0, colon);
+        String key = field.substring(colon + 1);
+        Run run = item.getRun();
+        StringMap map = prefix.equals("runattr") ? run.getAttributes() : prefix.equals("itervar") ? run.getIterationVariables() : item.getAttributes();
+        return map.has_key(key) ? map.get(key) : null;
+    }
+
+    protected List<String> getGroupKey(ResultItem item) {
+        List<String> key = new ArrayList<>(groupBy.size());
+        for (String field : groupBy)
+            key.add(getFieldValue(item, field));
+        return key;
+    }
+
+    @Override
+    public void pickle(Object obj, OutputStream out, Pickler pickler) throws PickleException, IOException {
+        ResultFileManager resultManager = (ResultFileManager)obj;
+
+        Map<List<String>, Group> groups = new LinkedHashMap<>();
+        if (filterExpression != null && !filterExpression.trim().isEmpty()) {
+            if (resultType == ResultFileManager.SCALAR)
+                aggregateScalars(resultManager, groups);
+            else
+                aggregateVectors(resultManager, groups);
+        }
+
+        if (ResultPicklingUtils.debug)
+            Debug.println("pickling " + groups.size() + " aggregated groups");
+
+        out.write(Opcodes.MARK);
+        for (Map.Entry<List<String>, Group> entry : groups.entrySet()) {
+            out.write(Opcodes.MARK);
+            {
+                for (String value : entry.getKey())
+                    pickler.save(value);
+                Group group = entry.getValue();
+                if (timeBucket <= 0) {
+                    for (String aggregate : aggregates)
+                        pickler.save(group.total.get(aggregate));
+                }
+                else
+                    pickleBuckets(group, out);
+            }
+            out.write(Opcodes.TUPLE);
+        }
+        out.write(Opcodes.LIST);
+    }
+
+    protected void aggregateScalars(ResultFileManager resultManager, Map<List<String>, Group> groups) {
+        IDList scalars = ResultQueryCache.filterIDList(resultManager, "scalar", () -> resultManager.getAllScalars(false, false), filterExpression, interruptedFlag);
+
+        for (int i = 0; i < scalars.size(); ++i) {
+            ScalarResult scalar = resultManager.getScalar(scalars.get(i));
+            groups.computeIfAbsent(getGroupKey(scalar), (k) -> new Group()).add(0, scalar.getValue());
+            if (i % 100 == 0 && interruptedFlag.getFlag())
+                throw new RuntimeException("Result aggregation interrupted");
+        }
+    }
+
+    protected void aggregateVectors(ResultFileManager resultManager, Map<List<String>, Group> groups) {
+        IDList vectors = ResultQueryCache.filterIDList(resultManager, "vector", () -> resultManager.getAllVectors(), filterExpression, interruptedFlag);
+
+        // the data is loaded in batches, so only a few vectors are in memory at a time;
+        // their values are copied into a reusable buffer in bulk, instead of one JNI call per value
+        ByteBuffer xBuffer = null, yBuffer = null;
+        for (int start = 0; start < vectors.size(); start += VECTOR_BATCH_SIZE) {
+            int end = Math.min(start + VECTOR_BATCH_SIZE, vectors.size());
+            IDList batch = new IDList();
+            for (int i = start; i < end; ++i)
+                batch.add(vectors.get(i));
+
+            XYArrayVector data = VectorDataLoader.getDataOfVectors(resultManager, batch, simTimeStart, simTimeEnd, interruptedFlag);
+            try {
+                for (int i = 0; i < batch.size(); ++i) {
+                    Group group = groups.computeIfAbsent(getGroupKey(resultManager.getVector(batch.get(i))), (k) -> new Group());
+                    XYArray array = data.get(i);
+                    int length = array.length();
+                    if (length == 0)
+                        continue;
+                    if (xBuffer == null || xBuffer.capacity() < 8L * length) {
+                        xBuffer = ByteBuffer.allocateDirect(8 * length);
+                        yBuffer = ByteBuffer.allocateDirect(8 * length);
+                    }
+                    ScaveEngine.copyXYArrayToBuffers(XYArray.getCPtr(array), xBuffer, 0, yBuffer, 0);
+                    group.addVector(xBuffer.asDoubleBuffer(), yBuffer.asDoubleBuffer(), length);
+                }
+            }
+            finally {
+                data.delete();
+            }
+            if (interruptedFlag.getFlag())
+                throw new RuntimeException("Result aggregation interrupted");
+        }
+        ScaveEngine.malloc_trim();
+    }
+
+    protected void pickleBuckets(Group group, OutputStream out) throws IOException {
+        int numBuckets = 0;
+        if (group.buckets != null) {
+            // trim the unused capacity at the end
+            numBuckets = group.buckets.length;
+            while (numBuckets > 0 && group.buckets[numBuckets - 1] == null)
+                numBuckets--;
+        }
+        int first = 0;
+        while (first < numBuckets && group.buckets[first] == null)
+            first++;
+
+        double[] times = new double[numBuckets - first];
+        for (int i = first; i < numBuckets; ++i)
+            times[i - first] = bucketOrigin + (group.firstBucket + i) * timeBucket;
+        ResultPicklingUtils.pickleDoubleArray(times, out);
+
+        Accumulator empty = new Accumulator();
+        for (String aggregate : aggregates) {
+            double[] values = new double[numBuckets - first];
+            for (int i = first; i < numBuckets; ++i) {
+                Accumulator bucket = group.buckets[i];
+                values[i - first] = (bucket != null ? bucket : empty).get(aggregate);
+            }
+            ResultPicklingUtils.pickleDoubleArray(values, out);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package org.omnetpp.scave.python;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.omnetpp.common.Debug;
+import org.omnetpp.scave.engine.ResultFileManager;
+import org.omnetpp.scave.engineext.ResultFileManagerEx;
+
+import net.razorvine.pickle.PickleException;
+
+/**
+ * Shares the results of queries among the chart scripts run as one batch
+ * (e.g. when exporting charts), so that each distinct query is run and
+ * pickled only once, no matter how many charts make it. If several scripts
+ * make the same query at the same time, one of them produces it, and the
+ * others wait for it.
+ *
+ * Unlike ResultQueryCache, this also works for pickles that refer to shared
+ * memory objects (i.e. vector data): those objects are owned by the cache
+ * entry, so the Python processes that read them cannot release them. An entry
+ * is pinned while any of its users (the ResultsProvider of a script) is alive,
+ * see unpinAll(). If the total size of the entries (pickles and shared memory)
+ * exceeds the byte budget, the least recently used unpinned entries are
+ * evicted. dispose() frees all entries.
+ *
+ * If a pickle exceeds the size limit of ResultPicklingUtils, that is also
+ * remembered, so that the other users of the same query get the
+ * PickleSizeLimitExceededException at once (and can stream the results
+ * instead), without pickling them again.
+ *
+ * The cache is a snapshot of the results: if the contents of the
+ * ResultFileManager change meanwhile, queries fail. This can only be detected
+ * with ResultFileManagerEx (see canDetectChanges()); otherwise the caller must
+ * hold the read lock of the ResultFileManager while the batch is running.
+ */
+public class BatchResultsCache {
+
+    public static boolean debug = ResultQueryCache.debug;
+
+    public static final long DEFAULT_BYTE_BUDGET = 1024L * 1024 * 1024;
+
+    /**
+     * Produces a pickle. Shared memory objects must be created with the given
+     * owner (see ResultPicklingUtils.pickleResultsUsing()).
+     */
+    public interface PickleProducer {
+        byte[] produce(Object sharedMemoryOwner) throws PickleException, IOException;
+    }
+
+    private static class Entry {
+        final String key;
+        FutureTask<byte[]> task;
+        long size; // pickle and shared memory bytes; set when done
+        int numPins = 0;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return "BatchResultsCache entry " + key.replace('\0', ' ');
+        }
+    }
+
+    private ResultFileManager manager;
+    private long changeSerial; // -1 if changes cannot be detected
+    private long byteBudget = DEFAULT_BYTE_BUDGET;
+    private long totalSize = 0;
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private Map<Object, List<Entry>> pinsByUser = new IdentityHashMap<>();
+    private boolean disposed = false;
+
+    // metrics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public BatchResultsCache(ResultFileManager manager) {
+        this.manager = manager;
+        this.changeSerial = manager instanceof ResultFileManagerEx ? ((ResultFileManagerEx)manager).getChangeSerial() : -1;
+    }
+
+    /**
+     * Returns true if changes of the contents of the ResultFileManager are
+     * detected, so the read lock does not need to be held while the batch is
+     * running (only while the queries are being run, which the picklers do).
+     */
+    public boolean canDetectChanges() {
+        return changeSerial != -1;
+    }
+
+    public synchronized void setByteBudget(long bytes) {
+        byteBudget = bytes;
+        evict();
+    }
+
+    /**
+     * Returns the pickle from the cache, or produces it and caches it. The key
+     * parts should identify the query (method and all its arguments). The entry
+     * is pinned for the given user until unpinAll() is called for it.
+     */
+    public byte[] getPickle(Object user, PickleProducer producer, Object... keyParts) throws PickleException, IOException {
+        String key = makeKey(keyParts);
+        while (true) {
+            checkUnchanged();
+
+            Entry entry;
+            boolean produceHere = false;
+            synchronized (this) {
+                if (disposed)
+                    throw new IllegalStateException("Results cache already disposed");
+                entry = entries.get(key);
+                if (entry == null) {
+                    Entry newEntry = entry = new Entry(key);
+                    entry.task = new FutureTask<>(() -> producer.produce(newEntry));
+                    entries.put(key, entry);
+                    produceHere = true;
+                    misses++;
+                }
+                else
+                    hits++;
+                entry.numPins++;
+                pinsByUser.computeIfAbsent(user, (u) -> new ArrayList<>()).add(entry);
+            }
+
+            if (produceHere) {
+                entry.task.run();
+                entryDone(entry);
+            }
+
+            try {
+                return entry.task.get();
+            }
+            catch (ExecutionException e) {
+                // not cached (unless too large, see entryDone()); if it failed for
+                // another user (e.g. its script was canceled), try again
+                if (produceHere || e.getCause() instanceof ResultPicklingUtils.PickleSizeLimitExceededException)
+                    throw unwrap(e.getCause());
+                synchronized (this) {
+                    if (entries.get(key) == entry)
+                        entries.remove(key);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for results", e);
+            }
+        }
+    }
+
+    /**
+     * Unpins the entries pinned for the given user, so they can be evicted.
+     * To be called when the user no longer needs them.
+     */
+    public synchronized void unpinAll(Object user) {
+        List<Entry> pinned = pinsByUser.remove(user);
+        if (pinned != null) {
+            for (Entry entry : pinned)
+                entry.numPins--;
+            evict();
+        }
+    }
+
+    /**
+     * Frees all entries, including their shared memory objects.
+     */
+    public synchronized void dispose() {
+        if (debug)
+            Debug.println("BatchResultsCache disposed: " + this);
+        disposed = true;
+        for (Entry entry : entries.values())
+            SharedMemoryRegistry.getInstance().releaseAll(entry);
+        entries.clear();
+        pinsByUser.clear();
+        totalSize = 0;
+    }
+
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "entries: " + entries.size() + ", bytes: " + totalSize + "/" + byteBudget + ", hits: " + hits + ", misses: " + misses + ", evictions: " + evictions;
+    }
+
+    protected void checkUnchanged() {
+        if (changeSerial != -1 && ((ResultFileManagerEx)manager).getChangeSerial() != changeSerial)
+            throw new IllegalStateException("The loaded results have changed since the start of the batch");
+    }
+
+    protected String makeKey(Object... keyParts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : keyParts)
+            key.append(part).append('\0');
+        return key.toString();
+    }
+
+    private synchronized void entryDone(Entry entry) {
+        if (disposed || entries.get(entry.key) != entry) {
+            SharedMemoryRegistry.getInstance().releaseAll(entry);
+            return;
+        }
+        try {
+            entry.size = 64 + entry.task.get().length + SharedMemoryRegistry.getInstance().getBytesOwnedBy(entry);
+            totalSize += entry.size;
+            evict();
+        }
+        catch (ExecutionException e) {
+            SharedMemoryRegistry.getInstance().releaseAll(entry);
+            if (e.getCause() instanceof ResultPicklingUtils.PickleSizeLimitExceededException) {
+                // keep the failed entry, as it would fail the same way for the next user
+                entry.size = 64;
+                totalSize += entry.size;
+            }
+            else
+                entries.remove(entry.key); // not cached, so it is run again by the next user
+        }
+        catch (InterruptedException e) {
+            entries.remove(entry.key);
+            SharedMemoryRegistry.getInstance().releaseAll(entry);
+        }
+        if (debug)
+            Debug.println("BatchResultsCache: " + this);
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalSize > byteBudget && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.numPins == 0 && entry.task.isDone()) {
+                it.remove();
+                totalSize -= entry.size;
+                SharedMemoryRegistry.getInstance().releaseAll(entry);
+                evictions++;
+            }
+        }
+    }
+
+    private static IOException unwrap(Throwable e) {
+        if (e instanceof IOException)
+            return (IOException)e;
+        if (e instanceof RuntimeException) // incl. PickleException
+            throw (RuntimeException)e;
+        if (e instanceof Error)
+            throw (Error)e;
+        return new IOException(e);
+    }
+}
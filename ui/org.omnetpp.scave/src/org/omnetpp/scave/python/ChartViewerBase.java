@@ -4,6 +4,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.swt.widgets.Control;
 import org.omnetpp.scave.editors.ChartProvider;
 import org.omnetpp.scave.editors.ResultsProvider;
@@ -27,6 +28,7 @@ public abstract class ChartViewerBase {
     protected List<IStateChangeListener> stateChangeListeners = new ArrayList<IStateChangeListener>();
 
     private ChartProvider chartProvider;
+    private Runnable deathListener;
 
     public ChartViewerBase(Chart chart, PythonProcessPool processPool, ResultFileManager rfm) {
         this.processPool = processPool;
@@ -63,20 +65,54 @@ public abstract class ChartViewerBase {
         for (MatplotlibChartViewer.IStateChangeListener l : stateChangeListeners)
             l.pythonProcessLivenessChanged(true);
 
-        proc.outputMonitoringThread.addDeathListener(() -> {
-            for (MatplotlibChartViewer.IStateChangeListener l : stateChangeListeners)
-                l.pythonProcessLivenessChanged(false);
-        });
-
         for (IOutputListener l : outputListeners) {
             proc.outputMonitoringThread.addOutputListener(l);
             proc.errorMonitoringThread.addOutputListener(l);
         }
 
-        proc.getEntryPoint().setResultsProvider(new ResultsProvider(rfm, proc.getInterruptedFlag()));
+        ResultsProvider resultsProvider = new ResultsProvider(rfm, proc.getInterruptedFlag());
+        resultsProvider.setProgressMonitor(createResultsProgressMonitor());
+        PythonProcess p = proc;
+        resultsProvider.setConsumerAliveCheck(() -> p.isAlive());
+
+        deathListener = () -> {
+            for (MatplotlibChartViewer.IStateChangeListener l : stateChangeListeners)
+                l.pythonProcessLivenessChanged(false);
+            resultsProvider.dispose();
+        };
+        proc.outputMonitoringThread.addDeathListener(deathListener);
+
+        proc.getEntryPoint().setResultsProvider(resultsProvider);
         proc.getEntryPoint().setChartProvider(chartProvider = new ChartProvider(chart));
     }
 
+    /**
+     * Gives the Python process back to the pool for running other charts, for
+     * when the chart no longer needs it after the script has finished. This
+     * viewer will have no process afterwards.
+     */
+    protected void releasePythonProcess() {
+        if (proc == null)
+            return;
+        PythonProcess p = proc;
+        proc = null;
+        for (IOutputListener l : outputListeners) {
+            p.outputMonitoringThread.removeOutputListener(l);
+            p.errorMonitoringThread.removeOutputListener(l);
+        }
+        p.outputMonitoringThread.removeDeathListener(deathListener);
+        deathListener.run(); // the process is gone as far as we are concerned
+        processPool.releaseProcess(p);
+    }
+
+    /**
+     * Returns the monitor the loading of results for the chart script should
+     * report progress to, or null. It is used from a background thread.
+     */
+    protected IProgressMonitor createResultsProgressMonitor() {
+        return null;
+    }
+
     protected void changePythonIntoDirectory(File workingDir) {
         proc.getEntryPoint().execute("import os; os.chdir(r\"\"\"" + workingDir.getAbsolutePath() + "\"\"\"); del os;");
         proc.getEntryPoint().execute("import site; site.addsitedir(r\"\"\"" + workingDir.getAbsolutePath() + "\"\"\"); del site;");
@@ -0,0 +1,349 @@
+package org.omnetpp.scave.python;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.omnetpp.common.Debug;
+import org.omnetpp.scave.engine.Histogram;
+import org.omnetpp.scave.engine.HistogramResult;
+import org.omnetpp.scave.engine.IDList;
+import org.omnetpp.scave.engine.InterruptedFlag;
+import org.omnetpp.scave.engine.ResultFileManager;
+import org.omnetpp.scave.engine.ResultItem;
+import org.omnetpp.scave.engine.Statistics;
+import org.omnetpp.scave.engine.StringMap;
+import org.omnetpp.scave.engine.StringVector;
+
+import net.razorvine.pickle.IObjectPickler;
+import net.razorvine.pickle.Opcodes;
+import net.razorvine.pickle.PickleException;
+import net.razorvine.pickle.Pickler;
+
+/**
+ * Pickles scalars, statistics or histograms (and optionally their attributes)
+ * column by column, instead of one tuple per result. Numeric columns are
+ * written into shared memory as big-endian arrays, like vector data. String
+ * columns are dictionary-encoded: each distinct string is pickled only once,
+ * in a list, and the rows are stored as an int32 code array in shared memory.
+ * Histogram bins are stored as a flattened array of all bin values plus an
+ * int64 array of offsets (one more than the number of rows).
+ *
+ * The result is a (columns, attrColumns) tuple, where both are lists of
+ * column tuples, and attrColumns is None if attributes were not requested:
+ * <pre>
+ *   (name, "f8"|"i8", shm)                 numeric column
+ *   (name, "category", codesShm, strings)  dictionary-encoded string column
+ *   (name, "array", offsetsShm, valuesShm)  variable-length double arrays
+ * </pre>
+ * where shm is a "name size" string as produced by ResultPicklingUtils.pickleSharedMemory().
+ */
+public class ColumnarResultsPickler implements IObjectPickler {
+
+    static class StringColumn {
+        String name;
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] data;
+        int size = 0;
+
+        StringColumn(String name, int capacity) {
+            this.name = name;
+            data = new int[Math.max(capacity, 1)];
+        }
+
+        void add(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = strings.size();
+                codes.put(value, code);
+                strings.add(value);
+            }
+            if (size == data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = code;
+        }
+
+        void pickle(Pickler pickler, OutputStream out) throws PickleException, IOException {
+            out.write(Opcodes.MARK);
+            {
+                pickler.save(name);
+                pickler.save("category");
+                ResultPicklingUtils.pickleSharedMemory(size * 4L, (buffer) -> buffer.asIntBuffer().put(data, 0, size), out);
+                pickler.save(strings);
+            }
+            out.write(Opcodes.TUPLE);
+        }
+    }
+
+    static class DoubleColumn {
+        String name;
+        double[] data;
+        int size = 0;
+
+        DoubleColumn(String name, int capacity) {
+            this.name = name;
+            data = new double[Math.max(capacity, 1)];
+        }
+
+        void add(double value) {
+            if (size == data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = value;
+        }
+
+        void pickle(Pickler pickler, OutputStream out) throws PickleException, IOException {
+            out.write(Opcodes.MARK);
+            {
+                pickler.save(name);
+                pickler.save("f8");
+                ResultPicklingUtils.pickleSharedMemory(size * 8L, (buffer) -> buffer.asDoubleBuffer().put(data, 0, size), out);
+            }
+            out.write(Opcodes.TUPLE);
+        }
+    }
+
+    static class LongColumn {
+        String name;
+        long[] data;
+        int size = 0;
+
+        LongColumn(String name, int capacity) {
+            this.name = name;
+            data = new long[Math.max(capacity, 1)];
+        }
+
+        void add(long value) {
+            if (size == data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = value;
+        }
+
+        void pickle(Pickler pickler, OutputStream out) throws PickleException, IOException {
+            out.write(Opcodes.MARK);
+            {
+                pickler.save(name);
+                pickler.save("i8");
+                ResultPicklingUtils.pickleSharedMemory(size * 8L, (buffer) -> buffer.asLongBuffer().put(data, 0, size), out);
+            }
+            out.write(Opcodes.TUPLE);
+        }
+    }
+
+    static class ArrayColumn {
+        String name;
+        LongColumn offsets;
+        DoubleColumn values;
+
+        ArrayColumn(String name, int capacity) {
+            this.name = name;
+            offsets = new LongColumn(name, capacity + 1);
+            values = new DoubleColumn(name, capacity);
+            offsets.add(0);
+        }
+
+        void add(double[] array) {
+            for (double d : array)
+                values.add(d);
+            offsets.add(values.size);
+        }
+
+        void pickle(Pickler pickler, OutputStream out) throws PickleException, IOException {
+            out.write(Opcodes.MARK);
+            {
+                pickler.save(name);
+                pickler.save("array");
+                ResultPicklingUtils.pickleSharedMemory(offsets.size * 8L, (buffer) -> buffer.asLongBuffer().put(offsets.data, 0, offsets.size), out);
+                ResultPicklingUtils.pickleSharedMemory(values.size * 8L, (buffer) -> buffer.asDoubleBuffer().put(values.data, 0, values.size), out);
+            }
+            out.write(Opcodes.TUPLE);
+        }
+    }
+
+    String filterExpression;
+    int resultType;
+    boolean includeAttrs;
+    InterruptedFlag interruptedFlag;
+
+    /**
+     * The resultType is one of ResultFileManager.SCALAR, STATISTICS and HISTOGRAM.
+     */
+    public ColumnarResultsPickler(String filterExpression, int resultType, boolean includeAttrs, InterruptedFlag interruptedFlag) {
+        if (resultType != ResultFileManager.SCALAR && resultType != ResultFileManager.STATISTICS && resultType != ResultFileManager.HISTOGRAM)
+            throw new IllegalArgumentException("Unsupported result type for columnar pickling: " + resultType);
+        this.filterExpression = filterExpression;
+        this.resultType = resultType;
+        this.includeAttrs = includeAttrs;
+        this.interruptedFlag = interruptedFlag;
+    }
+
+    /**
+     * Maps the row type names used in the Python API to result types.
+     */
+    public static int getResultType(String rowType) {
+        switch (rowType) {
+            case "scalar": return ResultFileManager.SCALAR;
+            case "statistic": return ResultFileManager.STATISTICS;
+            case "histogram": return ResultFileManager.HISTOGRAM;
+            default: throw new IllegalArgumentException("Unsupported row type for columnar pickling: " + rowType);
+        }
+    }
+
+    protected IDList getResults(ResultFileManager resultManager) {
+        if (resultType == ResultFileManager.SCALAR)
+            return ResultQueryCache.filterIDList(resultManager, "scalar", () -> resultManager.getAllScalars(false, false), filterExpression, interruptedFlag);
+        else if (resultType == ResultFileManager.STATISTICS)
+            return ResultQueryCache.filterIDList(resultManager, "statistic", () -> resultManager.getAllStatistics(), filterExpression, interruptedFlag);
+        else
+            return ResultQueryCache.filterIDList(resultManager, "histogram", () -> resultManager.getAllHistograms(), filterExpression, interruptedFlag);
+    }
+
+    protected void pickleResults(ResultFileManager resultManager, IDList results, Pickler pickler, OutputStream out) throws PickleException, IOException {
+        int n = results.size();
+        StringColumn runs = new StringColumn("runID", n);
+        StringColumn modules = new StringColumn("module", n);
+        StringColumn names = new StringColumn("name", n);
+        DoubleColumn values = null;
+        LongColumn counts = null;
+        DoubleColumn sumWeights = null, means = null, stddevs = null, mins = null, maxs = null;
+        DoubleColumn underflows = null, overflows = null;
+        ArrayColumn binEdges = null, binValues = null;
+
+        if (resultType == ResultFileManager.SCALAR)
+            values = new DoubleColumn("value", n);
+        else {
+            counts = new LongColumn("count", n);
+            sumWeights = new DoubleColumn("sumweights", n);
+            means = new DoubleColumn("mean", n);
+            stddevs = new DoubleColumn("stddev", n);
+            mins = new DoubleColumn("min", n);
+            maxs = new DoubleColumn("max", n);
+            if (resultType == ResultFileManager.HISTOGRAM) {
+                underflows = new DoubleColumn("underflows", n);
+                overflows = new DoubleColumn("overflows", n);
+                binEdges = new ArrayColumn("binedges", n);
+                binValues = new ArrayColumn("binvalues", n);
+            }
+        }
+
+        for (int i = 0; i < n; ++i) {
+            long id = results.get(i);
+            ResultItem result = resultManager.getItem(id);
+            runs.add(result.getRun().getRunName());
+            modules.add(result.getModuleName());
+            names.add(result.getName());
+
+            if (resultType == ResultFileManager.SCALAR)
+                values.add(resultManager.getScalar(id).getValue());
+            else {
+                HistogramResult histResult = resultType == ResultFileManager.HISTOGRAM ? resultManager.getHistogram(id) : null;
+                Statistics stats = histResult != null ? histResult.getStatistics() : resultManager.getStatistics(id).getStatistics();
+                counts.add(stats.getCount());
+                sumWeights.add(stats.getSumWeights());
+                means.add(stats.getMean());
+                stddevs.add(stats.getStddev());
+                mins.add(stats.getMin());
+                maxs.add(stats.getMax());
+                if (histResult != null) {
+                    Histogram hist = histResult.getHistogram();
+                    underflows.add(hist.getUnderflows());
+                    overflows.add(hist.getOverflows());
+                    binEdges.add(hist.getBinEdges().toArray());
+                    binValues.add(hist.getBinValues().toArray());
+                }
+            }
+
+            if (i % 100 == 0 && interruptedFlag.getFlag())
+                throw new RuntimeException("Result pickling interrupted");
+        }
+
+        out.write(Opcodes.MARK);
+        {
+            runs.pickle(pickler, out);
+            modules.pickle(pickler, out);
+            names.pickle(pickler, out);
+            if (resultType == ResultFileManager.SCALAR)
+                values.pickle(pickler, out);
+            else {
+                counts.pickle(pickler, out);
+                sumWeights.pickle(pickler, out);
+                means.pickle(pickler, out);
+                stddevs.pickle(pickler, out);
+                mins.pickle(pickler, out);
+                maxs.pickle(pickler, out);
+                if (resultType == ResultFileManager.HISTOGRAM) {
+                    underflows.pickle(pickler, out);
+                    overflows.pickle(pickler, out);
+                    binEdges.pickle(pickler, out);
+                    binValues.pickle(pickler, out);
+                }
+            }
+        }
+        out.write(Opcodes.LIST);
+    }
+
+    protected void pickleResultAttrs(ResultFileManager resultManager, IDList results, Pickler pickler, OutputStream out) throws PickleException, IOException {
+        int n = results.size();
+        StringColumn runs = new StringColumn("runID", n);
+        StringColumn modules = new StringColumn("module", n);
+        StringColumn names = new StringColumn("name", n);
+        StringColumn attrNames = new StringColumn("attrname", n);
+        StringColumn attrValues = new StringColumn("attrvalue", n);
+
+        for (int i = 0; i < n; ++i) {
+            ResultItem result = resultManager.getItem(results.get(i));
+            StringMap attrs = result.getAttributes();
+            StringVector attrKeys = attrs.keys();
+            for (int j = 0; j < attrKeys.size(); ++j) {
+                String key = attrKeys.get(j);
+                runs.add(result.getRun().getRunName());
+                modules.add(result.getModuleName());
+                names.add(result.getName());
+                attrNames.add(key);
+                attrValues.add(attrs.get(key));
+            }
+
+            if (i % 100 == 0 && interruptedFlag.getFlag())
+                throw new RuntimeException("Result attribute pickling interrupted");
+        }
+
+        out.write(Opcodes.MARK);
+        {
+            runs.pickle(pickler, out);
+            modules.pickle(pickler, out);
+            names.pickle(pickler, out);
+            attrNames.pickle(pickler, out);
+            attrValues.pickle(pickler, out);
+        }
+        out.write(Opcodes.LIST);
+    }
+
+    @Override
+    public void pickle(Object obj, OutputStream out, Pickler pickler) throws PickleException, IOException {
+        ResultFileManager resultManager = (ResultFileManager)obj;
+
+        IDList results = null;
+        if (filterExpression != null && !filterExpression.trim().isEmpty())
+            results = getResults(resultManager);
+        else
+            results = new IDList();
+
+        if (ResultPicklingUtils.debug)
+            Debug.println("pickling " + results.size() + " results in columns");
+
+        out.write(Opcodes.MARK);
+        {
+            pickleResults(resultManager, results, pickler, out);
+
+            if (includeAttrs && !results.isEmpty())
+                pickleResultAttrs(resultManager, results, pickler, out);
+            else
+                out.write(Opcodes.NONE);
+        }
+        out.write(Opcodes.TUPLE);
+    }
+}
@@ -329,8 +329,7 @@ public class CsvResultsPickler implements IObjectPickler {
         // TODO: omitUnusedColumns is currently ignored here, dropping them is done in Python.
         out.write(Opcodes.MARK);
         if (filterExpression != null && !filterExpression.trim().isEmpty()) {
-            IDList results = resultManager.getAllItems(false, false);
-            results = resultManager.filterIDList(results, filterExpression, -1, interruptedFlag);
+            IDList results = ResultQueryCache.filterIDList(resultManager, "item", () -> resultManager.getAllItems(false, false), filterExpression, interruptedFlag);
 
             if (ResultPicklingUtils.debug)
                 Debug.println("pickling " + results.size() + " items");
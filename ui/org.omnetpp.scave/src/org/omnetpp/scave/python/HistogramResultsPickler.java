@@ -65,8 +65,7 @@ public class HistogramResultsPickler implements IObjectPickler {
 
             out.write(Opcodes.MARK);
             if (filterExpression != null && !filterExpression.trim().isEmpty()) {
-                histograms = resultManager.getAllHistograms();
-                histograms = resultManager.filterIDList(histograms, filterExpression, -1, interruptedFlag);
+                histograms = ResultQueryCache.filterIDList(resultManager, "histogram", () -> resultManager.getAllHistograms(), filterExpression, interruptedFlag);
 
                 if (ResultPicklingUtils.debug)
                     Debug.println("pickling " + histograms.size() + " histograms");
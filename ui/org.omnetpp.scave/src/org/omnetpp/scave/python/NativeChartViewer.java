@@ -6,7 +6,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
@@ -19,6 +22,7 @@ import org.omnetpp.scave.charting.LinePlot;
 import org.omnetpp.scave.charting.PlotBase;
 import org.omnetpp.scave.engine.ResultFileManager;
 import org.omnetpp.scave.model.Chart;
+import org.omnetpp.scave.model.Chart.ChartType;
 import org.omnetpp.scave.pychart.INativeChartPlotter;
 import org.omnetpp.scave.pychart.PythonCallerThread.ExceptionHandler;
 import org.omnetpp.scave.pychart.PythonProcessPool;
@@ -35,8 +39,9 @@ public class NativeChartViewer extends ChartViewerBase {
 
     class ChartPlotter implements INativeChartPlotter {
         GroupsSeriesDataset scalarDataset = new GroupsSeriesDataset(null);
-        XYDataset xyDataset = new XYDataset(null);
+        volatile XYDataset xyDataset = new XYDataset(null);
         HistogramDataset histogramDataset = new HistogramDataset(null);
+        AtomicBoolean partialRefreshPending = new AtomicBoolean();
 
 
         @Override
@@ -59,6 +64,24 @@ public class NativeChartViewer extends ChartViewerBase {
                     for (String propKey : props.keySet())
                         plot.setProperty(propKey + "/" + lineKey, props.get(propKey));
             });
+
+            showPartialDataset();
+        }
+
+        /**
+         * Displays the lines received so far, while the script is still running
+         * (e.g. loading and plotting more data). Refreshes are coalesced: at most
+         * one is pending at any time.
+         */
+        protected void showPartialDataset() {
+            if (chart.getType() != ChartType.LINE || !partialRefreshPending.compareAndSet(false, true))
+                return;
+            XYDataset dataset = xyDataset;
+            Display.getDefault().asyncExec(() -> {
+                partialRefreshPending.set(false);
+                if (!plot.isDisposed() && dataset == xyDataset)
+                    plot.setDataset(dataset);
+            });
         }
 
         @Override
@@ -140,6 +163,53 @@ public class NativeChartViewer extends ChartViewerBase {
         }
     }
 
+    /**
+     * Shows the progress of loading vector data in the status text of the plot,
+     * which is displayed until the first lines arrive.
+     */
+    class LoadingProgressMonitor extends NullProgressMonitor {
+        private String taskName = "Loading results";
+        private int totalWork;
+        private int worked;
+        private int lastPercent = -1;
+
+        @Override
+        public void beginTask(String name, int totalWork) {
+            if (name != null && !name.isEmpty())
+                taskName = name;
+            this.totalWork = totalWork;
+            worked = 0;
+            lastPercent = -1;
+            update();
+        }
+
+        @Override
+        public void worked(int work) {
+            worked += work;
+            update();
+        }
+
+        @Override
+        public void done() {
+            Display.getDefault().asyncExec(() -> {
+                if (!plot.isDisposed())
+                    plot.setStatusText("Running Python script...");
+            });
+        }
+
+        private void update() {
+            int percent = totalWork <= 0 ? 0 : (int)(100L * Math.min(worked, totalWork) / totalWork);
+            if (percent == lastPercent)
+                return;
+            lastPercent = percent;
+            String text = taskName + "... " + percent + "%";
+            Display.getDefault().asyncExec(() -> {
+                if (!plot.isDisposed())
+                    plot.setStatusText(text);
+            });
+        }
+    }
+
     public NativeChartViewer(Composite parent, Chart chart, PythonProcessPool pool, ResultFileManager rfm) {
         super(chart, pool, rfm);
 
@@ -159,6 +229,11 @@ public class NativeChartViewer extends ChartViewerBase {
         }
     }
 
+    @Override
+    protected IProgressMonitor createResultsProgressMonitor() {
+        return new LoadingProgressMonitor();
+    }
+
     public void runPythonScript(String script, File workingDir, Runnable runAfterDone, ExceptionHandler runAfterError) {
         if (plot.isDisposed())
             return;
@@ -227,7 +302,7 @@ public class NativeChartViewer extends ChartViewerBase {
                     plot.scrollVerticalTo(vt);
                 }
 
-                killPythonProcess();
+                releasePythonProcess();
             });
         };
 
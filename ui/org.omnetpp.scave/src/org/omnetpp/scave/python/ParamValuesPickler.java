@@ -51,8 +51,7 @@ public class ParamValuesPickler implements IObjectPickler {
 
             out.write(Opcodes.MARK);
             if (filterExpression != null && !filterExpression.trim().isEmpty()) {
-                params = resultManager.getAllParameters();
-                params = resultManager.filterIDList(params, filterExpression, -1, interruptedFlag);
+                params = ResultQueryCache.filterIDList(resultManager, "parameter", () -> resultManager.getAllParameters(), filterExpression, interruptedFlag);
 
                 if (ResultPicklingUtils.debug)
                     Debug.println("pickling " + params.size() + " param values");
@@ -4,12 +4,18 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import org.omnetpp.common.Debug;
 import org.omnetpp.common.engine.ILock;
+import org.omnetpp.scave.engine.InterruptedFlag;
 import org.omnetpp.scave.engine.ResultFileManager;
 import org.omnetpp.scave.engine.ScaveEngine;
 import org.omnetpp.scave.engine.XYArray;
+import org.omnetpp.scave.engine.XYArrayVector;
 
 import net.razorvine.pickle.IObjectPickler;
 import net.razorvine.pickle.Opcodes;
@@ -21,6 +27,27 @@ public class ResultPicklingUtils {
 
     public static boolean debug = Debug.isChannelEnabled("pickling");
 
+    /**
+     * Thrown by pickleResultsUsing() if the pickle would be too large to be
+     * sent to the Python process in one piece; streaming may still work.
+     */
+    public static class PickleSizeLimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public PickleSizeLimitExceededException() {
+            super("Pickle size limit exceeded.");
+        }
+    }
+
+    /**
+     * A results pickler that writes a sequence of separate pickles instead of a
+     * single one, so that the Python side can unpickle and use each of them as
+     * soon as it arrives, by calling pickle.load() repeatedly on the stream.
+     */
+    public interface IPickleSequenceWriter {
+        void writePickles(ResultFileManager resultManager, OutputStream out) throws PickleException, IOException;
+    }
+
     public static double[] bytesToDoubles(byte[] bytes) {
         ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
         double[] doubles = new double[bytes.length / 8];
@@ -34,19 +61,25 @@ public class ResultPicklingUtils {
         return byteBuffer.array();
     }
 
-    static int shmSerial = 0;
+    // the owner of the shared memory objects created by the current thread, see SharedMemoryRegistry
+    static ThreadLocal<Object> sharedMemoryOwner = new ThreadLocal<>();
 
-    private static void writeString(String s, OutputStream out) throws IOException {
+    static void writeString(String s, OutputStream out) throws IOException {
         byte[] encodedX = s.getBytes("UTF-8");
         out.write(Opcodes.BINUNICODE);
         out.write(PickleUtils.integer_to_bytes(encodedX.length));
         out.write(encodedX);
     }
 
+    /**
+     * Copies the data of the array into one shared memory object, and pickles
+     * the descriptors of the x and y values in it, in the same format as
+     * copyXYArraysToSharedMemory() produces them.
+     */
     public static void pickleXYArray(XYArray array, OutputStream out) throws IOException {
         int l = array.length();
         // number of bytes
-        long s = l * 8;
+        long s = l * 8L;
 
         if (s == 0) {
             writeString("<EMPTY> 0", out);
@@ -54,35 +87,124 @@ public class ResultPicklingUtils {
             return;
         }
 
-        // The & 0xFFFF thingies are there to limit the length of the decimal numbers, because on macOS,
-        // the max SHM name length (SHM_NAME_MAX) is 31 - which is... quite a bit less than NAME_MAX (255).
-        // The fixed part is 15 characters, and both numbers should be limited to 5 characters, so we are well #under30
-        String nameX = "/vectordata-" + (System.nanoTime() & 0xFFFF) + "-" + (shmSerial & 0xFFFF) + "-x";
-        String nameY = "/vectordata-" + (System.nanoTime() & 0xFFFF) + "-" + (shmSerial & 0xFFFF) + "-y";
-        shmSerial += 1;
+        // actual data, copied in one native call
+        String name = createSharedMemory(2 * s, (buffer) -> ScaveEngine.copyXYArrayToBuffers(XYArray.getCPtr(array), buffer, 0, buffer, s));
 
-        // X
-        writeString(nameX + " " + s, out);
-        ScaveEngine.createSharedMemory(nameX, s);
+        writeString(name + " " + 2 * s + " 0 " + l, out);
+        writeString(name + " " + 2 * s + " " + s + " " + l, out);
+    }
 
-        ByteBuffer shmX = ScaveEngine.mapSharedMemory(nameX, s);
+    // vector data is packed into shared memory objects of about this size
+    public static long XYARRAY_SEGMENT_SIZE = 256L * 1024 * 1024;
 
-        // actual data
-        for (int i = 0; i < l; ++i)
-            shmX.putDouble(array.getX(i));
+    /**
+     * Copies the data of all the given arrays into shared memory, packing the
+     * x and y values of many arrays into one shared memory object (of at most
+     * XYARRAY_SEGMENT_SIZE bytes, unless a single array is larger). Arrays are
+     * copied in parallel, with one native call each. Returns the descriptors of
+     * the x and y values of each array, as "name size offset length" strings,
+     * where offset is in bytes, and length is the number of values; or
+     * "<EMPTY> 0" for empty arrays. The Python side maps each shared memory
+     * object only once, and releases it when all arrays in it are gone.
+     */
+    public static String[][] copyXYArraysToSharedMemory(XYArrayVector arrays, InterruptedFlag interruptedFlag) {
+        int n = (int)arrays.size();
+        String[][] descriptors = new String[n][];
+        List<String> segmentNames = new ArrayList<>();
 
-        ScaveEngine.unmapSharedMemory(shmX);
-        // Y
-        writeString(nameY + " " + s, out);
+        int first = 0;
+        while (first < n) {
+            // find the arrays that go into the next segment, and their offsets in it
+            long[] offsets = new long[n - first];
+            long segmentSize = 0;
+            int last = first;
+            while (last < n) {
+                long arraySize = 16L * arrays.get(last).length();
+                if (segmentSize > 0 && segmentSize + arraySize > XYARRAY_SEGMENT_SIZE)
+                    break;
+                offsets[last - first] = segmentSize;
+                segmentSize += arraySize;
+                last++;
+            }
 
-        ScaveEngine.createSharedMemory(nameY, s);
-        ByteBuffer shmY = ScaveEngine.mapSharedMemory(nameY, s);
+            if (segmentSize == 0) {
+                for (int i = first; i < last; i++)
+                    descriptors[i] = new String[] { "<EMPTY> 0", "<EMPTY> 0" };
+            }
+            else {
+                int from = first, to = last;
+                String name = createSharedMemory(segmentSize, (buffer) -> {
+                    IntStream.range(from, to).parallel().forEach((i) -> {
+                        if (interruptedFlag.getFlag())
+                            return;
+                        XYArray array = arrays.get(i);
+                        long xOffset = offsets[i - from];
+                        long yOffset = xOffset + 8L * array.length();
+                        ScaveEngine.copyXYArrayToBuffers(XYArray.getCPtr(array), buffer, xOffset, buffer, yOffset);
+                    });
+                });
+                segmentNames.add(name);
 
-        // actual data
-        for (int i = 0; i < l; ++i)
-            shmY.putDouble(array.getY(i));
+                for (int i = from; i < to; i++) {
+                    int length = arrays.get(i).length();
+                    long xOffset = offsets[i - from];
+                    long yOffset = xOffset + 8L * length;
+                    String prefix = name + " " + segmentSize + " ";
+                    descriptors[i] = new String[] { prefix + xOffset + " " + length, prefix + yOffset + " " + length };
+                }
+            }
+
+            if (interruptedFlag.getFlag()) {
+                for (String name : segmentNames)
+                    SharedMemoryRegistry.getInstance().release(name);
+                throw new RuntimeException("Result pickling interrupted");
+            }
+            first = last;
+        }
 
-        ScaveEngine.unmapSharedMemory(shmY);
+        if (debug)
+            Debug.println("copied " + n + " vectors into " + segmentNames.size() + " shared memory objects");
+        return descriptors;
+    }
+
+    /**
+     * Allocates a shared memory object of (at least) the given size from the
+     * SharedMemoryRegistry, lets the filler write its contents, and returns its
+     * name. The object belongs to the owner set for the current thread (see
+     * pickleResultsUsing()), and the Python side releases it when done with it.
+     */
+    public static String createSharedMemory(long size, Consumer<ByteBuffer> filler) {
+        SharedMemoryRegistry registry = SharedMemoryRegistry.getInstance();
+        String name = registry.allocate(size, sharedMemoryOwner.get()).getName();
+        try {
+            ByteBuffer buffer = ScaveEngine.mapSharedMemory(name, size);
+            try {
+                filler.accept(buffer);
+            }
+            finally {
+                ScaveEngine.unmapSharedMemory(buffer);
+            }
+        }
+        catch (RuntimeException e) {
+            registry.release(name);
+            throw e;
+        }
+        return name;
+    }
+
+    /**
+     * Creates a shared memory object using createSharedMemory(), and pickles
+     * its name and size (as a "name size" string). Empty objects are not
+     * created, but pickled as "<EMPTY> 0".
+     */
+    public static void pickleSharedMemory(long size, Consumer<ByteBuffer> filler, OutputStream out) throws IOException {
+        if (size == 0) {
+            writeString("<EMPTY> 0", out);
+            return;
+        }
+
+        String name = createSharedMemory(size, filler);
+        writeString(name + " " + size, out);
     }
 
     public static void pickleDoubleArray(double[] array, OutputStream out) throws IOException {
@@ -99,11 +221,48 @@ public class ResultPicklingUtils {
         out.write(doublesToBytes(array));
     }
 
+    /**
+     * Returns a Pickler that pickles the ResultFileManager using the given results
+     * pickler. This is used instead of Pickler.registerCustomPickler(), because
+     * that would affect all Picklers, including those running in other threads.
+     */
+    public static Pickler createPickler(IObjectPickler resultsPickler) {
+        return new Pickler(true) {
+            @Override
+            protected IObjectPickler getCustomPickler(Class<?> t) {
+                return t == ResultFileManager.class ? resultsPickler : super.getCustomPickler(t);
+            }
+        };
+    }
+
+    /**
+     * Writes the pickle of the results produced by the given results pickler
+     * into the stream, or the sequence of pickles if it is an IPickleSequenceWriter.
+     */
+    public static void dumpResults(ResultFileManager resultManager, IObjectPickler resultsPickler, OutputStream out) throws PickleException, IOException {
+        if (resultsPickler instanceof IPickleSequenceWriter)
+            ((IPickleSequenceWriter)resultsPickler).writePickles(resultManager, out);
+        else
+            createPickler(resultsPickler).dump(resultManager, out);
+    }
+
+    /**
+     * Pickles the results using the given pickler. Shared memory objects created
+     * meanwhile are owned by the given owner in SharedMemoryRegistry (may be null).
+     */
+    public static byte[] pickleResultsUsing(ResultFileManager resultManager, IObjectPickler resultsPickler, Object sharedMemoryOwner) throws PickleException, IOException {
+        Object prevOwner = ResultPicklingUtils.sharedMemoryOwner.get();
+        ResultPicklingUtils.sharedMemoryOwner.set(sharedMemoryOwner);
+        try {
+            return pickleResultsUsing(resultManager, resultsPickler);
+        }
+        finally {
+            ResultPicklingUtils.sharedMemoryOwner.set(prevOwner);
+        }
+    }
+
     public static byte[] pickleResultsUsing(ResultFileManager resultManager, IObjectPickler resultsPickler) throws PickleException, IOException {
         return ResultFileManager.callWithReadLock(resultManager, () -> {
-            Pickler p = new Pickler(true);
-            Pickler.registerCustomPickler(ResultFileManager.class, resultsPickler);
-
             // We need to limit the size of the pickle, because:
             // Py4J will Base64 encode it (1.25x) into a UTF-16 String (x2), then
             // it will be sent to the Python process (x2), and depickled (+1), so overall,
@@ -115,7 +274,7 @@ public class ResultPicklingUtils {
 
                 protected void checkSizeLimit() {
                     if (buf.length > SIZE_LIMIT)
-                        throw new RuntimeException("Pickle size limit exceeded.");
+                        throw new PickleSizeLimitExceededException();
                 }
 
                 @Override
@@ -131,7 +290,7 @@ public class ResultPicklingUtils {
                 }
             };
 
-            p.dump(resultManager, bo);
+            dumpResults(resultManager, resultsPickler, bo);
             bo.flush();
 
             byte[] pickle = bo.toByteArray();
@@ -141,4 +300,31 @@ public class ResultPicklingUtils {
             return pickle;
         });
     }
+
+    /**
+     * Like pickleResultsUsing(), but the pickle is produced on a background
+     * thread, and transferred to the Python process in shared memory chunks
+     * while it is being produced, so its size is not limited.
+     */
+    public static SharedMemoryPickleStream streamResultsUsing(ResultFileManager resultManager, IObjectPickler resultsPickler, InterruptedFlag interruptedFlag, Object sharedMemoryOwner) {
+        SharedMemoryPickleStream stream = new SharedMemoryPickleStream(resultManager, resultsPickler, interruptedFlag, sharedMemoryOwner, SharedMemoryPickleStream.DEFAULT_CHUNK_SIZE);
+        stream.start();
+        return stream;
+    }
+
+    /**
+     * Hands over an already produced pickle to the Python process in chunks,
+     * the same way as streamResultsUsing() does. The chunks are owned by the
+     * given owner in SharedMemoryRegistry.
+     */
+    public static SharedMemoryPickleStream streamPickle(byte[] pickle, InterruptedFlag interruptedFlag, Object sharedMemoryOwner) {
+        SharedMemoryPickleStream stream = new SharedMemoryPickleStream(null, null, interruptedFlag, sharedMemoryOwner, SharedMemoryPickleStream.DEFAULT_CHUNK_SIZE) {
+            @Override
+            protected void writePickle(OutputStream out) throws IOException {
+                out.write(pickle);
+            }
+        };
+        stream.start();
+        return stream;
+    }
 }
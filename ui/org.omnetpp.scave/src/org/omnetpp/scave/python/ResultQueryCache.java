@@ -0,0 +1,212 @@
+package org.omnetpp.scave.python;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.omnetpp.common.Debug;
+import org.omnetpp.scave.engine.IDList;
+import org.omnetpp.scave.engine.InterruptedFlag;
+import org.omnetpp.scave.engine.ResultFileManager;
+import org.omnetpp.scave.engineext.ResultFileManagerEx;
+
+import net.razorvine.pickle.PickleException;
+
+/**
+ * An LRU cache of the results of queries made by chart scripts: filtered
+ * IDLists, and pickles that can be sent to the Python process more than once
+ * (i.e. ones not referring to shared memory objects). There is one cache per
+ * ResultFileManager, shared by all charts of the same Analysis.
+ *
+ * Keys include the change serial of the ResultFileManager, so entries from
+ * before loading or unloading files are never returned; invalidate() also
+ * drops them, to free the memory early. Caching only works with
+ * ResultFileManagerEx, as the plain ResultFileManager has no change serial.
+ *
+ * The total size of the entries is limited to a byte budget, the least
+ * recently used entries are evicted first. Entries larger than a quarter of
+ * the budget are not cached.
+ */
+public class ResultQueryCache {
+
+    public static boolean debug = Debug.isChannelEnabled("querycache");
+
+    private static long defaultByteBudget = 64L * 1024 * 1024;
+    private static Map<ResultFileManager, ResultQueryCache> instances = new IdentityHashMap<>();
+
+    public interface PickleProducer {
+        byte[] produce() throws PickleException, IOException;
+    }
+
+    private static class Entry {
+        Object value;  // IDList or byte[]
+        long size;
+
+        Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private ResultFileManagerEx manager;
+    private long byteBudget = defaultByteBudget;
+    private long totalSize = 0;
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // metrics
+    private long hits = 0;
+    private long misses = 0;
+
+    private ResultQueryCache(ResultFileManagerEx manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Returns the cache of the given ResultFileManager, or null if it cannot
+     * be cached (i.e. it is not a ResultFileManagerEx).
+     */
+    public static synchronized ResultQueryCache getInstance(ResultFileManager manager) {
+        if (!(manager instanceof ResultFileManagerEx) || defaultByteBudget <= 0)
+            return null;
+        ResultQueryCache cache = instances.get(manager);
+        if (cache == null) {
+            ResultFileManagerEx managerEx = (ResultFileManagerEx)manager;
+            instances.put(manager, cache = new ResultQueryCache(managerEx));
+            managerEx.addDisposeListener((m) -> {
+                synchronized (ResultQueryCache.class) {
+                    ResultQueryCache removed = instances.remove(m);
+                    if (removed != null)
+                        removed.invalidate();
+                }
+            });
+        }
+        return cache;
+    }
+
+    /**
+     * Drops the cached entries of the given ResultFileManager. To be called
+     * when its contents change (see ResultFileManagerChangeEvent).
+     */
+    public static synchronized void invalidate(ResultFileManager manager) {
+        ResultQueryCache cache = instances.get(manager);
+        if (cache != null)
+            cache.invalidate();
+    }
+
+    /**
+     * Filters the list returned by allItems, using the cache of the given
+     * ResultFileManager if there is one. See the filterIDList() instance method.
+     */
+    public static IDList filterIDList(ResultFileManager manager, String type, Supplier<IDList> allItems, String filterExpression, InterruptedFlag interruptedFlag) {
+        ResultQueryCache cache = getInstance(manager);
+        if (cache == null)
+            return manager.filterIDList(allItems.get(), filterExpression, -1, interruptedFlag);
+        return cache.filterIDList(type, allItems, filterExpression, interruptedFlag);
+    }
+
+    /**
+     * Sets the byte budget of caches created from now on; 0 disables caching.
+     */
+    public static synchronized void setDefaultByteBudget(long bytes) {
+        defaultByteBudget = bytes;
+    }
+
+    public synchronized void setByteBudget(long bytes) {
+        byteBudget = bytes;
+        evict();
+    }
+
+    public synchronized void invalidate() {
+        entries.clear();
+        totalSize = 0;
+    }
+
+    /**
+     * Returns the filtered IDList from the cache, or computes it with
+     * filterIDList() from the list returned by allItems, and caches it.
+     * The type should identify the contents of allItems (e.g. "scalar").
+     * The returned IDList must not be modified.
+     */
+    public IDList filterIDList(String type, Supplier<IDList> allItems, String filterExpression, InterruptedFlag interruptedFlag) {
+        String key = makeKey("idlist", type, filterExpression);
+        IDList result = (IDList)get(key);
+        if (result == null) {
+            result = manager.filterIDList(allItems.get(), filterExpression, -1, interruptedFlag);
+            put(key, result, 64 + 8L * result.size());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the pickle from the cache, or produces it and caches it. The key
+     * parts should identify the query (method and all its arguments). Only
+     * for pickles that can be unpickled any number of times.
+     */
+    public byte[] getPickle(PickleProducer producer, Object... keyParts) throws PickleException, IOException {
+        String key = makeKey(keyParts);
+        byte[] pickle = (byte[])get(key);
+        if (pickle == null) {
+            pickle = producer.produce();
+            put(key, pickle, 64 + pickle.length);
+        }
+        return pickle;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "entries: " + entries.size() + ", bytes: " + totalSize + "/" + byteBudget + ", hits: " + hits + ", misses: " + misses;
+    }
+
+    protected String makeKey(Object... keyParts) {
+        StringBuilder key = new StringBuilder();
+        key.append(manager.getChangeSerial());
+        for (Object part : keyParts)
+            key.append('\0').append(part);
+        return key.toString();
+    }
+
+    protected synchronized Object get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    protected synchronized void put(String key, Object value, long size) {
+        if (size > byteBudget / 4)
+            return;
+        Entry old = entries.put(key, new Entry(value, size));
+        if (old != null)
+            totalSize -= old.size;
+        totalSize += size;
+        evict();
+        if (debug)
+            Debug.println("ResultQueryCache: " + this);
+    }
+
+    protected void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalSize > byteBudget && it.hasNext()) {
+            totalSize -= it.next().size;
+            it.remove();
+        }
+    }
+}
@@ -51,8 +51,7 @@ public class ScalarResultsPickler implements IObjectPickler {
 
             out.write(Opcodes.MARK);
             if (filterExpression != null && !filterExpression.trim().isEmpty()) {
-                scalars = resultManager.getAllScalars(false, false);
-                scalars = resultManager.filterIDList(scalars, filterExpression, -1, interruptedFlag);
+                scalars = ResultQueryCache.filterIDList(resultManager, "scalar", () -> resultManager.getAllScalars(false, false), filterExpression, interruptedFlag);
 
                 if (ResultPicklingUtils.debug)
                     Debug.println("pickling " + scalars.size() + " scalars");
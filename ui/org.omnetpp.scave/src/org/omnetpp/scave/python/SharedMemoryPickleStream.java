@@ -0,0 +1,229 @@
+package org.omnetpp.scave.python;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.omnetpp.common.Debug;
+import org.omnetpp.scave.engine.InterruptedFlag;
+import org.omnetpp.scave.engine.ResultFileManager;
+import org.omnetpp.scave.pychart.IPickleStream;
+
+import net.razorvine.pickle.IObjectPickler;
+
+/**
+ * Produces a pickle on a background thread, and hands it over to the Python
+ * process in fixed-size chunks, each in a separate shared memory object
+ * (allocated from SharedMemoryRegistry, so they are reused across pickles).
+ * At most QUEUE_LENGTH chunks are waiting to be consumed; when the queue is
+ * full, pickling pauses until the Python side catches up. This way the memory
+ * used on the IDE side is bounded by the chunk size instead of the size of
+ * the pickle, so there is no need for a size limit.
+ *
+ * The results are read-locked while the pickle is being produced. So that a
+ * consumer that disappears without calling close() (e.g. a crashed Python
+ * process) does not keep the lock forever, pickling is also abandoned if the
+ * consumer alive check (see setConsumerAliveCheck()) fails.
+ */
+public class SharedMemoryPickleStream implements IPickleStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    protected static final int QUEUE_LENGTH = 2;
+
+    protected ResultFileManager resultManager;
+    protected IObjectPickler resultsPickler;
+    protected InterruptedFlag interruptedFlag;
+    protected Object sharedMemoryOwner;
+    protected int chunkSize;
+
+    protected BlockingQueue<String> chunks = new ArrayBlockingQueue<>(QUEUE_LENGTH);
+    protected volatile BooleanSupplier consumerAliveCheck = null;
+    protected volatile boolean closed = false;
+    protected volatile Throwable error = null;
+    protected volatile boolean done = false;  // set when the producer thread has finished
+    protected boolean finished = false;
+    protected long totalSize = 0;
+
+    /**
+     * Writes the pickle into shared memory objects of chunkSize bytes
+     * (the last one can be smaller), and publishes each when it is full.
+     */
+    protected class ChunkOutputStream extends OutputStream {
+        byte[] buffer = new byte[chunkSize];
+        int count = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length)
+                publishChunk();
+            buffer[count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length)
+                    publishChunk();
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Publishes the data written so far, even if the chunk is not full yet.
+         * Picklers flush at the end of each pickle, so with a sequence of pickles
+         * (see ResultPicklingUtils.IPickleSequenceWriter), each is sent right away.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (count > 0)
+                publishChunk();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        protected void publishChunk() throws IOException {
+            int size = count;
+            String name = ResultPicklingUtils.createSharedMemory(size, (shm) -> shm.put(buffer, 0, size));
+            count = 0;
+            totalSize += size;
+            publish(name + " " + size);
+        }
+    }
+
+    public SharedMemoryPickleStream(ResultFileManager resultManager, IObjectPickler resultsPickler, InterruptedFlag interruptedFlag, Object sharedMemoryOwner, int chunkSize) {
+        this.resultManager = resultManager;
+        this.resultsPickler = resultsPickler;
+        this.interruptedFlag = interruptedFlag;
+        this.sharedMemoryOwner = sharedMemoryOwner;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the check that tells if the consumer of the stream (usually a
+     * Python process) is still alive. May be called after start().
+     */
+    public void setConsumerAliveCheck(BooleanSupplier consumerAliveCheck) {
+        this.consumerAliveCheck = consumerAliveCheck;
+    }
+
+    /**
+     * Returns true if the producer thread has finished (successfully or not).
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Starts producing the pickle on a new thread.
+     */
+    public void start() {
+        Thread thread = new Thread(() -> produce(), "Result pickling");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    protected void produce() {
+        ResultPicklingUtils.sharedMemoryOwner.set(sharedMemoryOwner);
+        try {
+            ChunkOutputStream out = new ChunkOutputStream();
+            writePickle(out);
+            out.close();
+            if (ResultPicklingUtils.debug)
+                Debug.println("Streamed pickle size: " + totalSize);
+        }
+        catch (Throwable e) {
+            error = e;
+        }
+        finally {
+            done = true;
+        }
+    }
+
+    /**
+     * Writes the pickle of the results into the stream. Runs in the producer thread.
+     */
+    protected void writePickle(OutputStream out) throws IOException {
+        ResultFileManager.callWithReadLock(resultManager, () -> {
+            ResultPicklingUtils.dumpResults(resultManager, resultsPickler, out);
+            return null;
+        });
+    }
+
+    /**
+     * Puts a chunk into the queue, waiting for free space if needed.
+     * If the stream is closed or interrupted meanwhile, the chunk is
+     * removed, and an exception is thrown.
+     */
+    protected void publish(String chunk) throws IOException {
+        try {
+            while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (closed || interruptedFlag.getFlag() || !isConsumerAlive()) {
+                    removeChunk(chunk);
+                    throw new IOException("Result pickling interrupted");
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            removeChunk(chunk);
+            throw new IOException("Result pickling interrupted", e);
+        }
+
+        // close() may have drained the queue just before we added the chunk
+        if (closed)
+            removeQueuedChunks();
+    }
+
+    protected boolean isConsumerAlive() {
+        BooleanSupplier check = consumerAliveCheck;
+        return check == null || check.getAsBoolean();
+    }
+
+    @Override
+    public String nextChunk() throws IOException {
+        if (finished)
+            return null;
+        try {
+            while (true) {
+                String chunk = chunks.poll(100, TimeUnit.MILLISECONDS);
+                if (chunk != null)
+                    return chunk;
+                // the producer sets "done" only after its last chunk is queued
+                if (done && chunks.isEmpty()) {
+                    finished = true;
+                    if (error != null)
+                        throw new IOException("Error while pickling results: " + error.getMessage(), error);
+                    return null;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for pickled results", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        removeQueuedChunks();
+    }
+
+    protected synchronized void removeQueuedChunks() {
+        String chunk;
+        while ((chunk = chunks.poll()) != null)
+            removeChunk(chunk);
+    }
+
+    protected static void removeChunk(String chunk) {
+        SharedMemoryRegistry.getInstance().release(chunk.substring(0, chunk.indexOf(' ')));
+    }
+}
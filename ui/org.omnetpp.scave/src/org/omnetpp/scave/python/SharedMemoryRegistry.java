@@ -0,0 +1,375 @@
+package org.omnetpp.scave.python;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.omnetpp.common.Debug;
+import org.omnetpp.scave.engine.ScaveEngine;
+
+/**
+ * Keeps track of the shared memory objects the IDE creates for passing data
+ * to the Python processes.
+ *
+ * Objects are allocated in power-of-two size classes, and are handed out to
+ * an owner (the ResultsProvider of a chart's Python process). When the Python
+ * side no longer uses an object, it releases it, and the object goes back to
+ * a pool, from which a later allocation of the same size class can reuse it
+ * without creating a new one. If the Python process exits, all objects it owns
+ * are reclaimed in the same way. The pool is limited to maxPooledBytes; objects
+ * that do not fit are removed.
+ *
+ * Names are unique: they contain the PID of the IDE and a serial number that
+ * is never reused. At startup, objects left behind by IDE instances that are
+ * no longer running are removed (where the OS makes them visible, i.e. on Linux).
+ *
+ * Mapping shared memory objects into the IDE (e.g. data sent from Python for
+ * native plots) should also be done through this class, so it can account
+ * for the mapped bytes.
+ */
+public class SharedMemoryRegistry {
+
+    public static boolean debug = Debug.isChannelEnabled("sharedmemory");
+
+    private static final String NAME_PREFIX = "/ompp-";
+    private static final long MIN_SEGMENT_SIZE = 64 * 1024;
+
+    public static class Segment {
+        final String name;
+        final long capacity; // the size the object was created with
+        long size; // the number of bytes used by the current owner
+        Object owner;
+
+        Segment(String name, long capacity) {
+            this.name = name;
+            this.capacity = capacity;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCapacity() {
+            return capacity;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private static SharedMemoryRegistry instance;
+
+    private final String pid = getPid();
+    private long serial = 0;
+    private long maxPooledBytes = 512L * 1024 * 1024;
+
+    private Map<String, Segment> liveSegments = new HashMap<>();
+    private Map<Object, Set<Segment>> segmentsByOwner = new IdentityHashMap<>();
+    private TreeMap<Long, Deque<Segment>> pool = new TreeMap<>();  // size class -> free segments
+    private Map<ByteBuffer, Long> mappings = new IdentityHashMap<>();
+
+    // metrics
+    private long liveBytes = 0;
+    private long pooledBytes = 0;
+    private long pooledCount = 0;
+    private long mappedBytes = 0;
+    private long numCreated = 0;
+    private long numReused = 0;
+    private long numRemoved = 0;
+
+    public static synchronized SharedMemoryRegistry getInstance() {
+        if (instance == null) {
+            instance = new SharedMemoryRegistry();
+            instance.removeStaleSegments();
+        }
+        return instance;
+    }
+
+    /**
+     * Removes all shared memory objects of the registry, if it was used at all.
+     * To be called when the IDE exits.
+     */
+    public static synchronized void disposeInstance() {
+        if (instance != null) {
+            instance.removeAll();
+            instance = null;
+        }
+    }
+
+    public synchronized void setMaxPooledBytes(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        trimPool();
+    }
+
+    /**
+     * Returns a shared memory object of at least the given size, owned by the
+     * given object, reusing a pooled one if possible.
+     */
+    public synchronized Segment allocate(long size, Object owner) {
+        long capacity = getSizeClass(size);
+        Deque<Segment> free = pool.get(capacity);
+        Segment segment;
+        if (free != null && !free.isEmpty()) {
+            segment = free.pop();
+            if (free.isEmpty())
+                pool.remove(capacity);
+            pooledBytes -= capacity;
+            pooledCount--;
+            numReused++;
+        }
+        else {
+            segment = new Segment(createSegment(capacity), capacity);
+            numCreated++;
+        }
+
+        segment.size = size;
+        segment.owner = owner;
+        liveSegments.put(segment.name, segment);
+        segmentsByOwner.computeIfAbsent(owner, (o) -> new HashSet<>()).add(segment);
+        liveBytes += capacity;
+        return segment;
+    }
+
+    /**
+     * Returns the shared memory object with the given name to the pool.
+     * Names not known to the registry are ignored.
+     */
+    public synchronized void release(String name) {
+        Segment segment = liveSegments.remove(name);
+        if (segment == null) {
+            if (debug)
+                Debug.println("SharedMemoryRegistry: releasing unknown segment " + name);
+            return;
+        }
+        Set<Segment> owned = segmentsByOwner.get(segment.owner);
+        if (owned != null) {
+            owned.remove(segment);
+            if (owned.isEmpty())
+                segmentsByOwner.remove(segment.owner);
+        }
+        liveBytes -= segment.capacity;
+        segment.owner = null;
+        segment.size = 0;
+
+        pool.computeIfAbsent(segment.capacity, (c) -> new ArrayDeque<>()).push(segment);
+        pooledBytes += segment.capacity;
+        pooledCount++;
+        trimPool();
+    }
+
+    /**
+     * Like release(name), but only if the object is owned by the given owner.
+     * For releases requested by a Python process, as it may also be given
+     * objects it does not own (e.g. ones shared by several processes).
+     * The owner must be specific to one chart run (ResultsProvider is), so
+     * that a late release of an object that has since been reclaimed and
+     * handed out again (with the same name) to a later chart is ignored.
+     */
+    public synchronized void release(String name, Object owner) {
+        Segment segment = liveSegments.get(name);
+        if (segment != null && segment.owner != owner) {
+            if (debug)
+                Debug.println("SharedMemoryRegistry: not releasing segment " + name + ", it is owned by " + segment.owner);
+            return;
+        }
+        release(name);
+    }
+
+    /**
+     * Returns all shared memory objects of the given owner to the pool. To be
+     * called when the owner (e.g. a Python process) is gone.
+     */
+    public synchronized void releaseAll(Object owner) {
+        Set<Segment> owned = segmentsByOwner.get(owner);
+        if (owned == null)
+            return;
+        if (debug)
+            Debug.println("SharedMemoryRegistry: reclaiming " + owned.size() + " segments of " + owner);
+        for (Segment segment : new ArrayList<>(owned))
+            release(segment.name);
+    }
+
+    /**
+     * Removes all shared memory objects, also those still in use.
+     */
+    public synchronized void removeAll() {
+        for (Segment segment : new ArrayList<>(liveSegments.values()))
+            release(segment.name);
+        long max = maxPooledBytes;
+        maxPooledBytes = 0;
+        trimPool();
+        maxPooledBytes = max;
+    }
+
+    /**
+     * Maps the given shared memory object (which may have been created by
+     * another process) into the IDE.
+     */
+    public synchronized ByteBuffer map(String name, long size) {
+        ByteBuffer buffer = ScaveEngine.mapSharedMemory(name, size);
+        mappings.put(buffer, size);
+        mappedBytes += size;
+        return buffer;
+    }
+
+    public synchronized void unmap(ByteBuffer buffer) {
+        Long size = mappings.remove(buffer);
+        if (size != null)
+            mappedBytes -= size;
+        ScaveEngine.unmapSharedMemory(buffer);
+    }
+
+    /**
+     * Returns the total capacity of the shared memory objects of the given owner.
+     */
+    public synchronized long getBytesOwnedBy(Object owner) {
+        long bytes = 0;
+        Set<Segment> owned = segmentsByOwner.get(owner);
+        if (owned != null)
+            for (Segment segment : owned)
+                bytes += segment.capacity;
+        return bytes;
+    }
+
+    public synchronized int getLiveSegmentCount() {
+        return liveSegments.size();
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public synchronized long getPooledSegmentCount() {
+        return pooledCount;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    public synchronized long getCreatedCount() {
+        return numCreated;
+    }
+
+    public synchronized long getReusedCount() {
+        return numReused;
+    }
+
+    public synchronized long getRemovedCount() {
+        return numRemoved;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "live: " + liveSegments.size() + " segments, " + liveBytes + " bytes; " +
+                "pooled: " + pooledCount + " segments, " + pooledBytes + " bytes; " +
+                "mapped: " + mappings.size() + " buffers, " + mappedBytes + " bytes; " +
+                "created: " + numCreated + ", reused: " + numReused + ", removed: " + numRemoved;
+    }
+
+    protected static long getSizeClass(long size) {
+        long capacity = MIN_SEGMENT_SIZE;
+        while (capacity < size)
+            capacity *= 2;
+        return capacity;
+    }
+
+    protected String createSegment(long capacity) {
+        // Names are kept short, because on macOS, the max SHM name length (SHM_NAME_MAX) is 31.
+        // Creation fails if the name exists (e.g. left behind by a crashed IDE with the same PID),
+        // so try a few serial numbers.
+        RuntimeException error = null;
+        for (int tries = 0; tries < 10; tries++) {
+            String name = NAME_PREFIX + pid + "-" + Long.toString(serial++, 36);
+            try {
+                ScaveEngine.createSharedMemory(name, capacity);
+                return name;
+            }
+            catch (RuntimeException e) {
+                error = e;
+            }
+        }
+        throw error;
+    }
+
+    protected void trimPool() {
+        while (pooledBytes > maxPooledBytes) {
+            // remove from the largest size class first
+            Map.Entry<Long, Deque<Segment>> entry = pool.lastEntry();
+            Segment segment = entry.getValue().pollLast();
+            if (entry.getValue().isEmpty())
+                pool.remove(entry.getKey());
+            pooledBytes -= segment.capacity;
+            pooledCount--;
+            remove(segment.name);
+        }
+    }
+
+    protected void remove(String name) {
+        try {
+            ScaveEngine.removeSharedMemory(name);
+            numRemoved++;
+        }
+        catch (RuntimeException e) {
+            if (debug)
+                Debug.println("SharedMemoryRegistry: cannot remove " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the objects created by IDE instances that are no longer running.
+     * Only works where shared memory objects are visible in the file system.
+     */
+    protected void removeStaleSegments() {
+        File[] files = new File("/dev/shm").listFiles();
+        if (files == null || !new File("/proc/self").exists())
+            return;
+        List<String> stale = new ArrayList<>();
+        for (File file : files) {
+            String name = "/" + file.getName();
+            if (!name.startsWith(NAME_PREFIX))
+                continue;
+            String[] parts = name.substring(NAME_PREFIX.length()).split("-");
+            if (parts.length != 2 || parts[0].equals(pid))
+                continue;
+            try {
+                long otherPid = Long.parseLong(parts[0], 36);
+                if (!new File("/proc/" + otherPid).exists())
+                    stale.add(name);
+            }
+            catch (NumberFormatException e) {
+                // not ours
+            }
+        }
+        for (String name : stale)
+            remove(name);
+        if (debug && !stale.isEmpty())
+            Debug.println("SharedMemoryRegistry: removed " + stale.size() + " stale segments");
+    }
+
+    private static String getPid() {
+        // the JVM name is "pid@hostname" on all the JVMs we support
+        String jvmName = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return Long.toString(Long.parseLong(jvmName.substring(0, jvmName.indexOf('@'))), 36);
+        }
+        catch (RuntimeException e) {
+            return Long.toString(System.nanoTime() & 0xFFFFFF, 36);
+        }
+    }
+}
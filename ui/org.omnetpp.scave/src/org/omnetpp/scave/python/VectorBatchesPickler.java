@@ -0,0 +1,77 @@
+package org.omnetpp.scave.python;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.omnetpp.scave.engine.IDList;
+import org.omnetpp.scave.engine.InterruptedFlag;
+import org.omnetpp.scave.engine.ResultFileManager;
+import org.omnetpp.scave.engine.VectorResult;
+
+import net.razorvine.pickle.Opcodes;
+import net.razorvine.pickle.PickleException;
+
+/**
+ * Like VectorResultsPickler, but writes a sequence of pickles, so that the
+ * Python side can use the vectors of each batch as soon as they arrive (see
+ * get_vectors_in_batches() in impl_ide/results.py):
+ *  - first a (rows, attrs) tuple, where rows is the list of the (runID,
+ *    module, name) tuples of all vectors, and attrs is the list of result
+ *    attributes (or None, if they are not requested),
+ *  - then for each batch (see ChunkedVectorLoader), the list of the
+ *    (vectime, vecvalue) shared memory descriptors of its vectors, in the
+ *    same order as in rows.
+ * Each pickle is flushed as soon as it is complete.
+ */
+public class VectorBatchesPickler extends VectorResultsPickler implements ResultPicklingUtils.IPickleSequenceWriter {
+
+    public VectorBatchesPickler(String filterExpression, boolean includeAttrs, double simTimeStart, double simTimeEnd, int targetResolution, InterruptedFlag interruptedFlag) {
+        super(filterExpression, includeAttrs, simTimeStart, simTimeEnd, targetResolution, interruptedFlag);
+    }
+
+    @Override
+    public void writePickles(ResultFileManager resultManager, OutputStream out) throws PickleException, IOException {
+        IDList vectors = filterExpression != null && !filterExpression.trim().isEmpty() ? filterVectors(resultManager) : new IDList();
+
+        ResultPicklingUtils.createPickler((obj, o, pickler) -> {
+            o.write(Opcodes.MARK);
+            {
+                o.write(Opcodes.MARK);
+                for (int i = 0; i < vectors.size(); ++i) {
+                    VectorResult result = resultManager.getVector(vectors.get(i));
+                    o.write(Opcodes.MARK);
+                    pickler.save(result.getRun().getRunName());
+                    pickler.save(result.getModuleName());
+                    pickler.save(result.getName());
+                    o.write(Opcodes.TUPLE);
+                    if (i % 10 == 0 && interruptedFlag.getFlag())
+                        throw new RuntimeException("Vector pickling interrupted");
+                }
+                o.write(Opcodes.LIST);
+
+                if (includeAttrs)
+                    new ResultAttrsPickler(vectors, interruptedFlag).pickle(resultManager, o, pickler);
+                else
+                    o.write(Opcodes.NONE);
+            }
+            o.write(Opcodes.TUPLE);
+        }).dump(resultManager, out);
+
+        if (vectors.isEmpty())
+            return;
+
+        loadInBatches(resultManager, vectors, (batch, dataDescriptors) -> {
+            // dump() flushes the stream at the end, so the batch is sent right away
+            ResultPicklingUtils.createPickler((obj, o, pickler) -> {
+                o.write(Opcodes.MARK);
+                for (String[] descriptors : dataDescriptors) {
+                    o.write(Opcodes.MARK);
+                    ResultPicklingUtils.writeString(descriptors[0], o);
+                    ResultPicklingUtils.writeString(descriptors[1], o);
+                    o.write(Opcodes.TUPLE);
+                }
+                o.write(Opcodes.LIST);
+            }).dump(resultManager, out);
+        });
+    }
+}
@@ -2,16 +2,16 @@ package org.omnetpp.scave.python;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.omnetpp.common.Debug;
-import org.omnetpp.scave.charting.dataset.VectorDataLoader;
+import org.omnetpp.scave.charting.dataset.ChunkedVectorLoader;
 import org.omnetpp.scave.engine.IDList;
 import org.omnetpp.scave.engine.InterruptedFlag;
 import org.omnetpp.scave.engine.ResultFileManager;
 import org.omnetpp.scave.engine.ScaveEngine;
 import org.omnetpp.scave.engine.VectorResult;
-import org.omnetpp.scave.engine.XYArray;
-import org.omnetpp.scave.engine.XYArrayVector;
 
 import net.razorvine.pickle.IObjectPickler;
 import net.razorvine.pickle.Opcodes;
@@ -20,7 +20,7 @@ import net.razorvine.pickle.Pickler;
 
 public class VectorResultsPickler implements IObjectPickler {
 
-    void pickleVectorResult(ResultFileManager resultManager, long ID, XYArray data, Pickler pickler,
+    void pickleVectorResult(ResultFileManager resultManager, long ID, String[] dataDescriptors, Pickler pickler,
             OutputStream out) throws PickleException, IOException {
         VectorResult result = resultManager.getVector(ID);
 
@@ -31,7 +31,9 @@ public class VectorResultsPickler implements IObjectPickler {
             pickler.save(result.getModuleName());
             pickler.save(result.getName());
 
-            ResultPicklingUtils.pickleXYArray(data, out);
+            // the data is already in shared memory
+            ResultPicklingUtils.writeString(dataDescriptors[0], out);
+            ResultPicklingUtils.writeString(dataDescriptors[1], out);
         }
         out.write(Opcodes.TUPLE);
     }
@@ -40,16 +42,82 @@ public class VectorResultsPickler implements IObjectPickler {
     boolean includeAttrs;
     double simTimeStart;
     double simTimeEnd;
+    int targetResolution;
+    IProgressMonitor progressMonitor;
     InterruptedFlag interruptedFlag;
 
     public VectorResultsPickler(String filterExpression, boolean includeAttrs, double simTimeStart, double simTimeEnd, InterruptedFlag interruptedFlag) {
+        this(filterExpression, includeAttrs, simTimeStart, simTimeEnd, 0, interruptedFlag);
+    }
+
+    /**
+     * If targetResolution is positive, the vector data is downsampled to that
+     * many intervals, see VectorDataLoader.getDataOfVectors().
+     */
+    public VectorResultsPickler(String filterExpression, boolean includeAttrs, double simTimeStart, double simTimeEnd, int targetResolution, InterruptedFlag interruptedFlag) {
         this.filterExpression = filterExpression;
         this.includeAttrs = includeAttrs;
         this.simTimeStart = simTimeStart;
         this.simTimeEnd = simTimeEnd;
+        this.targetResolution = targetResolution;
         this.interruptedFlag = interruptedFlag;
     }
 
+    /**
+     * Sets the monitor to report the progress of loading the vector data to (may be null).
+     */
+    public void setProgressMonitor(IProgressMonitor progressMonitor) {
+        this.progressMonitor = progressMonitor;
+    }
+
+    protected IDList filterVectors(ResultFileManager resultManager) {
+        if (ResultPicklingUtils.debug)
+            Debug.println("vector pickling start");
+
+        IDList vectors = ResultQueryCache.filterIDList(resultManager, "vector", () -> resultManager.getAllVectors(), filterExpression, interruptedFlag);
+
+        if (ResultPicklingUtils.debug)
+            Debug.println("pickling " + vectors.size() + " vectors");
+        return vectors;
+    }
+
+    protected interface IBatchPickler {
+        void pickleBatch(IDList batch, String[][] dataDescriptors) throws IOException;
+    }
+
+    /**
+     * Loads the data of the vectors with ChunkedVectorLoader, copies each batch
+     * into shared memory, and calls the batch pickler with the descriptors of it.
+     */
+    protected void loadInBatches(ResultFileManager resultManager, IDList vectors, IBatchPickler batchPickler) throws IOException {
+        ChunkedVectorLoader loader = new ChunkedVectorLoader(resultManager, vectors, simTimeStart, simTimeEnd, targetResolution);
+        try {
+            loader.load(progressMonitor, interruptedFlag, (startIndex, batch, data) -> {
+                String[][] dataDescriptors = ResultPicklingUtils.copyXYArraysToSharedMemory(data, interruptedFlag);
+
+                if (ResultPicklingUtils.debug)
+                    Debug.println("vector data of batch at " + startIndex + " copied");
+
+                try {
+                    batchPickler.pickleBatch(batch, dataDescriptors);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finally {
+            //System.gc(); // NOT NEEDED, SLOW, and actually BREAKS some internal parts of Py4J...
+            ScaveEngine.malloc_trim(); // so the std::vector buffers (of the batches) are released to the operating system
+        }
+
+        if (ResultPicklingUtils.debug)
+            Debug.println("vector pickling done");
+    }
+
     @Override
     public void pickle(Object obj, OutputStream out, Pickler pickler) throws PickleException, IOException {
         ResultFileManager resultManager = (ResultFileManager)obj;
@@ -60,32 +128,14 @@ public class VectorResultsPickler implements IObjectPickler {
 
             out.write(Opcodes.MARK);
             if (filterExpression != null && !filterExpression.trim().isEmpty()) {
-                if (ResultPicklingUtils.debug)
-                    Debug.println("vector pickling start");
-
-                vectors = resultManager.getAllVectors();
-                vectors = resultManager.filterIDList(vectors, filterExpression, -1, interruptedFlag);
-
-                if (ResultPicklingUtils.debug)
-                    Debug.println("pickling " + vectors.size() + " vectors");
-
-                XYArrayVector vectorsData = VectorDataLoader.getDataOfVectors(resultManager, vectors, simTimeStart, simTimeEnd, interruptedFlag);
-
-                for (int i = 0; i < vectors.size(); ++i) {
-                    pickleVectorResult(resultManager, vectors.get(i), vectorsData.get(i), pickler, out);
-                    if (interruptedFlag.getFlag())
-                        throw new RuntimeException("Result pickling interrupted");
-                }
-                if (ResultPicklingUtils.debug)
-                    Debug.println("vector pickling done, cleaning up memory");
-
-                vectorsData.delete();
-                vectorsData = null;
-                //System.gc(); // NOT NEEDED, SLOW, and actually BREAKS some internal parts of Py4J...
-                ScaveEngine.malloc_trim(); // so the std::vector buffers (in vectorsData) are released to the operating system
-
-                if (ResultPicklingUtils.debug)
-                    Debug.println("vector data cleanup done");
+                vectors = filterVectors(resultManager);
+
+                // load and pickle the vectors in batches, so the first ones can be sent (when streaming)
+                // while the rest are still loading, and only one batch of data is in native memory at a time
+                loadInBatches(resultManager, vectors, (batch, dataDescriptors) -> {
+                    for (int i = 0; i < batch.size(); ++i)
+                        pickleVectorResult(resultManager, batch.get(i), dataDescriptors[i], pickler, out);
+                });
             }
             out.write(Opcodes.LIST);
 
@@ -2,14 +2,15 @@ package org.omnetpp.scave.python;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.omnetpp.common.engine.BigDecimal;
 import org.omnetpp.scave.ScavePlugin;
 import org.omnetpp.scave.charting.dataset.IXYDataset;
-import org.omnetpp.scave.engine.ScaveEngine;
 
 import net.razorvine.pickle.PickleException;
 import net.razorvine.pickle.Unpickler;
@@ -22,12 +23,14 @@ public class XYDataset implements IXYDataset {
         String title;
         ByteBuffer xs;
         ByteBuffer ys;
+        DoubleBuffer xValues; // views of xs and ys, for bulk access
+        DoubleBuffer yValues;
 
         public void dispose() {
             if (xs != null && xs.capacity() != 0)
-                ScaveEngine.unmapSharedMemory(xs);
+                SharedMemoryRegistry.getInstance().unmap(xs);
             if (ys != null && ys.capacity() != 0)
-                ScaveEngine.unmapSharedMemory(ys);
+                SharedMemoryRegistry.getInstance().unmap(ys);
         }
     }
 
@@ -46,9 +49,37 @@ public class XYDataset implements IXYDataset {
         return Integer.toString(maxKey + 1);
     }
 
-    ArrayList<SeriesData> series = new ArrayList<SeriesData>();
+    // may be appended to while the plot is drawing it, see NativeChartViewer
+    List<SeriesData> series = new CopyOnWriteArrayList<SeriesData>();
 
-    public void dispose() {
+    // number of background threads reading the data (see acquire()); unmapping is deferred until they finish
+    private int numReaders = 0;
+    private boolean disposed = false;
+
+    public synchronized void dispose() {
+        disposed = true;
+        if (numReaders == 0)
+            unmap();
+    }
+
+    /**
+     * Protects the data from being unmapped by dispose() while it is being read
+     * in a thread other than the UI thread. Returns false if the dataset has
+     * already been disposed; otherwise release() must be called when done.
+     */
+    public synchronized boolean acquire() {
+        if (disposed)
+            return false;
+        numReaders++;
+        return true;
+    }
+
+    public synchronized void release() {
+        if (--numReaders == 0 && disposed)
+            unmap();
+    }
+
+    protected void unmap() {
         for (SeriesData sd : series)
             sd.dispose();
         series.clear();
@@ -66,7 +97,7 @@ public class XYDataset implements IXYDataset {
         if (name.equals("<EMPTY>") && size == 0)
             return ByteBuffer.allocate(0);
         else
-            return (ByteBuffer)ScaveEngine.mapSharedMemory(name, size);
+            return SharedMemoryRegistry.getInstance().map(name, size);
     }
 
     public List<String> addVectors(byte[] pickledData) {
@@ -99,6 +130,8 @@ public class XYDataset implements IXYDataset {
 
                 seriesData.xs = map(xName);
                 seriesData.ys = map(yName);
+                seriesData.xValues = seriesData.xs.asDoubleBuffer();
+                seriesData.yValues = seriesData.ys.asDoubleBuffer();
 
                 series.add(seriesData);
             }
@@ -160,12 +193,14 @@ public class XYDataset implements IXYDataset {
     public double getMinX() {
         double min = Double.POSITIVE_INFINITY;
 
-        for (SeriesData sd : series)
-            for (int i = 0; i < sd.xs.capacity() / 8; ++i) {
-                double x = sd.xs.getDouble(i*8);
+        for (SeriesData sd : series) {
+            DoubleBuffer values = sd.xValues;
+            for (int i = 0, n = values.limit(); i < n; ++i) {
+                double x = values.get(i);
                 if (x < min)
                     min = x;
             }
+        }
 
         return min;
     }
@@ -174,12 +209,14 @@ public class XYDataset implements IXYDataset {
     public double getMaxX() {
         double max = Double.NEGATIVE_INFINITY;
 
-        for (SeriesData sd : series)
-            for (int i = 0; i < sd.xs.capacity() / 8; ++i) {
-                double x = sd.xs.getDouble(i*8);
+        for (SeriesData sd : series) {
+            DoubleBuffer values = sd.xValues;
+            for (int i = 0, n = values.limit(); i < n; ++i) {
+                double x = values.get(i);
                 if (x > max)
                     max = x;
             }
+        }
 
         return max;
     }
@@ -198,12 +235,14 @@ public class XYDataset implements IXYDataset {
     public double getMinY() {
         double min = Double.POSITIVE_INFINITY;
 
-        for (SeriesData sd : series)
-            for (int i = 0; i < sd.ys.capacity() / 8; ++i) {
-                double y = sd.ys.getDouble(i*8);
+        for (SeriesData sd : series) {
+            DoubleBuffer values = sd.yValues;
+            for (int i = 0, n = values.limit(); i < n; ++i) {
+                double y = values.get(i);
                 if (y < min)
                     min = y;
             }
+        }
 
         return min;
     }
@@ -212,16 +251,30 @@ public class XYDataset implements IXYDataset {
     public double getMaxY() {
         double max = Double.NEGATIVE_INFINITY;
 
-        for (SeriesData sd : series)
-            for (int i = 0; i < sd.ys.capacity() / 8; ++i) {
-                double y = sd.ys.getDouble(i*8);
+        for (SeriesData sd : series) {
+            DoubleBuffer values = sd.yValues;
+            for (int i = 0, n = values.limit(); i < n; ++i) {
+                double y = values.get(i);
                 if (y > max)
                     max = y;
             }
+        }
 
         return max;
     }
 
+    @Override
+    public void copyRange(int series, int from, int to, double[] xs, double[] ys) {
+        SeriesData sd = this.series.get(series);
+        // duplicate() so that concurrent painters don't interfere through the buffer position
+        DoubleBuffer xValues = sd.xValues.duplicate();
+        xValues.position(from);
+        xValues.get(xs, 0, to - from);
+        DoubleBuffer yValues = sd.yValues.duplicate();
+        yValues.position(from);
+        yValues.get(ys, 0, to - from);
+    }
+
     @Override
     public String getXAsString(int series, int item) {
         BigDecimal xp = getPreciseX(series, item);